@@ -18,6 +18,7 @@
 package inspiracio.atom.client;
 
 import inspiracio.atom.AtomBean;
+import inspiracio.binary.BinaryWriter;
 import inspiracio.lang.Equals;
 import inspiracio.net.IHttpURLConnection;
 import inspiracio.security.PrincipalMaker;
@@ -52,6 +53,7 @@ import org.apache.log4j.Logger;
 
 import atom.Entry;
 import atom.Feed;
+import atom.gdata.Fields;
 import atom.gdata.GDataParameters;
 import atom.gdata.Style;
 
@@ -79,6 +81,14 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 	/** Should compress requests and response with gzip? */
 	private boolean gzip=true;
 
+	/** Should send requests and ask for responses in the binary format
+	 * instead of Atom? Only for servers that understand it. */
+	private boolean binary=false;
+
+	/** For partial responses to get: the elements that the client needs.
+	 * Null for whole responses. */
+	private Fields fields=null;
+
 	//Constructor --------------------------------------
 
 	/** New factory
@@ -134,6 +144,26 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 	/** Compress requests and responses with gzip? */
 	public boolean getGZip(){return this.gzip;}
 
+	/** Send requests and ask for responses in the compact binary
+	 * format instead of Atom? See BinaryWriter. The server must
+	 * be an AtomServlet of this version or later. */
+	public void setBinary(boolean b){this.binary=b;}
+
+	/** Send requests and ask for responses in the binary format? */
+	public boolean getBinary(){return this.binary;}
+
+	/** Ask the server for partial responses to get, with only these
+	 * elements and attributes. Less to download and less to parse.
+	 * The beans must be able to take entries with only these fields
+	 * in fromEntry. GDataParameters with their own fields parameter
+	 * have priority.
+	 * @param fields null for whole responses
+	 * */
+	public void setFields(Fields fields){this.fields=fields;}
+
+	/** See setFields(Fields) */
+	public Fields getFields(){return this.fields;}
+
 	public String getHost(){
 		HttpURL url=new HttpURL(this.base);
 		return url.getHost();
@@ -271,11 +301,61 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 		URL u=new URL(s);//MalformedURLException
 		HttpURLConnection con=(HttpURLConnection)u.openConnection();//IOException
 		IHttpURLConnection icon=new IHttpURLConnection(con, gzip);
+		if(this.binary)
+			icon.setRequestProperty("Accept", BinaryWriter.CONTENT_TYPE);
 		this.basicAuthentication(icon);
 		this.cookies(icon);
 		return icon;
 	}
 
+	/** The content type of request bodies: binary or Atom. */
+	private String getContentType(){
+		return this.binary ? BinaryWriter.CONTENT_TYPE : "application/xml+atom; charset=UTF-8";
+	}
+
+	/** Writes the entry as binary or Atom.
+	 * @exception IOException
+	 * @exception TransformerException */
+	private void write(Entry entry, OutputStream out)throws IOException, TransformerException{
+		if(this.binary)
+			entry.writeBinary(out);//IOException
+		else
+			entry.write(out);//TransformerException
+	}
+
+	/** Writes the feed as binary or Atom.
+	 * @exception IOException
+	 * @exception TransformerException */
+	private void write(Feed feed, OutputStream out)throws IOException, TransformerException{
+		if(this.binary)
+			feed.writeBinary(out);//IOException
+		else
+			feed.write(out);//TransformerException
+	}
+
+	/** Parses an entry from the response, in the format that the server
+	 * says in the Content-Type: binary or Atom. A server that does not
+	 * know the binary format answers with Atom. */
+	private static Entry parseEntry(HttpURLConnection con, InputStream in){
+		if(isBinary(con))
+			return Entry.parseBinary(in);
+		return Entry.parse(in);
+	}
+
+	/** Parses a feed from the response, in the format that the server
+	 * says in the Content-Type: binary or Atom. */
+	private static Feed parseFeed(HttpURLConnection con, InputStream in){
+		if(isBinary(con))
+			return Feed.parseBinary(in);
+		return Feed.parse(in);
+	}
+
+	/** Is the response in the binary format? */
+	private static boolean isBinary(HttpURLConnection con){
+		String type=con.getContentType();
+		return type!=null && type.startsWith(BinaryWriter.CONTENT_TYPE);
+	}
+
 	/** If the factory is configured with name and password, adds
 	 * request headers for http basic authentication to the
 	 * http URL connection. Else does nothing.
@@ -325,15 +405,13 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 	}
 
 	/** https://domain/atom/-/category
-	 * Returns a fresh instance of HttpURL which becomes property of the caller. */
-	private HttpURL getCategoryURL(Class<? extends AtomBean> beanClass){
-		//Optimisable, cacheable
-		StringBuilder builder=new StringBuilder();
-		builder.append(RemoteProxyFactory.this.base);
+	 * Returns a fresh builder which becomes property of the caller. */
+	private HttpURL.Builder getCategoryURL(Class<? extends AtomBean> beanClass){
+		HttpURL.Builder builder=new HttpURL.Builder(RemoteProxyFactory.this.base);
 		String category=beanClass.getSimpleName();
 		category=Character.toLowerCase(category.charAt(0)) + category.substring(1);
 		builder.append(category);
-		return new HttpURL(builder);
+		return builder;
 	}
 
 	/** Makes a fresh invocation handler for an Atom bean
@@ -364,7 +442,7 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 
 				//Must implement AtomProxy
 				String methodName=method.getName();
-				HttpURL url=getCategoryURL(beanClass);
+				HttpURL.Builder url=getCategoryURL(beanClass);
 				if("get".equals(methodName)){		//List<T> get(GDataParameters params);
 					GDataParameters parameters=(GDataParameters)args[0];
 					AtomBean beanInstance=beanClass.newInstance();//Must be bean: must have safe default constructor
@@ -400,14 +478,14 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 	}
 
 	/** Insert a bean
-	 * @param url The URL that received the POST
+	 * @param builder The URL that receives the POST, without parameters
 	 * @param bean
 	 * @exception HttpException Look at status (=subclass) and message for more information.
 	 * */
-	private AtomBean insert(HttpURL url, AtomBean bean)	throws HttpException{
+	private AtomBean insert(HttpURL.Builder builder, AtomBean bean)	throws HttpException{
 		HttpURLConnection con=null;
 		try{
-			url.setParameter("style", "full");//Want the response with the most detail possible
+			HttpURL url=builder.parameter("style", "full").build();//Want the response with the most detail possible
 			Entry entry=bean.toEntry(true, Style.FULL);//send with the most detail possible. Exception
 			
 			//using java's HttpURLConnection
@@ -416,7 +494,7 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 			con.setDoInput(true);
 			con.setRequestMethod("POST");
 			//con.setChunkedStreamingMode(0);//Chunking requires Content-Length. Do not chunk.
-			con.setRequestProperty("Content-Type", "application/xml+atom; charset=UTF-8");
+			con.setRequestProperty("Content-Type", this.getContentType());
 			
 			//Problem: JBoss's implementation of http basic authentication with POST gives me an
 			//empty request input stream! But with PUT it works fine. So here a workaround:
@@ -427,11 +505,11 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 			//con.setRequestProperty("X-HTTP-Method-Override", "POST");
 			
 			OutputStream out=con.getOutputStream();//IOException
-			entry.write(out);//TransformerException
+			this.write(entry, out);//TransformerException
 			out.close();//IOException
 
 			InputStream in=con.getInputStream();//IOException 401
-			entry=Entry.parse(in);
+			entry=parseEntry(con, in);
 			in.close();
 			bean=bean.fromEntry(entry);
 			return bean;
@@ -480,11 +558,11 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 	/** Insert many beans.
 	 * First implementation: send one request for each.
 	 * Second implementation: send them in one batch.
-	 * @param url The URL that received the POST
+	 * @param builder The URL that receives the POST, without parameters
 	 * @param beans
 	 * @exception HttpException Look at status (=subclass) and message for more information.
 	 * */
-	private List<AtomBean> insert(HttpURL url, List<AtomBean> beans)throws HttpException{
+	private List<AtomBean> insert(HttpURL.Builder builder, List<AtomBean> beans)throws HttpException{
 		List<AtomBean>results=new ArrayList<AtomBean>();
 
 		//First implementation: one request for each. First failure fails all, no transaction.
@@ -498,7 +576,7 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 		//Second implementation: one request, the server has a transaction.
 		HttpURLConnection con=null;
 		try{
-			url.setParameter("style", "full");//Want the response with the most detail possible.
+			HttpURL url=builder.parameter("style", "full").build();//Want the response with the most detail possible.
 			Feed feed=new Feed();
 			//feed.setBatchOperation(INSERT);	//INSERT is the default. When we implement others, maybe we must set it explicitly.
 			AtomBean dummy=null;//just keep hold of one bean, so that I can call fromEntry later.
@@ -525,16 +603,16 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 			
 			con.setDoOutput(true);
 			con.setDoInput(true);
-			con.setRequestProperty("Content-Type", "application/xml+atom; charset=UTF-8");
+			con.setRequestProperty("Content-Type", this.getContentType());
 			OutputStream out=con.getOutputStream();//IOException
-			feed.write(out);//TransformerException
+			this.write(feed, out);//TransformerException
 			feed=null;//help gc
 			out.close();//IOException
 
 			//Everything has worked: read the response.
 			InputStream in=con.getInputStream();//IOException 401
 			logger.debug("HTTP response code: " + con.getResponseCode());
-			Feed resultFeed=Feed.parse(in);
+			Feed resultFeed=parseFeed(con, in);
 			in.close();
 			List<Entry>entries=resultFeed.getEntries();
 			resultFeed=null;//help gc
@@ -584,15 +662,15 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 	}
 
 	/**
-	 * @param url
+	 * @param builder The category URL
 	 * @param id
 	 * @param etag The ETag of the object that the client has seen.
 	 * @exception HttpException Look at status code (=subclass) and message for more information
 	 * */
-	private void delete(HttpURL url, String id,String etag)throws HttpException{
+	private void delete(HttpURL.Builder builder, String id,String etag)throws HttpException{
 		HttpURLConnection con=null;
 		try{
-			url.append("/entry").append(id);
+			HttpURL url=builder.append("/entry").append(id).build();
 			logger.debug("DELETE " + url + " - id: " + id + ", etag: " + etag);
 
 			//using java's HttpURLConnection
@@ -645,14 +723,14 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 	}
 
 	/**
-	 * @param url
+	 * @param builder The category URL
 	 * @exception HttpException See status (=subclass) and message
 	 * */
-	private AtomBean update(HttpURL url, AtomBean bean)throws HttpException{
+	private AtomBean update(HttpURL.Builder builder, AtomBean bean)throws HttpException{
 		HttpURLConnection con=null;
 		try{
-			url.append("/entry").append(bean.getId());
-			url.setParameter("style", "full");//Want the response with the most detail possible
+			builder.append("/entry").append(bean.getId());
+			HttpURL url=builder.parameter("style", "full").build();//Want the response with the most detail possible
 			Entry entry=bean.toEntry(true, Style.FULL);//Send with most detail possible. IOException
 			logger.debug("PUT " + url + " - bean: " + bean);
 
@@ -663,14 +741,14 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 			con.setRequestMethod("PUT");//ProtocolException
 			con.setDoOutput(true);
 			con.setDoInput(true);
-			con.setRequestProperty("Content-Type", "application/xml+atom; charset=UTF-8");
+			con.setRequestProperty("Content-Type", this.getContentType());
 			OutputStream out=con.getOutputStream();//IOException
-			entry.write(out);//TransformerException
+			this.write(entry, out);//TransformerException
 			out.close();//IOException
 
 			InputStream in=con.getInputStream();//IOException 401
 			logger.debug("HTTP response code: " + con.getResponseCode());//IOException
-			entry=Entry.parse(in);
+			entry=parseEntry(con, in);
 			bean=bean.fromEntry(entry);
 			return bean;
 		}
@@ -716,18 +794,22 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 	}
 
 	/**
-	 * @param url
+	 * @param builder The category URL
 	 * @param bean A dummy instance of the right bean-class. The method needs it to call fromEntry on it.
 	 * @param params
 	 * @exception HttpException See status code (=subclass) and message for more information.
 	 * */
-	private List<AtomBean> get(HttpURL url, AtomBean bean, GDataParameters params)throws HttpException{
+	private List<AtomBean> get(HttpURL.Builder builder, AtomBean bean, GDataParameters params)throws HttpException{
 		HttpURLConnection con=null;
 		try{
 			String id=params.getId();
 			if(id!=null)
-				url.append("/entry" + id);
-			url.setParameters(params);
+				builder.append("/entry").append(id);
+			if(this.fields!=null && params.get("fields")==null){
+				params=new GDataParameters(params);//Don't change the caller's parameters.
+				params.setFields(this.fields);
+			}
+			HttpURL url=builder.parameters(params).build();
 
 			logger.debug("GET " + url);
 			con=openConnection(url);
@@ -735,7 +817,7 @@ public final class RemoteProxyFactory implements ProxyFactory, PrincipalMaker{
 
 			InputStream in=con.getInputStream();//IOException 401
 			logger.debug("HTTP response code: " + con.getResponseCode());//IOException
-			Feed feed=Feed.parse(in);
+			Feed feed=parseFeed(con, in);
 			List<AtomBean> beans=new ArrayList<AtomBean>();
 			for(Entry entry : feed.getEntries()){
 				bean=bean.fromEntry(entry);
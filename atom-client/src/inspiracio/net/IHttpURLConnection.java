@@ -17,12 +17,10 @@
  */
 package inspiracio.net;
 
-import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
 import java.net.HttpURLConnection;
-import java.util.zip.GZIPInputStream;
 import java.util.zip.GZIPOutputStream;
 import java.util.zip.Inflater;
 import java.util.zip.InflaterInputStream;
@@ -42,6 +40,9 @@ public final class IHttpURLConnection extends HttpURLConnectionWrapper{
 	
 	/** Compress requests and responses with gzip? */
 	private final boolean gzip;
+
+	/** From getInputStream(), or null */
+	private InputStream in=null;
 	
 	//Constructor --------------------------------
 	
@@ -60,23 +61,20 @@ public final class IHttpURLConnection extends HttpURLConnectionWrapper{
 
 	//Methods ------------------------------------
 	
-	/** Gets the stream to read the response. */
+	/** Gets the stream to read the response.
+	 * <p>
+	 * If the header says the body is gzipped, we look at the first bytes.
+	 * An empty body, or one that a proxy has unzipped already, reads as it is. */
 	@Override public InputStream getInputStream() throws IOException{
+		if(this.in!=null)
+			return this.in;
 		InputStream in=super.getInputStream();//communicate to server
 		String encoding=super.getContentEncoding();
-		if(GZIP.equalsIgnoreCase(encoding)){
-			try{
-				in=new GZIPInputStream(in);
-			}catch(EOFException eofe){
-				//We couldn't even wrap the input stream into a GZIP input stream.
-				//That means there's nothing to read.
-				//We can just return the original stream.
-				//There's nothing to read anyway.
-				return in;
-			}
-		}
+		if(GZIP.equalsIgnoreCase(encoding))
+			in=GZipInputStream.unzip(in);//IOException
 		else if(DEFLATE.equalsIgnoreCase(encoding))
 			in=new InflaterInputStream(in, new Inflater(true));
+		this.in=in;
 		return in;
 	}
 
@@ -0,0 +1,150 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom;
+
+import inspiracio.xml.XMLRuntime;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.w3c.dom.Element;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+
+public class AtomParserTest{
+
+	/** With an EntryHandler, the entries go to the handler in order, not to the feed. */
+	@Test public void entryHandler()throws Exception{
+		final List<String> ids=new ArrayList<String>();
+		AtomParser parser=new AtomParser();
+		parser.setEntryHandler(new AtomParser.EntryHandler(){
+			@Override public void entry(Entry entry){ids.add(entry.getId());}
+		});
+		parser.parse(feed(3));
+		Assert.assertEquals("[0, 1, 2]", ids.toString());
+		Assert.assertTrue(parser.getFeed().getEntries().isEmpty());
+		Assert.assertEquals("feed", parser.getFeed().getId());
+	}
+
+	/** The handler can stop parsing. */
+	@Test(expected=SAXException.class) public void stop()throws Exception{
+		AtomParser parser=new AtomParser();
+		parser.setEntryHandler(new AtomParser.EntryHandler(){
+			@Override public void entry(Entry entry)throws SAXException{throw new SAXException("stop");}
+		});
+		parser.parse(feed(3));
+	}
+
+	/** A lazy entry decodes the same fields as an eager one. */
+	@Test public void lazy()throws Exception{
+		byte[] xml=entry();
+		Entry eager=Entry.parse(new ByteArrayInputStream(xml));
+		Entry lazy=Entry.parseLazy(new ByteArrayInputStream(xml));
+		Assert.assertEquals(eager.getId(), lazy.getId());
+		Assert.assertEquals(eager.getTitle().format(), lazy.getTitle().format());
+		Assert.assertEquals(eager.getUpdated(), lazy.getUpdated());
+		Assert.assertEquals(eager.getExtensionElementTextContent("gd:email"), lazy.getExtensionElementTextContent("gd:email"));
+		Assert.assertEquals(eager.getLink("photo").getHref(), lazy.getLink("photo").getHref());
+		Assert.assertEquals(eager.getETag(), lazy.getETag());
+	}
+
+	/** An unchanged lazy entry writes its markup. A changed one writes like an eager one. */
+	@Test public void lazyWrite()throws Exception{
+		byte[] xml=entry();
+		Entry lazy=Entry.parseLazy(new ByteArrayInputStream(xml));
+		lazy.getTitle();
+		Assert.assertEquals(new String(xml, "UTF-8"), write(lazy));
+
+		Entry eager=Entry.parse(new ByteArrayInputStream(xml));
+		eager.setTitle("changed");
+		lazy.setTitle("changed");
+		Assert.assertEquals(write(eager), write(lazy));
+	}
+
+	/** SAX gives the same entry as DOM: persons, texts, links,
+	 * nested and mixed extension elements, attributes of the entry. */
+	@Test public void parity()throws Exception{
+		String xml=
+			"<entry xmlns='http://www.w3.org/2005/Atom' xmlns:gd='http://schemas.google.com/g/2005' xmlns:x='http://www.inspiracio.com/x' " +
+				"gd:etag='\"7\"' x:kind='test' xml:lang='ca'>" +
+			"<id>42</id>" +
+			"<title type='text'>Tom &amp; &lt;Jerry&gt;</title>" +
+			"<summary>short</summary>" +
+			"<content>Hello &quot;world&quot;</content>" +
+			"<updated>2011-02-03T04:05:06.789Z</updated>" +
+			"<author><name>Tom</name><email>tom@inspiracio.com</email><uri>http://www.inspiracio.com/tom</uri></author>" +
+			"<author><name type='text'>Jerry &amp; co</name></author>" +
+			"<published>2011-01-01T00:00:00Z</published>" +
+			"<rights type='text'>mine</rights>" +
+			"<link rel='alternate' type='text/html' href='http://www.inspiracio.com/42' title='web'/>" +
+			"<link rel='edit' href='http://www.inspiracio.com/atom/42'/>" +
+			"<gd:email address='tom@inspiracio.com' primary='true'/>" +
+			"<gd:postalAddress label='home'>Carrer <x:street number='1'>Gran</x:street> de Gràcia</gd:postalAddress>" +
+			"<x:outer a='1'><x:inner><x:leaf>deep</x:leaf></x:inner><x:inner/></x:outer>" +
+			"</entry>";
+		byte[] bytes=xml.getBytes("UTF-8");
+		Entry sax=Entry.parse(new ByteArrayInputStream(bytes));
+		Element root=XMLRuntime.parse(new InputSource(new ByteArrayInputStream(bytes))).getDocumentElement();
+		Entry dom=Entry.parse(root);
+		String written=write(sax);
+		Assert.assertEquals(write(dom), written);
+		Assert.assertEquals(dom.getAttributes(), sax.getAttributes());
+		Assert.assertEquals("test", sax.getAttributes().get("x:kind"));
+		Assert.assertTrue(written, written.contains("<email>tom@inspiracio.com</email>"));
+		Assert.assertTrue(written, written.contains("<x:leaf>deep</x:leaf>"));
+	}
+
+	/** XML of an entry with some fields */
+	private static byte[] entry()throws Exception{
+		Entry entry=new Entry();
+		entry.setETag("3");
+		entry.setId("1");
+		entry.setTitle("Tom & Jerry");
+		Link link=new Link();
+		link.setHref("http://www.inspiracio.com/photo.jpg");
+		link.setTitle("photo");
+		entry.addLink(link);
+		entry.addSimpleExtElement("gd:email", "tom@inspiracio.com");
+		return write(entry).getBytes("UTF-8");
+	}
+
+	private static String write(Entry entry)throws Exception{
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		entry.write(out);
+		return out.toString("UTF-8");
+	}
+
+	/** XML of a feed with some entries */
+	private static ByteArrayInputStream feed(int n)throws Exception{
+		Feed feed=new Feed();
+		feed.setId("feed");
+		for(int i=0; i<n; i++){
+			Entry entry=new Entry();
+			entry.setId("" + i);
+			entry.addSimpleExtElement("gd:email", "user" + i + "@inspiracio.com");
+			feed.addEntry(entry);
+		}
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		feed.write(out);
+		return new ByteArrayInputStream(out.toByteArray());
+	}
+}
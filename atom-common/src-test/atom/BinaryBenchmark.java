@@ -0,0 +1,110 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom;
+
+import inspiracio.xml.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Date;
+
+import javax.xml.transform.TransformerException;
+
+/** Compares the binary format with XML: size of a feed,
+ * and time to encode and decode it.
+ * <p>
+ * Run main.
+ * */
+public class BinaryBenchmark {
+
+	private static final int ENTRIES=1000;
+	private static final int ROUNDS=50;
+
+	public static void main(String[] args)throws TransformerException, IOException{
+		Feed feed=makeFeed();
+
+		ByteArrayOutputStream xml=new ByteArrayOutputStream();
+		feed.write(xml);
+		ByteArrayOutputStream binary=new ByteArrayOutputStream();
+		feed.writeBinary(binary);
+		System.out.println("bytes XML: " + xml.size());
+		System.out.println("bytes binary: " + binary.size());
+
+		//warm up
+		for(int i=0; i<ROUNDS; i++){
+			encodeXML(feed);
+			encodeBinary(feed);
+			Feed.parse(new ByteArrayInputStream(xml.toByteArray()));
+			Feed.parseBinary(new ByteArrayInputStream(binary.toByteArray()));
+		}
+
+		long nanos=System.nanoTime();
+		for(int i=0; i<ROUNDS; i++)
+			encodeXML(feed);
+		report("encode XML", nanos);
+
+		nanos=System.nanoTime();
+		for(int i=0; i<ROUNDS; i++)
+			encodeBinary(feed);
+		report("encode binary", nanos);
+
+		nanos=System.nanoTime();
+		for(int i=0; i<ROUNDS; i++)
+			Feed.parse(new ByteArrayInputStream(xml.toByteArray()));
+		report("decode XML", nanos);
+
+		nanos=System.nanoTime();
+		for(int i=0; i<ROUNDS; i++)
+			Feed.parseBinary(new ByteArrayInputStream(binary.toByteArray()));
+		report("decode binary", nanos);
+	}
+
+	private static void encodeXML(Feed feed)throws TransformerException{
+		feed.write(new ByteArrayOutputStream(64*1024));
+	}
+
+	private static void encodeBinary(Feed feed)throws IOException{
+		feed.writeBinary(new ByteArrayOutputStream(64*1024));
+	}
+
+	private static void report(String what, long nanos){
+		long micros=(System.nanoTime() - nanos) / 1000 / ROUNDS;
+		System.out.println("microseconds to " + what + " a feed of " + ENTRIES + " entries: " + micros);
+	}
+
+	/** A feed with typical entries: some plain text, some text to escape. */
+	private static Feed makeFeed(){
+		Feed feed=new Feed();
+		feed.setTitle("Benchmark");
+		feed.setUpdated(new Date(0));
+		for(int i=0; i<ENTRIES; i++){
+			Entry entry=new Entry();
+			entry.setId("http://www.inspiracio.com/atom/-/user/" + i);
+			entry.setTitle(i%2==0 ? "Plain title number " + i : "Fish & chips <" + i + ">");
+			entry.setUpdated(new Date(1000000L * i));
+			entry.addSimpleExtElement("gd:email", "user" + i + "@inspiracio.com");
+			Element address=new Element("gd:postalAddress");
+			address.setAttribute("label", "home");
+			address.addChild("Carrer Gran de Gràcia " + i + ", Barcelona");
+			entry.addExtElement(address);
+			feed.addEntry(entry);
+		}
+		return feed;
+	}
+}
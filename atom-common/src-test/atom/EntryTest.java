@@ -0,0 +1,142 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom;
+
+import inspiracio.xml.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** The index of extension elements by tag, and the attributes */
+public class EntryTest{
+
+	/** Lookup by tag gives the elements in the order of the entry. */
+	@Test public void add(){
+		Entry entry=new Entry();
+		Element a=email("a");
+		Element b=email("b");
+		entry.addExtElement(a);
+		entry.addSimpleExtElement("gd:phoneNumber", "1");
+		entry.addExtElement(b);
+		Assert.assertEquals(Arrays.asList(a, b), entry.getExtensionElements("gd:email"));
+		Assert.assertSame(a, entry.getExtensionElement("gd:email"));
+		Assert.assertEquals("1", entry.getExtensionElementTextContent("gd:phoneNumber"));
+		Assert.assertTrue(entry.getExtensionElements("gd:im").isEmpty());
+		Assert.assertNull(entry.getOptionalExtensionElement("gd:im"));
+	}
+
+	/** After remove, lookup by tag does not find the element, and neither does write. */
+	@Test public void remove()throws Exception{
+		Entry entry=new Entry();
+		Element a=email("a");
+		Element b=email("b");
+		entry.addExtElement(a);
+		entry.addExtElement(b);
+		entry.removeExtElement(a);
+		Assert.assertEquals(Arrays.asList(b), entry.getExtensionElements("gd:email"));
+		Assert.assertSame(b, entry.getExtensionElement("gd:email"));
+		entry.removeExtElement(b);
+		Assert.assertTrue(entry.getExtensionElements("gd:email").isEmpty());
+		Assert.assertNull(entry.getOptionalExtensionElement("gd:email"));
+		Assert.assertNull(entry.getExtensionElementTextContent("gd:email"));
+		entry.removeExtElement(b);//not there: nothing happens
+		Assert.assertFalse(write(entry).contains("gd:email"));
+	}
+
+	/** A lazy entry builds the index when it decodes, and keeps it
+	 * consistent when it changes later. */
+	@Test public void lazy()throws Exception{
+		Entry eager=new Entry();
+		eager.setId("1");
+		eager.addExtElement(email("a"));
+		eager.addSimpleExtElement("gd:phoneNumber", "1");
+		eager.addExtElement(email("b"));
+		byte[] xml=write(eager).getBytes("UTF-8");
+
+		Entry lazy=Entry.parseLazy(new ByteArrayInputStream(xml));
+		Assert.assertEquals(Arrays.asList("a", "b"), addresses(lazy.getExtensionElements("gd:email")));
+
+		//A change decodes all fields: the extension elements must not come twice.
+		lazy.addExtElement(email("c"));
+		Assert.assertEquals(Arrays.asList("a", "b", "c"), addresses(lazy.getExtensionElements("gd:email")));
+		Assert.assertEquals("1", lazy.getExtensionElementTextContent("gd:phoneNumber"));
+
+		//Remove on an entry that has not decoded yet
+		lazy=Entry.parseLazy(new ByteArrayInputStream(xml));
+		lazy.removeExtElement(lazy.getExtensionElement("gd:email"));
+		Assert.assertEquals(Arrays.asList("b"), addresses(lazy.getExtensionElements("gd:email")));
+		lazy=Entry.parse(new ByteArrayInputStream(write(lazy).getBytes("UTF-8")));
+		Assert.assertEquals(Arrays.asList("b"), addresses(lazy.getExtensionElements("gd:email")));
+	}
+
+	/** getAttributes() shows the namespace declarations too,
+	 * and putting into it is like addAttribute(). */
+	@Test public void attributes()throws Exception{
+		Entry entry=new Entry();
+		entry.addNamespace("x", "http://www.inspiracio.com/x", "http://www.inspiracio.com/x.xsd");
+		Map<String, String> attributes=entry.getAttributes();
+		attributes.put("x:kind", "test");
+		attributes.put("xmlns:y", "http://www.inspiracio.com/y");
+		Assert.assertEquals("test", attributes.get("x:kind"));
+		Assert.assertEquals("http://www.inspiracio.com/x", attributes.get("xmlns:x"));
+		Assert.assertEquals("http://www.inspiracio.com/x http://www.inspiracio.com/x.xsd", attributes.get("xsi:schemaLocation").trim());
+		Assert.assertTrue(attributes.containsKey("xmlns:y"));
+		Assert.assertEquals(attributes, entry.getAttributes());
+		String written=write(entry);
+		Assert.assertTrue(written, written.contains("x:kind=\"test\""));
+		Assert.assertTrue(written, written.contains("xmlns:y=\"http://www.inspiracio.com/y\""));
+
+		Assert.assertEquals("test", attributes.remove("x:kind"));
+		Assert.assertNull(entry.getAttributes().get("x:kind"));
+		try{
+			attributes.remove("xmlns:x");
+			Assert.fail();
+		}catch(UnsupportedOperationException e){}
+		try{
+			attributes.entrySet().clear();
+			Assert.fail();
+		}catch(UnsupportedOperationException e){}
+	}
+
+	//Helpers ------------------------------------------------------
+
+	private static Element email(String address){
+		Element email=new Element("gd:email");
+		email.setAttribute("address", address);
+		return email;
+	}
+
+	private static List<String> addresses(List<Element> emails){
+		String[] addresses=new String[emails.size()];
+		for(int i=0; i<addresses.length; i++)
+			addresses[i]=emails.get(i).getAttribute("address");
+		return Arrays.asList(addresses);
+	}
+
+	private static String write(Entry entry)throws Exception{
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		entry.write(out);
+		return out.toString("UTF-8");
+	}
+}
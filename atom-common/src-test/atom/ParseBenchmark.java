@@ -0,0 +1,131 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom;
+
+import inspiracio.xml.DOM;
+import inspiracio.xml.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+/** Compares parsing a feed through a DOM with parsing it
+ * streaming with AtomParser: time, bytes allocated, and the heap
+ * that is in use at the end of parsing.
+ * <p>
+ * Run main. Needs a JVM whose ThreadMXBean implements
+ * com.sun.management.ThreadMXBean, like Oracle's and OpenJDK.
+ * */
+public class ParseBenchmark {
+
+	private static final int ENTRIES=1000;
+	private static final int ROUNDS=50;
+
+	public static void main(String[] args)throws Exception{
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		makeFeed().write(out);
+		byte[] xml=out.toByteArray();
+		System.out.println("bytes XML: " + xml.length);
+
+		//warm up
+		for(int i=0; i<ROUNDS; i++){
+			parseDOM(xml);
+			AtomParser.parseFeed(new ByteArrayInputStream(xml));
+		}
+
+		com.sun.management.ThreadMXBean bean=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread=Thread.currentThread().getId();
+
+		long bytes=bean.getThreadAllocatedBytes(thread);
+		long nanos=System.nanoTime();
+		for(int i=0; i<ROUNDS; i++)
+			parseDOM(xml);
+		nanos=System.nanoTime() - nanos;
+		bytes=bean.getThreadAllocatedBytes(thread) - bytes;
+		report("DOM", nanos, bytes);
+
+		bytes=bean.getThreadAllocatedBytes(thread);
+		nanos=System.nanoTime();
+		for(int i=0; i<ROUNDS; i++)
+			AtomParser.parseFeed(new ByteArrayInputStream(xml));
+		nanos=System.nanoTime() - nanos;
+		bytes=bean.getThreadAllocatedBytes(thread) - bytes;
+		report("streaming", nanos, bytes);
+
+		heap(xml);
+	}
+
+	/** Measures the heap that the parsed feed and the DOM need.
+	 * At the end of parsing through DOM, both are in the heap. */
+	private static void heap(byte[] xml)throws Exception{
+		long used=used();
+		org.w3c.dom.Element root=DOM.getDocumentRoot(new ByteArrayInputStream(xml));
+		long dom=used() - used;
+		Feed feed=Feed.parse(root);
+		long both=used() - used;
+		System.out.println("heap for DOM: " + dom / 1024 + " KB");
+		System.out.println("heap at the end of parsing, DOM: " + both / 1024 + " KB");
+		root=null;
+		feed=null;
+
+		used=used();
+		feed=AtomParser.parseFeed(new ByteArrayInputStream(xml));
+		long streaming=used() - used;
+		System.out.println("heap at the end of parsing, streaming: " + streaming / 1024 + " KB");
+		if(feed.getEntries().size()!=ENTRIES)
+			throw new AssertionError();
+	}
+
+	/** Heap in use after garbage collection */
+	private static long used(){
+		System.gc();
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+
+	private static Feed parseDOM(byte[] xml)throws Exception{
+		org.w3c.dom.Element root=DOM.getDocumentRoot(new ByteArrayInputStream(xml));
+		return Feed.parse(root);
+	}
+
+	private static void report(String what, long nanos, long bytes){
+		System.out.println("microseconds to parse a feed of " + ENTRIES + " entries, " + what + ": " + nanos / 1000 / ROUNDS);
+		System.out.println("bytes allocated per entry, " + what + ": " + bytes / ROUNDS / ENTRIES);
+	}
+
+	/** A feed with typical entries: some plain text, some text to escape. */
+	private static Feed makeFeed(){
+		Feed feed=new Feed();
+		feed.setTitle("Benchmark");
+		feed.setUpdated(new Date(0));
+		for(int i=0; i<ENTRIES; i++){
+			Entry entry=new Entry();
+			entry.setId("http://www.inspiracio.com/atom/-/user/" + i);
+			entry.setTitle(i%2==0 ? "Plain title number " + i : "Fish & chips <" + i + ">");
+			entry.setUpdated(new Date(1000000L * i));
+			entry.addSimpleExtElement("gd:email", "user" + i + "@inspiracio.com");
+			Element address=new Element("gd:postalAddress");
+			address.setAttribute("label", "home");
+			address.addChild("Carrer Gran de Gràcia " + i + ", Barcelona");
+			entry.addExtElement(address);
+			feed.addEntry(entry);
+		}
+		return feed;
+	}
+}
@@ -0,0 +1,84 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom;
+
+import inspiracio.xml.Element;
+
+import java.io.OutputStream;
+import java.lang.management.ManagementFactory;
+import java.util.Date;
+
+import javax.xml.transform.TransformerException;
+
+/** Measures how many bytes are allocated for writing one entry
+ * of a feed, and how long it takes.
+ * <p>
+ * Run main. Needs a JVM whose ThreadMXBean implements
+ * com.sun.management.ThreadMXBean, like Oracle's and OpenJDK.
+ * */
+public class WriteBenchmark {
+
+	private static final int ENTRIES=1000;
+	private static final int ROUNDS=50;
+
+	public static void main(String[] args)throws TransformerException{
+		Feed feed=makeFeed();
+		OutputStream sink=new OutputStream(){
+			@Override public void write(int b){}
+			@Override public void write(byte[] b, int off, int len){}
+		};
+
+		//warm up
+		for(int i=0; i<ROUNDS; i++)
+			feed.write(sink);
+
+		com.sun.management.ThreadMXBean bean=(com.sun.management.ThreadMXBean)ManagementFactory.getThreadMXBean();
+		long thread=Thread.currentThread().getId();
+		long bytes=bean.getThreadAllocatedBytes(thread);
+		long nanos=System.nanoTime();
+		for(int i=0; i<ROUNDS; i++)
+			feed.write(sink);
+		nanos=System.nanoTime() - nanos;
+		bytes=bean.getThreadAllocatedBytes(thread) - bytes;
+
+		long perEntry=bytes / (ROUNDS * ENTRIES);
+		long micros=nanos / 1000 / ROUNDS;
+		System.out.println("bytes allocated per entry: " + perEntry);
+		System.out.println("microseconds per feed of " + ENTRIES + " entries: " + micros);
+	}
+
+	/** A feed with typical entries: some plain text, some text to escape. */
+	private static Feed makeFeed(){
+		Feed feed=new Feed();
+		feed.setTitle("Benchmark");
+		feed.setUpdated(new Date(0));
+		for(int i=0; i<ENTRIES; i++){
+			Entry entry=new Entry();
+			entry.setId("http://www.inspiracio.com/atom/-/user/" + i);
+			entry.setTitle(i%2==0 ? "Plain title number " + i : "Fish & chips <" + i + ">");
+			entry.setUpdated(new Date(1000000L * i));
+			entry.addSimpleExtElement("gd:email", "user" + i + "@inspiracio.com");
+			Element address=new Element("gd:postalAddress");
+			address.setAttribute("label", "home");
+			address.addChild("Carrer Gran de Gràcia " + i + ", Barcelona");
+			entry.addExtElement(address);
+			feed.addEntry(entry);
+		}
+		return feed;
+	}
+}
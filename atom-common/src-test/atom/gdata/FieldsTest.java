@@ -0,0 +1,102 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom.gdata;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import atom.Entry;
+import atom.Feed;
+import atom.Link;
+
+public class FieldsTest{
+
+	/** Only the selected elements and attributes are written. */
+	@Test public void feed()throws Exception{
+		Feed feed=new Feed();
+		feed.setId("feed");
+		feed.setTitle("title");
+		Entry entry=new Entry();
+		entry.setId("1");
+		entry.setETag("v1");
+		entry.setTitle("Fish & chips");
+		entry.addLink(link("self", "http://a/1"));
+		entry.addLink(link("edit", "http://a/1/edit"));
+		entry.addSimpleExtElement("gd:email", "alex@inspiracio.com");
+		feed.addEntry(entry);
+
+		feed.setFields(Fields.parse("entry(@gd:etag,id,link[@rel='edit'](@href))"));
+		String xml=write(feed);
+		Assert.assertTrue(xml, xml.contains("gd:etag=\"&quot;v1&quot;\""));
+		Assert.assertTrue(xml, xml.contains("<id>1</id>"));
+		Assert.assertTrue(xml, xml.contains("<link href=\"http://a/1/edit\"/>"));
+		Assert.assertFalse(xml, xml.contains("<id>feed</id>"));
+		Assert.assertFalse(xml, xml.contains("title"));
+		Assert.assertFalse(xml, xml.contains("self"));
+		Assert.assertFalse(xml, xml.contains("gd:email"));
+		Assert.assertTrue(xml, xml.contains("xmlns=\"http://www.w3.org/2005/Atom\""));
+
+		//The partial feed can be parsed.
+		Feed back=Feed.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		Assert.assertEquals("1", back.getEntries().get(0).getId());
+	}
+
+	/** A path selects the elements on the way, and * selects all children. */
+	@Test public void paths()throws Exception{
+		Entry entry=new Entry();
+		entry.setId("1");
+		entry.setTitle("title");
+		entry.addSimpleExtElement("gd:email", "alex@inspiracio.com");
+		entry.setFields(Fields.parse("title , gd:email/@*"));
+		String xml=write(entry);
+		Assert.assertTrue(xml, xml.contains("<title"));
+		Assert.assertTrue(xml, xml.contains("<gd:email/>"));
+		Assert.assertFalse(xml, xml.contains("<id>"));
+
+		entry.setFields(Fields.parse("*"));
+		String all=write(entry);
+		entry.setFields(null);
+		Assert.assertEquals(write(entry), all);
+	}
+
+	@Test(expected=IllegalArgumentException.class) public void invalid(){
+		Fields.parse("entry(id");
+	}
+
+	private static Link link(String rel, String href){
+		Link link=new Link();
+		link.setRel(rel);
+		link.setHref(href);
+		return link;
+	}
+
+	private static String write(Feed feed)throws Exception{
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		feed.write(out);
+		return out.toString("UTF-8");
+	}
+
+	private static String write(Entry entry)throws Exception{
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		entry.write(out);
+		return out.toString("UTF-8");
+	}
+}
@@ -0,0 +1,116 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.binary;
+
+import inspiracio.xml.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import atom.Entry;
+import atom.Feed;
+import atom.Link;
+
+public class BinaryTest{
+
+	/** An entry that goes through the binary format must come back the same as through XML. */
+	@Test public void entry()throws Exception{
+		Entry entry=new Entry();
+		entry.setId("id & <1>");
+		entry.setTitle("Fish & \"chips\"\nà la carte 🐟");
+		entry.setUpdated(new Date(0));
+		entry.setETag("v1");
+		Link link=new Link();
+		link.setRel("self");
+		link.setHref("http://www.inspiracio.com/atom/-/user/1?a=b&c=d");
+		entry.addLink(link);
+		entry.addSimpleExtElement("gd:email", "alex@inspiracio.com");
+		Element address=new Element("gd:postalAddress");
+		address.setAttribute("label", "home \"sweet\" home");
+		address.addChild("Carrer ");
+		address.addChild(new Element("gd:street"));
+		address.addChild("Gran de Gràcia");
+		entry.addExtElement(address);
+
+		ByteArrayOutputStream binary=new ByteArrayOutputStream();
+		entry.writeBinary(binary);
+		Entry fromBinary=Entry.parseBinary(new ByteArrayInputStream(binary.toByteArray()));
+
+		ByteArrayOutputStream xml=new ByteArrayOutputStream();
+		entry.write(xml);
+		Entry fromXML=Entry.parse(new ByteArrayInputStream(xml.toByteArray()));
+
+		Assert.assertEquals(write(fromXML), write(fromBinary));
+	}
+
+	/** Repeated tags go as numbers, so a feed is smaller than in XML. */
+	@Test public void feed()throws Exception{
+		Feed feed=new Feed();
+		for(int i=0; i<10; i++){
+			Entry entry=new Entry();
+			entry.setId("" + i);
+			entry.addSimpleExtElement("gd:email", "user" + i + "@inspiracio.com");
+			feed.addEntry(entry);
+		}
+		ByteArrayOutputStream binary=new ByteArrayOutputStream();
+		feed.writeBinary(binary);
+		ByteArrayOutputStream xml=new ByteArrayOutputStream();
+		feed.write(xml);
+		Assert.assertTrue(binary.size() < xml.size());
+		Feed back=Feed.parseBinary(new ByteArrayInputStream(binary.toByteArray()));
+		Assert.assertEquals(10, back.getEntries().size());
+		Assert.assertEquals("9", back.getEntries().get(9).getId());
+	}
+
+	/** Something that is not the binary format is rejected. */
+	@Test(expected=RuntimeException.class) public void invalid(){
+		BinaryParser.getDocumentRoot(new ByteArrayInputStream("<feed/>".getBytes()));
+	}
+
+	private static String write(Entry entry)throws Exception{
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		entry.write(out);
+		return out.toString("UTF-8");
+	}
+
+	/** A string that claims to be huge does not make the parser allocate it. */
+	@Test(expected=EOFException.class) public void hugeLength()throws Exception{
+		//Start an element whose new symbol has length 2^31-1, and then nothing.
+		byte[] b={'A', 'T', 'B', 1, BinaryWriter.START, 0, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x07, 'a'};
+		new BinaryParser(new ByteArrayInputStream(b)).parse();
+	}
+
+	/** A length that overflows to negative is invalid. */
+	@Test public void negativeLength()throws Exception{
+		byte[] b={'A', 'T', 'B', 1, BinaryWriter.START, 0, (byte)0xFF, (byte)0xFF, (byte)0xFF, (byte)0xFF, 0x0F, 'a'};
+		try{
+			new BinaryParser(new ByteArrayInputStream(b)).parse();
+			Assert.fail();
+		}catch(EOFException e){
+			Assert.fail();
+		}catch(IOException e){
+			Assert.assertEquals("Invalid number", e.getMessage());
+		}
+	}
+}
@@ -0,0 +1,100 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.json;
+
+import inspiracio.xml.Element;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import atom.Entry;
+import atom.Feed;
+import atom.Link;
+
+public class JSONTest{
+
+	/** An entry that goes through JSON must come back the same as through XML. */
+	@Test public void entry()throws Exception{
+		Entry entry=new Entry();
+		entry.setId("id & <1>");
+		entry.setTitle("Fish & \"chips\"\nà la carte");
+		entry.setUpdated(new Date(0));
+		entry.setETag("v1");
+		Link link=new Link();
+		link.setRel("self");
+		link.setHref("http://www.inspiracio.com/atom/-/user/1?a=b&c=d");
+		entry.addLink(link);
+		entry.addSimpleExtElement("gd:email", "alex@inspiracio.com");
+		Element address=new Element("gd:postalAddress");
+		address.setAttribute("label", "home \"sweet\" home");
+		address.addChild("Carrer Gran de Gràcia");
+		entry.addExtElement(address);
+
+		ByteArrayOutputStream json=new ByteArrayOutputStream();
+		entry.writeJSON(json);
+		Entry fromJSON=Entry.parseJSON(new ByteArrayInputStream(json.toByteArray()));
+
+		ByteArrayOutputStream xml=new ByteArrayOutputStream();
+		entry.write(xml);
+		Entry fromXML=Entry.parse(new ByteArrayInputStream(xml.toByteArray()));
+
+		Assert.assertEquals(write(fromXML), write(fromJSON));
+	}
+
+	/** The entries of a feed are an array, even if there is only one. */
+	@Test public void feed()throws Exception{
+		Feed feed=new Feed();
+		Entry entry=new Entry();
+		entry.setId("1");
+		feed.addEntry(entry);
+		ByteArrayOutputStream json=new ByteArrayOutputStream();
+		feed.writeJSON(json);
+		String s=json.toString("UTF-8");
+		Assert.assertTrue(s, s.startsWith("{\"version\":\"1.0\",\"encoding\":\"UTF-8\",\"feed\":{"));
+		Assert.assertTrue(s, s.contains("\"entry\":[{"));
+		Feed back=Feed.parseJSON(new ByteArrayInputStream(json.toByteArray()));
+		Assert.assertEquals("1", back.getEntries().get(0).getId());
+	}
+
+	/** Children of the root element with the same tag are one member,
+	 * even if they are not consecutive. */
+	@Test public void repeatedTag()throws Exception{
+		Entry entry=new Entry();
+		entry.setId("1");
+		entry.addSimpleExtElement("gd:email", "a@inspiracio.com");
+		entry.addSimpleExtElement("gd:phoneNumber", "1");
+		entry.addSimpleExtElement("gd:email", "b@inspiracio.com");
+		ByteArrayOutputStream json=new ByteArrayOutputStream();
+		entry.writeJSON(json);
+		String s=json.toString("UTF-8");
+		Assert.assertEquals(s, s.indexOf("\"gd$email\""), s.lastIndexOf("\"gd$email\""));
+		Assert.assertTrue(s, s.contains("\"gd$email\":[{\"$t\":\"a@inspiracio.com\"},{\"$t\":\"b@inspiracio.com\"}]"));
+		Entry back=Entry.parseJSON(new ByteArrayInputStream(json.toByteArray()));
+		Assert.assertEquals(2, back.getExtensionElements("gd:email").size());
+	}
+
+	private static String write(Entry entry)throws Exception{
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		entry.write(out);
+		return out.toString("UTF-8");
+	}
+}
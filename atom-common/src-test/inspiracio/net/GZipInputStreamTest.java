@@ -0,0 +1,83 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.net;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.zip.GZIPOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GZipInputStreamTest{
+
+	private static final String TEXT="<feed><entry><title>t</title></entry><entry><title>t</title></entry></feed>";
+
+	@Test public void gzipped()throws IOException{
+		for(int i=0; i<3; i++){
+			InputStream in=GZipInputStream.unzip(new ByteArrayInputStream(gzip(TEXT)));
+			Assert.assertTrue(in instanceof GZipInputStream);
+			Assert.assertEquals(TEXT, read(in));
+		}
+	}
+
+	/** Not gzipped, although the header says so: read it as it is. */
+	@Test public void plain()throws IOException{
+		Assert.assertEquals(TEXT, read(GZipInputStream.unzip(new ByteArrayInputStream(TEXT.getBytes("UTF-8")))));
+		Assert.assertEquals("", read(GZipInputStream.unzip(new ByteArrayInputStream(new byte[0]))));
+		Assert.assertEquals("x", read(GZipInputStream.unzip(new ByteArrayInputStream(new byte[]{'x'}))));
+	}
+
+	/** Concatenated members, with file name, like gzip writes. */
+	@Test public void members()throws IOException{
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		bytes.write(gzip("a"));
+		byte[] named=gzip("b");
+		named[3]=8;//FNAME
+		bytes.write(named, 0, 10);
+		bytes.write(new byte[]{'b', '.', 'x', 'm', 'l', 0});
+		bytes.write(named, 10, named.length-10);
+		Assert.assertEquals("ab", read(new GZipInputStream(new ByteArrayInputStream(bytes.toByteArray()))));
+	}
+
+	@Test(expected=IOException.class) public void corrupt()throws IOException{
+		byte[] bytes=gzip(TEXT);
+		bytes[bytes.length-5]++;//size in the trailer
+		read(new GZipInputStream(new ByteArrayInputStream(bytes)));
+	}
+
+	private static byte[] gzip(String s)throws IOException{
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		GZIPOutputStream out=new GZIPOutputStream(bytes);
+		out.write(s.getBytes("UTF-8"));
+		out.close();
+		return bytes.toByteArray();
+	}
+
+	private static String read(InputStream in)throws IOException{
+		ByteArrayOutputStream bytes=new ByteArrayOutputStream();
+		byte[] buffer=new byte[7];
+		int n;
+		while(0<=(n=in.read(buffer)))
+			bytes.write(buffer, 0, n);
+		in.close();
+		return bytes.toString("UTF-8");
+	}
+}
@@ -0,0 +1,109 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.servlet.http;
+
+import java.util.Map;
+import java.util.TreeMap;
+
+/** Measures the time to make the URLs of the Atom client:
+ * category URL, entry-id, parameters, and then the String.
+ * With the setters of HttpURL and with HttpURL.Builder.
+ * Also some accessors on the result.
+ * <p>
+ * Run main.
+ * */
+public class HttpURLBenchmark {
+
+	private static final String BASE="http://ws.inspiracio.com:8080/atom/-/";
+	private static final int N=200000;
+
+	public static void main(String[] args){
+		Map<String, String> params=new TreeMap<String, String>();
+		params.put("q", "Shakespeare Hamlet");
+		params.put("max-results", "30");
+		params.put("start-index", "11");
+		params.put("style", "short");
+
+		for(int round=0; round<10; round++){//first rounds warm up
+			long t0=System.nanoTime();
+			int n=0;
+			for(int i=0; i<N; i++)
+				n+=update(i).length();
+			long t1=System.nanoTime();
+			for(int i=0; i<N; i++)
+				n+=get(params).length();
+			long t2=System.nanoTime();
+			for(int i=0; i<N; i++)
+				n+=buildUpdate(i).length();
+			long t3=System.nanoTime();
+			for(int i=0; i<N; i++)
+				n+=buildGet(params).length();
+			long t4=System.nanoTime();
+			for(int i=0; i<N; i++)
+				n+=accessors(i);
+			long t5=System.nanoTime();
+			System.out.println(
+				"update: " + (t1-t0)/N + " ns, " +
+				"get: " + (t2-t1)/N + " ns, " +
+				"builder update: " + (t3-t2)/N + " ns, " +
+				"builder get: " + (t4-t3)/N + " ns, " +
+				"accessors: " + (t5-t4)/N + " ns (" + n + ")");
+		}
+	}
+
+	/** Like RemoteProxyFactory.update(): category, entry-id, style */
+	private static String update(int id){
+		StringBuilder builder=new StringBuilder(BASE);
+		builder.append("user");
+		HttpURL url=new HttpURL(builder);
+		url.append("/entry").append(id);
+		url.setParameter("style", "full");
+		return url.toString();
+	}
+
+	/** Like RemoteProxyFactory.get(): category and parameters */
+	private static String get(Map<String, String> params){
+		StringBuilder builder=new StringBuilder(BASE);
+		builder.append("user");
+		HttpURL url=new HttpURL(builder);
+		url.setParameters(params);
+		return url.toString();
+	}
+
+	/** Like update(), with the builder */
+	private static String buildUpdate(int id){
+		HttpURL.Builder builder=new HttpURL.Builder(BASE);
+		builder.append("user").append("/entry").append(id);
+		HttpURL url=builder.parameter("style", "full").build();
+		return url.toString();
+	}
+
+	/** Like get(), with the builder */
+	private static String buildGet(Map<String, String> params){
+		HttpURL.Builder builder=new HttpURL.Builder(BASE);
+		builder.append("user");
+		HttpURL url=builder.parameters(params).build();
+		return url.toString();
+	}
+
+	/** Reads some parts of a URL */
+	private static int accessors(int i){
+		HttpURL url=new HttpURL("http://ws.inspiracio.com:8080/atom/-/user/entry" + i + "?style=full&q=bla");
+		return url.getHost().length() + url.getPort() + url.getPath().length() + url.getFile().length() + url.getParameter("style").length() + url.getScheme().length();
+	}
+}
@@ -1,5 +1,6 @@
 package inspiracio.servlet.http;
 
+import org.junit.Assert;
 import org.junit.Test;
 
 public class HttpURLTest {
@@ -16,5 +17,22 @@ public class HttpURLTest {
            say(authURI);
 	}
 	
+	/** setParameter replaces in place, or appends. */
+	@Test public void setParameter(){
+		HttpURL url=new HttpURL("http://host/feeds/x?a=1&b=2");
+		url.setParameter("a", "3");
+		url.setParameter("c", "4");
+		Assert.assertEquals("http://host/feeds/x?a=3&b=2&c=4", url.toString());
+		Assert.assertEquals("/feeds/", url.getPath());
+		Assert.assertEquals("x", url.getFile());
+		Assert.assertEquals("host", url.getHost());
+	}
+
+	@Test public void builder(){
+		HttpURL.Builder builder=new HttpURL.Builder("http://host/feeds");
+		builder.append("/").append(7).parameter("q", "a b").parameter("style", "full");
+		Assert.assertEquals("http://host/feeds/7?q=a+b&style=full", builder.build().toString());
+	}
+
 	void say(Object o){System.out.println(o);}
 }
\ No newline at end of file
@@ -0,0 +1,111 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.servlet.http;
+
+import inspiracio.xml.Element;
+
+import java.util.Date;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import atom.Entry;
+import atom.Feed;
+import atom.Link;
+
+public class ValidatorTest{
+
+	@Test public void ifNoneMatch(){
+		Validator v=new Validator("abc", null).variant("atom");
+		Assert.assertEquals("W/\"abc-atom\"", v.getETagHeader());
+		Assert.assertTrue(v.isNotModified("W/\"abc-atom\"", -1));
+		Assert.assertTrue(v.isNotModified("\"x\", \"abc-atom\"", -1));
+		Assert.assertTrue(v.isNotModified("*", -1));
+		Assert.assertFalse(v.isNotModified("W/\"abc-json\"", -1));
+		Assert.assertFalse(v.isNotModified("\"abc\"", -1));
+	}
+
+	/** If-Modified-Since counts in whole seconds, and only without If-None-Match. */
+	@Test public void ifModifiedSince(){
+		Validator v=new Validator("abc", new Date(10999));
+		Assert.assertTrue(v.isNotModified(null, 10000));
+		Assert.assertFalse(v.isNotModified(null, 9000));
+		Assert.assertFalse(v.isNotModified("\"x\"", 10000));
+		Assert.assertFalse(v.isNotModified(null, -1));
+	}
+
+	/** The validator of a feed changes with the ETags of its entries. */
+	@Test public void feed(){
+		Feed feed=new Feed();
+		feed.setUpdated(new Date(0));
+		Entry entry=new Entry();
+		entry.setId("1");
+		entry.setETag("1");
+		feed.addEntry(entry);
+		String etag=feed.getValidator().getETag();
+		Assert.assertEquals(etag, feed.getValidator().getETag());
+		entry.setETag("2");
+		Assert.assertFalse(etag.equals(feed.getValidator().getETag()));
+		entry.setETag(null);
+		Assert.assertNull(feed.getValidator());
+	}
+
+	/** Without updated, the same feed made twice has the same validator and no Last-Modified. */
+	@Test public void feedWithoutUpdated()throws Exception{
+		Feed feed=new Feed();
+		feed.setId("feed");
+		Validator v=feed.getValidator();
+		Assert.assertNull(v.getLastModified());
+		Thread.sleep(5);
+		Feed again=new Feed();
+		again.setId("feed");
+		Assert.assertEquals(v.getETag(), again.getValidator().getETag());
+	}
+
+	/** A paged feed with the same entries, but another total and next link,
+	 * has another validator. */
+	@Test public void feedMetadata(){
+		Feed feed=page("2", "10");
+		String etag=feed.getValidator().getETag();
+		Assert.assertEquals(etag, page("2", "10").getValidator().getETag());
+		Assert.assertFalse(etag.equals(page("2", "11").getValidator().getETag()));
+		Assert.assertFalse(etag.equals(page("3", "10").getValidator().getETag()));
+		feed.setTitle("other");
+		Assert.assertFalse(etag.equals(feed.getValidator().getETag()));
+		feed=page("2", "10");
+		feed.setPrettyprint(true);
+		Assert.assertFalse(etag.equals(feed.getValidator().getETag()));
+	}
+
+	private static Feed page(String next, String total){
+		Feed feed=new Feed();
+		feed.setId("feed");
+		Link link=new Link();
+		link.setRel("next");
+		link.setHref("http://www.inspiracio.com/atom/-/user?page=" + next);
+		feed.addLink(link);
+		Element totalResults=new Element("openSearch:totalResults");
+		totalResults.addChild(total);
+		feed.addExtensionElement(totalResults);
+		Entry entry=new Entry();
+		entry.setId("1");
+		entry.setETag("1");
+		feed.addEntry(entry);
+		return feed;
+	}
+}
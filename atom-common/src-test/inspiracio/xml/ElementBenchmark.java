@@ -0,0 +1,74 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.xml;
+
+import java.lang.management.ManagementFactory;
+import java.util.ArrayList;
+import java.util.List;
+
+/** Measures the heap that the extension elements of a feed of
+ * 10000 entries need, as entries of beans have them: some simple
+ * elements with text or numbers, and one with attributes and
+ * children.
+ * <p>
+ * Run main.
+ * */
+public class ElementBenchmark {
+
+	private static final int ENTRIES=10000;
+
+	public static void main(String[] args){
+		makeFeed();//warm up
+
+		long used=used();
+		List<List<Element>> feed=makeFeed();
+		long heap=used() - used;
+		System.out.println("elements per entry: " + feed.get(0).size());
+		System.out.println("heap for the extension elements of " + ENTRIES + " entries: " + heap / 1024 + " KB");
+		System.out.println("bytes per entry: " + heap / ENTRIES);
+	}
+
+	/** The extension elements of the entries */
+	private static List<List<Element>> makeFeed(){
+		List<List<Element>> feed=new ArrayList<List<Element>>(ENTRIES);
+		for(int i=0; i<ENTRIES; i++){
+			List<Element> entry=new ArrayList<Element>();
+			entry.add(new Element("gd:email", "user" + i + "@inspiracio.com"));
+			entry.add(new Element("gd:name", "User number " + i));
+			entry.add(new Element("gd:phoneNumber", "+34 93 " + i));
+			entry.add(new Element("gd:age", (long)(i % 100)));
+			entry.add(new Element("gd:rating", i / 3.0));
+			entry.add(new Element("gd:deleted", i % 2==0));
+			Element address=new Element("gd:postalAddress");
+			address.setAttribute("label", "home");
+			address.setAttribute("primary", "true");
+			address.addChild(new Element("gd:street", "Carrer Gran de Gràcia " + i));
+			address.addChild(new Element("gd:city", "Barcelona"));
+			entry.add(address);
+			feed.add(entry);
+		}
+		return feed;
+	}
+
+	/** Heap in use after garbage collection */
+	private static long used(){
+		System.gc();
+		System.gc();
+		return ManagementFactory.getMemoryMXBean().getHeapMemoryUsage().getUsed();
+	}
+}
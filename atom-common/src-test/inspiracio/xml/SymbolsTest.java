@@ -0,0 +1,54 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.xml;
+
+import java.io.ByteArrayInputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import atom.Entry;
+
+/** The symbol table takes declared names, but not parsed ones. */
+public class SymbolsTest{
+
+	/** The Atom and GData names are there from the start. */
+	@Test public void atom(){
+		Assert.assertSame("entry", Symbols.lookup(new String("entry")));
+		Assert.assertSame("gd:etag", Symbols.lookup(new String("gd:etag")));
+	}
+
+	/** Declared names become symbols. */
+	@Test public void intern(){
+		String name=new Element(new String("test:declared")).getTag();
+		Assert.assertSame("test:declared", name);
+		Assert.assertSame(name, Symbols.lookup(new String("test:declared")));
+	}
+
+	/** Parsing does not add names. */
+	@Test public void parse()throws Exception{
+		String xml="<entry xmlns='http://www.w3.org/2005/Atom' xmlns:test='http://www.inspiracio.com/test' test:parsedAttribute='1'>" +
+			"<id>1</id><test:parsed test:parsedChildAttribute='2'>x</test:parsed></entry>";
+		Entry entry=Entry.parse(new ByteArrayInputStream(xml.getBytes("UTF-8")));
+		Assert.assertEquals("x", entry.getExtensionElementTextContent("test:parsed"));
+		for(String name : new String[]{"test:parsed", "test:parsedAttribute", "test:parsedChildAttribute", "xmlns:test", "http://www.inspiracio.com/test"}){
+			String copy=new String(name);
+			Assert.assertSame(copy, Symbols.lookup(copy));
+		}
+	}
+}
@@ -0,0 +1,71 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.xml.sax;
+
+import inspiracio.xml.DOM;
+import inspiracio.xml.Element;
+
+import java.io.ByteArrayOutputStream;
+import java.util.Arrays;
+
+import javax.xml.transform.Transformer;
+import javax.xml.transform.sax.SAXSource;
+import javax.xml.transform.stream.StreamResult;
+
+import org.junit.Assert;
+import org.junit.Test;
+import org.xml.sax.InputSource;
+
+import atom.Entry;
+import atom.Feed;
+
+public class XMLWriterTest{
+
+	/** XMLWriter must write the same bytes as the identity transformation it replaces. */
+	@Test public void sameAsTransformer()throws Exception{
+		Feed feed=new Feed();
+		feed.setTitle("Fish & \"chips\" <b>");
+		for(int i=0; i<200; i++){
+			Entry entry=new Entry();
+			entry.setId("id" + i);
+			entry.setTitle("à la carte €  😀 \t\r\u0001\u0085");
+			Element x=new Element("x");
+			x.setAttribute("k", "'a' & \"b\"\t\n\r\u0001\u0085 😀");
+			x.addChild("");
+			entry.addExtElement(x);
+			feed.addEntry(entry);
+		}
+		compare(feed, false);
+		compare(feed, true);
+	}
+
+	private void compare(Feed feed, boolean prettyprint)throws Exception{
+		feed.setPrettyprint(prettyprint);
+
+		ByteArrayOutputStream expected=new ByteArrayOutputStream();
+		BaseXMLReader reader=new BaseXMLReader(feed);
+		reader.setPrettyprint(prettyprint);
+		Transformer transformer=DOM.newTransformer();
+		transformer.transform(new SAXSource(reader, new InputSource()), new StreamResult(expected));
+
+		ByteArrayOutputStream actual=new ByteArrayOutputStream();
+		feed.write(actual);
+
+		Assert.assertTrue(Arrays.equals(expected.toByteArray(), actual.toByteArray()));
+	}
+}
@@ -0,0 +1,458 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom;
+
+import inspiracio.lang.NotImplementedException;
+import inspiracio.servlet.http.ETag;
+import inspiracio.xml.Symbols;
+import inspiracio.xml.XMLDate;
+import inspiracio.xml.XMLRuntime;
+import inspiracio.xml.XMLString;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+import org.xml.sax.helpers.DefaultHandler;
+
+/** Parses Atom XML into Entry or Feed directly from SAX events,
+ * without making a DOM first.
+ * <p>
+ * The result is the same as parsing the XML into a DOM and
+ * calling Entry.parse(org.w3c.dom.Element) or Feed.parse(org.w3c.dom.Element).
+ * That includes that an entry gets the attributes of its child elements.
+ * <p>
+ * With an EntryHandler, the entries of a feed are not added to the feed,
+ * but passed to the handler one by one as soon as they are parsed.
+ * Then a large feed need not be in memory.
+ * <p>
+ * In lazy mode, entries keep the markup of the entry element and decode
+ * their fields only when they are accessed. See Entry.parseLazy.
+ * <p>
+ * Not threadsafe. Make one parser for each document.
+ * */
+public class AtomParser extends DefaultHandler{
+
+	//State -------------------------------------------------------
+
+	/** What the root element must be: "entry", "feed", or null
+	 * to decide by the tag of the root element. */
+	private String root;
+
+	private Entry entry;
+	private Feed feed;
+
+	/** Receives the entries of a feed, or null */
+	private EntryHandler handler;
+
+	/** Make lazy entries? */
+	private boolean lazy=false;
+
+	/** The frames of the open elements */
+	private List<Frame> frames=new ArrayList<Frame>();
+
+	//Constructors ------------------------------------------------
+
+	/** Makes a parser that parses an entry if the root element
+	 * is "entry", and else a feed. */
+	public AtomParser(){}
+
+	/** Makes a parser that parses only entries or only feeds.
+	 * @param root "entry" or "feed" */
+	AtomParser(String root){this.root=root;}
+
+	//Methods -----------------------------------------------------
+
+	/** Parses an entry.
+	 * @param in XML
+	 * @return entry
+	 * @exception SAXException invalid XML, or not Atom as we know it
+	 * @exception IOException reading
+	 * */
+	public static Entry parseEntry(InputStream in)throws SAXException, IOException{
+		AtomParser parser=new AtomParser("entry");
+		parser.parse(in);
+		return parser.getEntry();
+	}
+
+	/** Parses a feed.
+	 * @param in XML
+	 * @return feed
+	 * @exception SAXException invalid XML, or not Atom as we know it
+	 * @exception IOException reading
+	 * */
+	public static Feed parseFeed(InputStream in)throws SAXException, IOException{
+		AtomParser parser=new AtomParser("feed");
+		parser.parse(in);
+		return parser.getFeed();
+	}
+
+	/** Parses an entry or a feed. Then call getEntry() and getFeed().
+	 * @param in XML
+	 * @exception SAXException invalid XML, or not Atom as we know it
+	 * @exception IOException reading
+	 * */
+	public void parse(InputStream in)throws SAXException, IOException{
+		try{
+			XMLRuntime.parse(new InputSource(in), this);//SAXException, IOException
+		}catch(RuntimeException e){
+			throw new SAXException(e);
+		}
+	}
+
+	/** Sets a handler that receives the entries of a feed while
+	 * they are parsed, instead of adding them to the feed.
+	 * @param handler may be null, and then the entries are added to the feed */
+	public void setEntryHandler(EntryHandler handler){this.handler=handler;}
+
+	/** Makes lazy entries, that keep their markup and decode their
+	 * fields only when they are accessed. See Entry.parseLazy.
+	 * @param lazy */
+	public void setLazy(boolean lazy){this.lazy=lazy;}
+
+	/** The parsed entry, or null if the document was a feed. */
+	public Entry getEntry(){return this.entry;}
+
+	/** The parsed feed, or null if the document was an entry. */
+	public Feed getFeed(){return this.feed;}
+
+	//SAX event handling methods ----------------------------------
+
+	@Override public void startElement(String uri, String localName, String qName, Attributes atts)throws SAXException{
+		//The frames dispatch on the tag symbol. Names that are not Atom stay as they are.
+		String tag=Symbols.lookup(qName);
+		Frame frame;
+		if(this.frames.isEmpty()){
+			if("entry".equals(this.root) || (this.root==null && "entry"==tag)){
+				this.entry=new Entry();
+				entryAttributes(this.entry, atts);
+				frame=this.lazy ? new LazyFrame(this.entry, tag, atts) : new EntryFrame(this.entry, true);
+			}else{
+				this.feed=new Feed();
+				for(int i=0; i<atts.getLength(); i++)
+					this.feed.addAttribute(atts.getQName(i), atts.getValue(i));
+				frame=new FeedFrame(this.feed, this.handler, this.lazy);
+			}
+		}else{
+			frame=this.top().start(tag, atts);
+		}
+		this.frames.add(frame);
+	}
+
+	@Override public void endElement(String uri, String localName, String qName)throws SAXException{
+		Frame frame=this.frames.remove(this.frames.size()-1);
+		frame.end();
+	}
+
+	@Override public void characters(char[] ch, int start, int length){
+		this.top().characters(ch, start, length);
+	}
+
+	//Lazy entries ------------------------------------------------
+
+	/** Decodes some fields of a lazy entry from its markup:
+	 * like parsing, but only the children of the entry element for these fields.
+	 * @param entry
+	 * @param markup of the entry element
+	 * @param fields bits, see Entry.field(String)
+	 * @exception SAXException invalid content, for example a date
+	 * */
+	static void decode(Entry entry, Markup markup, int fields)throws SAXException{
+		Frame frame=new EntryFrame(entry, false);//The attributes have been copied when parsing.
+		List<Frame> frames=new ArrayList<Frame>();
+		AttributesImpl atts=new AttributesImpl();
+		int depth=0;
+		boolean selected=false;
+		for(int i=0; i<markup.size(); i++){
+			Object e=markup.get(i);
+			if(e==Markup.END){
+				if(selected && 2<=depth)
+					frames.remove(frames.size()-1).end();
+				depth--;
+			}else if(e instanceof String){
+				String[] as=(String[])markup.get(++i);
+				depth++;
+				if(depth==1)
+					continue;//the entry element
+				if(depth==2)
+					selected=(Entry.field((String)e) & fields)!=0;
+				if(selected){
+					Markup.attributes(atts, as);
+					Frame parent=frames.isEmpty() ? frame : frames.get(frames.size()-1);
+					frames.add(parent.start((String)e, atts));
+				}
+			}else if(selected && 2<=depth){
+				char[] cs=(char[])e;
+				frames.get(frames.size()-1).characters(cs, 0, cs.length);
+			}
+		}
+	}
+
+	//Helpers -----------------------------------------------------
+
+	private Frame top(){return this.frames.get(this.frames.size()-1);}
+
+	/** Throws NotImplementedException for children of an entry that we cannot parse. */
+	private static void checkImplemented(String tag){
+		if(Entry.field(tag)==Entry.NOT_IMPLEMENTED)
+			throw new NotImplementedException("not implemented");
+	}
+
+	/** The attributes of an entry element go to the entry, gd:etag as ETag. */
+	private static void entryAttributes(Entry entry, Attributes atts){
+		for(int i=0; i<atts.getLength(); i++){
+			String name=atts.getQName(i);
+			String value=atts.getValue(i);
+			if("gd:etag".equals(name)){
+				String etag=ETag.parseStrong(value);
+				entry.setETag(etag);
+			}else{
+				entry.addAttribute(name, value);
+			}
+		}
+	}
+
+	/** Like Entry.parse(org.w3c.dom.Element): the attributes of the children go to the entry. */
+	private static void copyAttributes(Entry entry, Attributes atts){
+		for(int i=0; i<atts.getLength(); i++)
+			entry.addAttribute(atts.getQName(i), atts.getValue(i));
+	}
+
+	/** The value of attribute "type", or "" */
+	private static String type(Attributes atts){
+		String type=atts.getValue("type");
+		return type==null ? "" : type;
+	}
+
+	/** Makes an element with tag and attributes, for extension elements. */
+	private static inspiracio.xml.Element element(String tag, Attributes atts){
+		return new inspiracio.xml.Element(tag, atts);
+	}
+
+	//Handler -----------------------------------------------------
+
+	/** Receives the entries of a feed one by one. */
+	public static interface EntryHandler{
+
+		/** An entry of the feed has been parsed completely.
+		 * @param entry
+		 * @exception SAXException Stops parsing.
+		 * */
+		void entry(Entry entry)throws SAXException;
+	}
+
+	//Frames ------------------------------------------------------
+
+	/** What to do with the events inside an open element. */
+	private static class Frame{
+
+		/** A child element starts.
+		 * @return the frame for the child */
+		Frame start(String tag, Attributes atts)throws SAXException{return this;}
+
+		void characters(char[] ch, int start, int length){}
+
+		/** The element ends. */
+		void end()throws SAXException{}
+	}
+
+	/** Ignores the element and its content. */
+	private static final Frame SKIP=new Frame();
+
+	/** Collects the text content of the element, like DOM getTextContent(). */
+	private static class TextFrame extends Frame{
+		private StringBuilder text;
+		TextFrame(){this(new StringBuilder());}
+		private TextFrame(StringBuilder text){this.text=text;}
+		@Override Frame start(String tag, Attributes atts){return new TextFrame(this.text);}
+		@Override void characters(char[] ch, int start, int length){this.text.append(ch, start, length);}
+		@Override void end(){this.end(this.text.toString());}
+		/** Receives the text content. This implementation does nothing. */
+		void end(String text){}
+	}
+
+	/** Builds an extension element, like Element(org.w3c.dom.Element). */
+	private static class ElementFrame extends Frame{
+		private inspiracio.xml.Element element;
+
+		/** Text since the last child element */
+		private StringBuilder text=new StringBuilder();
+
+		ElementFrame(inspiracio.xml.Element element){this.element=element;}
+
+		@Override Frame start(String tag, Attributes atts){
+			this.text();
+			inspiracio.xml.Element child=element(tag, atts);
+			this.element.addChild(child);
+			return new ElementFrame(child);
+		}
+		@Override void characters(char[] ch, int start, int length){this.text.append(ch, start, length);}
+		@Override void end(){this.text();}
+
+		/** Adds the text as one child, like a DOM text node. */
+		private void text(){
+			if(0<this.text.length()){
+				this.element.addChild(XMLString.unescape(this.text.toString()));
+				this.text.setLength(0);
+			}
+		}
+	}
+
+	private static class PersonFrame extends Frame{
+		private Person person;
+		PersonFrame(Person person){this.person=person;}
+		@Override Frame start(String tag, Attributes atts){
+			if("name".equals(tag)){
+				final String type=type(atts);
+				return new TextFrame(){@Override void end(String s){person.setName(Text.parse(type, s));}};
+			}else if("email".equals(tag)){
+				return new TextFrame(){@Override void end(String s){person.setEmail(s);}};
+			}else if("uri".equals(tag)){
+				return new TextFrame(){@Override void end(String s){person.setURI(s);}};
+			}
+			throw new RuntimeException("Extension elements in Person not implemented.");
+		}
+	}
+
+	private static class EntryFrame extends Frame{
+		private Entry entry;
+
+		/** Copy the attributes of the children to the entry? */
+		private boolean copyAttributes;
+
+		EntryFrame(Entry entry, boolean copyAttributes){
+			this.entry=entry;
+			this.copyAttributes=copyAttributes;
+		}
+		@Override Frame start(String tag, Attributes atts){
+			//Like Entry.parse(org.w3c.dom.Element): the attributes of the child go to the entry.
+			if(this.copyAttributes)
+				copyAttributes(this.entry, atts);
+
+			final String type=type(atts);
+			switch(Entry.field(tag)){
+			case Entry.AUTHORS:
+				Person author=new Person();
+				this.entry.addAuthor(author);
+				return new PersonFrame(author);
+			case Entry.NOT_IMPLEMENTED:
+				throw new NotImplementedException("not implemented");
+			case Entry.CONTENT:
+				return new TextFrame(){@Override void end(String s){entry.setContent(Text.parse(type, s));}};
+			case Entry.ID:
+				return new TextFrame(){@Override void end(String s){entry.setId(s);}};
+			case Entry.LINKS:
+				this.entry.addLink(Link.parse(atts));
+				return SKIP;
+			case Entry.PUBLISHED:
+				return new TextFrame(){@Override void end(String s){entry.setPublished(XMLDate.parse(s));}};
+			case Entry.RIGHTS:
+				return new TextFrame(){@Override void end(String s){entry.setRights(Text.parse(type, s));}};
+			case Entry.SUMMARY:
+				return new TextFrame(){@Override void end(String s){entry.setSummary(Text.parse(type, s));}};
+			case Entry.TITLE:
+				return new TextFrame(){@Override void end(String s){entry.setTitle(Text.parse(type, s));}};
+			case Entry.UPDATED:
+				return new TextFrame(){@Override void end(String s){entry.setUpdated(XMLDate.parse(s));}};
+			default:
+				//extension elements
+				inspiracio.xml.Element extension=element(tag, atts);
+				this.entry.addExtElement(extension);
+				return new ElementFrame(extension);
+			}
+		}
+	}
+
+	/** Records the markup of the entry element for a lazy entry.
+	 * Copies the attributes of the children to the entry, like EntryFrame.
+	 * The entry decodes its fields later. */
+	private static class LazyFrame extends Frame{
+		private Entry entry;
+		private Markup markup=new Markup();
+
+		/** Records the descendants of the children */
+		private Frame recorder=new Frame(){
+			@Override Frame start(String tag, Attributes atts){
+				markup.start(tag, atts);
+				return this;
+			}
+			@Override void characters(char[] ch, int start, int length){markup.characters(ch, start, length);}
+			@Override void end(){markup.end();}
+		};
+
+		LazyFrame(Entry entry, String tag, Attributes atts){
+			this.entry=entry;
+			this.markup.start(tag, atts);
+		}
+		@Override Frame start(String tag, Attributes atts){
+			checkImplemented(tag);
+			copyAttributes(this.entry, atts);
+			this.markup.start(tag, atts);
+			return this.recorder;
+		}
+		@Override void characters(char[] ch, int start, int length){this.markup.characters(ch, start, length);}
+		@Override void end()throws SAXException{
+			this.markup.end();
+			this.markup.trim();
+			this.entry.setMarkup(this.markup);
+		}
+	}
+
+	private static class FeedFrame extends Frame{
+		private Feed feed;
+		private EntryHandler handler;
+		private boolean lazy;
+		FeedFrame(Feed feed, EntryHandler handler, boolean lazy){
+			this.feed=feed;
+			this.handler=handler;
+			this.lazy=lazy;
+		}
+		@Override Frame start(String tag, Attributes atts){
+			if("author".equals(tag)){
+				Person author=new Person();
+				this.feed.addAuthor(author);
+				return new PersonFrame(author);
+			}else if("id".equals(tag)){
+				return new TextFrame(){@Override void end(String s){feed.setId(s);}};
+			}else if("link".equals(tag)){
+				this.feed.addLink(Link.parse(atts));
+				return SKIP;
+			}else if("title".equals(tag)){
+				return new TextFrame(){@Override void end(String s){feed.setTitle(s);}};
+			}else if("updated".equals(tag)){
+				return new TextFrame(){@Override void end(String s){feed.setUpdated(XMLDate.parse(s));}};
+			}else if("entry".equals(tag)){
+				final Entry entry=new Entry();
+				entryAttributes(entry, atts);
+				if(this.handler==null){
+					this.feed.getEntries().add(entry);
+					return this.lazy ? new LazyFrame(entry, tag, atts) : new EntryFrame(entry, true);
+				}
+				if(this.lazy)
+					return new LazyFrame(entry, tag, atts){@Override void end()throws SAXException{super.end(); handler.entry(entry);}};
+				return new EntryFrame(entry, true){@Override void end()throws SAXException{super.end(); handler.entry(entry);}};
+			}
+			return SKIP;
+		}
+	}
+}
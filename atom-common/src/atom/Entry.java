@@ -17,11 +17,14 @@
  */
 package atom;
 
+import inspiracio.binary.BinaryParser;
+import inspiracio.json.JSONParser;
 import inspiracio.lang.NotImplementedException;
 import inspiracio.servlet.http.ETag;
 import inspiracio.servlet.http.HttpURL;
 import inspiracio.xml.DOM;
 import inspiracio.xml.Element;
+import inspiracio.xml.Symbols;
 import inspiracio.xml.XMLDate;
 import inspiracio.xml.sax.EasyContentHandler;
 import inspiracio.xml.sax.EasySAXParseable;
@@ -29,6 +32,8 @@ import inspiracio.xml.sax.EasySAXParseable;
 import java.io.InputStream;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
 import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
@@ -41,6 +46,13 @@ import org.xml.sax.SAXException;
 
 /** Entry of an Atom 1.0 feed.
  * The specification is at http://atompub.org/rfc4287.html.
+ * <p>
+ * A lazy entry, from parseLazy, keeps the markup of its entry element
+ * and decodes each field on the first call of its getter. Until the
+ * entry changes, it writes its original markup. Setters, and getters of
+ * mutable state like getLinks() and getAttributes(), decode all fields
+ * and drop the markup. Do not change objects that the other getters
+ * return from a lazy entry: the change would not be written.
  * */
 public class Entry extends RootElement implements EasySAXParseable{
 
@@ -70,6 +82,10 @@ public class Entry extends RootElement implements EasySAXParseable{
 	private Date updated;
 	private List<Element> extensions = new ArrayList<Element>();
 
+	/** Index of the extension elements by tag, each list in the order of extensions.
+	 * The getters of extension elements look up here. */
+	private Map<String, List<Element>> extensionIndex=new HashMap<String, List<Element>>();
+
 	/** The URI of the entry. To view, edit, or delete this entry, the client
 	 * must send a request to this URI. The format of the URI is not fixed by
 	 * the Atom spec. I recommend http://www.domain.com/atom/-/collection/entryID
@@ -82,6 +98,48 @@ public class Entry extends RootElement implements EasySAXParseable{
 	 * Unescaped and unquoted. */
 	private String etag;
 
+	/** For a lazy entry, the markup of the entry element, until the entry changes. */
+	private Markup markup;
+
+	/** Which fields of a lazy entry have not been decoded yet: bits like TITLE. */
+	private int undecoded=0;
+
+	/** Are we decoding fields from the markup? Then the setters do not change the entry. */
+	private boolean decoding=false;
+
+	//Fields, for lazy entries: the children of the entry element for each field.
+	static final int AUTHORS=1;
+	static final int CONTENT=1<<1;
+	static final int ID=1<<2;
+	static final int LINKS=1<<3;
+	static final int PUBLISHED=1<<4;
+	static final int RIGHTS=1<<5;
+	static final int SUMMARY=1<<6;
+	static final int TITLE=1<<7;
+	static final int UPDATED=1<<8;
+	static final int EXTENSIONS=1<<9;
+	static final int ALL=(1<<10)-1;
+
+	/** For children that we cannot parse yet. Not in ALL. */
+	static final int NOT_IMPLEMENTED=1<<10;
+
+	/** The field of each child of the entry element, by tag symbol. */
+	private static final Map<String, Integer> FIELDS=new IdentityHashMap<String, Integer>();
+	static{
+		FIELDS.put("author", AUTHORS);
+		FIELDS.put("category", NOT_IMPLEMENTED);
+		FIELDS.put("content", CONTENT);
+		FIELDS.put("contributor", NOT_IMPLEMENTED);
+		FIELDS.put("id", ID);
+		FIELDS.put("link", LINKS);
+		FIELDS.put("published", PUBLISHED);
+		FIELDS.put("rights", RIGHTS);
+		FIELDS.put("source", NOT_IMPLEMENTED);
+		FIELDS.put("summary", SUMMARY);
+		FIELDS.put("title", TITLE);
+		FIELDS.put("updated", UPDATED);
+	}
+
 	//Constructors -----------------------------------------
 
 	public Entry(){
@@ -89,23 +147,65 @@ public class Entry extends RootElement implements EasySAXParseable{
 	}
 
 	/** Parse an entry from an input stream.
+	 * Streams with SAX, without DOM: see AtomParser.
 	 * @param in InputStream that contains XML for one entry.
 	 * @return entry
 	 * */
 	public static Entry parse(InputStream in) {
 		try {
-			//Parse DOM from stream. Maybe parsing SAX is better?
-			org.w3c.dom.Element entryElement=DOM.getDocumentRoot(in);
-
-			//Parse an entry from a DOM element.
-			Entry entry=Entry.parse(entryElement);
-			return entry;
+			return AtomParser.parseEntry(in);//SAXException, IOException
 		} catch (Exception e){
 			//e.printStackTrace();
 			throw new RuntimeException(e);
 		}
 	}
 
+	/** Parse a lazy entry from an input stream. The entry keeps the
+	 * markup and decodes its fields on first access. If it does not
+	 * change, it writes the original markup.
+	 * For entries that mostly pass through untouched.
+	 * @param in InputStream that contains XML for one entry.
+	 * @return entry
+	 * */
+	public static Entry parseLazy(InputStream in){
+		try{
+			AtomParser parser=new AtomParser("entry");
+			parser.setLazy(true);
+			parser.parse(in);//SAXException, IOException
+			return parser.getEntry();
+		}catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Parse an entry from an input stream that contains JSON
+	 * in the format of GData alt=json. See JSONParser.
+	 * @param in InputStream that contains JSON for one entry.
+	 * @return entry
+	 * */
+	public static Entry parseJSON(InputStream in){
+		try{
+			org.w3c.dom.Element entryElement=JSONParser.getDocumentRoot(in);
+			return Entry.parse(entryElement);
+		}catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Parse an entry from an input stream in the compact binary
+	 * format of BinaryWriter. See BinaryParser.
+	 * @param in InputStream that contains one entry in binary.
+	 * @return entry
+	 * */
+	public static Entry parseBinary(InputStream in){
+		try{
+			org.w3c.dom.Element entryElement=BinaryParser.getDocumentRoot(in);
+			return Entry.parse(entryElement);
+		}catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
 	/** Parse an entry from an entry element.
 	 * @param entryElement
 	 * @return entry
@@ -150,56 +250,56 @@ public class Entry extends RootElement implements EasySAXParseable{
 						entry.addNamespace(attribute.getPrefix(), attribute.getNamespaceURI());
 				}
 
-				//discriminate on tag name. Can this be done better?
-				String tagName = childElement.getTagName();
-				if ("author".equals(tagName)){
+				//discriminate on the tag symbol
+				String tagName = Symbols.lookup(childElement.getTagName());
+				switch (field(tagName)){
+				case AUTHORS:
 					//* authors
 					Person author = Person.parse(childElement);
 					entry.addAuthor(author);
-				} else if ("category".equals(tagName)){
-					//categories
+					break;
+				case NOT_IMPLEMENTED:
+					//* categories, * contributors, optional source
 					throw new NotImplementedException("not implemented");
-				} else if ("content".equals(tagName)){
+				case CONTENT:
 					//optional content
 					Text content = Text.parse(childElement);
 					entry.setContent(content);
-				} else if ("contributor".equals(tagName)){
-					//* contributors
-					throw new NotImplementedException("not implemented");
-				} else if ("id".equals(tagName)){
+					break;
+				case ID:
 					//id
 					String id = childElement.getTextContent();
 					entry.setId(id);
-				} else if ("link".equals(tagName)){
+					break;
+				case LINKS:
 					//* links
 					Link link=Link.parse(childElement);
 					entry.addLink(link);
-				} else if ("published".equals(tagName)){
+					break;
+				case PUBLISHED:
 					//optional published
-					String textContent = childElement.getTextContent();
-					Date d = XMLDate.parse(textContent);
-					entry.setPublished(d);
-				} else if ("rights".equals(tagName)){
+					entry.setPublished(XMLDate.parse(childElement.getTextContent()));
+					break;
+				case RIGHTS:
 					//optional rights
 					Text rights = Text.parse(childElement);
 					entry.setRights(rights);
-				} else if ("source".equals(tagName)){
-					//optional source
-					throw new NotImplementedException("not implemented");
-				} else if ("summary".equals(tagName)){
+					break;
+				case SUMMARY:
 					//optional summary
 					Text summary = Text.parse(childElement);
 					entry.setSummary(summary);
-				} else if ("title".equals(tagName)){
+					break;
+				case TITLE:
 					//required title
 					Text title = Text.parse(childElement);
 					entry.setTitle(title);
-				} else if ("updated".equals(tagName)){
+					break;
+				case UPDATED:
 					//optional updated
-					String textContent = childElement.getTextContent();
-					Date d = XMLDate.parse(textContent);
-					entry.setUpdated(d);
-				} else {
+					entry.setUpdated(XMLDate.parse(childElement.getTextContent()));
+					break;
+				default:
 					//* extension elements
 					Element extensionElement = new Element(childElement);
 					entry.addExtElement(extensionElement);
@@ -210,24 +310,80 @@ public class Entry extends RootElement implements EasySAXParseable{
 		return entry;
 	}
 
+	//Lazy entries ------------------------------------------
+
+	/** Makes this entry lazy: it will decode its fields from the markup.
+	 * @param markup of the entry element */
+	void setMarkup(Markup markup){
+		this.markup=markup;
+		this.undecoded=ALL;
+	}
+
+	/** Which field a child of the entry element is for.
+	 * @param tag of the child, from Symbols: the Atom names are symbols
+	 * @return a bit like TITLE, EXTENSIONS for extension elements,
+	 * 	or NOT_IMPLEMENTED */
+	static int field(String tag){
+		Integer field=FIELDS.get(tag);
+		return field==null ? EXTENSIONS : field;
+	}
+
+	/** For a lazy entry, decodes the fields from the markup if that
+	 * has not been done yet.
+	 * @param fields bits like TITLE */
+	private void decode(int fields){
+		int todo=fields & this.undecoded;
+		if(todo==0)return;
+		this.undecoded&=~todo;
+		this.decoding=true;
+		try{
+			AtomParser.decode(this, this.markup, todo);//SAXException
+		}catch(SAXException e){
+			throw new RuntimeException(e);
+		}finally{
+			this.decoding=false;
+		}
+	}
+
+	/** The entry changes: decodes all fields and drops the markup. */
+	@Override void change(){
+		if(this.markup!=null && !this.decoding){
+			this.decode(ALL);
+			this.markup=null;
+		}
+	}
+
 	//Accessors ---------------------------------------------
 
 	/** Adds an author to the authors.
 	 * @param author */
-	public void addAuthor(Person author){authors.add(author);}
+	public void addAuthor(Person author){
+		this.change();
+		authors.add(author);
+	}
 
-	public Text getContent(){return content;}
+	public Text getContent(){
+		this.decode(CONTENT);
+		return content;
+	}
 
 	/** @param content Just text. No XML, no HTML, no escaping.*/
 	public void setContent(String content) {
+		this.change();
 		this.content = new PlainText(content);
 	}
 
 	/** Sets the content.
 	 * @param content */
-	public void setContent(Text content) {this.content=content;}
+	public void setContent(Text content) {
+		this.change();
+		this.content=content;
+	}
 
-	public String getId(){return id;}
+	public String getId(){
+		this.decode(ID);
+		return id;
+	}
 
 	/** The ID should be String.
 	 * But often atom beans have Integer-IDs.
@@ -237,18 +393,26 @@ public class Entry extends RootElement implements EasySAXParseable{
 	 */
 	public void setId(Object id){
 		if(id==null)return;
+		this.change();
 		this.id=id.toString();
 	}
 
 	public String getETag(){return this.etag;}
-	public void setETag(String etag){this.etag=etag;}
+	public void setETag(String etag){
+		this.change();
+		this.etag=etag;
+	}
 
 	/** Adds a link.
 	 * @param link */
-	public void addLink(Link link){this.links.add(link);}
+	public void addLink(Link link){
+		this.change();
+		this.links.add(link);
+	}
 
 	/** Gets a titled link, or null. */
 	public Link getLink(String title){
+		this.decode(LINKS);
 		for(Link link : this.links){
 			if(title.equals(link.getTitle()))
 				return link;
@@ -258,47 +422,121 @@ public class Entry extends RootElement implements EasySAXParseable{
 
 	/** Gets all links, or null.
 	 * The returned list remains property of the entry. */
-	public List<Link> getLinks(){return this.links;}
+	public List<Link> getLinks(){
+		this.change();
+		return this.links;
+	}
 
 	/** @return the published */
-	public Date getPublished() {return this.published;}
+	public Date getPublished() {
+		this.decode(PUBLISHED);
+		return this.published;
+	}
 
 	/** @param published the published to set */
-	public void setPublished(Date published) {this.published = published;}
+	public void setPublished(Date published) {
+		this.change();
+		this.published = published;
+	}
 
 	/** @return the rights */
-	Text getRights() {return this.rights;}
+	Text getRights() {
+		this.decode(RIGHTS);
+		return this.rights;
+	}
 
 	/** @param rights Just plain text, no XML, no HTML, no escaping */
-	void setRights(String rights) {this.rights = new PlainText(rights);}
+	void setRights(String rights) {
+		this.change();
+		this.rights = new PlainText(rights);
+	}
 
-	void setRights(Text rights) {this.rights = rights;}
-	Text getSummary() {return summary;}
+	void setRights(Text rights) {
+		this.change();
+		this.rights = rights;
+	}
+
+	Text getSummary() {
+		this.decode(SUMMARY);
+		return summary;
+	}
 
 	/** @param summary Just text, no XML, no HTML, no escaping */
-	public void setSummary(String summary) {this.summary = new PlainText(summary);}
+	public void setSummary(String summary) {
+		this.change();
+		this.summary = new PlainText(summary);
+	}
 
-	public void setSummary(Text summary) {this.summary = summary;}
-	public Text getTitle(){return this.title;}
+	public void setSummary(Text summary) {
+		this.change();
+		this.summary = summary;
+	}
+
+	public Text getTitle(){
+		this.decode(TITLE);
+		return this.title;
+	}
 
 	/** @param title Just text, no XML, no HTML, no escaping */
-	public void setTitle(String title) {this.title = new PlainText(title);}
+	public void setTitle(String title) {
+		this.change();
+		this.title = new PlainText(title);
+	}
 
-	public void setTitle(Text title) {this.title = title;}
-	public Date getUpdated() {return updated;}
+	public void setTitle(Text title) {
+		this.change();
+		this.title = title;
+	}
+
+	public Date getUpdated() {
+		this.decode(UPDATED);
+		return updated;
+	}
 
 	/** Gets the URI that identifies this entry.
 	 * @return URI */
 	public String getURI(){return uri;}
 
-	public void setURI(String uri){this.uri=uri;}
-	public void setURI(HttpURL uri){this.uri=uri.toString();}
-	public void setUpdated(Date updated) {this.updated = updated;}
+	public void setURI(String uri){
+		this.change();
+		this.uri=uri;
+	}
+
+	public void setURI(HttpURL uri){
+		this.change();
+		this.uri=uri.toString();
+	}
+
+	public void setUpdated(Date updated) {
+		this.change();
+		this.updated = updated;
+	}
 
 	/** Adds an extension element.
 	 * @param element */
 	public void addExtElement(Element element){
+		this.change();
 		this.extensions.add(element);
+		String tag=element.getTag();
+		List<Element> elements=this.extensionIndex.get(tag);
+		if(elements==null){
+			elements=new ArrayList<Element>(1);
+			this.extensionIndex.put(tag, elements);
+		}
+		elements.add(element);
+	}
+
+	/** Removes an extension element.
+	 * @param element */
+	public void removeExtElement(Element element){
+		this.change();
+		if(!this.extensions.remove(element))
+			return;
+		String tag=element.getTag();
+		List<Element> elements=this.extensionIndex.get(tag);
+		elements.remove(element);
+		if(elements.isEmpty())
+			this.extensionIndex.remove(tag);
 	}
 
 	/** Gets the extension elements with a specific tag.
@@ -307,15 +545,11 @@ public class Entry extends RootElement implements EasySAXParseable{
 	 * 	in the same order as they are in the entry
 	 * */
 	public List<Element> getExtensionElements(String tag){
-		List<Element> found = new ArrayList<Element>();
-		Iterator<Element> it = this.extensions.iterator();
-		while (it.hasNext()){
-			Element element = it.next();
-			if (tag.equals(element.getTag())){
-				found.add(element);
-			}
-		}
-		return found;
+		this.decode(EXTENSIONS);
+		List<Element> elements=this.extensionIndex.get(tag);
+		if(elements==null)
+			return new ArrayList<Element>();
+		return new ArrayList<Element>(elements);
 	}
 
 	/** Gets the first extension element with a specific tag, or null.
@@ -357,12 +591,11 @@ public class Entry extends RootElement implements EasySAXParseable{
 	 * @param tag
 	 * @return first extension element with that tag, null if not found. */
 	public Element getOptionalExtensionElement(String tag) {
-		for(Element element: this.extensions){
-			if(tag.equals(element.getTag()))
-				return element;
-			
-		}
-		return null;
+		this.decode(EXTENSIONS);
+		List<Element> elements=this.extensionIndex.get(tag);
+		if(elements==null)
+			return null;
+		return elements.get(0);
 	}
 
 	/** Adds an extension element containing only text.
@@ -426,6 +659,7 @@ public class Entry extends RootElement implements EasySAXParseable{
 	 * @param document The document where the element will go.
 	 * @return Element */
 	org.w3c.dom.Element toElement(Document document){
+		this.decode(ALL);
 		org.w3c.dom.Element entry = document.createElement("entry");
 
 		//atomCommonAttributes
@@ -512,8 +746,14 @@ public class Entry extends RootElement implements EasySAXParseable{
 	 * */
 	public void parse(EasyContentHandler handler) throws SAXException {
 
+		//A lazy entry that has not changed
+		if(this.markup!=null){
+			this.markup.replay(handler);
+			return;
+		}
+
 		//Attributes
-		Map<String, String> atts=this.getAttributes();
+		Map<String, String> atts=this.getRootAttributes();
 
 		//atomCommonAttributes
 		if(this.base!=null)
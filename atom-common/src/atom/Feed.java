@@ -17,14 +17,21 @@
  */
 package atom;
 
+import inspiracio.binary.BinaryParser;
+import inspiracio.json.JSONParser;
 import inspiracio.servlet.http.HttpURL;
+import inspiracio.servlet.http.Validator;
 import inspiracio.xml.DOM;
-import inspiracio.xml.Namespace;
 import inspiracio.xml.XMLDate;
 import inspiracio.xml.sax.EasyContentHandler;
 import inspiracio.xml.sax.EasySAXParseable;
+import inspiracio.xml.sax.XMLWriter;
 
+import java.io.ByteArrayOutputStream;
+import java.io.Closeable;
+import java.io.IOException;
 import java.io.InputStream;
+import java.io.UnsupportedEncodingException;
 import java.util.ArrayList;
 import java.util.Date;
 import java.util.Iterator;
@@ -74,6 +81,8 @@ public class Feed extends RootElement implements EasySAXParseable{
 	//private Text subtitle;//future
 	private Text title=new PlainText("");
 	private Date updated=new Date();
+	/** Has updated been set, or is it just the time of construction? */
+	private boolean updatedSet=false;
 	private List<inspiracio.xml.Element> extensionElements=new ArrayList<inspiracio.xml.Element>();
 	
 	/** the entries that have been added one by one */
@@ -81,6 +90,9 @@ public class Feed extends RootElement implements EasySAXParseable{
 	
 	/** the entries that come from a set iterator */
 	private Iterator<Entry> entryIterator=new ArrayList<Entry>().iterator();
+
+	/** the validator of the entries from the entry iterator, or null */
+	private Validator entryValidator;
 	
 	//Constructors ------------------------------------------------------------
 	
@@ -100,23 +112,63 @@ public class Feed extends RootElement implements EasySAXParseable{
 	}
 
 	/** Parse a feed from an input stream.
+	 * Streams with SAX, without DOM: see AtomParser.
 	 * @param in InputStream that contains XML for the feed.
 	 * @return feed
 	 */
 	public static Feed parse(InputStream in){
 		try {
-			//Parse DOM from stream. Maybe parsing SAX is better?
-			org.w3c.dom.Element feedElement=DOM.getDocumentRoot(in);
-
-			//Parse an entry from a DOM element.
-			Feed feed=Feed.parse(feedElement);
-			return feed;
+			return AtomParser.parseFeed(in);//SAXException, IOException
 		} catch (Exception e){
 			//e.printStackTrace();
 			throw new RuntimeException(e);
 		}
 	}
 
+	/** Parse a feed with lazy entries from an input stream.
+	 * See Entry.parseLazy.
+	 * @param in InputStream that contains XML for the feed.
+	 * @return feed
+	 */
+	public static Feed parseLazy(InputStream in){
+		try{
+			AtomParser parser=new AtomParser("feed");
+			parser.setLazy(true);
+			parser.parse(in);//SAXException, IOException
+			return parser.getFeed();
+		}catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Parse a feed from an input stream that contains JSON
+	 * in the format of GData alt=json. See JSONParser.
+	 * @param in InputStream that contains JSON for the feed.
+	 * @return feed
+	 * */
+	public static Feed parseJSON(InputStream in){
+		try{
+			org.w3c.dom.Element feedElement=JSONParser.getDocumentRoot(in);
+			return Feed.parse(feedElement);
+		}catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
+	/** Parse a feed from an input stream in the compact binary
+	 * format of BinaryWriter. See BinaryParser.
+	 * @param in InputStream that contains the feed in binary.
+	 * @return feed
+	 * */
+	public static Feed parseBinary(InputStream in){
+		try{
+			org.w3c.dom.Element feedElement=BinaryParser.getDocumentRoot(in);
+			return Feed.parse(feedElement);
+		}catch(Exception e){
+			throw new RuntimeException(e);
+		}
+	}
+
 	/** Parse an entry from an entry element. 
 	 * @param entryElement
 	 * @return entry
@@ -202,18 +254,31 @@ public class Feed extends RootElement implements EasySAXParseable{
 	public void addEntry(Entry... entries){
 		for(Entry entry : entries){
 			this.entries.add(entry);
-			List<Namespace>ns=entry.getNamespaces();
-			for(Namespace n : ns){
-				this.addNamespace(n);//Optimise: ignore atom, gd, xsi, as they are already in the feed.
-				//Optimise: remove the namespace from the entry.
-			}
+			this.addNamespaces(entry);//Cheap if the feed has them already.
 		}
 	}
 	
+	/** Adds the namespaces of an entry to the feed, but not the entry.
+	 * For example, for the entries that will come from the entry iterator.
+	 * @param entry */
+	public void addNamespaces(Entry entry){
+		super.addNamespaces(entry);
+	}
+
 	/** Sets the entryIterator, overwriting any previous set value.
 	 * @param entryIterator
 	 * */
-	public void setEntryIterator(Iterator<Entry> entryIterator){this.entryIterator=entryIterator;}
+	public void setEntryIterator(Iterator<Entry> entryIterator){this.setEntryIterator(entryIterator, null);}
+
+	/** Sets the entryIterator, overwriting any previous set value,
+	 * together with a validator of the entries that it will deliver.
+	 * @param entryIterator
+	 * @param validator changes when the entries change. May be null.
+	 * */
+	public void setEntryIterator(Iterator<Entry> entryIterator, Validator validator){
+		this.entryIterator=entryIterator;
+		this.entryValidator=validator;
+	}
 	
 	public String getId(){return id;}
 	public void setId(String id){this.id=id;}
@@ -233,14 +298,17 @@ public class Feed extends RootElement implements EasySAXParseable{
 	}
 
 	public Date getUpdated(){return updated;}
-	public void setUpdated(Date updated){this.updated=updated;}
+	public void setUpdated(Date updated){
+		this.updated=updated;
+		this.updatedSet=true;
+	}
 
 	/** Sets the updated timestamp
 	 * @param updated simply as String 
 	 * */
 	public void setUpdated(String updated) {
 		Date d=XMLDate.parse(updated);
-		this.updated=d;
+		this.setUpdated(d);
 	}
 
 	public void addAuthor(Person author){this.authors.add(author);}
@@ -252,6 +320,55 @@ public class Feed extends RootElement implements EasySAXParseable{
 	Generator getGenerator(){return generator;}
 	public void setGenerator(Generator generator){this.generator=generator;}
 	
+	/** Makes a validator for conditional GET from the feed metadata and the
+	 * IDs and ETags of the entries. The metadata is all that the feed writes
+	 * except the entries: id, title, authors, links such as next and previous,
+	 * extension elements such as openSearch:totalResults, namespaces. The
+	 * prettyprint flag and the fields count too.
+	 * <p>
+	 * The updated timestamp counts only if it has been set: by default it is the
+	 * time of construction, and the same feed made twice would have different
+	 * validators.
+	 * <p>
+	 * There is none if an entry has no ETag, or if the entries come from an
+	 * entry iterator without validator: the iterator cannot be read twice.
+	 * See setEntryIterator(iterator, validator) and ValidatingAtomSAO.getValidator(url).
+	 * @return validator, or null
+	 * */
+	public Validator getValidator(){
+		if(this.entryIterator.hasNext() && this.entryValidator==null)
+			return null;
+		Date lastModified=this.updatedSet ? this.updated : null;
+		Validator.Builder builder=new Validator.Builder();
+		builder.add(this.head());
+		builder.add(this.getPrettyprint() ? "prettyprint" : null);
+		builder.add(this.getFields()==null ? null : this.getFields().toString());
+		for(Entry entry : this.entries){
+			String etag=entry.getETag();
+			if(etag==null)
+				return null;
+			builder.add(entry.getId());
+			builder.add(etag);
+		}
+		if(this.entryValidator!=null){
+			if(this.entryValidator.getETag()==null)
+				return null;
+			builder.add(this.entryValidator.getETag());
+			Date date=this.entryValidator.getLastModified();
+			if(lastModified==null || (date!=null && date.after(lastModified)))
+				lastModified=date;
+		}
+		return builder.build(lastModified);
+	}
+
+	/** Closes the entry iterator, if it is Closeable, for example a DB cursor
+	 * that will not be read to the end because the feed is not written.
+	 * @throws IOException */
+	public void close()throws IOException{
+		if(this.entryIterator instanceof Closeable)
+			((Closeable)this.entryIterator).close();
+	}
+
 	/** Writes all the feed to the given content handler.
 	 * First writes the entries that have been added one by one,
 	 * then the entries that come from a set entry iterator.
@@ -259,8 +376,50 @@ public class Feed extends RootElement implements EasySAXParseable{
 	 * @exception SAXException
 	 *  */
 	public void parse(EasyContentHandler handler) throws SAXException {
-		handler.startElement("feed", this.getAttributes());
-	
+		handler.startElement("feed", this.getRootAttributes());
+		this.parseHead(handler, true);
+		
+		//loop over the explicitly added entries
+		Iterator<Entry> entries = this.entries.iterator();
+		while (entries.hasNext()){
+			Entry entry = entries.next();
+			entry.parse(handler);
+		}
+		//suck entries from a set entry iterator, if there is one
+		if (this.entryIterator!=null){
+			while (this.entryIterator.hasNext()){
+				Entry entry = this.entryIterator.next();
+				entry.parse(handler);
+			}
+		}
+
+		handler.endElement("feed");
+	}	
+
+	/** The feed metadata as XML, for the validator.
+	 * The updated timestamp only if it has been set. */
+	private String head(){
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		try{
+			EasyContentHandler handler=new EasyContentHandler(new XMLWriter(out));
+			handler.startDocument();
+			handler.startElement("feed", this.getRootAttributes());
+			this.parseHead(handler, this.updatedSet);
+			handler.endElement("feed");
+			handler.endDocument();
+			return out.toString("UTF-8");//UnsupportedEncodingException
+		}catch(SAXException e){
+			throw new RuntimeException(e);
+		}catch(UnsupportedEncodingException e){
+			throw new RuntimeException(e);//UTF-8 is always there.
+		}
+	}
+
+	/** Writes the feed metadata: everything but the entries.
+	 * @param handler
+	 * @param updated Write the updated timestamp?
+	 * @exception SAXException */
+	private void parseHead(EasyContentHandler handler, boolean updated)throws SAXException{
 		if (this.generator!=null){
 			this.generator.parse(handler);
 		}
@@ -269,7 +428,8 @@ public class Feed extends RootElement implements EasySAXParseable{
 		this.title.parse(handler, "title");
 		
 		//obligatory
-		handler.element("updated", this.updated);
+		if(updated)
+			handler.element("updated", this.updated);
 		
 		//obligatory
 		handler.element("id", this.id);
@@ -291,22 +451,6 @@ public class Feed extends RootElement implements EasySAXParseable{
 			inspiracio.xml.Element element = extensions.next();
 			element.parse(handler);
 		}
-		
-		//loop over the explicitly added entries
-		Iterator<Entry> entries = this.entries.iterator();
-		while (entries.hasNext()){
-			Entry entry = entries.next();
-			entry.parse(handler);
-		}
-		//suck entries from a set entry iterator, if there is one
-		if (this.entryIterator!=null){
-			while (this.entryIterator.hasNext()){
-				Entry entry = this.entryIterator.next();
-				entry.parse(handler);
-			}
-		}
-
-		handler.endElement("feed");
-	}	
+	}
 
 }
\ No newline at end of file
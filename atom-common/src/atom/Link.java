@@ -27,6 +27,7 @@ import java.util.Map;
 import org.w3c.dom.Attr;
 import org.w3c.dom.Document;
 import org.w3c.dom.Element;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 /** A link according to Atom 1.0 spec at http://atompub.org/rfc4287.html.
@@ -195,4 +196,24 @@ public class Link {
 		if((attr=element.getAttributeNode("length"))!=null) link.length = Integer.parseInt(attr.getTextContent());
 		return link;
 	}
+
+	/** Parse a link from the attributes of a link element.
+	 * @param atts
+	 * @return Link
+	 * @exception IllegalArgumentException there is no href
+	 *  */
+	static Link parse(Attributes atts){
+		Link link=new Link();
+		link.base=atts.getValue("base");
+		link.lang=atts.getValue("lang");
+		link.href=atts.getValue("href"); // this one is compulsory
+		if(link.href==null) throw new IllegalArgumentException("link without href");
+		link.rel=atts.getValue("rel");
+		link.type=atts.getValue("type");
+		link.hreflang=atts.getValue("hreflang");
+		link.title=atts.getValue("title");
+		String length=atts.getValue("length");
+		if(length!=null) link.length=Integer.parseInt(length);
+		return link;
+	}
 }
\ No newline at end of file
@@ -0,0 +1,142 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom;
+
+import inspiracio.xml.Symbols;
+
+import java.util.Arrays;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/** The markup of an element as it was parsed: its SAX events,
+ * in a compact form. For lazy entries: see Entry.parseLazy.
+ * <p>
+ * The events are in one array: a String starts an element with that
+ * tag, and is followed by the attributes as String[] of names and values.
+ * A char[] is text. END ends an element.
+ * */
+final class Markup{
+
+	/** Ends an element */
+	static final Object END=new Object();
+
+	/** Attributes of elements that have none */
+	private static final String[] NONE=new String[0];
+
+	//State -------------------------------------------------------
+
+	private Object[] events=new Object[64];
+	private int size=0;
+
+	/** Text that is not in the events yet: SAX may split text. */
+	private StringBuilder text=new StringBuilder();
+
+	//Recording ---------------------------------------------------
+
+	/** @param tag from Symbols.lookup(String) */
+	void start(String tag, Attributes atts){
+		this.text();
+		String[] as=NONE;
+		int n=atts.getLength();
+		if(0<n){
+			as=new String[2*n];
+			for(int i=0; i<n; i++){
+				as[2*i]=Symbols.lookup(atts.getQName(i));
+				as[2*i+1]=atts.getValue(i);
+			}
+		}
+		this.add(tag);
+		this.add(as);
+	}
+
+	void characters(char[] ch, int start, int length){
+		this.text.append(ch, start, length);
+	}
+
+	void end(){
+		this.text();
+		this.add(END);
+	}
+
+	/** Recording has finished: drops what is only for recording. */
+	void trim(){
+		this.text=null;
+		this.events=Arrays.copyOf(this.events, this.size);
+	}
+
+	//Reading -----------------------------------------------------
+
+	int size(){return this.size;}
+
+	Object get(int i){return this.events[i];}
+
+	/** Sets the attributes from the events.
+	 * @param atts is cleared first
+	 * @param as the names and values, after the tag in the events */
+	static void attributes(AttributesImpl atts, String[] as){
+		atts.clear();
+		for(int i=0; i<as.length; i+=2)
+			atts.addAttribute("", "", as[i], "CDATA", as[i+1]);
+	}
+
+	/** Sends the events to a content handler, like the parser sent them. */
+	void replay(ContentHandler handler)throws SAXException{
+		AttributesImpl atts=new AttributesImpl();
+		String[] tags=new String[8];
+		int depth=0;
+		for(int i=0; i<this.size; i++){
+			Object e=this.events[i];
+			if(e==END){
+				depth--;
+				handler.endElement("", "", tags[depth]);
+			}else if(e instanceof String){
+				String tag=(String)e;
+				attributes(atts, (String[])this.events[++i]);
+				handler.startElement("", "", tag, atts);
+				if(depth==tags.length)
+					tags=Arrays.copyOf(tags, 2*depth);
+				tags[depth++]=tag;
+			}else{
+				char[] cs=(char[])e;
+				handler.characters(cs, 0, cs.length);
+			}
+		}
+	}
+
+	//Helpers -----------------------------------------------------
+
+	/** Adds the waiting text as one event. */
+	private void text(){
+		int length=this.text.length();
+		if(0<length){
+			char[] cs=new char[length];
+			this.text.getChars(0, length, cs, 0);
+			this.add(cs);
+			this.text.setLength(0);
+		}
+	}
+
+	private void add(Object e){
+		if(this.size==this.events.length)
+			this.events=Arrays.copyOf(this.events, 2*this.size);
+		this.events[this.size++]=e;
+	}
+}
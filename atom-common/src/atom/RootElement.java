@@ -17,25 +17,33 @@
  */
 package atom;
 
+import inspiracio.binary.BinaryWriter;
+import inspiracio.json.JSONWriter;
 import inspiracio.servlet.http.HttpURL;
-import inspiracio.xml.DOM;
 import inspiracio.xml.Namespace;
-import inspiracio.xml.sax.BaseXMLReader;
+import inspiracio.xml.Namespaces;
+import inspiracio.xml.Symbols;
+import inspiracio.xml.sax.EasyContentHandler;
 import inspiracio.xml.sax.EasySAXParseable;
+import inspiracio.xml.sax.IndentingContentHandler;
+import inspiracio.xml.sax.XMLWriter;
 
+import java.io.IOException;
 import java.io.OutputStream;
-import java.util.ArrayList;
+import java.util.AbstractMap;
+import java.util.Collections;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 import java.util.TreeMap;
 
-import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.sax.SAXSource;
-import javax.xml.transform.stream.StreamResult;
 
 
-import org.xml.sax.InputSource;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+
+import atom.gdata.Fields;
 
 /** Superclass for elements that can be the root of an Atom-XML:
  * Feed and Entry. Encapsulates logic for XML schemas.
@@ -47,12 +55,21 @@ abstract class RootElement implements EasySAXParseable {
 
 	//State -------------------------------------------------
 	
-	/** The attributes of the root element. */
+	/** The attributes of the root element, except the namespace declarations. */
 	private Map<String, String> attributes = new TreeMap<String, String>();
-	private Map<String, String> schemaLocations = new TreeMap<String, String>();
+
+	/** The namespace declarations and schema locations */
+	private Namespaces namespaces=new Namespaces();
+
+	/** Are the namespaces shared with other elements?
+	 * Then we copy them before changing them. */
+	private boolean sharedNamespaces=false;
 	
 	/** Should we make indented XML from this feed? */
 	private boolean prettyprint=false;
+
+	/** Which elements to write, for a partial response. Null for all. */
+	private Fields fields;
 	
 	// Constructors --------------------------------------
 	
@@ -62,12 +79,25 @@ abstract class RootElement implements EasySAXParseable {
 	
 	public void setPrettyprint(boolean b){this.prettyprint = b;}
 	boolean getPrettyprint(){return prettyprint;}
+
+	/** Write only some elements and attributes, for a partial response.
+	 * Applies to all formats.
+	 * @param fields null for all */
+	public void setFields(Fields fields){this.fields=fields;}
+
+	/** Which elements to write, or null for all */
+	public Fields getFields(){return this.fields;}
 	
 	/** Adds an attribute to the root element of the feed.
+	 * The parsers call this too, so the name is only looked up in Symbols.
 	 * @param name 
 	 * @param value */
 	public void addAttribute(String name, String value){
-		this.attributes.put(name, value);
+		this.change();
+		if(Namespaces.isNamespaceAttribute(name))
+			this.getOwnNamespaces().setAttribute(name, value);
+		else
+			this.attributes.put(Symbols.lookup(name), value);
 	}
 
 	/** Gets an attribute of the root element of the feed.
@@ -75,13 +105,87 @@ abstract class RootElement implements EasySAXParseable {
 	 * @return the value, or null if there is no such attribute
 	 *  */
 	protected String getAttribute(String name){
+		if(Namespaces.isNamespaceAttribute(name))
+			return this.namespaces.getAttribute(name);
 		return this.attributes.get(name);
 	}
 
-	/** Gets a reference to the map of attributes
-	 * @return the map
+	/** Gets a view of the attributes, with the namespace declarations
+	 * and xsi:schemaLocation. Putting into the view is like addAttribute().
+	 * Iterating gives a snapshot that cannot be changed, and namespace
+	 * declarations cannot be removed.
+	 * @return the view
+	 * */
+	public Map<String, String> getAttributes(){
+		this.change();
+		return new AttributesView();
+	}
+
+	/** The attributes and the namespace declarations, as one map. */
+	private class AttributesView extends AbstractMap<String, String>{
+
+		@Override public Set<Map.Entry<String, String>> entrySet(){
+			return Collections.unmodifiableMap(getRootAttributes()).entrySet();
+		}
+
+		@Override public boolean containsKey(Object key){
+			return this.get(key)!=null;
+		}
+
+		@Override public String get(Object key){
+			return key instanceof String ? getAttribute((String)key) : null;
+		}
+
+		@Override public String put(String name, String value){
+			String old=getAttribute(name);
+			addAttribute(name, value);
+			return old;
+		}
+
+		/** @exception UnsupportedOperationException namespace declaration */
+		@Override public String remove(Object key){
+			if(!(key instanceof String))
+				return null;
+			String name=(String)key;
+			if(Namespaces.isNamespaceAttribute(name))
+				throw new UnsupportedOperationException("Cannot remove namespace declaration " + name);
+			change();
+			return attributes.remove(name);
+		}
+	}
+
+	/** Makes the attributes for writing the root element:
+	 * the attributes and the namespace declarations.
+	 * @return a new map that the caller may change
+	 * */
+	Map<String, String> getRootAttributes(){
+		Map<String, String> atts=new TreeMap<String, String>(this.attributes);
+		this.namespaces.putAttributes(atts);
+		return atts;
+	}
+
+	/** Adds the namespaces of another root element, for example
+	 * of an entry to its feed.
+	 * @param other
+	 * */
+	void addNamespaces(RootElement other){
+		this.addNamespaces(other.namespaces);
+	}
+
+	/** Adds namespaces that may be shared, for example the frozen
+	 * namespaces of a bean class. If this element has no namespaces
+	 * yet, it just shares them, until it changes them.
+	 * @param namespaces
 	 * */
-	public Map<String, String> getAttributes(){return this.attributes;}
+	public void addNamespaces(Namespaces namespaces){
+		this.change();
+		if(this.namespaces.isEmpty() && namespaces.isFrozen()){
+			this.namespaces=namespaces;
+			this.sharedNamespaces=true;
+		}else{
+			this.getOwnNamespaces().addAll(namespaces);
+		}
+	}
 	
 	/** Adds a namespace with schema location.
 	 * @param n namespace
@@ -133,71 +237,95 @@ abstract class RootElement implements EasySAXParseable {
 	 * */
 	public void addNamespace(String prefix, String url, String schemaLocation){
 		//If we use namespaces with schema, we definitely need schemas.
-		this.addAttribute("xmlns:xsi", "http://www.w3.org/2001/XMLSchema-instance");
+		//Namespaces declares xmlns:xsi and builds xsi:schemaLocation when we write.
+		this.getOwnNamespaces().add(prefix, url, schemaLocation);
+	}
 
-		if (prefix!=null && 0 < prefix.length()){
-			this.addAttribute("xmlns:" + prefix, url);
-		} else {//the default namespace
-			this.addAttribute("xmlns", url);
-		}
-		if(schemaLocation!=null){
-			this.schemaLocations.put(url, schemaLocation);
-			this.setNamespaceLocations();
+	/** Returns all the namespace declarations in this elements. */
+	public List<Namespace> getNamespaces(){
+		return this.namespaces.getNamespaces();
+	}
+
+	/** The namespaces of this element only, ready for changes. */
+	private Namespaces getOwnNamespaces(){
+		this.change();
+		if(this.sharedNamespaces){
+			this.namespaces=new Namespaces(this.namespaces);
+			this.sharedNamespaces=false;
 		}
+		return this.namespaces;
 	}
 
-	/** Sets the "xsi:schemaLocation" attribute of the feed to the schema locations
-	 * of all the added namespaces, overriding the previous value of "xsi:schemaLocation".
+	/** Called before this element changes, or before it gives away
+	 * a reference to state that the caller may change.
+	 * Lazy entries drop their markup. */
+	void change(){}
+
+	/** Writes the feed to the output stream as UTF-8, using SAX.
+	 * <p>
+	 * The SAX events go straight into an XMLWriter that encodes them
+	 * into bytes. There is no transformer.
+	 * @param os OutputStream. Is flushed, but not closed.
+	 * @exception TransformerException wrapping SAXException or IOException
 	 * */
-	private void setNamespaceLocations(){
-		StringBuilder schemaLocation = new StringBuilder();
-		for(Map.Entry<String, String> entry : this.schemaLocations.entrySet()){
-			String namespaceURL = entry.getKey();
-			String schema = entry.getValue();
-			schemaLocation.append(namespaceURL);
-			schemaLocation.append(' ');
-			schemaLocation.append(schema);
-			schemaLocation.append(' ');
+	public void write(OutputStream os) throws TransformerException {
+		ContentHandler handler=new XMLWriter(os);
+		if(this.getPrettyprint())
+			handler=new IndentingContentHandler(handler);
+		EasyContentHandler easy=this.easy(handler);
+		try{
+			easy.startDocument();
+			this.parse(easy);
+			easy.endDocument();
+		}catch(SAXException e){
+			throw new TransformerException(e);
 		}
-		this.addAttribute("xsi:schemaLocation", schemaLocation.toString());
 	}
-	
-	/** Returns all the namespace declarations in this elements. */
-	public List<Namespace> getNamespaces(){
-		List<Namespace>ns=new ArrayList<Namespace>();
-		for(Map.Entry<String, String>attribute : this.attributes.entrySet()){
-			String key=attribute.getKey();
-			String value=attribute.getValue();
-			if(key.startsWith("xmlns")){
-				String prefix="";
-				if(key.startsWith("xmlns:")){
-					prefix=key.substring("xmlns:".length());
-				}
-				String url=value;
-				String schemaLocation=this.schemaLocations.get(url);//may be null
-				Namespace n=new Namespace(prefix, url, schemaLocation);
-				ns.add(n);
-			}
+
+	/** Writes the feed to the output stream as JSON in UTF-8,
+	 * in the format of GData alt=json. See JSONWriter.
+	 * Ignores prettyprint.
+	 * @param os OutputStream. Is flushed, but not closed.
+	 * @exception IOException
+	 * */
+	public void writeJSON(OutputStream os) throws IOException {
+		EasyContentHandler easy=this.easy(new JSONWriter(os));
+		try{
+			easy.startDocument();
+			this.parse(easy);
+			easy.endDocument();
+		}catch(SAXException e){
+			if(e.getException() instanceof IOException)
+				throw (IOException)e.getException();
+			throw new IOException(e.getMessage(), e);
 		}
-		return ns;
 	}
-	
-	/** Writes the feed to the output stream, using SAX. 
-	 * See http://java.sun.com/webservices/jaxp/dist/1.1/docs/tutorial/xslt/3_generate.html
-	 * @param os OutputStream
-	 * @exception TransformerException
+
+	/** Writes the feed to the output stream in the compact binary
+	 * format of BinaryWriter. Ignores prettyprint.
+	 * @param os OutputStream. Is flushed, but not closed.
+	 * @exception IOException
 	 * */
-	public void write(OutputStream os) throws TransformerException {
-		// Converts this feed into a series of calls to a ContentHandler
-		// that represent the feed as XML.
-		BaseXMLReader xmlReader=new BaseXMLReader(this);
-		if(this.getPrettyprint())
-			xmlReader.setPrettyprint(true);
-		InputSource inputSource=new InputSource();//Will be ignored: all data comes from xmlReader
-		SAXSource source=new SAXSource(xmlReader, inputSource);
-		StreamResult result=new StreamResult(os);
-		Transformer transformer=DOM.newTransformer();
-		transformer.transform(source, result);//TransformerException
+	public void writeBinary(OutputStream os) throws IOException {
+		EasyContentHandler easy=this.easy(new BinaryWriter(os));
+		try{
+			easy.startDocument();
+			this.parse(easy);
+			easy.endDocument();
+		}catch(SAXException e){
+			if(e.getException() instanceof IOException)
+				throw (IOException)e.getException();
+			throw new IOException(e.getMessage(), e);
+		}
+	}
+
+	/** Makes the handler for writing, with the fields filter if there are fields.
+	 * With the filter, there are no raw bytes, so entries are not written from the
+	 * EntryCache. */
+	private EasyContentHandler easy(ContentHandler handler){
+		if(this.fields!=null)
+			handler=this.fields.filter(handler);
+		return new EasyContentHandler(handler);
 	}
 
 }
\ No newline at end of file
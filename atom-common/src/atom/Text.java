@@ -63,13 +63,22 @@ public abstract class Text {
 	 * @return Text
 	 * */
 	static Text parse (Element element){
-		Text text = null;
 		//discriminate between plain text, html text, xhtml text:
 		String type = element.getAttribute("type");
+		String s = element.getTextContent();
+		return parse(type, s);
+	}
+
+	/** Parse a Text from the type attribute and text content of an element.
+	 * @param type value of attribute "type", "" if there is none
+	 * @param s text content, still escaped as in the element
+	 * @return Text, or null for an unknown type
+	 * */
+	static Text parse(String type, String s){
+		Text text = null;
 		if ("".equals(type) || "text".equals(type)){
 			//type="text" ---the default
 			//The element must have no subelements.
-			String s = element.getTextContent();
 			String unescaped=XMLString.unescape(s);
 			text = new PlainText(unescaped);
 		} else if ("html".equals(type)){
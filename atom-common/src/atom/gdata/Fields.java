@@ -0,0 +1,274 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom.gdata;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+
+/** The GData query parameter "fields" for partial responses: which
+ * elements and attributes of a feed or entry the client wants.
+ * See http://code.google.com/apis/gdata/docs/2.0/reference.html#PartialResponse.
+ * <p>
+ * Syntax, relative to the root element:
+ * <ul>
+ * 	<li><code>a,b</code> selects the child elements a and b, completely.
+ * 	<li><code>a/b</code> and <code>a(b)</code> select b within a, and a only with b.
+ * 	<li><code>@x</code> selects attribute x.
+ * 	<li><code>*</code> selects all child elements, <code>@*</code> all attributes.
+ * 	<li><code>a[@x='v']</code> and <code>a[@x!='v']</code> select only the
+ * 		elements a whose attribute x is, or is not, v.
+ * </ul>
+ * Example: <code>entry(@gd:etag,id,link[@rel='edit'](@href))</code>.
+ * Other conditions are not implemented.
+ * <p>
+ * The root element and the namespace declarations are always in the response.
+ * <p>
+ * The projection happens while writing: see filter(ContentHandler).
+ * Immutable and threadsafe.
+ * */
+public final class Fields{
+
+	/** Selects an element completely. */
+	private static final Fields ALL=new Fields();
+	static{ALL.all=true;}
+
+	//State -------------------------------------------------------
+
+	/** The expression, for toString(). Only for the parsed instance. */
+	private String expression;
+
+	/** Is the whole element selected, with all its content? */
+	private boolean all=false;
+
+	/** The selected attributes. "*" means all. */
+	private Set<String> attributes=new HashSet<String>();
+
+	/** The selections of child elements by tag. "*" means all tags.
+	 * Several selections of the same tag may have different conditions. */
+	private Map<String, List<Fields>> elements=new HashMap<String, List<Fields>>();
+
+	/** Condition on the element: the name of the attribute, or null for no condition */
+	private String conditionName;
+	private String conditionValue;
+
+	/** Must the attribute be different from the value? */
+	private boolean conditionNot;
+
+	//Constructors ------------------------------------------------
+
+	private Fields(){}
+
+	/** Parses the value of the fields parameter.
+	 * @param expression like "entry(id,@gd:etag)"
+	 * @return the selection
+	 * @exception IllegalArgumentException invalid expression
+	 * */
+	public static Fields parse(String expression){
+		Fields fields=new Fields();
+		fields.expression=expression;
+		Parser parser=new Parser(expression);
+		parser.fields(fields);
+		if(!parser.atEnd())
+			throw parser.error();
+		return fields;
+	}
+
+	//Methods -----------------------------------------------------
+
+	/** Makes a content handler that passes only the selected elements
+	 * and attributes of a document to the delegate. Filters while writing,
+	 * without copying the feed or entry.
+	 * @param delegate
+	 * @return the filtering handler
+	 * */
+	public ContentHandler filter(ContentHandler delegate){
+		return new FieldsFilter(this, delegate);
+	}
+
+	/** The expression as parsed */
+	@Override public String toString(){return this.expression;}
+
+	/** Is the whole element selected? */
+	boolean isAll(){return this.all;}
+
+	/** Is the attribute of the element selected? */
+	boolean hasAttribute(String name){
+		return this.all || this.attributes.contains(name) || this.attributes.contains("*");
+	}
+
+	/** The selection of a child element.
+	 * @param tag
+	 * @param atts its attributes, for the conditions
+	 * @return null if the child is not selected
+	 * */
+	Fields child(String tag, Attributes atts){
+		if(this.all)
+			return ALL;
+		List<Fields> matches=new ArrayList<Fields>(2);
+		this.match(this.elements.get(tag), atts, matches);
+		this.match(this.elements.get("*"), atts, matches);
+		if(matches.isEmpty())
+			return null;
+		if(matches.size()==1)
+			return matches.get(0);
+		//Several selections of the element: their union.
+		Fields union=new Fields();
+		for(Fields f : matches){
+			if(f.all)
+				return ALL;
+			union.attributes.addAll(f.attributes);
+			for(Map.Entry<String, List<Fields>> e : f.elements.entrySet())
+				for(Fields g : e.getValue())
+					union.add(e.getKey(), g);
+		}
+		return union;
+	}
+
+	//Helpers -----------------------------------------------------
+
+	private void match(List<Fields> candidates, Attributes atts, List<Fields> matches){
+		if(candidates!=null)
+			for(Fields f : candidates)
+				if(f.accepts(atts))
+					matches.add(f);
+	}
+
+	/** Does the element fulfil the condition? */
+	private boolean accepts(Attributes atts){
+		if(this.conditionName==null)
+			return true;
+		boolean equal=this.conditionValue.equals(atts.getValue(this.conditionName));
+		return equal!=this.conditionNot;
+	}
+
+	private void add(String tag, Fields child){
+		List<Fields> list=this.elements.get(tag);
+		if(list==null){
+			list=new ArrayList<Fields>(1);
+			this.elements.put(tag, list);
+		}
+		list.add(child);
+	}
+
+	/** Recursive descent parser for the syntax in the class comment. */
+	private static class Parser{
+		private String s;
+		private int i=0;
+
+		Parser(String s){this.s=s;}
+
+		/** fields := field (',' field)* */
+		void fields(Fields target){
+			do{
+				this.field(target);
+			}while(this.eat(','));
+		}
+
+		/** field := ('@' name | step ('/' step)* ['(' fields ')'])
+		 * step := name ['[' '@' name ('=' | '!=') quoted ']'] */
+		private void field(Fields target){
+			if(this.eat('@')){
+				target.attributes.add(this.name());
+				return;
+			}
+			Fields child=new Fields();
+			target.add(this.name(), child);
+			if(this.eat('[')){
+				if(!this.eat('@'))
+					throw this.error();
+				child.conditionName=this.name();
+				child.conditionNot=this.eat('!');
+				if(!this.eat('='))
+					throw this.error();
+				child.conditionValue=this.quoted();
+				if(!this.eat(']'))
+					throw this.error();
+			}
+			if(this.eat('/')){
+				this.field(child);
+			}else if(this.eat('(')){
+				this.fields(child);
+				if(!this.eat(')'))
+					throw this.error();
+			}else{
+				child.all=true;
+			}
+		}
+
+		private String name(){
+			this.space();
+			int start=this.i;
+			while(this.i<this.s.length() && isNameChar(this.s.charAt(this.i)))
+				this.i++;
+			if(start==this.i)
+				throw this.error();
+			return this.s.substring(start, this.i);
+		}
+
+		/** A value in single or double quotes */
+		private String quoted(){
+			this.space();
+			if(this.atEnd())
+				throw this.error();
+			char quote=this.s.charAt(this.i);
+			if(quote!='\'' && quote!='"')
+				throw this.error();
+			int end=this.s.indexOf(quote, this.i+1);
+			if(end<0)
+				throw this.error();
+			String value=this.s.substring(this.i+1, end);
+			this.i=end+1;
+			return value;
+		}
+
+		/** If the next char is c, consumes it. */
+		private boolean eat(char c){
+			this.space();
+			if(this.i<this.s.length() && this.s.charAt(this.i)==c){
+				this.i++;
+				return true;
+			}
+			return false;
+		}
+
+		private void space(){
+			while(this.i<this.s.length() && this.s.charAt(this.i)==' ')
+				this.i++;
+		}
+
+		boolean atEnd(){
+			this.space();
+			return this.s.length()<=this.i;
+		}
+
+		IllegalArgumentException error(){
+			return new IllegalArgumentException("Invalid fields at " + this.i + ": " + this.s);
+		}
+
+		private static boolean isNameChar(char c){
+			return Character.isLetterOrDigit(c) || c=='_' || c=='-' || c=='.' || c==':' || c=='*';
+		}
+	}
+}
@@ -0,0 +1,117 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom.gdata;
+
+import inspiracio.xml.Namespaces;
+import inspiracio.xml.sax.ContentHandlerWrapper;
+
+import java.util.ArrayList;
+import java.util.List;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.AttributesImpl;
+
+/** Passes only the elements and attributes selected by Fields
+ * to the delegate. See Fields.filter(ContentHandler).
+ * <p>
+ * The root element is always passed. Namespace declarations are always
+ * passed. An element that is only partly selected loses its text.
+ * */
+class FieldsFilter extends ContentHandlerWrapper{
+
+	//State -------------------------------------------------------
+
+	/** The selection within the root element */
+	private Fields fields;
+
+	/** The selections of the open elements that are partly selected */
+	private List<Fields> open=new ArrayList<Fields>();
+
+	/** Depth within an element that is not selected. 0 outside. */
+	private int skip=0;
+
+	/** Depth within an element that is selected completely. 0 outside. */
+	private int all=0;
+
+	/** Reused for the selected attributes */
+	private final AttributesImpl attributes=new AttributesImpl();
+
+	//Constructors ------------------------------------------------
+
+	FieldsFilter(Fields fields, ContentHandler delegate){
+		super(delegate);
+		this.fields=fields;
+	}
+
+	//SAX event handling methods ----------------------------------
+
+	@Override public void startElement(String uri, String localName, String qName, Attributes atts)throws SAXException{
+		if(0<this.skip){
+			this.skip++;
+			return;
+		}
+		if(0<this.all){
+			this.all++;
+			super.startElement(uri, localName, qName, atts);
+			return;
+		}
+		Fields f=this.open.isEmpty() ? this.fields : this.open.get(this.open.size()-1).child(qName, atts);
+		if(f==null){
+			this.skip=1;
+			return;
+		}
+		if(f.isAll()){
+			this.all=1;
+			super.startElement(uri, localName, qName, atts);
+			return;
+		}
+		this.open.add(f);
+		AttributesImpl selected=this.attributes;
+		selected.clear();
+		for(int i=0; i<atts.getLength(); i++){
+			String name=atts.getQName(i);
+			if(Namespaces.isNamespaceAttribute(name) || f.hasAttribute(name))
+				selected.addAttribute(atts.getURI(i), atts.getLocalName(i), name, atts.getType(i), atts.getValue(i));
+		}
+		super.startElement(uri, localName, qName, selected);
+	}
+
+	@Override public void endElement(String uri, String localName, String qName)throws SAXException{
+		if(0<this.skip){
+			this.skip--;
+			return;
+		}
+		if(0<this.all)
+			this.all--;
+		else
+			this.open.remove(this.open.size()-1);
+		super.endElement(uri, localName, qName);
+	}
+
+	@Override public void characters(char[] ch, int start, int length)throws SAXException{
+		if(0<this.all)
+			super.characters(ch, start, length);
+	}
+
+	@Override public void ignorableWhitespace(char[] ch, int start, int length)throws SAXException{
+		if(0<this.all)
+			super.ignorableWhitespace(ch, start, length);
+	}
+}
@@ -443,6 +443,31 @@ public class GDataParameters extends StringMap{
 		this.put("updated-min", updatedMin);
 	}
 
+	/** See setFields(Fields).
+	 * @return the selection, or null if there is no fields parameter
+	 * @exception IllegalArgumentException The fields parameter is invalid.
+	 * */
+	public Fields getFields(){
+		String s=this.get("fields");
+		return s==null ? null : Fields.parse(s);
+	}
+
+	/** Partial response: the response has only the selected elements
+	 * and attributes. See Fields for the syntax.
+	 * Default null means the whole response.
+	 * @param fields Not null.
+	 * */
+	public void setFields(Fields fields){this.put("fields", fields.toString());}
+
+	/** Partial response. See setFields(Fields).
+	 * @param fields like "entry(id,@gd:etag)". Not null.
+	 * @exception IllegalArgumentException invalid
+	 * */
+	public void setFields(String fields){
+		Fields.parse(fields);//IllegalArgumentException
+		this.put("fields", fields);
+	}
+
 	/** Returns an XML response with indentations and line breaks.
 	 * If prettyprint=true, the XML returned by the server will be 
 	 * human readable (pretty printed). Default: prettyprint=false
@@ -18,9 +18,10 @@
 package inspiracio.atom;
 
 import inspiracio.lang.NotImplementedException;
+import inspiracio.xml.Namespaces;
 
-import java.util.ArrayList;
-import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
 
 import atom.Entry;
 import atom.gdata.Style;
@@ -76,45 +77,59 @@ public abstract class AbstractAtomBean implements AtomBean{
 
 	//Namespaces ------------------------------------------------------
 
-	/** Identifies one namespace in an XML. */
-	private static class Namespace{
-		/** identifies the namespace locally, may be empty, may be like "inspiracio" */
-		private String prefix;
+	/** The namespaces of each bean class, frozen */
+	private static final Map<Class<?>, Namespaces> NAMESPACES=new ConcurrentHashMap<Class<?>, Namespaces>();
 
-		/** identifies the namespace globally, like "http://www.inspiracio.cat" */
-		private String id;
-
-		/** URL of the XML schema */
-		private String location;
+	/** Declares the namespaces for the generated XML.
+	 * Called only once for each bean class, because all the beans
+	 * of a class have the same namespaces.
+	 * <p>
+	 * This implementation declares nothing. Override to add your
+	 * namespaces, like namespaces.add("inspiracio", "http://www.inspiracio.cat", null).
+	 * The namespace gd is always there.
+	 * @param namespaces Add to this.
+	 * */
+	protected void declareNamespaces(Namespaces namespaces){}
 
-		/** for better debugging  */
-		@Override public String toString(){
-			return "Namespace[" + this.prefix + "->" + this.id + " at " + this.location + "]";
+	/** Gets the namespaces of the class of this bean:
+	 * gd and the ones from declareNamespaces().
+	 * @return frozen namespaces, shared by all beans of the class
+	 * */
+	protected final Namespaces getNamespaces(){
+		Class<?> c=this.getClass();
+		Namespaces namespaces=NAMESPACES.get(c);
+		if(namespaces==null){
+			namespaces=new Namespaces();
+			namespaces.add("gd", "http://schemas.google.com/g/2005", null);
+			this.declareNamespaces(namespaces);
+			namespaces.freeze();
+			NAMESPACES.put(c, namespaces);//Two threads may both make them. No problem.
 		}
+		return namespaces;
 	}
 
-	/** the namespaces registered */
-	private List<Namespace> namespaces = new ArrayList<Namespace>();
+	/** Namespaces added to this bean only, by addNamespace(). Usually null. */
+	private Namespaces namespaces;
 
 	/** Sets a namespace for the generated XML.
 	 * @param prefix May be empty.
-	 * @param id of the namespace, like "http://www.inspiracio.cat" */
-	public void addNamespace(String prefix, String id){
-		Namespace ns=new Namespace();
-		ns.prefix=prefix;
-		ns.id=id;
-		this.namespaces.add(ns);
+	 * @param id of the namespace, like "http://www.inspiracio.cat"
+	 * @deprecated Override declareNamespaces(namespaces) instead:
+	 * 	those namespaces are made once for the class, not for each bean. */
+	@Deprecated public void addNamespace(String prefix, String id){
+		this.addNamespace(prefix, id, null);
 	}
 
 	/** Sets a namespace for the generated XML with xsd for validation.
 	 * @param prefix May be empty.
-	 * @param id of the namespace, like "http://www.inspiracio.cat" */
-	public void addNamespace(String prefix, String id, String location){
-		Namespace ns = new Namespace();
-		ns.prefix = prefix;
-		ns.id = id;
-		ns.location = location;
-		this.namespaces.add(ns);
+	 * @param id of the namespace, like "http://www.inspiracio.cat"
+	 * @param location URL of the XML schema, may be null
+	 * @deprecated Override declareNamespaces(namespaces) instead:
+	 * 	those namespaces are made once for the class, not for each bean. */
+	@Deprecated public void addNamespace(String prefix, String id, String location){
+		if(this.namespaces==null)
+			this.namespaces=new Namespaces();
+		this.namespaces.add(prefix, id, location);
 	}
 
 	/** Is the form clean? Has it been saved in the server?
@@ -144,14 +159,9 @@ public abstract class AbstractAtomBean implements AtomBean{
 		entry.setETag(etag);
 
 		//namespaces
-		//if(root)
-		this.addNamespace("gd", "http://schemas.google.com/g/2005");
-		for(Namespace ns : this.namespaces){
-			if(ns.location!=null)
-				entry.addNamespace(ns.prefix, ns.id, ns.location);
-			else
-				entry.addNamespace(ns.prefix, ns.id);
-		}
+		entry.addNamespaces(this.getNamespaces());
+		if(this.namespaces!=null)
+			entry.addNamespaces(this.namespaces);
 
 		return entry;
 	}
@@ -178,13 +188,9 @@ public abstract class AbstractAtomBean implements AtomBean{
 
 		//namespaces
 		if(root)
-			this.addNamespace("gd", "http://schemas.google.com/g/2005");
-		for(Namespace ns : this.namespaces){
-			if(ns.location!=null)
-				entry.addNamespace(ns.prefix, ns.id, ns.location);
-			else
-				entry.addNamespace(ns.prefix, ns.id);
-		}
+			entry.addNamespaces(this.getNamespaces());
+		if(this.namespaces!=null)
+			entry.addNamespaces(this.namespaces);
 
 		return entry;
 	}
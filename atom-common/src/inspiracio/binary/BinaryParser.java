@@ -0,0 +1,210 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.binary;
+
+import inspiracio.xml.XMLRuntime;
+
+import java.io.BufferedInputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.ArrayList;
+import java.util.List;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+import org.w3c.dom.Node;
+
+/** Parses the binary format that BinaryWriter writes into a DOM,
+ * the same DOM that the XML parser makes of the equivalent XML.
+ * So the parse(org.w3c.dom.Element) methods of Entry and Feed
+ * work for the binary format too.
+ * <p>
+ * Not threadsafe. Make one parser for each document.
+ * */
+public class BinaryParser{
+
+	//State -------------------------------------------------------
+
+	private InputStream in;
+
+	/** Symbols read so far. Symbol k is at index k-1. */
+	private List<String> symbols=new ArrayList<String>();
+
+	/** Reused for decoding strings */
+	private byte[] bytes=new byte[256];
+	private char[] chars=new char[256];
+
+	//Constructors ------------------------------------------------
+
+	/** Construct a parser for the binary format.
+	 * @param in
+	 * */
+	public BinaryParser(InputStream in){
+		this.in=new BufferedInputStream(in, 8*1024);
+	}
+
+	//Methods -----------------------------------------------------
+
+	/** Converts input stream into Document.
+	 * Like DOM.getDocumentRoot(InputStream), but for the binary format.
+	 * @param in binary format
+	 * @return the root element of a newly created document
+	 * @exception RuntimeException wrapping IOException: reading or invalid format
+	 * */
+	public static Element getDocumentRoot(InputStream in){
+		try{
+			return new BinaryParser(in).parse();
+		}catch(IOException e){
+			throw new RuntimeException("Problem parsing the binary document", e);
+		}
+	}
+
+	/** Parses the document.
+	 * @return root element of a new document
+	 * @exception IOException reading, or invalid format
+	 * */
+	public Element parse()throws IOException{
+		for(byte b : BinaryWriter.MAGIC)
+			if(this.read()!=b)
+				throw new IOException("Not the binary format");
+		Document document=XMLRuntime.newDocument();
+		Node parent=document;
+		Element root=null;
+		for(;;){
+			int event=this.read();
+			switch(event){
+			case BinaryWriter.START:
+				Element element=document.createElement(this.symbol());
+				int n=this.varint();
+				for(int i=0; i<n; i++){
+					String name=this.symbol();
+					String value=BinaryWriter.isSymbolValue(name) ? this.symbol() : this.string();
+					element.setAttribute(name, value);
+				}
+				if(parent==document){
+					if(root!=null)throw new IOException("Several root elements");
+					root=element;
+				}
+				parent.appendChild(element);
+				parent=element;
+				break;
+			case BinaryWriter.TEXT:
+				String text=this.string();
+				if(parent==document)throw new IOException("Text outside the root element");
+				parent.appendChild(document.createTextNode(text));
+				break;
+			case BinaryWriter.END:
+				if(parent==document)throw new IOException("Unmatched end element");
+				parent=parent.getParentNode();
+				break;
+			case BinaryWriter.END_DOCUMENT:
+				if(parent!=document)throw new IOException("Unclosed element " + parent.getNodeName());
+				if(root==null)throw new IOException("No root element");
+				return root;
+			default:
+				throw new IOException("Invalid event " + event);
+			}
+		}
+	}
+
+	//Helpers -----------------------------------------------------
+
+	/** Reads a symbol, either new or by number. */
+	private String symbol()throws IOException{
+		int k=this.varint();
+		if(k==0){
+			String s=this.string();
+			this.symbols.add(s);
+			return s;
+		}
+		if(this.symbols.size()<k)throw new IOException("Unknown symbol " + k);
+		return this.symbols.get(k-1);
+	}
+
+	/** Reads length and UTF-8 bytes.
+	 * The length comes from the client: the buffers grow with the bytes
+	 * that really come, not with the length. */
+	private String string()throws IOException{
+		int length=this.varint();
+		byte[] b=this.bytes;
+		int off=0;
+		while(off<length){
+			if(off==b.length){
+				byte[] bigger=new byte[(int)Math.min(length, 2L*b.length)];
+				System.arraycopy(b, 0, bigger, 0, off);
+				b=this.bytes=bigger;
+			}
+			int r=this.in.read(b, off, Math.min(length, b.length)-off);
+			if(r<0)throw new EOFException();
+			off+=r;
+		}
+		if(this.chars.length<b.length)
+			this.chars=new char[b.length];
+		char[] c=this.chars;
+		int n=0;
+		for(int i=0; i<length; ){
+			int b0=b[i++] & 0xFF;
+			if(b0<0x80){
+				c[n++]=(char)b0;
+			}else if(b0<0xE0){
+				c[n++]=(char)(((b0 & 0x1F)<<6) | (this.next(b, i++, length)));
+			}else if(b0<0xF0){
+				int b1=this.next(b, i++, length);
+				c[n++]=(char)(((b0 & 0x0F)<<12) | (b1<<6) | this.next(b, i++, length));
+			}else{
+				int b1=this.next(b, i++, length);
+				int b2=this.next(b, i++, length);
+				int p=((b0 & 0x07)<<18) | (b1<<12) | (b2<<6) | this.next(b, i++, length);
+				p-=0x10000;
+				c[n++]=(char)(0xD800 + (p>>10));
+				c[n++]=(char)(0xDC00 + (p & 0x3FF));
+			}
+		}
+		return new String(c, 0, n);
+	}
+
+	/** The low bits of a continuation byte. */
+	private int next(byte[] b, int i, int length)throws IOException{
+		if(length<=i)throw new IOException("Truncated UTF-8");
+		return b[i] & 0x3F;
+	}
+
+	/** Reads a non-negative int in 7-bit groups.
+	 * @exception IOException also for a number that overflows */
+	private int varint()throws IOException{
+		int n=0;
+		for(int shift=0; shift<32; shift+=7){
+			int b=this.read();
+			n|=(b & 0x7F)<<shift;
+			if(b<0x80){
+				if(shift==28 && 0x07<b)throw new IOException("Invalid number");
+				return n;
+			}
+		}
+		throw new IOException("Invalid number");
+	}
+
+	/** Reads a byte.
+	 * @exception EOFException at the end */
+	private int read()throws IOException{
+		int b=this.in.read();
+		if(b<0)throw new EOFException();
+		return b;
+	}
+}
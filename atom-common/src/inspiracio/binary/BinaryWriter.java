@@ -0,0 +1,264 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.binary;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.HashMap;
+import java.util.Map;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/** A content handler that writes the XML document in a compact
+ * binary format, for traffic between our own servers.
+ * <p>
+ * The format:
+ * <pre>
+ * document = 'A' 'T' 'B' 1 event* 0
+ * event    = 1 symbol(tag) varint(n) (symbol(name) value)*n   start element
+ *          | 2 string                                       text
+ *          | 3                                              end element
+ * symbol   = varint(0) string      new symbol, gets the next number from 1 on
+ *          | varint(k)             the symbol with number k
+ * value    = symbol  if the name is xmlns, xmlns:* or xsi:schemaLocation
+ *          | string  otherwise
+ * string   = varint(length in bytes) UTF-8 bytes
+ * varint   = 7 bits per byte, least significant first, high bit means more
+ * </pre>
+ * So every tag, attribute name and namespace declaration is written
+ * once per document and after that as a small number.
+ * <p>
+ * The text is written as it comes, that is, escaped for XML if it
+ * comes from EasyContentHandler. BinaryParser gives it back in the
+ * DOM exactly like the XML parser does.
+ * <p>
+ * Not threadsafe. Make one writer for each document.
+ * */
+public class BinaryWriter implements ContentHandler{
+
+	/** Content type of this format in http */
+	public static final String CONTENT_TYPE="application/vnd.inspiracio.atom+binary";
+
+	/** The first bytes of every document */
+	static final byte[] MAGIC={'A', 'T', 'B', 1};
+
+	static final int END_DOCUMENT=0;
+	static final int START=1;
+	static final int TEXT=2;
+	static final int END=3;
+
+	//State -------------------------------------------------------
+
+	private OutputStream out;
+
+	/** Bytes not yet written to out */
+	private byte[] buffer=new byte[8*1024];
+	private int count=0;
+
+	/** Symbols written so far, with their numbers */
+	private Map<String, Integer> symbols=new HashMap<String, Integer>();
+
+	/** Text not yet written */
+	private StringBuilder text=new StringBuilder();
+
+	//Constructors ------------------------------------------------
+
+	/** Construct a writer for an output stream.
+	 * @param out The writer flushes it at the end of the document,
+	 * 	but does not close it.
+	 * */
+	public BinaryWriter(OutputStream out){
+		this.out=out;
+	}
+
+	//SAX event handling methods ----------------------------------
+
+	@Override public void setDocumentLocator(Locator locator){}
+
+	/** Writes the magic bytes.
+	 * @exception SAXException wrapping IOException */
+	@Override public void startDocument()throws SAXException{
+		try{
+			for(byte b : MAGIC)
+				this.write(b);
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+	}
+
+	/** Writes the end and flushes.
+	 * @exception SAXException wrapping IOException */
+	@Override public void endDocument()throws SAXException{
+		try{
+			this.text();
+			this.write(END_DOCUMENT);
+			this.flush();
+			this.out.flush();
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+	}
+
+	@Override public void startPrefixMapping(String prefix, String uri){}
+
+	@Override public void endPrefixMapping(String prefix){}
+
+	/** Writes a start element.
+	 * @exception SAXException wrapping IOException */
+	@Override public void startElement(String uri, String localName, String qName, Attributes atts)throws SAXException{
+		String tag=0<qName.length() ? qName : localName;
+		try{
+			this.text();
+			this.write(START);
+			this.symbol(tag);
+			int n=atts.getLength();
+			this.varint(n);
+			for(int i=0; i<n; i++){
+				String name=atts.getQName(i);
+				this.symbol(name);
+				String value=atts.getValue(i);
+				if(isSymbolValue(name))
+					this.symbol(value);
+				else
+					this.string(value);
+			}
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+	}
+
+	/** Writes an end element.
+	 * @exception SAXException wrapping IOException */
+	@Override public void endElement(String uri, String localName, String qName)throws SAXException{
+		try{
+			this.text();
+			this.write(END);
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+	}
+
+	/** Collects text. */
+	@Override public void characters(char[] ch, int start, int length){
+		this.text.append(ch, start, length);
+	}
+
+	@Override public void ignorableWhitespace(char[] ch, int start, int length){
+		this.characters(ch, start, length);
+	}
+
+	/** Ignored. */
+	@Override public void processingInstruction(String target, String data){}
+
+	@Override public void skippedEntity(String name){}
+
+	//Helpers -----------------------------------------------------
+
+	/** Are the values of attributes with this name written as symbols? */
+	static boolean isSymbolValue(String name){
+		return name.startsWith("xmlns") || "xsi:schemaLocation".equals(name);
+	}
+
+	/** Writes the collected text, if there is any. */
+	private void text()throws IOException{
+		if(0<this.text.length()){
+			this.write(TEXT);
+			this.string(this.text);
+			this.text.setLength(0);
+		}
+	}
+
+	/** Writes a symbol: its number if it has been written before,
+	 * else 0 and the string. */
+	private void symbol(String s)throws IOException{
+		Integer k=this.symbols.get(s);
+		if(k!=null){
+			this.varint(k);
+			return;
+		}
+		this.varint(0);
+		this.string(s);
+		this.symbols.put(s, this.symbols.size()+1);
+	}
+
+	/** Writes the length in bytes and the chars in UTF-8. */
+	private void string(CharSequence s)throws IOException{
+		int length=s.length();
+		int bytes=0;
+		for(int i=0; i<length; i++){
+			char c=s.charAt(i);
+			if(c<0x80)bytes+=1;
+			else if(c<0x800)bytes+=2;
+			else if(Character.isHighSurrogate(c) && i+1<length && Character.isLowSurrogate(s.charAt(i+1))){bytes+=4; i++;}
+			else bytes+=3;
+		}
+		this.varint(bytes);
+		if(this.buffer.length-this.count<bytes)
+			this.flush();
+		if(this.buffer.length<bytes)
+			this.buffer=new byte[bytes];
+		byte[] o=this.buffer;
+		int n=this.count;
+		for(int i=0; i<length; i++){
+			char c=s.charAt(i);
+			if(c<0x80){
+				o[n++]=(byte)(c);
+			}else if(c<0x800){
+				o[n++]=(byte)(0xC0 | (c>>6));
+				o[n++]=(byte)(0x80 | (c & 0x3F));
+			}else if(Character.isHighSurrogate(c) && i+1<length && Character.isLowSurrogate(s.charAt(i+1))){
+				int p=Character.toCodePoint(c, s.charAt(++i));
+				o[n++]=(byte)(0xF0 | (p>>18));
+				o[n++]=(byte)(0x80 | ((p>>12) & 0x3F));
+				o[n++]=(byte)(0x80 | ((p>>6) & 0x3F));
+				o[n++]=(byte)(0x80 | (p & 0x3F));
+			}else{
+				//Unpaired surrogates go as they are, in three bytes, so that they come back.
+				o[n++]=(byte)(0xE0 | (c>>12));
+				o[n++]=(byte)(0x80 | ((c>>6) & 0x3F));
+				o[n++]=(byte)(0x80 | (c & 0x3F));
+			}
+		}
+		this.count=n;
+	}
+
+	/** Writes a byte to the buffer. */
+	private void write(int b)throws IOException{
+		if(this.count==this.buffer.length)
+			this.flush();
+		this.buffer[this.count++]=(byte)b;
+	}
+
+	/** Writes the buffer to out. */
+	private void flush()throws IOException{
+		this.out.write(this.buffer, 0, this.count);
+		this.count=0;
+	}
+
+	/** Writes a non-negative int in 7-bit groups. */
+	private void varint(int n)throws IOException{
+		while(0x7F<n){
+			this.write(0x80 | (n & 0x7F));
+			n>>>=7;
+		}
+		this.write(n);
+	}
+}
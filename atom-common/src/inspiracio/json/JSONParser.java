@@ -0,0 +1,256 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.json;
+
+import inspiracio.xml.XMLRuntime;
+import inspiracio.xml.XMLString;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.InputStreamReader;
+import java.io.Reader;
+
+import org.w3c.dom.Document;
+import org.w3c.dom.Element;
+
+/** Parses JSON in the format that JSONWriter writes into a DOM,
+ * the same DOM that the XML parser makes of the equivalent XML.
+ * So the parse(org.w3c.dom.Element) methods of Entry and Feed
+ * work for JSON too.
+ * <p>
+ * The mapping back:
+ * <ul>
+ * 	<li>The document object has one member that is an object: the root element.
+ * 		Other members, like "version" and "encoding", are ignored.
+ * 	<li>In an element object, member "$t" is the text, members with a string,
+ * 		number or boolean are attributes, members with an object are child
+ * 		elements, and members with an array are several child elements.
+ * 	<li>In names, "$" becomes ":".
+ * </ul>
+ * Not threadsafe. Make one parser for each document.
+ * */
+public class JSONParser{
+
+	//State -------------------------------------------------------
+
+	private Reader in;
+
+	/** The next char, or -1 at the end */
+	private int c;
+
+	/** Position of c, for error messages */
+	private int position=-1;
+
+	private Document document;
+
+	//Constructors ------------------------------------------------
+
+	/** Construct a parser for UTF-8 JSON.
+	 * @param in
+	 * */
+	public JSONParser(InputStream in){
+		try{
+			this.in=new BufferedReader(new InputStreamReader(in, "UTF-8"));
+		}catch(IOException e){
+			throw new RuntimeException(e);//UTF-8 is always there.
+		}
+	}
+
+	//Methods -----------------------------------------------------
+
+	/** Converts input stream into Document.
+	 * Like DOM.getDocumentRoot(InputStream), but for JSON.
+	 * @param in UTF-8 JSON
+	 * @return the root element of a newly created document
+	 * @exception RuntimeException wrapping IOException: reading or invalid JSON
+	 * */
+	public static Element getDocumentRoot(InputStream in){
+		try{
+			return new JSONParser(in).parse();
+		}catch(IOException e){
+			throw new RuntimeException("Problem parsing the json document", e);
+		}
+	}
+
+	/** Parses the JSON.
+	 * @return root element of a new document
+	 * @exception IOException reading, or invalid JSON
+	 * */
+	public Element parse()throws IOException{
+		this.document=XMLRuntime.newDocument();
+		this.next();
+		this.skip();
+		this.expect('{');
+		Element root=null;
+		this.skip();
+		if(this.c!='}'){
+			do{
+				this.skip();
+				String name=this.string();
+				this.skip();
+				this.expect(':');
+				this.skip();
+				if(this.c=='{'){
+					if(root!=null)throw this.error("Several root elements");
+					root=this.element(name);
+				}else{
+					this.value();//version, encoding: ignore
+				}
+				this.skip();
+			}while(this.accept(','));
+		}
+		this.expect('}');
+		this.skip();
+		if(this.c!=-1)throw this.error("Content after the end");
+		if(root==null)throw this.error("No root element");
+		this.document.appendChild(root);
+		return root;
+	}
+
+	//Helpers -----------------------------------------------------
+
+	/** Parses an element object, c being '{'. */
+	private Element element(String name)throws IOException{
+		Element element=this.document.createElement(tag(name));
+		this.expect('{');
+		this.skip();
+		if(this.c!='}'){
+			do{
+				this.skip();
+				String key=this.string();
+				this.skip();
+				this.expect(':');
+				this.skip();
+				if(this.c=='{'){
+					element.appendChild(this.element(key));
+				}else if(this.c=='['){
+					this.next();
+					this.skip();
+					if(this.c!=']'){
+						do{
+							this.skip();
+							if(this.c!='{')throw this.error("Expected object in array " + key);
+							element.appendChild(this.element(key));
+							this.skip();
+						}while(this.accept(','));
+					}
+					this.expect(']');
+				}else{
+					String value=this.value();
+					if("$t".equals(key)){
+						//The XML parser gives the text still escaped once. Do the same.
+						element.appendChild(this.document.createTextNode(XMLString.escape(value)));
+					}else if(value!=null){
+						element.setAttribute(tag(key), value);
+					}
+				}
+				this.skip();
+			}while(this.accept(','));
+		}
+		this.expect('}');
+		return element;
+	}
+
+	/** Parses a string, number, true, false or null.
+	 * @return the value as string, null for null */
+	private String value()throws IOException{
+		if(this.c=='"')
+			return this.string();
+		StringBuilder literal=new StringBuilder();
+		while(this.c!=-1 && (Character.isLetterOrDigit(this.c) || this.c=='-' || this.c=='+' || this.c=='.')){
+			literal.append((char)this.c);
+			this.next();
+		}
+		String s=literal.toString();
+		if(s.length()==0)throw this.error("Expected value");
+		if("null".equals(s))return null;
+		return s;
+	}
+
+	/** Parses a string literal, c being '"'. */
+	private String string()throws IOException{
+		this.expect('"');
+		StringBuilder s=new StringBuilder();
+		while(this.c!='"'){
+			if(this.c==-1)throw this.error("Unterminated string");
+			if(this.c=='\\'){
+				this.next();
+				switch(this.c){
+				case '"': s.append('"'); break;
+				case '\\': s.append('\\'); break;
+				case '/': s.append('/'); break;
+				case 'b': s.append('\b'); break;
+				case 'f': s.append('\f'); break;
+				case 'n': s.append('\n'); break;
+				case 'r': s.append('\r'); break;
+				case 't': s.append('\t'); break;
+				case 'u':
+					int u=0;
+					for(int i=0; i<4; i++){
+						this.next();
+						int d=Character.digit(this.c, 16);
+						if(d<0)throw this.error("Invalid \\u escape");
+						u=16*u + d;
+					}
+					s.append((char)u);
+					break;
+				default: throw this.error("Invalid escape");
+				}
+			}else{
+				s.append((char)this.c);
+			}
+			this.next();
+		}
+		this.next();
+		return s.toString();
+	}
+
+	/** Skips whitespace. */
+	private void skip()throws IOException{
+		while(this.c==' ' || this.c=='\t' || this.c=='\n' || this.c=='\r')
+			this.next();
+	}
+
+	/** If c is this char, consumes it and returns true. */
+	private boolean accept(char expected)throws IOException{
+		if(this.c!=expected)return false;
+		this.next();
+		return true;
+	}
+
+	/** Consumes this char or throws IOException. */
+	private void expect(char expected)throws IOException{
+		if(!this.accept(expected))
+			throw this.error("Expected " + expected);
+	}
+
+	private void next()throws IOException{
+		this.c=this.in.read();
+		this.position++;
+	}
+
+	private IOException error(String msg){
+		return new IOException(msg + " at position " + this.position);
+	}
+
+	/** The tag or attribute name for a JSON name: "$" becomes ":". */
+	private static String tag(String name){
+		return name.replace('$', ':');
+	}
+}
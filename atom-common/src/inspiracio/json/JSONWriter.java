@@ -0,0 +1,336 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.json;
+
+import inspiracio.xml.XMLString;
+
+import java.io.BufferedWriter;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.io.OutputStreamWriter;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/** A content handler that writes the XML document as JSON, in the
+ * format of GData alt=json.
+ * <p>
+ * The format:
+ * <ul>
+ * 	<li>The document is an object with members "version", "encoding"
+ * 		and the root element.
+ * 	<li>An element is an object. Its attributes are string members.
+ * 		Its text is member "$t".
+ * 	<li>Child elements are members with the tag as name. If there are
+ * 		several children with the same tag, or the tag is entry, link,
+ * 		author, category or contributor, the member is an array.
+ * 	<li>In names, ":" becomes "$". For example "gd$etag", "xmlns$gd".
+ * </ul>
+ * <p>
+ * Streams: the entries of a feed are written one by one, as they come.
+ * Only one of them is held in memory. The other children of the root
+ * element are kept, grouped by tag, and written after the entries, so
+ * that a tag is one member even if its elements are not consecutive.
+ * <p>
+ * The text that comes from EasyContentHandler is escaped for XML.
+ * This writer unescapes it, so that the JSON has the real text.
+ * <p>
+ * Not threadsafe. Make one writer for each document.
+ * */
+public class JSONWriter implements ContentHandler{
+
+	/** These tags are always arrays, even if there is only one. */
+	private static final Set<String> ARRAYS=new HashSet<String>(Arrays.asList("entry", "link", "author", "category", "contributor"));
+
+	/** Element, while we collect it. */
+	private static class Node{
+		String tag;
+		List<String> attributes=new ArrayList<String>();//name, value, name, value, ...
+		StringBuilder text;//null if there is no text
+		List<Node> children=new ArrayList<Node>();
+		Node(String tag){this.tag=tag;}
+	}
+
+	//State -------------------------------------------------------
+
+	private Writer out;
+
+	/** Open elements below the root element. The first is a child of the root element. */
+	private List<Node> stack=new ArrayList<Node>();
+
+	/** Depth of the current element. 0 before and after the root element. */
+	private int depth=0;
+
+	/** Children of the root element except entries, grouped by tag,
+	 * written at the end of the root element. */
+	private Map<String, List<Node>> rootChildren=new LinkedHashMap<String, List<Node>>();
+
+	/** Have we written the array start for the entries? */
+	private boolean inEntries=false;
+
+	/** Members of the root element so far. For commas. */
+	private int members=0;
+
+	/** Text directly in the root element. */
+	private StringBuilder rootText;
+
+	//Constructors ------------------------------------------------
+
+	/** Construct a writer for an output stream.
+	 * @param out Receives the JSON as UTF-8. The writer flushes it
+	 * 	at the end of the document, but does not close it.
+	 * */
+	public JSONWriter(OutputStream out){
+		try{
+			this.out=new BufferedWriter(new OutputStreamWriter(out, "UTF-8"), 8*1024);
+		}catch(IOException e){
+			throw new RuntimeException(e);//UTF-8 is always there.
+		}
+	}
+
+	//SAX event handling methods ----------------------------------
+
+	@Override public void setDocumentLocator(Locator locator){}
+
+	@Override public void startDocument(){}
+
+	/** Writes the end and flushes.
+	 * @exception SAXException wrapping IOException
+	 * */
+	@Override public void endDocument()throws SAXException{
+		try{
+			this.out.flush();
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+	}
+
+	@Override public void startPrefixMapping(String prefix, String uri){}
+
+	@Override public void endPrefixMapping(String prefix){}
+
+	/** Starts an element.
+	 * @exception SAXException wrapping IOException
+	 * */
+	@Override public void startElement(String uri, String localName, String qName, Attributes atts)throws SAXException{
+		String tag=0<qName.length() ? qName : localName;
+		try{
+			if(this.depth==0){
+				//root element
+				this.out.write("{\"version\":\"1.0\",\"encoding\":\"UTF-8\",");
+				this.string(name(tag));
+				this.out.write(":{");
+				for(int i=0; i<atts.getLength(); i++){
+					this.member(name(atts.getQName(i)));
+					this.string(atts.getValue(i));
+				}
+			}else{
+				Node node=new Node(tag);
+				for(int i=0; i<atts.getLength(); i++){
+					node.attributes.add(atts.getQName(i));
+					node.attributes.add(atts.getValue(i));
+				}
+				if(!this.stack.isEmpty())
+					this.top().children.add(node);
+				this.stack.add(node);
+			}
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+		this.depth++;
+	}
+
+	/** Ends an element.
+	 * @exception SAXException wrapping IOException
+	 * */
+	@Override public void endElement(String uri, String localName, String qName)throws SAXException{
+		this.depth--;
+		try{
+			if(this.depth==0){
+				//root element
+				if(this.inEntries)
+					this.out.write(']');
+				for(Map.Entry<String, List<Node>> group : this.rootChildren.entrySet()){
+					this.member(name(group.getKey()));
+					this.group(group.getKey(), group.getValue());
+				}
+				if(this.rootText!=null){
+					this.member("$t");
+					this.string(XMLString.unescape(this.rootText.toString()));
+				}
+				this.out.write("}}");
+			}else{
+				Node node=this.stack.remove(this.stack.size()-1);
+				if(this.depth==1)
+					this.rootChild(node);
+			}
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+	}
+
+	/** Collects text. */
+	@Override public void characters(char[] ch, int start, int length){
+		if(this.stack.isEmpty()){
+			//text directly in the root element: ignore whitespace
+			boolean blank=true;
+			for(int i=start; i<start+length && blank; i++)
+				blank=Character.isWhitespace(ch[i]);
+			if(blank)return;
+			if(this.rootText==null)this.rootText=new StringBuilder();
+			this.rootText.append(ch, start, length);
+			return;
+		}
+		Node node=this.top();
+		if(node.text==null)node.text=new StringBuilder(length);
+		node.text.append(ch, start, length);
+	}
+
+	@Override public void ignorableWhitespace(char[] ch, int start, int length){}
+
+	/** Ignored: JSON has no processing instructions. */
+	@Override public void processingInstruction(String target, String data){}
+
+	@Override public void skippedEntity(String name){}
+
+	//Helpers -----------------------------------------------------
+
+	private Node top(){return this.stack.get(this.stack.size()-1);}
+
+	/** A child of the root element is complete. An entry is written at once,
+	 * other children are kept for the end. */
+	private void rootChild(Node node)throws IOException{
+		if(!"entry".equals(node.tag)){
+			add(this.rootChildren, node);
+			return;
+		}
+		if(this.inEntries){
+			this.out.write(',');
+		}else{
+			this.member(name(node.tag));
+			this.out.write('[');
+			this.inEntries=true;
+		}
+		this.object(node);
+	}
+
+	/** Writes a name and colon for a member of the root element, with comma if necessary. */
+	private void member(String name)throws IOException{
+		if(0<this.members++)
+			this.out.write(',');
+		this.string(name);
+		this.out.write(':');
+	}
+
+	/** Writes an element as object. */
+	private void object(Node node)throws IOException{
+		this.out.write('{');
+		boolean first=true;
+		for(int i=0; i<node.attributes.size(); i+=2){
+			if(!first)this.out.write(',');
+			first=false;
+			this.string(name(node.attributes.get(i)));
+			this.out.write(':');
+			this.string(node.attributes.get(i+1));
+		}
+		if(node.text!=null){
+			if(!first)this.out.write(',');
+			first=false;
+			this.out.write("\"$t\":");
+			this.string(XMLString.unescape(node.text.toString()));
+		}
+		//children grouped by tag, in order of first appearance
+		Map<String, List<Node>> groups=new LinkedHashMap<String, List<Node>>();
+		for(Node child : node.children)
+			add(groups, child);
+		for(Map.Entry<String, List<Node>> group : groups.entrySet()){
+			if(!first)this.out.write(',');
+			first=false;
+			this.string(name(group.getKey()));
+			this.out.write(':');
+			this.group(group.getKey(), group.getValue());
+		}
+		this.out.write('}');
+	}
+
+	/** Writes the elements with the same tag as value of a member:
+	 * an array if there are several or the tag is always an array. */
+	private void group(String tag, List<Node> nodes)throws IOException{
+		boolean array=1<nodes.size() || ARRAYS.contains(tag);
+		if(array)this.out.write('[');
+		for(int i=0; i<nodes.size(); i++){
+			if(0<i)this.out.write(',');
+			this.object(nodes.get(i));
+		}
+		if(array)this.out.write(']');
+	}
+
+	/** Adds an element to the group of its tag. */
+	private static void add(Map<String, List<Node>> groups, Node node){
+		List<Node> group=groups.get(node.tag);
+		if(group==null){
+			group=new ArrayList<Node>(1);
+			groups.put(node.tag, group);
+		}
+		group.add(node);
+	}
+
+	/** Writes a JSON string literal. */
+	private void string(String s)throws IOException{
+		Writer w=this.out;
+		w.write('"');
+		for(int i=0; i<s.length(); i++){
+			char c=s.charAt(i);
+			switch(c){
+			case '"': w.write("\\\""); break;
+			case '\\': w.write("\\\\"); break;
+			case '\n': w.write("\\n"); break;
+			case '\r': w.write("\\r"); break;
+			case '\t': w.write("\\t"); break;
+			case '\b': w.write("\\b"); break;
+			case '\f': w.write("\\f"); break;
+			default:
+				if(c<0x20 || c==0x2028 || c==0x2029){
+					//control chars, and line separators that javascript does not like in strings
+					String hex=Integer.toHexString(c);
+					w.write("\\u");
+					for(int j=hex.length(); j<4; j++)w.write('0');
+					w.write(hex);
+				}else{
+					w.write(c);
+				}
+			}
+		}
+		w.write('"');
+	}
+
+	/** The JSON name for a tag or attribute name: ":" becomes "$". */
+	static String name(String tag){
+		return tag.replace(':', '$');
+	}
+}
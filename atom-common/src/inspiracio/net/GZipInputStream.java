@@ -0,0 +1,299 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.net;
+
+import java.io.EOFException;
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PushbackInputStream;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.DataFormatException;
+import java.util.zip.Inflater;
+import java.util.zip.ZipException;
+
+/** Like java.util.zip.GZIPInputStream, but the Inflaters are reused.
+ * <p>
+ * The Inflater goes back to a pool at the end of the gzip data or
+ * on close(). Like GZIPInputStream, reads concatenated gzip members,
+ * and ignores bytes after the last member.
+ * <p>
+ * Use unzip(InputStream) for bodies that say they are gzipped but
+ * maybe are not, for example because Google AppEngine has unzipped them
+ * already without changing the http headers.
+ * <p>
+ * Not threadsafe, but the pool is.
+ * */
+public class GZipInputStream extends FilterInputStream{
+
+	private static final int MAGIC0=0x1f;
+	private static final int MAGIC1=0x8b;
+	private static final int DEFLATED=8;
+
+	//Flags in the header
+	private static final int FHCRC=2;
+	private static final int FEXTRA=4;
+	private static final int FNAME=8;
+	private static final int FCOMMENT=16;
+
+	/** Maximum number of idle Inflaters */
+	private static final int POOL_SIZE=16;
+
+	/** Idle Inflaters */
+	private static final BlockingQueue<Inflater> pool=new ArrayBlockingQueue<Inflater>(POOL_SIZE);
+
+	//State --------------------------------------------------------
+
+	/** Null at the end and after close() */
+	private Inflater inflater;
+
+	private final CRC32 crc=new CRC32();
+
+	/** Compressed bytes from the stream. Those from position to limit
+	 * are not used yet. */
+	private final byte[] buffer=new byte[8192];
+	private int position=0;
+	private int limit=0;
+
+	/** End of the gzip data */
+	private boolean eof=false;
+
+	private boolean closed=false;
+
+	/** For read() */
+	private final byte[] one=new byte[1];
+
+	//Constructors -------------------------------------------------
+
+	/** Makes a stream and reads the gzip header.
+	 * @param in gzip data
+	 * @exception ZipException not gzip
+	 * @exception IOException
+	 * */
+	public GZipInputStream(InputStream in)throws IOException{
+		super(in);
+		this.inflater=borrow();
+		try{
+			this.readHeader();//IOException
+		}catch(IOException ioe){
+			this.giveBack();
+			throw ioe;
+		}
+	}
+
+	/** Unzips a stream if it starts with the gzip magic bytes. Otherwise
+	 * it is not gzipped, and reads as it is. This reads the first two bytes,
+	 * and pushes them back.
+	 * @param in maybe gzipped
+	 * @return a stream to read the unzipped bytes
+	 * @exception IOException
+	 * */
+	public static InputStream unzip(InputStream in)throws IOException{
+		PushbackInputStream pushback=new PushbackInputStream(in, 2);
+		byte[] magic=new byte[2];
+		int n=0;
+		while(n<magic.length){
+			int red=pushback.read(magic, n, magic.length-n);//IOException
+			if(red<0)
+				break;
+			n+=red;
+		}
+		if(0<n)
+			pushback.unread(magic, 0, n);//IOException
+		if(n==2 && (magic[0]&0xff)==MAGIC0 && (magic[1]&0xff)==MAGIC1)
+			return new GZipInputStream(pushback);//IOException
+		return pushback;
+	}
+
+	//Methods ------------------------------------------------------
+
+	@Override public int read()throws IOException{
+		int n=this.read(this.one, 0, 1);
+		return n<0 ? -1 : this.one[0] & 0xff;
+	}
+
+	@Override public int read(byte[] b, int off, int len)throws IOException{
+		if(this.closed)
+			throw new IOException("Stream closed");
+		if(this.eof)
+			return -1;
+		if(len==0)
+			return 0;
+		Inflater inflater=this.inflater;
+		while(true){
+			int n;
+			try{
+				n=inflater.inflate(b, off, len);//DataFormatException
+			}catch(DataFormatException dfe){
+				throw new ZipException(dfe.getMessage());
+			}
+			if(0<n){
+				this.crc.update(b, off, n);
+				return n;
+			}
+			if(inflater.finished()){
+				this.position=this.limit-inflater.getRemaining();
+				this.readTrailer();//IOException
+				if(!this.nextMember()){//IOException
+					this.eof=true;
+					this.giveBack();
+					return -1;
+				}
+			}else if(inflater.needsDictionary()){
+				throw new ZipException("Invalid gzip data");
+			}else if(inflater.needsInput()){
+				if(this.position==this.limit)
+					this.fill();//IOException
+				inflater.setInput(this.buffer, this.position, this.limit-this.position);
+				this.position=this.limit;
+			}
+		}
+	}
+
+	@Override public long skip(long n)throws IOException{
+		byte[] bytes=new byte[(int)Math.min(n, 2048)];
+		long skipped=0;
+		while(skipped<n){
+			int red=this.read(bytes, 0, (int)Math.min(n-skipped, bytes.length));//IOException
+			if(red<0)
+				break;
+			skipped+=red;
+		}
+		return skipped;
+	}
+
+	/** Maybe more, until the end. */
+	@Override public int available()throws IOException{
+		if(this.closed)
+			throw new IOException("Stream closed");
+		return this.eof ? 0 : 1;
+	}
+
+	@Override public boolean markSupported(){return false;}
+
+	@Override public void mark(int readlimit){}
+
+	@Override public void reset()throws IOException{
+		throw new IOException("mark/reset not supported");
+	}
+
+	/** Gives back the Inflater and closes the underlying stream. */
+	@Override public void close()throws IOException{
+		if(this.closed)
+			return;
+		this.closed=true;
+		this.giveBack();
+		this.in.close();//IOException
+	}
+
+	//Helpers ------------------------------------------------------
+
+	/** Reads the header of a member, up to the compressed data. See RFC 1952. */
+	private void readHeader()throws IOException{
+		if(this.next()!=MAGIC0 || this.next()!=MAGIC1)
+			throw new ZipException("Not in GZIP format");
+		if(this.next()!=DEFLATED)
+			throw new ZipException("Unsupported compression method");
+		int flags=this.next();
+		this.skipBytes(6);//modification time, extra flags, operating system
+		if((flags & FEXTRA)!=0)
+			this.skipBytes(this.next() | this.next()<<8);
+		if((flags & FNAME)!=0)
+			while(this.next()!=0);
+		if((flags & FCOMMENT)!=0)
+			while(this.next()!=0);
+		if((flags & FHCRC)!=0)
+			this.skipBytes(2);
+	}
+
+	/** Reads the trailer of a member and checks it. */
+	private void readTrailer()throws IOException{
+		long crc=this.readInt();
+		long size=this.readInt();
+		if(crc!=this.crc.getValue() || size!=(this.inflater.getBytesWritten() & 0xffffffffL))
+			throw new ZipException("Corrupt GZIP trailer");
+	}
+
+	/** After a trailer, starts another member, if there is one.
+	 * @return Is there another member? */
+	private boolean nextMember()throws IOException{
+		if(this.position==this.limit){
+			int n=this.in.read(this.buffer, 0, this.buffer.length);//IOException
+			if(n<=0)
+				return false;
+			this.position=0;
+			this.limit=n;
+		}
+		if((this.buffer[this.position] & 0xff)!=MAGIC0)
+			return false;//Bytes after the gzip data: ignore them, like GZIPInputStream.
+		this.readHeader();//IOException
+		this.inflater.reset();
+		this.crc.reset();
+		return true;
+	}
+
+	/** Reads an unsigned int, little-endian. */
+	private long readInt()throws IOException{
+		long n=0;
+		for(int i=0; i<4; i++)
+			n|=(long)this.next()<<(8*i);
+		return n;
+	}
+
+	private void skipBytes(int n)throws IOException{
+		for(int i=0; i<n; i++)
+			this.next();//IOException
+	}
+
+	/** The next compressed byte. */
+	private int next()throws IOException{
+		if(this.position==this.limit)
+			this.fill();//IOException
+		return this.buffer[this.position++] & 0xff;
+	}
+
+	/** Reads more compressed bytes into the buffer, which has no unused bytes. */
+	private void fill()throws IOException{
+		int n=this.in.read(this.buffer, 0, this.buffer.length);//IOException
+		if(n<0)
+			throw new EOFException("Unexpected end of GZIP input stream");
+		this.position=0;
+		this.limit=n;
+	}
+
+	/** Gets an idle Inflater, or makes a new one. */
+	private static Inflater borrow(){
+		Inflater inflater=pool.poll();
+		if(inflater==null)
+			inflater=new Inflater(true);//raw inflate: we read the gzip header and trailer
+		return inflater;
+	}
+
+	/** Keeps the Inflater for the next stream, or frees it if there are enough idle ones. */
+	private void giveBack(){
+		Inflater inflater=this.inflater;
+		if(inflater==null)
+			return;
+		this.inflater=null;
+		inflater.reset();
+		if(!pool.offer(inflater))
+			inflater.end();
+	}
+}
@@ -0,0 +1,165 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.net;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+
+/** Like java.util.zip.GZIPOutputStream, but with a compression level,
+ * and the Deflaters are reused.
+ * <p>
+ * A Deflater holds native zlib memory until end() or garbage collection.
+ * Here, finish() gives the Deflater back to a pool for the next stream
+ * with the same level. A stream that is never finished or closed does
+ * not give it back, and then the garbage collector frees it as usual.
+ * <p>
+ * Not threadsafe, but the pool is.
+ * */
+public class GZipOutputStream extends FilterOutputStream{
+
+	/** Magic number, deflate, no flags, no time, no extra flags, OS 0, like GZIPOutputStream. */
+	private static final byte[] HEADER={0x1f, (byte)0x8b, Deflater.DEFLATED, 0, 0, 0, 0, 0, 0, 0};
+
+	/** Maximum number of idle Deflaters for each level */
+	private static final int POOL_SIZE=16;
+
+	/** Idle Deflaters, at index level+1, for levels -1 to 9 */
+	private static final List<BlockingQueue<Deflater>> pools=new ArrayList<BlockingQueue<Deflater>>();
+	static{
+		for(int level=Deflater.DEFAULT_COMPRESSION; level<=Deflater.BEST_COMPRESSION; level++)
+			pools.add(new ArrayBlockingQueue<Deflater>(POOL_SIZE));
+	}
+
+	//State --------------------------------------------------------
+
+	private final int level;
+
+	/** Null after finish() */
+	private Deflater deflater;
+
+	private final CRC32 crc=new CRC32();
+
+	/** Number of uncompressed bytes */
+	private long size=0;
+
+	private final byte[] buffer=new byte[8192];
+
+	/** For write(int) */
+	private final byte[] one=new byte[1];
+
+	//Constructors -------------------------------------------------
+
+	/** Makes a stream and writes the gzip header.
+	 * @param out
+	 * @param level from Deflater.DEFAULT_COMPRESSION to Deflater.BEST_COMPRESSION
+	 * @exception IOException
+	 * @exception IllegalArgumentException invalid level
+	 * */
+	public GZipOutputStream(OutputStream out, int level)throws IOException{
+		super(out);
+		if(level<Deflater.DEFAULT_COMPRESSION || Deflater.BEST_COMPRESSION<level)
+			throw new IllegalArgumentException("Invalid level " + level);
+		this.level=level;
+		this.deflater=borrow(level);
+		out.write(HEADER);//IOException
+	}
+
+	//Methods ------------------------------------------------------
+
+	@Override public void write(int b)throws IOException{
+		this.one[0]=(byte)b;
+		this.write(this.one, 0, 1);
+	}
+
+	@Override public void write(byte[] b, int off, int len)throws IOException{
+		if(this.deflater==null)
+			throw new IOException("Stream finished");
+		if(len==0)
+			return;
+		this.crc.update(b, off, len);
+		this.size+=len;
+		this.deflater.setInput(b, off, len);
+		while(!this.deflater.needsInput())
+			this.deflate();//IOException
+	}
+
+	/** Writes the rest of the compressed data and the gzip trailer,
+	 * without closing the underlying stream. Gives back the Deflater.
+	 * @exception IOException
+	 * */
+	public void finish()throws IOException{
+		Deflater deflater=this.deflater;
+		if(deflater==null)
+			return;
+		try{
+			deflater.finish();
+			while(!deflater.finished())
+				this.deflate();//IOException
+			int crc=(int)this.crc.getValue();
+			int size=(int)this.size;//modulo 2^32, as in the spec
+			byte[] trailer={
+				(byte)crc, (byte)(crc>>8), (byte)(crc>>16), (byte)(crc>>24),
+				(byte)size, (byte)(size>>8), (byte)(size>>16), (byte)(size>>24)
+			};
+			this.out.write(trailer);//IOException
+		}finally{
+			this.deflater=null;
+			giveBack(this.level, deflater);
+		}
+	}
+
+	/** Finishes and closes the underlying stream. */
+	@Override public void close()throws IOException{
+		try{
+			this.finish();//IOException
+		}finally{
+			this.out.close();//IOException
+		}
+	}
+
+	//Helpers ------------------------------------------------------
+
+	/** Writes what the deflater has. */
+	private void deflate()throws IOException{
+		int n=this.deflater.deflate(this.buffer, 0, this.buffer.length);
+		if(0<n)
+			this.out.write(this.buffer, 0, n);//IOException
+	}
+
+	/** Gets an idle Deflater, or makes a new one. */
+	private static Deflater borrow(int level){
+		Deflater deflater=pools.get(level+1).poll();
+		if(deflater==null)
+			deflater=new Deflater(level, true);//raw deflate: we write the gzip header and trailer
+		return deflater;
+	}
+
+	/** Keeps the Deflater for the next stream, or frees it if there are enough idle ones. */
+	private static void giveBack(int level, Deflater deflater){
+		deflater.reset();
+		if(!pools.get(level+1).offer(deflater))
+			deflater.end();
+	}
+}
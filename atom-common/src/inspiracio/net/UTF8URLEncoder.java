@@ -49,6 +49,8 @@ public class UTF8URLEncoder {
 	 * @param s 
 	 * @return URL-encoded form */
 	public static String encode(String s){
+		if(!needsEncoding(s))
+			return s;
 		try {
 			return URLEncoder.encode(s, "UTF-8");
 		} catch (UnsupportedEncodingException e){
@@ -57,6 +59,21 @@ public class UTF8URLEncoder {
 		}
 	}
 	
+	/** Does URLEncoder change this String? It does not change
+	 * a-z, A-Z, 0-9, dot, hyphen, underscore and asterisk.
+	 * Most parameters are like that, and then we needn't call URLEncoder.
+	 * @param s 
+	 * @return boolean */
+	private static boolean needsEncoding(String s){
+		final int N=s.length();
+		for(int i=0; i<N; i++){
+			char c=s.charAt(i);
+			if(!isSafe(c) && c!='*')
+				return true;
+		}
+		return false;
+	}
+	
 	/** Returns a String that is similar to the input-String
 	 * but is ok to put in semantic URLs. The method works for languages that 
 	 * are mainly Latin + diacritics, It does not work for other languages.
@@ -36,5 +36,14 @@ public class BadRequestException extends HttpException {
 	public BadRequestException(String msg){
 		super(400, msg);
 	}
+
+	/** Constructs a BadRequestException with message, wrapping the cause.
+	 * @param msg
+	 * @param cause The underlying exception
+	 * */
+	public BadRequestException(String msg, Throwable cause){
+		super(msg, cause);
+		this.setStatus(400);
+	}
 	
 }
\ No newline at end of file
@@ -100,14 +100,49 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * -question=fileEnd
 	 * Could make private methods the return these indexes and
 	 * program the business methods in terms of them.
-	 * Cleaner, more robust code, with fewer repetitions. */
+	 * Cleaner, more robust code, with fewer repetitions.
+	 * 
+	 * Done: index() finds these indexes once, and they are kept until
+	 * the URL changes. Every method that changes the URL calls changed().
+	 * Also toString() is kept. */
 
 	/** encoding for URL parameters */
 	private final static String ENCODING="UTF-8";
 
+	/** The URL of new HttpURLs, and the base of absolute and relative URLs */
+	private final static String DEFAULT="http://www.google.com/";
+
 	/** The complete URL in a StringBuilder. */
 	private StringBuilder url=null;
 
+	/* Indexes in the URL, kept while the URL does not change. 
+	 * They are the results of indexOf and lastIndexOf. */
+	
+	/** Are the indexes correct? */
+	private boolean indexed=false;
+	
+	/** indexOf("://") */
+	private int schemeEnd;
+	
+	/** indexOf(":", hostBegin): maybe the port */
+	private int colon;
+	
+	/** indexOf("/", hostBegin), or length if there is none */
+	private int pathBegin;
+	
+	/** lastIndexOf("/") */
+	private int lastSlash;
+	
+	/** lastIndexOf("?"): the parameters */
+	private int question;
+
+	/** toString(), or null */
+	private String string=null;
+
+	/** Has toStringBuilder() given away the StringBuilder? 
+	 * Then the client may change it, and we cannot keep anything. */
+	private boolean exposed=false;
+
 	/** Make an HttpURL initialised to an arbitrary URL. */
 	public HttpURL(){
 //		try{
@@ -115,8 +150,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 //		}catch(NoCurrentRequestException e){
 //			this.url=null;
 //		}
-		String s="http://www.google.com/";
-		this.url=new StringBuilder(s);
+		this.url=new StringBuilder(DEFAULT);
 	}
 	
 	/** Make an HttpURL from a complete URL, an absolute URL, or
@@ -130,16 +164,17 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * @param url as a String. Strings are immutable,
 	 * 	so any manipulations on this HttpURL cannot affect the client. */
 	public HttpURL(String url) {
-		this();//Initialise to current URL
 		if (url.startsWith("http://") || url.startsWith("https://") || url.startsWith("//")){
 			//It is a complete URL.
 			this.setCompleteURL(url);
 		} else if (url.startsWith("/")){
 			//It is an absolute URL
+			this.url=new StringBuilder(DEFAULT);//Initialise to current URL
 			this.setAbsolute(url);
 		} else {
 			//It is a relative URL.
 			//Make absolute URL from the relative URL.
+			this.url=new StringBuilder(DEFAULT);//Initialise to current URL
 			this.setRelative(url);
 		}
 	}
@@ -223,20 +258,20 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * should not manipulate the StringBuilder from the outside.
 	 */
 	public HttpURL(StringBuilder url){
-		this();//Initialise to current URL
 		if (
 			StringBuilderUtils.startsWith(url, "http://") || 
 			StringBuilderUtils.startsWith(url, "https://")
 		){
 			//It is a complete URL.
-			String s=url.toString();
-			this.setCompleteURL(s);
+			this.setCompleteURL(new StringBuilder(url));//copy
 		} else if (StringBuilderUtils.startsWith(url, "/")){
 			//It is an absolute URL
+			this.url=new StringBuilder(DEFAULT);//Initialise to current URL
 			this.setAbsolute(url.toString());
 		} else {
 			//It is a relative URL.
 			//Make absolute URL from the relative URL.
+			this.url=new StringBuilder(DEFAULT);//Initialise to current URL
 			this.setRelative(url.toString());
 		}
 	}
@@ -248,6 +283,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * */
 	public HttpURL append(Object o){
 		this.url.append(o);
+		this.changed();
 		return this;
 	}
 
@@ -289,6 +325,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * @param completeURL */
 	public void setCompleteURL(StringBuilder completeURL){
 		this.url=completeURL;
+		this.changed();
 		this.normalisePort();//maybe remove superfluous standard port
 	}
 	
@@ -298,6 +335,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * @param completeURL */
 	public void setCompleteURL(String completeURL){
 		this.url=new StringBuilder(completeURL);
+		this.changed();
 		this.normalisePort();//maybe remove superfluous standard port
 	}
 	
@@ -325,14 +363,11 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * @param absoluteURL Must start with "/".
 	 * */
 	public void setAbsolute(String absoluteURL){
-		int hostBegin=this.getHostBegin();
-		int pathBegin=this.url.indexOf("/", hostBegin);
-		if(pathBegin<0){
-			//URL is like "http://www.inspiracio.cat"
-			//No "/" after the host and port.
-			pathBegin=this.url.length();
-		}
+		//If URL is like "http://www.inspiracio.cat", with no "/" after 
+		//the host and port, pathBegin is the length.
+		int pathBegin=this.getPathBegin();
 		this.url.replace(pathBegin, this.url.length(), absoluteURL);
+		this.changed();
 	}
 	
 	/** Returns this URL as absolute within the server, that
@@ -377,6 +412,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 			start=slash+1;//of file part
 		}
 		this.url.replace(start, end, file);//StringIndexOutOfBoundsException if there was no "/" in this.url
+		this.changed();
 	}
 	
 	/** Gets the file part of the URL, without parameters,
@@ -428,8 +464,11 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	/** The complete URL as String
 	 * @return String */
 	@Override public String toString() {
-		//Improve by caching this?
-		return url.toString();
+		if(this.exposed)
+			return this.url.toString();
+		if(this.string==null)
+			this.string=this.url.toString();
+		return this.string;
 	}
 
 	/** The complete URL as StringBuffer.
@@ -444,8 +483,13 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	/** The underlying StringBuilder.
 	 * If the client modifies the StringBuilder,
 	 * that modifies the HttpURL.
+	 * <p>
+	 * Then this HttpURL cannot keep indexes anymore, and is slower.
 	 * @return StringBuffer */
-	public StringBuilder toStringBuilder(){return url;}
+	public StringBuilder toStringBuilder(){
+		this.exposed=true;
+		return url;
+	}
 
 	/** Return the host.
 	 * The host is between "://" and the next "/" or ":" or 
@@ -453,7 +497,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * "http://www.inspiracio.cat".
 	 * @return host */
 	public String getHost() {		
-		int hostBegin=this.url.indexOf("://") + 3;
+		int hostBegin=this.getHostBegin();
 		int hostEnd=this.getHostEnd();
 		String host=this.url.substring(hostBegin, hostEnd);//StringIndexOutOfBoundsException
 		return host;
@@ -467,8 +511,8 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * @return index of first char after the host */
 	private int getHostEnd(){
 		int hostBegin = this.getHostBegin();
-		int slash = this.url.indexOf("/", hostBegin);
-		int colon = this.url.indexOf(":", hostBegin);
+		int slash = this.getSlash();
+		int colon = this.colon;
 		int hostEnd = 0;
 		if (hostBegin < colon){
 			//There is a port.
@@ -490,7 +534,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * is undefined.
 	 * @return String */
 	public String getMachine(){
-		int hostBegin = this.url.indexOf("://") + 3;
+		int hostBegin = this.getHostBegin();
 		int machineEnd = this.url.indexOf(".", hostBegin);
 		String machine = this.url.substring(hostBegin, machineEnd);
 		return machine;
@@ -508,8 +552,8 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	public String getBaseDomain(){
 		//Find begin and end of the host:
 		int hostBegin = this.getHostBegin();
-		int slash = this.url.indexOf("/", hostBegin);
-		int colon = this.url.indexOf(":", hostBegin);
+		int slash = this.getSlash();
+		int colon = this.colon;
 		// If there is a port, begin < colon < slash.
 		int hostEnd = (hostBegin < colon && colon < slash) ? colon : slash;
 		
@@ -543,13 +587,14 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 		int hostBegin = this.getHostBegin();
 		int machineEnd = this.url.indexOf(".", hostBegin);
 		this.url.replace(hostBegin, machineEnd, machine);
+		this.changed();
 	}
 
 	/** Returns the domain. The domain is the part of the host
 	 * after the first ".". Example "inspiracio.cat".
 	 * @return String */
 	public String getDomain(){		
-		int hostBegin = this.url.indexOf("://") + 3;
+		int hostBegin = this.getHostBegin();
 		int begin = this.url.indexOf(".", hostBegin) + 1;
 		int slash = this.url.indexOf("/", begin);
 		int colon = this.url.indexOf(":", begin);
@@ -566,11 +611,12 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 		// The host is between "://" and the next "/" or ":"
 		//Does not expect complete URLs like "http://www.inspiracio.cat".
 		int hostBegin=this.getHostBegin();
-		int slash=this.url.indexOf("/", hostBegin);
-		int colon=this.url.indexOf(":", hostBegin);
+		int slash=this.getSlash();
+		int colon=this.colon;
 		// If there is a port, begin < colon < slash.
 		int hostEnd=(hostBegin < colon && colon < slash) ? colon : slash;
 		this.url.replace(hostBegin, hostEnd, host);//StringIndexOutOfBoundsException
+		this.changed();
 	}
 
 	/** Gets the path. The path is after the host and port. 
@@ -594,13 +640,15 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * is like "http://www.inspiracio.com", getPathBegin and length
 	 * are equal. The path would start after the URL. */
 	private int getPathBegin(){
-		int hostBegin = this.getHostBegin();
-		int pathBegin = this.url.indexOf("/", hostBegin);
-		if (pathBegin <0){
-			//there is no "/" at all after the host
-			pathBegin = this.url.length();
-		}
-		return pathBegin;
+		this.index();
+		return this.pathBegin;
+	}
+
+	/** @return index of the first "/" after the host begin, 
+	 * or -1 if there is none. */
+	private int getSlash(){
+		int pathBegin=this.getPathBegin();
+		return pathBegin<this.url.length() ? pathBegin : -1;
 	}
 
 	/** @return index of the char after the last char of the path. 
@@ -610,7 +658,8 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * and length are equal. The path would start and end after 
 	 * the URL. */
 	private int getPathEnd(){
-		int pathEnd = this.url.lastIndexOf("/") + 1;
+		this.index();
+		int pathEnd = this.lastSlash + 1;
 		int hostBegin = this.getHostBegin();
 		if (pathEnd <= hostBegin){
 			//there is no "/" at all after the host
@@ -647,24 +696,48 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	
 	/** @return index of the first char of the host. */
 	private int getHostBegin(){
-		int hostBegin = this.url.indexOf("://") + 3;
+		this.index();
+		int hostBegin = this.schemeEnd + 3;
 		return hostBegin;
 	}
 
+	/** Finds the indexes in the URL, if the URL has changed. 
+	 * Leaves the indexes in the fields. */
+	private void index(){
+		if(this.indexed && !this.exposed)
+			return;
+		StringBuilder url=this.url;
+		this.schemeEnd=url.indexOf("://");
+		int hostBegin=this.schemeEnd + 3;
+		this.colon=url.indexOf(":", hostBegin);
+		int slash=url.indexOf("/", hostBegin);
+		this.pathBegin=slash<0 ? url.length() : slash;
+		this.lastSlash=url.lastIndexOf("/");
+		this.question=url.lastIndexOf("?");
+		this.indexed=true;
+	}
+
+	/** Forgets the indexes. Every method that changes the URL calls this. */
+	private void changed(){
+		this.indexed=false;
+		this.string=null;
+	}
+
 	/** Sets the path, maintaining the file and parameters.
 	 * @param path Must begin and end in "/".
 	 */
 	public void setPath(String path) {
 		//Does not expect complete URLs without a "/" after the host.
-		int hostBegin = this.getHostBegin();
-		int pathBegin = this.url.indexOf("/", hostBegin);
+		int pathBegin = this.getSlash();
 		int pathEnd = this.getPathEnd();
 		this.url.replace(pathBegin, pathEnd, path);//StringIndexOutOfBoundsException
+		this.changed();
 	}
 
 	/**
 	 * Sets a URL parameter. If there already is a URL parameter 
-	 * with the same key, it is overwritten. This methods takes 
+	 * with the same key, it is overwritten. Else the new parameter
+	 * goes at the end. This methods takes 
 	 * care of URL-encoding for the key and the value.
 	 * @param key
 	 * @param value
@@ -674,9 +747,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 		try {
 			String key1 = URLEncoder.encode(key, ENCODING);
 			String value1 = URLEncoder.encode(value, ENCODING);
-			Map<String, String> parameters = this.getParameters();//NoSuchElementException
-			parameters.put(key1, value1);
-			this.setParameters(parameters);
+			this.putParameter(key1, value1);//NoSuchElementException
 		} catch (UnsupportedEncodingException e){
 			//should never happen
 			throw new RuntimeException(e);
@@ -685,7 +756,8 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 
 	/**
 	 * Sets a URL parameter. If there already is a URL parameter 
-	 * with the same key, it is overwritten. This methods takes 
+	 * with the same key, it is overwritten. Else the new parameter
+	 * goes at the end. This methods takes 
 	 * care of URL-encoding for the key and the value.
 	 * @param key
 	 * @param value
@@ -695,9 +767,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 		try {
 			String key1 = URLEncoder.encode(key, ENCODING);
 			String value1 = Boolean.toString(value);
-			Map<String, String> parameters = this.getParameters();//NoSuchElementException
-			parameters.put(key1, value1);
-			this.setParameters(parameters);
+			this.putParameter(key1, value1);//NoSuchElementException
 		} catch (UnsupportedEncodingException e){
 			//should never happen
 			throw new RuntimeException(e);
@@ -706,7 +776,8 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 
 	/**
 	 * Sets a URL parameter. If there already is a URL parameter 
-	 * with the same key, it is overwritten. This methods takes 
+	 * with the same key, it is overwritten. Else the new parameter
+	 * goes at the end. This methods takes 
 	 * care of URL-encoding for the key and the value.
 	 * @param key
 	 * @param value
@@ -716,9 +787,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 		try {
 			String key1 = URLEncoder.encode(key, ENCODING);
 			String value1 = Long.toString(value);
-			Map<String, String> parameters = this.getParameters();//NoSuchElementException
-			parameters.put(key1, value1);
-			this.setParameters(parameters);
+			this.putParameter(key1, value1);//NoSuchElementException
 		} catch (UnsupportedEncodingException e){
 			//should never happen
 			throw new RuntimeException(e);
@@ -740,29 +809,97 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * @return Map
 	 */
 	public Map<String, String> getParameters() throws NoSuchElementException {
-		int question = this.url.lastIndexOf("?");
-		
-		if (question < 0) {
-			return new HashMap<String, String>();
-		} else {
-			// there are some parameters
-			Map<String, String> parameters = new HashMap<String, String>();
-			String queryString = this.url.substring(question + 1);
-			
-			//Regular expression implementation
-			String regex = "[\\?=&]";//Match '?', '=', '&'.
-			String[] tokens = queryString.split(regex, -1);
-			int i = 0;
-			while (i < tokens.length){
-				String key = tokens[i];
-				String value = i+1<tokens.length ? tokens[i+1] : "";
-				key = UTF8URLEncoder.decode(key);
-				value = UTF8URLEncoder.decode(value);
-				parameters.put(key, value);
-				i = i+2;
-			}
+		this.index();
+		int question = this.question;
+		Map<String, String> parameters = new HashMap<String, String>();
+		if (question < 0) 
 			return parameters;
+
+		// there are some parameters
+		//Tokens between '?', '=', '&', taken as key, value, key, value.
+		StringBuilder url = this.url;
+		int length = url.length();
+		int start = question + 1;
+		String key = null;
+		for (int i = start; i <= length; i++){
+			if (i==length || isSeparator(url.charAt(i))){
+				String token = UTF8URLEncoder.decode(url.substring(start, i));
+				if (key==null){
+					key = token;
+				} else {
+					parameters.put(key, token);
+					key = null;
+				}
+				start = i + 1;
+			}
+		}
+		if (key!=null)
+			parameters.put(key, "");
+		return parameters;
+	}
+	
+	/** Is the char between the tokens of the parameters? */
+	private static boolean isSeparator(char c){
+		return c=='?' || c=='=' || c=='&';
+	}
+
+	/** Puts a parameter, like parameters.put(key, value) and then
+	 * setParameters(parameters), but without changing the other
+	 * parameters. A new key goes at the end. 
+	 * @param key not encoded yet by setParameters
+	 * @param value not encoded yet by setParameters
+	 * @exception NoSuchElementException Current URL parameters have bad format.
+	 * */
+	private void putParameter(String key, String value) throws NoSuchElementException {
+		this.index();
+		int question = this.question;
+		StringBuilder url = this.url;
+		int length = url.length();
+		String parameter = UTF8URLEncoder.encode(key) + "=" + UTF8URLEncoder.encode(value);
+		if (question < 0){
+			url.append('?').append(parameter);
+			this.changed();
+			return;
 		}
+
+		//Keep the parameters "k=v" that have another key, and replace the first with this key.
+		StringBuilder query = new StringBuilder(length - question + parameter.length());
+		boolean replaced = false;
+		int start = question + 1;
+		int equals = -1;
+		for (int i = start; i <= length; i++){
+			char c = i<length ? url.charAt(i) : '&';
+			if (c=='&'){
+				if (equals < 0){
+					//Not like "k=v": do as setParameters.
+					Map<String, String> parameters = this.getParameters();//NoSuchElementException
+					parameters.put(key, value);
+					this.setParameters(parameters);
+					return;
+				}
+				String k = UTF8URLEncoder.decode(url.substring(start, equals));
+				if (!k.equals(key)){
+					query.append(url, start, i);
+					query.append('&');
+				} else if (!replaced){
+					query.append(parameter);
+					query.append('&');
+					replaced = true;
+				}
+				start = i + 1;
+				equals = -1;
+			} else if (c=='=' && equals==-1){
+				equals = i;
+			} else if (c=='=' || c=='?'){
+				equals = -2;//Not like "k=v"
+			}
+		}
+		if (replaced)
+			query.setLength(query.length() - 1);
+		else
+			query.append(parameter);
+		url.replace(question + 1, length, query.toString());
+		this.changed();
 	}
 	
 	/** Gets a parameter. If there is no parameter with the
@@ -815,7 +952,8 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * overwriting all the existing parameters. 
 	 * @param parameters A Map<String, String> */
 	public void setParameters(Map<String, String> parameters){
-		int question=this.url.lastIndexOf("?");
+		this.index();
+		int question=this.question;
 		if(0<question){
 			//there are parameters already
 			int length = this.url.length();
@@ -837,6 +975,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 			this.url.append(value);
 			connector='&';
 		}
+		this.changed();
 	}
 	
 	/** Sets the port of the URL. 
@@ -845,12 +984,13 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * @param port The new port */
 	public void setPort(int port){
 		int hostBegin = this.getHostBegin();
-		int colon = this.url.indexOf(":", hostBegin);
+		int colon = this.colon;
 		int pathBegin = this.getPathBegin();
 		int portBegin = hostBegin<colon && colon<pathBegin ? colon : pathBegin;
 		int portEnd = pathBegin;
 		String portString = ":" + port;
 		this.url.replace(portBegin, portEnd, portString);//StringIndexOutOfBoundsException
+		this.changed();
 		this.normalisePort();//Remove the port if it is standard
 	}
 	
@@ -861,7 +1001,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	public int getPort(){
 		int port = -1;
 		int hostBegin = this.getHostBegin();
-		int colon = this.url.indexOf(":", hostBegin);
+		int colon = this.colon;
 		int pathBegin = this.getPathBegin();
 		if (hostBegin<colon && colon<pathBegin){
 			//There is a port.
@@ -881,7 +1021,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * port for the protocol, remove the port. */
 	private void normalisePort(){
 		int hostBegin=this.getHostBegin();
-		int colon=this.url.indexOf(":", hostBegin);
+		int colon=this.colon;
 		int pathBegin=this.getPathBegin();
 		if(hostBegin<colon && colon<pathBegin){
 			//There is a port.
@@ -896,6 +1036,7 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 			if(port==standardPort){
 				//remove it
 				this.url.replace(colon, portEnd, "");
+				this.changed();
 			}
 		} else {
 			//There is no port. Do nothing.
@@ -919,7 +1060,8 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	/** Gets the scheme of the URL. 
 	 * @return the part before "://", usually "http" or "https"*/
 	public String getScheme(){
-		int schemeEnd=this.url.indexOf("://");
+		this.index();
+		int schemeEnd=this.schemeEnd;
 		String scheme=this.url.substring(0, schemeEnd);
 		return scheme;
 	}
@@ -930,8 +1072,10 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 	 * If there was no port, there will be no port.
 	 * @param scheme the part before "://", usually "http" or "https"*/
 	public void setScheme(String scheme){
-		int schemeEnd=this.url.indexOf("://");
+		this.index();
+		int schemeEnd=this.schemeEnd;
 		this.url.replace(0, schemeEnd, scheme);
+		this.changed();
 		this.normalisePort();//Maybe now the port has become superfluous.
 	}
 	
@@ -944,11 +1088,77 @@ public class HttpURL implements Cloneable, Comparable<HttpURL>{
 			//remove one "/folder/.."
 			int slash = this.url.lastIndexOf("/", up-1);
 			this.url.replace(slash, up+UP.length(), "");
+			this.changed();
 			//find next up
 			up = this.url.indexOf(UP);
 		}
 	}//cancelUps
 	
+	/** Makes a URL by appending to a complete URL: first to the path,
+	 * then parameters. Faster than the setters of HttpURL, because it
+	 * does not look for anything in the URL, and encodes each parameter 
+	 * only once, like setParameters(Map). For example:
+	 * <code><br/>
+	 * HttpURL url=new HttpURL.Builder("http://domain/atom/-/").append("user").parameter("style", "full").build();
+	 * </code>
+	 * <p>
+	 * A builder can make many URLs.
+	 * */
+	public static class Builder{
+		private final StringBuilder url;
+
+		/** Has the URL parameters already? */
+		private boolean parameters;
+
+		/** Starts with a complete URL.
+		 * @param url Must start with "http://" or "https://". May have parameters. */
+		public Builder(String url){
+			this.url=new StringBuilder(url.length() + 64);
+			this.url.append(url);
+			this.parameters=0<=url.indexOf('?');
+		}
+
+		/** Appends to the path. No syntax checks.
+		 * @param o
+		 * @exception IllegalStateException There are parameters already.
+		 * */
+		public Builder append(Object o){
+			if(this.parameters)
+				throw new IllegalStateException("Parameters already in " + this.url);
+			this.url.append(o);
+			return this;
+		}
+
+		/** Appends a parameter. Does not look whether the URL has it already.
+		 * @param key not encoded
+		 * @param value not encoded
+		 * */
+		public Builder parameter(String key, String value){
+			this.url.append(this.parameters ? '&' : '?');
+			this.url.append(UTF8URLEncoder.encode(key));
+			this.url.append('=');
+			this.url.append(UTF8URLEncoder.encode(value));
+			this.parameters=true;
+			return this;
+		}
+
+		/** Appends parameters, in the order of the map.
+		 * @param parameters not encoded
+		 * */
+		public Builder parameters(Map<String, String> parameters){
+			for(Map.Entry<String, String> entry : parameters.entrySet())
+				this.parameter(entry.getKey(), entry.getValue());
+			return this;
+		}
+
+		/** @return fresh HttpURL */
+		public HttpURL build(){
+			return new HttpURL(this.url);
+		}
+
+		@Override public String toString(){return this.url.toString();}
+	}
+	
 	/** testing only 
 	 * @param args 
 	 * @exception Exception */
@@ -0,0 +1,168 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.servlet.http;
+
+import java.math.BigInteger;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Date;
+
+/** The validators of a response, for conditional GET: an entity tag
+ * and a last-modification time. See HTTP 1.1 spec, section 13.3.
+ * <p>
+ * The entity tag is weak, because the same feed can be written with
+ * different bytes, for example compressed. Immutable.
+ * */
+public final class Validator{
+
+	//State -------------------------------------------------
+
+	/** Unquoted and unescaped, or null */
+	private final String etag;
+
+	/** Milliseconds, in whole seconds like in http headers, or -1 */
+	private final long lastModified;
+
+	//Constructors ------------------------------------------
+
+	/** Makes a validator.
+	 * @param etag The String inside the entity tag, unquoted and unescaped. May be null.
+	 * @param lastModified May be null.
+	 * */
+	public Validator(String etag, Date lastModified){
+		this.etag=etag;
+		this.lastModified=lastModified==null ? -1 : lastModified.getTime() / 1000 * 1000;
+	}
+
+	//Accessors ---------------------------------------------
+
+	/** The String inside the entity tag, unquoted and unescaped, or null. */
+	public String getETag(){return this.etag;}
+
+	/** The value for http header ETag, or null. */
+	public String getETagHeader(){
+		if(this.etag==null)return null;
+		return "W/" + ETag.makeStrong(this.etag);
+	}
+
+	/** The last modification, or null. */
+	public Date getLastModified(){
+		return this.lastModified<0 ? null : new Date(this.lastModified);
+	}
+
+	/** The validator for one representation of the same resource,
+	 * for example one format.
+	 * @param variant distinguishes the representation
+	 * @return a new validator */
+	public Validator variant(String variant){
+		String etag=this.etag==null ? null : this.etag + "-" + variant;
+		return new Validator(etag, this.getLastModified());
+	}
+
+	//Business methods --------------------------------------
+
+	/** Has the client the current representation already? Then the
+	 * server replies 304 Not Modified. If the request has If-None-Match,
+	 * If-Modified-Since does not count.
+	 * @param ifNoneMatch http header If-None-Match, or null
+	 * @param ifModifiedSince http header If-Modified-Since as milliseconds, or -1
+	 * @return not modified? */
+	public boolean isNotModified(String ifNoneMatch, long ifModifiedSince){
+		if(ifNoneMatch!=null)
+			return this.etag!=null && matches(ifNoneMatch, ETag.makeStrong(this.etag));
+		if(0<=ifModifiedSince && 0<=this.lastModified)
+			return this.lastModified<=ifModifiedSince;
+		return false;
+	}
+
+	@Override public String toString(){
+		return this.getETagHeader() + " " + this.getLastModified();
+	}
+
+	//Helpers -----------------------------------------------
+
+	/** Does a list of entity tags match a tag, comparing weakly?
+	 * @param tags like "*" or W/"a", "b"
+	 * @param tag quoted and escaped, without W/
+	 * */
+	private static boolean matches(String tags, String tag){
+		if("*".equals(tags.trim()))
+			return true;
+		int n=tags.length();
+		int i=0;
+		while(i<n){
+			char c=tags.charAt(i);
+			if(c=='"'){
+				//A quoted tag: up to the closing quote, with escapes
+				int start=i++;
+				while(i<n && tags.charAt(i)!='"'){
+					if(tags.charAt(i)=='\\')
+						i++;
+					i++;
+				}
+				i++;
+				if(tags.regionMatches(start, tag, 0, tag.length()) && i-start==tag.length())
+					return true;
+			}else{
+				//Spaces, commas, W/
+				i++;
+			}
+		}
+		return false;
+	}
+
+	/** Makes the entity tag of a validator as MD5 digest of some Strings,
+	 * for example the IDs and ETags of entries. */
+	public static final class Builder{
+
+		private final MessageDigest digest;
+
+		public Builder(){
+			try{
+				this.digest=MessageDigest.getInstance("MD5");//NoSuchAlgorithmException
+			}catch(NoSuchAlgorithmException e){
+				//Every JVM has MD5.
+				throw new RuntimeException(e);
+			}
+		}
+
+		/** Adds a String and a separator to the digest.
+		 * @param s may be null
+		 * @return this */
+		public Builder add(String s){
+			if(s!=null){
+				for(int i=0; i<s.length(); i++){
+					char c=s.charAt(i);
+					this.digest.update((byte)(c>>8));
+					this.digest.update((byte)c);
+				}
+			}
+			this.digest.update((byte)0);
+			this.digest.update((byte)0);
+			return this;
+		}
+
+		/** Makes the validator. Call only once.
+		 * @param lastModified May be null.
+		 * @return validator */
+		public Validator build(Date lastModified){
+			String etag=new BigInteger(1, this.digest.digest()).toString(Character.MAX_RADIX);
+			return new Validator(etag, lastModified);
+		}
+	}
+}
@@ -24,13 +24,9 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
-import javax.xml.parsers.DocumentBuilder;
-import javax.xml.parsers.DocumentBuilderFactory;
-import javax.xml.parsers.ParserConfigurationException;
 import javax.xml.transform.Transformer;
 import javax.xml.transform.TransformerConfigurationException;
 import javax.xml.transform.TransformerException;
-import javax.xml.transform.TransformerFactory;
 import javax.xml.transform.dom.DOMSource;
 import javax.xml.transform.stream.StreamResult;
 
@@ -59,14 +55,7 @@ public class DOM {
 	 * 	In a normal Java installation, they should never occur.
 	 * */
 	public static Document newDocument() throws RuntimeException {
-		try {
-			DocumentBuilderFactory factory = DocumentBuilderFactory.newInstance();
-			DocumentBuilder builder = factory.newDocumentBuilder();//ParserConfigurationException
-			Document document = builder.newDocument();
-			return document;
-		} catch (ParserConfigurationException pce){
-			throw new RuntimeException(pce);
-		}
+		return XMLRuntime.newDocument();
 	}
 
 	/** Writes a document to a writer, as XML text with no superfluous
@@ -81,34 +70,22 @@ public class DOM {
 	 * */
 	public static void write(OutputStream os, Document document){
 		try {
-			Transformer transformer = newTransformer();
 		    DOMSource source = new DOMSource(document);
 		    StreamResult result = new StreamResult(os);
-		    transformer.transform(source, result);//TransformerException
+		    XMLRuntime.transform(source, result);//TransformerException
 		} catch (TransformerException te){
 			throw new RuntimeException(te);
 		}
 	}
 
 	/** Creates a new XSL transformer, hiding the boring exceptions.
+	 * The transformer comes from the shared factory in XMLRuntime.
 	 * @return transformer
 	 * @exception RuntimeException wrapping TransformerConfigurationException.
 	 * 	In a normal Java installation that should never happen.
 	 * */
 	public static Transformer newTransformer(){
-		try{
-			//Why did someone put an explicit implementation class name?
-			//String s="com.sun.org.apache.xalan.internal.xsltc.trax.TransformerFactoryImpl";
-			//ClassLoader loader=Object.class.getClassLoader();
-			//TransformerFactory factory=TransformerFactory.newInstance(s, loader);
-			
-			//Use the default factory.
-			TransformerFactory factory=TransformerFactory.newInstance();
-			Transformer transformer=factory.newTransformer();//TransformerConfigurationException
-			return transformer;
-		}catch(TransformerConfigurationException tce){
-			throw new RuntimeException(tce);
-		}
+		return XMLRuntime.newTransformer();
 	}
 
 	/** Formats a DOM to a String
@@ -119,12 +96,10 @@ public class DOM {
 	 * */
 	public static String toString(Document document) throws TransformerConfigurationException, TransformerException {
 		//Format the document into a String
-		TransformerFactory tFactory = TransformerFactory.newInstance();
-	    Transformer transformer = tFactory.newTransformer();//TransformerConfigurationException
 	    DOMSource source = new DOMSource(document);
 	    StringWriter sw = new StringWriter();
 	    StreamResult result = new StreamResult(sw);
-	    transformer.transform(source, result);//TransformerException
+	    XMLRuntime.transform(source, result);//TransformerException
 	    return sw.toString();
 	}
 
@@ -271,11 +246,8 @@ public class DOM {
 	 */
 	public static Element getDocumentRoot(InputStream in) throws TransformerException {
 		//DOM-based implementation for the xml parser
-		DocumentBuilderFactory dbFactory = DocumentBuilderFactory.newInstance();
-	    DocumentBuilder dBuilder;
 		try {
-			dBuilder = dbFactory.newDocumentBuilder();
-		    Document doc = dBuilder.parse(new InputSource(in));
+		    Document doc = XMLRuntime.parse(new InputSource(in));
 		    return doc.getDocumentElement();
 		} catch (Exception e) {
 			throw new RuntimeException("Problem parsing the xml document",e);
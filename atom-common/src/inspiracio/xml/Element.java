@@ -20,17 +20,17 @@ package inspiracio.xml;
 import inspiracio.xml.sax.EasyContentHandler;
 
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.Iterator;
 import java.util.LinkedList;
 import java.util.List;
-import java.util.Map;
-import java.util.TreeMap;
 
 
 import org.w3c.dom.Document;
 import org.w3c.dom.NamedNodeMap;
 import org.w3c.dom.Node;
 import org.w3c.dom.NodeList;
+import org.xml.sax.Attributes;
 import org.xml.sax.SAXException;
 
 /** Simple representation of an XML element. Similar to DOM,
@@ -38,27 +38,46 @@ import org.xml.sax.SAXException;
  * XML-document with DOM; use DOM or JDOM. If you want to 
  * make little bits of XML and use toString for formatting,
  * use this. 
+ * <p>
+ * Feeds have very many small elements, mostly with one text child and
+ * no attributes. So the representation is compact: one child is not in a
+ * list, a number child is a primitive, the attributes are in an array,
+ * and the tags and attribute names are symbols, except parsed names
+ * that are not in the symbol table.
  * */
 public class Element {
 
+	/** Marks a long child, which is in number. */
+	private static final Object LONG=new Object();
+
+	/** Marks a double child, whose bits are in number. */
+	private static final Object DOUBLE=new Object();
+
 	//State ------------------------------------------------------------
 	
+	/** A symbol, or a parsed name: see Symbols */
 	private String tag;
 	
-	/** The children can be Element or String or Double or Long. 
+	/** The children: null for none, the only child if it is Element
+	 * or String, LONG or DOUBLE for a number child, or a List<Object>
+	 * of Element or String or Double or Long. 
 	 * The strings in here are not escaped, they are the real strings. */
-	private List<Object> children=new ArrayList<Object>();
+	private Object children;
+
+	/** The number child: a long, or the bits of a double */
+	private long number;
 	
-	/** The attributes of this element. The values are not escaped, they
-	 * are the real strings. */
-	private Map<String, String> attributes=new TreeMap<String, String>();
+	/** The attributes of this element: names and values, alternating,
+	 * sorted by name. Null for none. The names are from Symbols. The values are
+	 * not escaped, they are the real strings. */
+	private String[] attributes;
 	
 	//Constructors -----------------------------------------------------
 	
 	/** Construct an element with the identified tag.
 	 * @param tag
 	 * */
-	public Element(String tag){this.tag=tag;}
+	public Element(String tag){this.tag=Symbols.intern(tag);}
 	
 	/** Construct an element with the identified tag and
 	 * text content. Escapes the text so that it is safe for 
@@ -67,9 +86,9 @@ public class Element {
 	 * @param text
 	 * */
 	public Element(String tag, String text){
-		this.tag = tag;
+		this(tag);
 		if (text!=null && 0 < text.length()){
-			this.children.add(text);
+			this.children=text;
 		}
 	}
 	
@@ -79,9 +98,9 @@ public class Element {
 	 * @param number
 	 * */
 	public Element(String tag, double number){
-		this.tag = tag;
-		Double o = new Double(number);
-		this.children.add(o);
+		this(tag);
+		this.children=DOUBLE;
+		this.number=Double.doubleToRawLongBits(number);
 	}
 	
 	/** Construct an element with the identified tag and
@@ -90,9 +109,9 @@ public class Element {
 	 * @param number
 	 * */
 	public Element(String tag, long number){
-		this.tag = tag;
-		Long o = new Long(number);
-		this.children.add(o);
+		this(tag);
+		this.children=LONG;
+		this.number=number;
 	}
 	
 	/** Construct an element with the identified tag and
@@ -101,15 +120,27 @@ public class Element {
 	 * @param bool
 	 * */
 	public Element(String tag, boolean bool){
-		this.tag = tag;
-		this.children.add(Boolean.toString(bool));
+		this(tag);
+		this.children=Boolean.toString(bool);
 	}
 	
+	/** Constructs an element from a parsed tag and its attributes.
+	 * The names are not added to the symbol table: see Symbols.lookup(String).
+	 * @param tag
+	 * @param atts from a SAX parser
+	 * */
+	public Element(String tag, Attributes atts){
+		this.tag=Symbols.lookup(tag);
+		for(int i=0; i<atts.getLength(); i++)
+			this.put(Symbols.lookup(atts.getQName(i)), atts.getValue(i));
+	}
+
 	/** Constructs an element from a DOM-element. 
+	 * The names are not added to the symbol table: see Symbols.lookup(String).
 	 * @param element
 	 * */
 	public Element(org.w3c.dom.Element element){
-		this(element.getTagName());
+		this.tag=Symbols.lookup(element.getTagName());
 		
 		//Copy attributes
 		NamedNodeMap attributes = element.getAttributes();
@@ -117,7 +148,7 @@ public class Element {
 			Node n = attributes.item(i);//n instance of Attr
 			String name = n.getNodeName();
 			String value = n.getNodeValue();
-			this.setAttribute(name, value);
+			this.put(Symbols.lookup(name), value);
 		}
 		
 		//Copy children
@@ -131,7 +162,7 @@ public class Element {
 				//Never enters here. Attributes don't count as children of an Element?
 				String name = child.getNodeName();
 				String value = child.getNodeValue();
-				this.setAttribute(name, value);
+				this.put(Symbols.lookup(name), value);
 				break;
 			case Node.CDATA_SECTION_NODE: 
 				//Could implement CDATA section as a third kind of child besides Element and String.
@@ -187,25 +218,50 @@ public class Element {
 	 * @param value Can be any String, without escaping.
 	 * */
 	public void setAttribute(String key, String value){
-		this.attributes.put(key, value);
+		this.put(Symbols.intern(key), value);
+	}
+
+	/** Sets or overrides an attribute.
+	 * @param key a symbol, or a name from a parsed document
+	 * @param value */
+	private void put(String key, String value){
+		if(this.attributes==null){
+			this.attributes=new String[]{key, value};
+			return;
+		}
+		int i=this.indexOf(key);
+		if(0<=i){
+			this.attributes[i+1]=value;
+			return;
+		}
+		i=-(i+1);
+		String[] as=new String[this.attributes.length+2];
+		System.arraycopy(this.attributes, 0, as, 0, i);
+		as[i]=key;
+		as[i+1]=value;
+		System.arraycopy(this.attributes, i, as, i+2, this.attributes.length-i);
+		this.attributes=as;
 	}
 	
 	/** Adds a child element at the end of the children.
 	 * @param child */
 	public void addChild(Element child){
-		this.children.add(child);
+		this.add(child);
 	}
 	
 	/** Removes a child element.
 	 * @param child */
 	public void removeChild(Element child){
-		this.children.remove(child);
+		if(this.children==child)
+			this.children=null;
+		else if(this.children instanceof List)
+			this.list().remove(child);
 	}
 	
 	/** Adds a text node at the end of the children.
 	 * @param text Unescaped text */
 	public void addChild(String text){
-		this.children.add(text);
+		this.add(text);
 	}
 	
 	/** Gives an String representation of the element.
@@ -214,37 +270,41 @@ public class Element {
 	 * @return partial XML-String */
 	public String toString(){
 		StringBuilder buffer=new StringBuilder();
+		this.toString(buffer);
+		return buffer.toString();
+	}
+
+	/** Appends the String representation of the element to a buffer.
+	 * Child elements append to the same buffer.
+	 * @param buffer */
+	private void toString(StringBuilder buffer){
 		buffer.append('<');
 		buffer.append(this.tag);
 		
 		//attributes
-		Iterator<Map.Entry<String,String>> it=this.attributes.entrySet().iterator();
-		while (it.hasNext()){
-			Map.Entry<String, String> entry = it.next();
-			String key = (String)entry.getKey();
-			String value = (String)entry.getValue();
-			String valueEscaped = XMLString.escape(value);
-			buffer.append(' ');
-			buffer.append(key);
-			buffer.append("=\"");
-			buffer.append(valueEscaped);
-			buffer.append('\"');
+		if(this.attributes!=null){
+			for(int i=0; i<this.attributes.length; i+=2){
+				buffer.append(' ');
+				buffer.append(this.attributes[i]);
+				buffer.append("=\"");
+				XMLString.escape(this.attributes[i+1], buffer);
+				buffer.append('\"');
+			}
 		}
 		
-		if (this.children.size()==0){
+		if (this.children().size()==0){
 			//maybe <element/> abbreviated form
 			buffer.append("/>");
 		} else {
 			//there are some children
 			buffer.append('>');
-			Iterator<Object> cit = this.children.iterator();
+			Iterator<Object> cit = this.children().iterator();
 			while (cit.hasNext()){
 				Object child = cit.next();
 				if(child instanceof String){
-					String escaped=XMLString.escape(child.toString());
-					buffer.append(escaped);
+					XMLString.escape((String)child, buffer);
 				}else if(child instanceof Element){
-					buffer.append(child.toString());
+					((Element)child).toString(buffer);
 				} else {
 					//Double or Long
 					buffer.append(child.toString());
@@ -254,7 +314,6 @@ public class Element {
 			buffer.append(this.tag);
 			buffer.append('>');
 		}
-		return buffer.toString();
 	}
 	
 	/** Converts this element to an Element of XML-DOM.
@@ -265,18 +324,18 @@ public class Element {
 		org.w3c.dom.Element element = document.createElement(this.tag);
 
 		//attributes
-		Iterator<Map.Entry<String,String>> it = this.attributes.entrySet().iterator();
-		while (it.hasNext()){
-			Map.Entry<String, String> entry = it.next();
-			String key = entry.getKey();
-			String value = entry.getValue();
-			//Must escape the value.
-			String valueEscaped = XMLString.escape(value);
-			element.setAttribute(key, valueEscaped);
+		if(this.attributes!=null){
+			for(int i=0; i<this.attributes.length; i+=2){
+				String key = this.attributes[i];
+				String value = this.attributes[i+1];
+				//Must escape the value. Usually there is nothing to escape and we get value itself.
+				String valueEscaped = XMLString.escape(value);
+				element.setAttribute(key, valueEscaped);
+			}
 		}
 		
 		//child elements and strings
-		Iterator<Object> children = this.children.iterator();
+		Iterator<Object> children = this.children().iterator();
 		while (children.hasNext()){
 			Object child = children.next();
 			org.w3c.dom.Node childNode = null;
@@ -302,8 +361,15 @@ public class Element {
 	public void parse(EasyContentHandler handler) throws SAXException {
 		handler.startElement(this.tag, this.attributes);
 
+		//The common case: one text child
+		if(this.children instanceof String){
+			handler.characters((String)this.children);//Escapes
+			handler.endElement(this.tag);
+			return;
+		}
+
 		//child elements and strings
-		Iterator<Object> it = this.children.iterator();
+		Iterator<Object> it = this.children().iterator();
 		while (it.hasNext()){
 			Object child = it.next();
 			if (child instanceof Element){
@@ -333,7 +399,7 @@ public class Element {
 	 * @throws RuntimeException No such child element.
 	 * */
 	public Element getChildElement(String tag){
-		Iterator<Object> it = this.children.iterator();
+		Iterator<Object> it = this.children().iterator();
 		while (it.hasNext()){
 			Object child = it.next();
 			if (child instanceof Element){
@@ -352,7 +418,7 @@ public class Element {
 	 * */
 	public List<Element> getAllChildElements(String tag){
 		List<Element> result = new LinkedList<Element>();
-		Iterator<Object> it = this.children.iterator();
+		Iterator<Object> it = this.children().iterator();
 		while (it.hasNext()){
 			Object child = it.next();
 			if (child instanceof Element){
@@ -370,8 +436,11 @@ public class Element {
 	 * 	Other possibilities not yet developed.
 	 * */
 	public String getTextContent(){
+		//The common case: one text child
+		if(this.children instanceof String)
+			return (String)this.children;
 		StringBuilder buffer=new StringBuilder();
-		Iterator<Object> it=this.children.iterator();
+		Iterator<Object> it=this.children().iterator();
 		while(it.hasNext()){
 			Object child=it.next();
 			//Here could discriminate type of the child.
@@ -419,6 +488,72 @@ public class Element {
 	 * @return value or null. Can be any String, without escaping.
 	 * */
 	public String getAttribute(String key){
-		return (String)this.attributes.get(key);
+		int i=this.indexOf(key);
+		return i<0 ? null : this.attributes[i+1];
+	}
+
+	//Helpers ---------------------------------------------------------
+
+	/** Finds an attribute by binary search.
+	 * @param key
+	 * @return index of the name in attributes, or -(insertion index)-1 */
+	private int indexOf(String key){
+		if(this.attributes==null)return -1;
+		int low=0;
+		int high=this.attributes.length/2 - 1;
+		while(low<=high){
+			int middle=(low + high)>>>1;
+			int c=this.attributes[2*middle].compareTo(key);
+			if(c<0)
+				low=middle + 1;
+			else if(0<c)
+				high=middle - 1;
+			else
+				return 2*middle;
+		}
+		return -(2*low)-1;
+	}
+
+	/** Adds a child at the end of the children.
+	 * @param child Element or String */
+	private void add(Object child){
+		if(this.children==null && child!=null)
+			this.children=child;
+		else
+			this.list().add(child);
+	}
+
+	/** The children, for reading.
+	 * @return list of Element or String or Double or Long */
+	@SuppressWarnings("unchecked")
+	private List<Object> children(){
+		if(this.children==null)
+			return Collections.emptyList();
+		if(this.children instanceof List)
+			return (List<Object>)this.children;
+		return Collections.singletonList(this.child());
+	}
+
+	/** The children in a list, for changing them.
+	 * @return list of Element or String or Double or Long */
+	@SuppressWarnings("unchecked")
+	private List<Object> list(){
+		if(this.children instanceof List)
+			return (List<Object>)this.children;
+		List<Object> list=new ArrayList<Object>(2);
+		if(this.children!=null)
+			list.add(this.child());
+		this.children=list;
+		return list;
+	}
+
+	/** The only child, when it is not in a list.
+	 * @return Element or String or Double or Long */
+	private Object child(){
+		if(this.children==LONG)
+			return Long.valueOf(this.number);
+		if(this.children==DOUBLE)
+			return Double.valueOf(Double.longBitsToDouble(this.number));
+		return this.children;
 	}
 }
\ No newline at end of file
@@ -0,0 +1,242 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.xml;
+
+import inspiracio.lang.Equals;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/** The namespace declarations of a root element: the xmlns-attributes
+ * and the schema locations for xsi:schemaLocation.
+ * <p>
+ * Adding a namespace that is already there changes nothing and
+ * builds no strings. The value of xsi:schemaLocation is only built
+ * when the element is written, and then kept until the next change.
+ * So a feed can merge the namespaces of thousands of entries cheaply.
+ * <p>
+ * After freeze(), the namespaces cannot change any more and can be
+ * shared, for example by all the entries of one bean class. A feed
+ * merges shared namespaces only once.
+ * <p>
+ * Not threadsafe, except when frozen.
+ * */
+public class Namespaces {
+
+	/** The namespace of xsi:schemaLocation */
+	private static final String XSI="http://www.w3.org/2001/XMLSchema-instance";
+
+	//State ----------------------------------------
+
+	/** xmlns-attributes: "xmlns" or "xmlns:prefix" to namespace URL */
+	private Map<String, String> declarations=new TreeMap<String, String>();
+
+	/** namespace URL to schema location */
+	private Map<String, String> schemaLocations=new TreeMap<String, String>();
+
+	/** The value of xsi:schemaLocation if it has been set explicitly,
+	 * for example by parsing. A schema location added later overrides it. */
+	private String explicitSchemaLocation=null;
+
+	/** The value of xsi:schemaLocation built from schemaLocations.
+	 * Null if there are changes since it was built. */
+	private String schemaLocation=null;
+
+	/** Counts the changes. */
+	private int version=0;
+
+	/** After freeze(), no more changes. */
+	private boolean frozen=false;
+
+	/** The last namespaces merged by addAll(), and their version then. */
+	private Namespaces merged=null;
+	private int mergedVersion=-1;
+
+	//Constructors ---------------------------------
+
+	public Namespaces(){}
+
+	/** Makes a copy that can change, even if the original is frozen.
+	 * @param original */
+	public Namespaces(Namespaces original){
+		this.declarations.putAll(original.declarations);
+		this.schemaLocations.putAll(original.schemaLocations);
+		this.explicitSchemaLocation=original.explicitSchemaLocation;
+		this.schemaLocation=original.schemaLocation;
+	}
+
+	//Accessors -------------------------------------
+
+	/** Forbids any more changes, so that the namespaces can be shared.
+	 * @return this */
+	public Namespaces freeze(){
+		this.getSchemaLocation();//Build it now, not when threads share it.
+		this.frozen=true;
+		return this;
+	}
+
+	/** Has freeze() been called? */
+	public boolean isFrozen(){return this.frozen;}
+
+	/** Are there no namespace declarations? */
+	public boolean isEmpty(){
+		return this.declarations.isEmpty() && this.schemaLocations.isEmpty() && this.explicitSchemaLocation==null;
+	}
+
+	/** Adds a namespace. Also declares xmlns:xsi.
+	 * @param prefix May be "" or null for the default namespace.
+	 * @param url The unique URL that identifies the namespace
+	 * @param schemaLocation The URL of the XML schema for this namespace.
+	 * 	May be null.
+	 * @exception UnsupportedOperationException frozen
+	 * */
+	public void add(String prefix, String url, String schemaLocation){
+		this.checkFrozen();
+		this.put(prefix, Symbols.lookup(url), schemaLocation);
+	}
+
+	/** Adds a namespace. See add(String, String, String). */
+	public void add(Namespace n){
+		this.add(n.getPrefix(), n.getURL(), n.getSchemaLocation());
+	}
+
+	/** Adds all the namespaces declared in others.
+	 * If they are the same as the last time, does nothing.
+	 * @param others
+	 * @exception UnsupportedOperationException frozen
+	 * */
+	public void addAll(Namespaces others){
+		if(others==this || (others==this.merged && others.version==this.mergedVersion))
+			return;
+		this.checkFrozen();
+		for(Map.Entry<String, String> d : others.declarations.entrySet()){
+			String name=d.getKey();
+			String url=d.getValue();
+			String prefix=name.startsWith("xmlns:") ? name.substring("xmlns:".length()) : "";
+			this.put(prefix, url, others.schemaLocations.get(url));
+		}
+		this.merged=others;
+		this.mergedVersion=others.version;
+	}
+
+	/** Is this attribute a namespace declaration or xsi:schemaLocation?
+	 * Those go into Namespaces. */
+	public static boolean isNamespaceAttribute(String name){
+		return name.startsWith("xmlns") || "xsi:schemaLocation".equals(name);
+	}
+
+	/** Sets an xmlns-attribute or xsi:schemaLocation, as it is.
+	 * @param name see isNamespaceAttribute(String)
+	 * @param value
+	 * @exception UnsupportedOperationException frozen
+	 * */
+	public void setAttribute(String name, String value){
+		this.checkFrozen();
+		if("xsi:schemaLocation".equals(name)){
+			this.explicitSchemaLocation=value;
+			this.changed();
+		}else{
+			this.declare(name, value);
+		}
+	}
+
+	/** Gets an xmlns-attribute or xsi:schemaLocation.
+	 * @param name see isNamespaceAttribute(String)
+	 * @return the value, or null if there is none */
+	public String getAttribute(String name){
+		if("xsi:schemaLocation".equals(name))
+			return this.getSchemaLocation();
+		return this.declarations.get(name);
+	}
+
+	/** Puts the xmlns-attributes and xsi:schemaLocation into a map of attributes.
+	 * @param attributes */
+	public void putAttributes(Map<String, String> attributes){
+		attributes.putAll(this.declarations);
+		String s=this.getSchemaLocation();
+		if(s!=null)
+			attributes.put("xsi:schemaLocation", s);
+	}
+
+	/** Returns all the namespace declarations, with their schema locations. */
+	public List<Namespace> getNamespaces(){
+		List<Namespace>ns=new ArrayList<Namespace>(this.declarations.size());
+		for(Map.Entry<String, String> d : this.declarations.entrySet()){
+			String name=d.getKey();
+			String prefix=name.startsWith("xmlns:") ? name.substring("xmlns:".length()) : "";
+			String url=d.getValue();
+			ns.add(new Namespace(prefix, url, this.schemaLocations.get(url)));
+		}
+		return ns;
+	}
+
+	//Helpers ---------------------------------------
+
+	/** Adds a namespace, and xmlns:xsi. */
+	private void put(String prefix, String url, String schemaLocation){
+		this.declare("xmlns:xsi", XSI);
+		String name=prefix!=null && 0<prefix.length() ? "xmlns:" + prefix : "xmlns";
+		this.declare(name, url);
+		if(schemaLocation!=null){
+			this.explicitSchemaLocation=null;
+			if(!schemaLocation.equals(this.schemaLocations.put(url, schemaLocation)))
+				this.changed();
+		}
+	}
+
+	/** Puts an xmlns-attribute. The name and the url are only looked up
+	 * in Symbols: the parsers declare namespaces too, and the names of
+	 * parsed documents do not go into the symbol table. */
+	private void declare(String name, String url){
+		name=Symbols.lookup(name);
+		if(!Equals.equals(url, this.declarations.put(name, url)))
+			this.changed();
+	}
+
+	private void checkFrozen(){
+		if(this.frozen)
+			throw new UnsupportedOperationException("Namespaces are frozen");
+	}
+
+	private void changed(){
+		this.schemaLocation=null;
+		this.version++;
+	}
+
+	/** The value of xsi:schemaLocation, built if necessary.
+	 * @return the value, or null if there are no schema locations */
+	private String getSchemaLocation(){
+		if(this.explicitSchemaLocation!=null)
+			return this.explicitSchemaLocation;
+		if(this.schemaLocations.isEmpty())
+			return null;
+		if(this.schemaLocation==null){
+			StringBuilder s=new StringBuilder();
+			for(Map.Entry<String, String> entry : this.schemaLocations.entrySet()){
+				s.append(entry.getKey());
+				s.append(' ');
+				s.append(entry.getValue());
+				s.append(' ');
+			}
+			this.schemaLocation=s.toString();
+		}
+		return this.schemaLocation;
+	}
+}
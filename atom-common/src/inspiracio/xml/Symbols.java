@@ -0,0 +1,94 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.xml;
+
+import java.util.concurrent.ConcurrentHashMap;
+
+/** Symbol table for names in XML: tags, attribute names, namespace URLs.
+ * <p>
+ * There are few different names, but many elements with them. With the
+ * symbol table, all elements share one String for each name.
+ * <p>
+ * The table starts with the names of Atom and GData. Only names that the
+ * program declares through intern(), like the tag in new Element(tag),
+ * are added. Names from parsed documents are only looked up, with lookup():
+ * a document cannot fill the table with its own names.
+ * <p>
+ * The symbols are the same as String.intern() gives, and so the same as
+ * String literals: you can compare a symbol with a literal with ==.
+ * A name from lookup() is a symbol only if it is in the table.
+ * */
+public final class Symbols{
+
+	/** More names than this are not put into the table. */
+	private static final int MAX=4096;
+
+	private static final ConcurrentHashMap<String, String> symbols=new ConcurrentHashMap<String, String>();
+
+	static{
+		String[] names={
+			//Atom elements
+			"feed", "entry", "id", "title", "subtitle", "updated", "published",
+			"author", "contributor", "name", "email", "uri", "link", "content",
+			"summary", "rights", "category", "source", "generator", "icon", "logo",
+			//Atom attributes
+			"rel", "href", "type", "hreflang", "length", "term", "scheme", "label",
+			"src", "version", "xml:lang", "xml:base", "lang", "base",
+			//GData
+			"gd:etag", "gd:kind", "gd:email", "gd:im", "gd:phoneNumber", "gd:postalAddress",
+			"gd:name", "gd:organization", "gd:orgName", "gd:where", "gd:when", "gd:who",
+			"gd:extendedProperty", "gd:feedLink", "gd:entryLink", "gd:rating", "gd:deleted",
+			"address", "primary", "protocol", "value", "valueString", "startTime", "endTime",
+			"openSearch:totalResults", "openSearch:startIndex", "openSearch:itemsPerPage",
+			//Namespaces
+			"xmlns", "xmlns:gd", "xmlns:xsi", "xmlns:openSearch", "xsi:schemaLocation",
+			"http://www.w3.org/2005/Atom", "http://schemas.google.com/g/2005",
+			"http://www.w3.org/2001/XMLSchema-instance", "http://a9.com/-/spec/opensearch/1.1/"
+		};
+		for(String name : names)
+			symbols.put(name, name);//Literals are interned already.
+	}
+
+	private Symbols(){}
+
+	/** Gets the symbol for a name that the program declares,
+	 * and adds it to the table if it is not there yet.
+	 * Not for names from parsed documents: see lookup(String).
+	 * @param name may be null
+	 * @return the interned String, the same as name.intern(). Null for null. */
+	public static String intern(String name){
+		if(name==null)return null;
+		String symbol=symbols.get(name);
+		if(symbol!=null)
+			return symbol;
+		symbol=name.intern();//Only once for each declared name.
+		if(symbols.size()<MAX)
+			symbols.putIfAbsent(symbol, symbol);
+		return symbol;
+	}
+
+	/** Gets the symbol for a name from a parsed document, without
+	 * adding anything to the table.
+	 * @param name may be null
+	 * @return the symbol if the name is in the table, otherwise the name itself */
+	public static String lookup(String name){
+		if(name==null)return null;
+		String symbol=symbols.get(name);
+		return symbol==null ? name : symbol;
+	}
+}
@@ -0,0 +1,239 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.xml;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicLong;
+
+import javax.xml.parsers.DocumentBuilder;
+import javax.xml.parsers.DocumentBuilderFactory;
+import javax.xml.parsers.ParserConfigurationException;
+import javax.xml.parsers.SAXParser;
+import javax.xml.parsers.SAXParserFactory;
+import javax.xml.transform.Result;
+import javax.xml.transform.Source;
+import javax.xml.transform.Transformer;
+import javax.xml.transform.TransformerConfigurationException;
+import javax.xml.transform.TransformerException;
+import javax.xml.transform.TransformerFactory;
+
+import org.w3c.dom.Document;
+import org.xml.sax.InputSource;
+import org.xml.sax.SAXException;
+import org.xml.sax.helpers.DefaultHandler;
+
+/** The JAXP objects that the XML helpers need, made once and reused.
+ * <p>
+ * The factories are looked up and configured once. They are not
+ * threadsafe, so we only make new builders and transformers while
+ * holding their lock.
+ * <p>
+ * Each thread keeps one DocumentBuilder, one SAXParser and one Transformer
+ * and resets them before each use. While a thread is using its builder,
+ * parser or transformer, a nested use on the same thread gets a new one.
+ * <p>
+ * The counters say how often a thread could reuse its builder, parser or
+ * transformer (hits) and how often a new one had to be made (misses).
+ * */
+public final class XMLRuntime {
+
+	private static final DocumentBuilderFactory documentBuilderFactory=DocumentBuilderFactory.newInstance();
+
+	private static final SAXParserFactory saxParserFactory=SAXParserFactory.newInstance();
+
+	private static final TransformerFactory transformerFactory=TransformerFactory.newInstance();
+
+	/** The free builder of each thread. Null while it is in use. */
+	private static final ThreadLocal<DocumentBuilder> builders=new ThreadLocal<DocumentBuilder>();
+
+	/** The free SAX parser of each thread. Null while it is in use. */
+	private static final ThreadLocal<SAXParser> saxParsers=new ThreadLocal<SAXParser>();
+
+	/** The free transformer of each thread. Null while it is in use. */
+	private static final ThreadLocal<Transformer> transformers=new ThreadLocal<Transformer>();
+
+	private static final AtomicLong hits=new AtomicLong();
+
+	private static final AtomicLong misses=new AtomicLong();
+
+	/** No instances. */
+	private XMLRuntime(){}
+
+	//Operations ---------------------------------------------------
+
+	/** Creates a new empty Document.
+	 * @return new Document
+	 * @exception RuntimeException wrapping ParserConfigurationException.
+	 * 	In a normal Java installation, it should never occur.
+	 * */
+	public static Document newDocument(){
+		DocumentBuilder builder=takeDocumentBuilder();
+		Document document=builder.newDocument();
+		builders.set(builder);
+		return document;
+	}
+
+	/** Parses XML into a Document.
+	 * @param in
+	 * @return new Document
+	 * @exception SAXException The XML is not well-formed.
+	 * @exception IOException reading the input
+	 * @exception RuntimeException wrapping ParserConfigurationException.
+	 * 	In a normal Java installation, it should never occur.
+	 * */
+	public static Document parse(InputSource in)throws SAXException, IOException{
+		DocumentBuilder builder=takeDocumentBuilder();
+		Document document=builder.parse(in);//SAXException, IOException
+		builders.set(builder);//Only if parsing went well.
+		return document;
+	}
+
+	/** Parses XML with SAX, without namespace processing,
+	 * like the DocumentBuilder.
+	 * @param in
+	 * @param handler receives the events
+	 * @exception SAXException The XML is not well-formed, or from the handler.
+	 * @exception IOException reading the input
+	 * @exception RuntimeException wrapping ParserConfigurationException.
+	 * 	In a normal Java installation, it should never occur.
+	 * */
+	public static void parse(InputSource in, DefaultHandler handler)throws SAXException, IOException{
+		SAXParser parser=takeSAXParser();
+		parser.parse(in, handler);//SAXException, IOException
+		parser.reset();//Else the parser keeps the handler and what it has made.
+		saxParsers.set(parser);//Only if parsing went well.
+	}
+
+	/** Transforms with the identity transformation, that is,
+	 * copies the source to the result.
+	 * @param source
+	 * @param result
+	 * @exception TransformerException
+	 * */
+	public static void transform(Source source, Result result)throws TransformerException{
+		Transformer transformer=takeTransformer();
+		transformer.transform(source, result);//TransformerException
+		transformers.set(transformer);//Only if transforming went well.
+	}
+
+	/** Makes a new DocumentBuilder from the shared factory.
+	 * The caller owns it.
+	 * @return new builder
+	 * @exception RuntimeException wrapping ParserConfigurationException.
+	 * 	In a normal Java installation, it should never occur.
+	 * */
+	public static DocumentBuilder newDocumentBuilder(){
+		try{
+			synchronized(documentBuilderFactory){
+				return documentBuilderFactory.newDocumentBuilder();//ParserConfigurationException
+			}
+		}catch(ParserConfigurationException pce){
+			throw new RuntimeException(pce);
+		}
+	}
+
+	/** Makes a new SAXParser from the shared factory.
+	 * The caller owns it.
+	 * @return new parser
+	 * @exception RuntimeException wrapping ParserConfigurationException or SAXException.
+	 * 	In a normal Java installation, it should never occur.
+	 * */
+	public static SAXParser newSAXParser(){
+		try{
+			synchronized(saxParserFactory){
+				return saxParserFactory.newSAXParser();//ParserConfigurationException, SAXException
+			}
+		}catch(ParserConfigurationException pce){
+			throw new RuntimeException(pce);
+		}catch(SAXException se){
+			throw new RuntimeException(se);
+		}
+	}
+
+	/** Makes a new identity Transformer from the shared factory.
+	 * The caller owns it.
+	 * @return new transformer
+	 * @exception RuntimeException wrapping TransformerConfigurationException.
+	 * 	In a normal Java installation that should never happen.
+	 * */
+	public static Transformer newTransformer(){
+		try{
+			synchronized(transformerFactory){
+				return transformerFactory.newTransformer();//TransformerConfigurationException
+			}
+		}catch(TransformerConfigurationException tce){
+			throw new RuntimeException(tce);
+		}
+	}
+
+	//Counters -----------------------------------------------------
+
+	/** How often has a thread reused its builder or transformer? */
+	public static long getHits(){return hits.get();}
+
+	/** How often did we have to make a new builder or transformer? */
+	public static long getMisses(){return misses.get();}
+
+	/** For logging. */
+	public static String getStatistics(){
+		return "XMLRuntime hits=" + hits.get() + " misses=" + misses.get();
+	}
+
+	//Helpers ------------------------------------------------------
+
+	/** Takes this thread's builder, or makes a new one.
+	 * The caller puts it back in builders when done. */
+	private static DocumentBuilder takeDocumentBuilder(){
+		DocumentBuilder builder=builders.get();
+		if(builder==null){
+			misses.incrementAndGet();
+			return newDocumentBuilder();
+		}
+		builders.set(null);//in use now
+		hits.incrementAndGet();
+		builder.reset();
+		return builder;
+	}
+
+	/** Takes this thread's SAX parser, or makes a new one.
+	 * The caller puts it back in saxParsers when done. */
+	private static SAXParser takeSAXParser(){
+		SAXParser parser=saxParsers.get();
+		if(parser==null){
+			misses.incrementAndGet();
+			return newSAXParser();
+		}
+		saxParsers.set(null);//in use now
+		hits.incrementAndGet();
+		return parser;
+	}
+
+	/** Takes this thread's transformer, or makes a new one.
+	 * The caller puts it back in transformers when done. */
+	private static Transformer takeTransformer(){
+		Transformer transformer=transformers.get();
+		if(transformer==null){
+			misses.incrementAndGet();
+			return newTransformer();
+		}
+		transformers.set(null);//in use now
+		hits.incrementAndGet();
+		transformer.reset();
+		return transformer;
+	}
+}
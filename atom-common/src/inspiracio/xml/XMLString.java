@@ -121,8 +121,57 @@ public class XMLString {
 	 */
 	public static String escape(String s){
 		if(s==null)return null;
-		StringBuilder buffer = new StringBuilder();
+		int first=indexOfEscape(s);
+		if(first<0)return s;//Nothing to escape: no copy.
+		StringBuilder buffer = new StringBuilder(s.length() + 16);
+		buffer.append(s, 0, first);
+		escape(s, first, buffer);
+		return buffer.toString();
+	}
+
+	/** Escapes a String like escape(String), appending the result
+	 * to a buffer instead of making a new String.
+	 * @param s The string to escape. Not null.
+	 * @param buffer Receives the escaped string.
+	 * */
+	public static void escape(String s, StringBuilder buffer){
+		int first=indexOfEscape(s);
+		if(first<0){
+			buffer.append(s);
+			return;
+		}
+		buffer.append(s, 0, first);
+		escape(s, first, buffer);
+	}
+
+	/** Finds the first char that escape(String) would change.
+	 * @param s not null
+	 * @return index of the first char to escape, or -1 if there is none
+	 * */
+	public static int indexOfEscape(String s){
 		for (int i=0; i<s.length(); i++){
+			if(isEscaped(s.charAt(i)))return i;
+		}
+		return -1;
+	}
+
+	/** Does escape(String) change this char? */
+	public static boolean isEscaped(char c){
+		switch (c){
+		case 13:
+		case 34:
+		case 38:
+		case 60:
+		case 62:
+			return true;
+		default:
+			return false;
+		}
+	}
+
+	/** Escapes s from index start on, appending to buffer. */
+	private static void escape(String s, int start, StringBuilder buffer){
+		for (int i=start; i<s.length(); i++){
 			char c = s.charAt(i);
 			switch (c){
 			case 13: /* append "" to buffer */ break;
@@ -133,7 +182,6 @@ public class XMLString {
 			default: buffer.append(c);
 			}
 		}//for
-		return buffer.toString();
 	}
 
 	/** Unescapes a String that comes from XML to get back the original string.
@@ -34,6 +34,9 @@ public class ContentHandlerWrapper implements ContentHandler{
 		this.delegate=delegate;
 	}
 
+	/** The wrapped content handler */
+	protected ContentHandler getDelegate(){return this.delegate;}
+
 	/** Write some chars. 
 	 * @param arg0
 	 * @param arg1
@@ -34,6 +34,16 @@ import org.xml.sax.helpers.AttributesImpl;
 /** Adds some convenient methods to a content handler. */
 public class EasyContentHandler extends ContentHandlerWrapper{
 
+	//State -------------------------------------------------------
+
+	/** Reused for the attributes of every element. The delegate
+	 * must not keep them after startElement, as SAX says. */
+	private final AttributesImpl attributes=new AttributesImpl();
+
+	/** Reused for the chars of every characters(String). The delegate
+	 * must not keep them after characters, as SAX says. */
+	private char[] chars=new char[256];
+
 	//Constructors ------------------------------------------------
 	
 	/** Construct from a delegate 
@@ -56,7 +66,8 @@ public class EasyContentHandler extends ContentHandlerWrapper{
 	public void startElement(String tag, Map<String, String> attributes) throws SAXException {
 		//Assume the XMLReader does not perform namespace processing.
 		//So, we must always have localName = "" and qName =<desired tag name>.
-		AttributesImpl attributesImpl = new AttributesImpl();
+		AttributesImpl attributesImpl = this.attributes;
+		attributesImpl.clear();
 		Iterator<Map.Entry<String, String>> entries = attributes.entrySet().iterator();
 		while (entries.hasNext()){
 			Map.Entry<String, String> entry = entries.next();
@@ -78,6 +89,23 @@ public class EasyContentHandler extends ContentHandlerWrapper{
         );//SAXException
 	}
 
+	/** Starts an element. No automatic namespace processing.
+	 * @param tag The tag name as it will appear in the XML,
+	 * 	whether it's qualified or not.
+	 * @param attributes The names and values of the attributes, alternating:
+	 * 	name, value, name, value. Null for none.
+	 * @exception SAXException
+	 * */
+	public void startElement(String tag, String[] attributes) throws SAXException {
+		AttributesImpl attributesImpl = this.attributes;
+		attributesImpl.clear();
+		if(attributes!=null){
+			for(int i=0; i<attributes.length; i+=2)
+				attributesImpl.addAttribute("", "", attributes[i], null, attributes[i+1]);
+		}
+		this.startElement("", "", tag, attributesImpl);//SAXException
+	}
+
 	/** Starts an element. No automatic namespace processing.
 	 * @param tag The tag name as it will appear in the XML,
 	 * 	whether it's qualified or not.
@@ -86,7 +114,8 @@ public class EasyContentHandler extends ContentHandlerWrapper{
 	public void startElement(String tag) throws SAXException {
 		//Assume the XMLReader does not perform namespace processing.
 		//So, we must always have localName = "" and qName =<desired tag name>.
-		Attributes attributes = new AttributesImpl();
+		Attributes attributes = this.attributes;
+		this.attributes.clear();
         this.startElement(
         	"", //namespaceURI: no namespace processing
         	"", //localName: no namespace processing
@@ -194,11 +223,86 @@ public class EasyContentHandler extends ContentHandlerWrapper{
 	}
 	
 	/** Escapes a String for XML and adds it to the content handler.
+	 * Escapes like XMLString.escape(String), but without making new
+	 * Strings: the chars go through a reused array.
 	 * @param s 
 	 * @exception SAXException
 	 * */
 	public void characters(String s) throws SAXException{
-		String escaped=XMLString.escape(s);
-		this.characters(escaped.toCharArray(), 0, escaped.length());
+		int length=s.length();
+		int first=XMLString.indexOfEscape(s);
+		if(first<0){
+			//Nothing to escape: just copy.
+			char[] cs=this.chars(length);
+			s.getChars(0, length, cs, 0);
+			this.characters(cs, 0, length);
+			return;
+		}
+		//An escaped char becomes at most 6 chars.
+		char[] cs=this.chars(first + 6*(length-first));
+		s.getChars(0, first, cs, 0);
+		int n=first;
+		for(int i=first; i<length; i++){
+			char c=s.charAt(i);
+			switch(c){
+			case 13: break;
+			case 34: n=append(cs, n, "&quot;"); break;
+			case 38: n=append(cs, n, "&amp;"); break;
+			case 60: n=append(cs, n, "&lt;"); break;
+			case 62: n=append(cs, n, "&gt;"); break;
+			default: cs[n++]=c;
+			}
+		}
+		this.characters(cs, 0, n);
+	}
+
+	//Capture and raw bytes ---------------------------------------
+
+	/** Can this handler capture and write raw bytes?
+	 * Only if it writes directly to an XMLWriter, with no other
+	 * handler in between that would change the XML, like indentation.
+	 * */
+	public boolean isRaw(){
+		return this.getDelegate() instanceof XMLWriter;
+	}
+
+	/** Starts copying the bytes that are written. Only if isRaw().
+	 * Call it between elements.
+	 * @exception SAXException
+	 * */
+	public void startCapture()throws SAXException{
+		((XMLWriter)this.getDelegate()).startCapture();
+	}
+
+	/** Stops copying the bytes. Only if isRaw().
+	 * @return the bytes written since startCapture()
+	 * @exception SAXException
+	 * */
+	public byte[] endCapture()throws SAXException{
+		return ((XMLWriter)this.getDelegate()).endCapture();
+	}
+
+	/** Writes bytes that have been captured before. Only if isRaw().
+	 * @param bytes
+	 * @exception SAXException
+	 * */
+	public void raw(byte[] bytes)throws SAXException{
+		((XMLWriter)this.getDelegate()).raw(bytes);
+	}
+
+	//Helpers -----------------------------------------------------
+
+	/** Gets the reused char array, with at least this length. */
+	private char[] chars(int length){
+		if(this.chars.length<length)
+			this.chars=new char[Math.max(length, 2*this.chars.length)];
+		return this.chars;
+	}
+
+	/** Copies s into cs at position n.
+	 * @return position after s */
+	private static int append(char[] cs, int n, String s){
+		s.getChars(0, s.length(), cs, n);
+		return n+s.length();
 	}
 }
\ No newline at end of file
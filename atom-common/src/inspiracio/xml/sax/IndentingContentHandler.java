@@ -17,6 +17,8 @@
  */
 package inspiracio.xml.sax;
 
+import java.util.Arrays;
+
 import org.xml.sax.Attributes;
 import org.xml.sax.ContentHandler;
 import org.xml.sax.SAXException;
@@ -31,8 +33,14 @@ import org.xml.sax.SAXException;
  * */
 public class IndentingContentHandler extends ContentHandlerWrapper {
 
+	/** A line break, for every newline() */
+	private static final char[] NEWLINE={'\n'};//this okay as newline on various platforms?
+
 	//State ---------------------------------------------------------
 
+	/** Tabs for indent(). Grows with the indentation. */
+	private char[] tabs=new char[0];
+
 	/** current indentation level */
 	private int indent=0;
 	
@@ -112,15 +120,15 @@ public class IndentingContentHandler extends ContentHandlerWrapper {
 	
 	/** insert a newline and a indentation level tabs */
 	private void newline()throws SAXException{
-		char[] cs = new char[1];
-		cs[0] = '\n';//this okay as newline on various platforms?
-		super.characters(cs, 0, 1);//SAXException
+		super.characters(NEWLINE, 0, 1);//SAXException
 		this.fresh=true;
 	}
 	
 	private void indent()throws SAXException{
-		char[] cs = new char[this.indent];
-		for(int i=0; i<this.indent; i++)cs[i] = '\t';
-		super.characters(cs, 0, this.indent);//SAXException
+		if(this.tabs.length<this.indent){
+			this.tabs=new char[this.indent + 8];
+			Arrays.fill(this.tabs, '\t');
+		}
+		super.characters(this.tabs, 0, this.indent);//SAXException
 	}
 }
\ No newline at end of file
@@ -0,0 +1,449 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.xml.sax;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+
+import org.xml.sax.Attributes;
+import org.xml.sax.ContentHandler;
+import org.xml.sax.Locator;
+import org.xml.sax.SAXException;
+
+/** A content handler that writes the XML directly as UTF-8 bytes
+ * to an output stream.
+ * <p>
+ * Replaces the identity transformation from a SAXSource to a
+ * StreamResult. Produces the same bytes as the JDK's default
+ * serializer does for our documents: the same XML declaration,
+ * the same escaping, and empty elements abbreviated as &lt;tag/&gt;.
+ * There is no namespace processing: the qualified names and the
+ * xmlns-attributes are written as they come.
+ * <p>
+ * The bytes are collected in a buffer that is reused by the
+ * following writers on the same thread, and are written to the
+ * output stream when the buffer is full and at the end of the
+ * document.
+ * <p>
+ * The writer can also copy the bytes that it writes for some part of
+ * the document (capture), and write bytes that it has copied before
+ * (raw). That way, a caller can cache parts of documents.
+ * <p>
+ * Not threadsafe. Make one writer for each document.
+ * */
+public class XMLWriter implements ContentHandler{
+
+	/** Size of the byte buffer. */
+	private static final int BUFFER_SIZE=8*1024;
+
+	private static final byte[] DECLARATION=ascii("<?xml version=\"1.0\" encoding=\"UTF-8\"?>");
+	private static final byte[] AMP=ascii("&amp;");
+	private static final byte[] LT=ascii("&lt;");
+	private static final byte[] GT=ascii("&gt;");
+	private static final byte[] QUOT=ascii("&quot;");
+
+	/** A free buffer for the next writer on this thread. */
+	private static final ThreadLocal<byte[]> buffers=new ThreadLocal<byte[]>();
+
+	//State -------------------------------------------------------
+
+	private OutputStream out;
+
+	private byte[] buffer;
+
+	/** number of bytes in the buffer */
+	private int count=0;
+
+	/** Have we written the XML declaration? */
+	private boolean declared=false;
+
+	/** Is there a start tag waiting for its ">"?
+	 * If the element ends immediately, we write "/>" instead. */
+	private boolean open=false;
+
+	/** Receives a copy of the bytes while capturing. Null if not capturing. */
+	private ByteArrayOutputStream capture;
+
+	/** Where the captured bytes start in the buffer. */
+	private int captureStart;
+
+	//Constructors ------------------------------------------------
+
+	/** Construct a writer for an output stream.
+	 * @param out Receives the UTF-8 bytes. The writer flushes it
+	 * 	at the end of the document, but does not close it.
+	 * */
+	public XMLWriter(OutputStream out){
+		this.out=out;
+		byte[] b=buffers.get();
+		if(b==null)
+			b=new byte[BUFFER_SIZE];
+		else
+			buffers.set(null);//in use now
+		this.buffer=b;
+	}
+
+	//SAX event handling methods ----------------------------------
+
+	/** Ignored: we have no use for locations. */
+	@Override public void setDocumentLocator(Locator locator){}
+
+	/** Starts the document. The XML declaration is written
+	 * with the first output. */
+	@Override public void startDocument()throws SAXException{}
+
+	/** Writes whatever is still in the buffer and flushes the stream.
+	 * @exception SAXException wrapping IOException
+	 * */
+	@Override public void endDocument()throws SAXException{
+		this.declare();
+		this.close();
+		try{
+			this.flushBuffer();
+			this.out.flush();
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+		buffers.set(this.buffer);//Next writer on this thread can have it.
+	}
+
+	/** Ignored: no namespace processing. */
+	@Override public void startPrefixMapping(String prefix, String uri){}
+
+	/** Ignored: no namespace processing. */
+	@Override public void endPrefixMapping(String prefix){}
+
+	/** Writes the start tag, but not yet its closing "&gt;".
+	 * @param uri ignored
+	 * @param localName used only if qName is empty
+	 * @param qName
+	 * @param atts written in their order
+	 * @exception SAXException
+	 * */
+	@Override public void startElement(String uri, String localName, String qName, Attributes atts)throws SAXException{
+		this.declare();
+		this.close();
+		String tag=0<qName.length() ? qName : localName;
+		this.write('<');
+		this.writeName(tag);
+		for(int i=0; i<atts.getLength(); i++){
+			String name=atts.getQName(i);
+			if(name==null || name.length()==0)
+				name=atts.getLocalName(i);
+			this.write(' ');
+			this.writeName(name);
+			this.write('=');
+			this.write('"');
+			String value=atts.getValue(i);
+			this.writeAttributeValue(value);
+			this.write('"');
+		}
+		this.open=true;
+	}
+
+	/** Writes the end tag, or abbreviates the element if it is empty.
+	 * @param uri ignored
+	 * @param localName used only if qName is empty
+	 * @param qName
+	 * @exception SAXException
+	 * */
+	@Override public void endElement(String uri, String localName, String qName)throws SAXException{
+		if(this.open){
+			this.write('/');
+			this.write('>');
+			this.open=false;
+		}else{
+			String tag=0<qName.length() ? qName : localName;
+			this.write('<');
+			this.write('/');
+			this.writeName(tag);
+			this.write('>');
+		}
+	}
+
+	/** Writes text, escaping for XML.
+	 * @param ch
+	 * @param start
+	 * @param length
+	 * @exception SAXException
+	 * */
+	@Override public void characters(char[] ch, int start, int length)throws SAXException{
+		if(length==0)return;
+		this.declare();
+		this.close();
+		this.writeText(ch, start, length);
+	}
+
+	/** Like characters.
+	 * @param ch
+	 * @param start
+	 * @param length
+	 * @exception SAXException
+	 * */
+	@Override public void ignorableWhitespace(char[] ch, int start, int length)throws SAXException{
+		this.characters(ch, start, length);
+	}
+
+	/** Writes a processing instruction.
+	 * @param target
+	 * @param data may be null
+	 * @exception SAXException
+	 * */
+	@Override public void processingInstruction(String target, String data)throws SAXException{
+		this.declare();
+		this.close();
+		this.write('<');
+		this.write('?');
+		this.writeName(target);
+		if(data!=null && 0<data.length()){
+			this.write(' ');
+			this.writeName(data);
+		}
+		this.write('?');
+		this.write('>');
+	}
+
+	/** Ignored. */
+	@Override public void skippedEntity(String name){}
+
+	//Capture and raw bytes ---------------------------------------
+
+	/** Starts copying the bytes that are written.
+	 * Call it between elements, that is, before a start tag.
+	 * @exception SAXException
+	 * */
+	public void startCapture()throws SAXException{
+		this.declare();
+		this.close();
+		this.capture=new ByteArrayOutputStream(512);
+		this.captureStart=this.count;
+	}
+
+	/** Stops copying bytes.
+	 * Call it between elements, that is, after an end tag.
+	 * @return the bytes written since startCapture()
+	 * @exception SAXException
+	 * */
+	public byte[] endCapture()throws SAXException{
+		this.close();
+		ByteArrayOutputStream bytes=this.capture;
+		bytes.write(this.buffer, this.captureStart, this.count-this.captureStart);
+		this.capture=null;
+		return bytes.toByteArray();
+	}
+
+	/** Writes some bytes verbatim, for example bytes that come from endCapture().
+	 * They must be UTF-8 and well-formed XML content.
+	 * @param bs
+	 * @exception SAXException
+	 * */
+	public void raw(byte[] bs)throws SAXException{
+		this.declare();
+		this.close();
+		if(bs.length<=this.buffer.length){
+			this.write(bs);
+			return;
+		}
+		//Too big for the buffer.
+		this.flushBuffer();
+		try{
+			this.out.write(bs);
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+		if(this.capture!=null)
+			this.capture.write(bs, 0, bs.length);
+	}
+
+	//Helpers -----------------------------------------------------
+
+	/** Writes the XML declaration if we haven't yet. */
+	private void declare()throws SAXException{
+		if(!this.declared){
+			this.declared=true;
+			this.write(DECLARATION);
+		}
+	}
+
+	/** If there is an open start tag, writes its "&gt;". */
+	private void close()throws SAXException{
+		if(this.open){
+			this.write('>');
+			this.open=false;
+		}
+	}
+
+	/** Writes a tag or attribute name, which need no escaping. */
+	private void writeName(String s)throws SAXException{
+		int length=s.length();
+		for(int i=0; i<length; i++){
+			char c=s.charAt(i);
+			if(c<0x80)
+				this.write(c);
+			else
+				i=this.writeChar(s, i, length);
+		}
+	}
+
+	/** Writes text content.
+	 * Escapes &amp;, &lt;, &gt; and control characters like the JDK serializer. */
+	private void writeText(char[] ch, int start, int length)throws SAXException{
+		int end=start+length;
+		for(int i=start; i<end; i++){
+			char c=ch[i];
+			switch(c){
+			case '&': this.write(AMP); break;
+			case '<': this.write(LT); break;
+			case '>': this.write(GT); break;
+			case '\t':
+			case '\n':
+				this.write(c);
+				break;
+			default:
+				if(c<0x20 || (0x7F<=c && c<=0x9F))
+					this.writeReference(c);
+				else if(c<0x80)
+					this.write(c);
+				else
+					i=this.writeChar(ch, i, end);
+			}
+		}
+	}
+
+	/** Writes an attribute value.
+	 * Escapes &amp;, &lt;, &gt;, &quot; and whitespace other than space. */
+	private void writeAttributeValue(String s)throws SAXException{
+		int length=s.length();
+		for(int i=0; i<length; i++){
+			char c=s.charAt(i);
+			switch(c){
+			case '&': this.write(AMP); break;
+			case '<': this.write(LT); break;
+			case '>': this.write(GT); break;
+			case '"': this.write(QUOT); break;
+			default:
+				if(c<0x20)
+					this.writeReference(c);
+				else if(c<0x80)
+					this.write(c);
+				else
+					i=this.writeChar(s, i, length);
+			}
+		}
+	}
+
+	/** Writes the non-ASCII char at position i of s as UTF-8.
+	 * A surrogate pair is written as a character reference, like the JDK serializer does.
+	 * @return position of the last char consumed */
+	private int writeChar(CharSequence s, int i, int end)throws SAXException{
+		char c=s.charAt(i);
+		if(Character.isHighSurrogate(c)){
+			if(i+1<end && Character.isLowSurrogate(s.charAt(i+1))){
+				int codePoint=Character.toCodePoint(c, s.charAt(i+1));
+				this.writeReference(codePoint);
+				return i+1;
+			}
+			throw new SAXException("Invalid UTF-16 surrogate: " + Integer.toHexString(c));
+		}
+		if(Character.isLowSurrogate(c))
+			throw new SAXException("Invalid UTF-16 surrogate: " + Integer.toHexString(c));
+		this.writeUTF8(c);
+		return i;
+	}
+
+	/** Like writeChar(CharSequence, int, int), for char arrays. */
+	private int writeChar(char[] ch, int i, int end)throws SAXException{
+		char c=ch[i];
+		if(Character.isHighSurrogate(c)){
+			if(i+1<end && Character.isLowSurrogate(ch[i+1])){
+				int codePoint=Character.toCodePoint(c, ch[i+1]);
+				this.writeReference(codePoint);
+				return i+1;
+			}
+			throw new SAXException("Invalid UTF-16 surrogate: " + Integer.toHexString(c));
+		}
+		if(Character.isLowSurrogate(c))
+			throw new SAXException("Invalid UTF-16 surrogate: " + Integer.toHexString(c));
+		this.writeUTF8(c);
+		return i;
+	}
+
+	/** Writes a char from the basic multilingual plane, not ASCII, as UTF-8. */
+	private void writeUTF8(char c)throws SAXException{
+		if(this.buffer.length < this.count+3)
+			this.flushBuffer();
+		byte[] b=this.buffer;
+		if(c<0x800){
+			b[count++]=(byte)(0xC0 | (c>>6));
+			b[count++]=(byte)(0x80 | (c & 0x3F));
+		}else{
+			b[count++]=(byte)(0xE0 | (c>>12));
+			b[count++]=(byte)(0x80 | ((c>>6) & 0x3F));
+			b[count++]=(byte)(0x80 | (c & 0x3F));
+		}
+	}
+
+	/** Writes a numeric character reference like "&amp;#13;". */
+	private void writeReference(int codePoint)throws SAXException{
+		this.write('&');
+		this.write('#');
+		String digits=Integer.toString(codePoint);
+		for(int i=0; i<digits.length(); i++)
+			this.write(digits.charAt(i));
+		this.write(';');
+	}
+
+	/** Writes one ASCII char. */
+	private void write(char c)throws SAXException{
+		if(this.count==this.buffer.length)
+			this.flushBuffer();
+		this.buffer[this.count++]=(byte)c;
+	}
+
+	/** Writes some bytes. */
+	private void write(byte[] bs)throws SAXException{
+		if(this.buffer.length < this.count+bs.length)
+			this.flushBuffer();
+		System.arraycopy(bs, 0, this.buffer, this.count, bs.length);
+		this.count+=bs.length;
+	}
+
+	/** Writes the buffer to the output stream and empties it.
+	 * @exception SAXException wrapping IOException */
+	private void flushBuffer()throws SAXException{
+		try{
+			this.out.write(this.buffer, 0, this.count);
+			if(this.capture!=null){
+				this.capture.write(this.buffer, this.captureStart, this.count-this.captureStart);
+				this.captureStart=0;
+			}
+			this.count=0;
+		}catch(IOException ioe){
+			throw new SAXException(ioe);
+		}
+	}
+
+	/** Converts an ASCII String to bytes. */
+	private static byte[] ascii(String s){
+		byte[] bs=new byte[s.length()];
+		for(int i=0; i<bs.length; i++)
+			bs[i]=(byte)s.charAt(i);
+		return bs;
+	}
+}
@@ -0,0 +1,49 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom.gdata;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class GDataURLTest{
+
+	@Test public void request(){
+		GDataURL url=new GDataURL("http://domain/atom/-/offer/entry613?style=short&prettyprint=true&q=");
+		GDataRequest request=url.getRequest();
+		Assert.assertEquals(1, request.getTerms().size());
+		Assert.assertEquals("offer", request.getCategories().get(0).getTerm());
+		Assert.assertEquals("613", request.getId());
+		Assert.assertEquals(Style.parseStyle("short"), request.getStyle());
+		Assert.assertTrue(request.getPrettyprint());
+		Assert.assertNull(request.getParameter("q"));
+		Assert.assertEquals("613", url.getParameters().getId());
+		Assert.assertSame(request, url.getRequest());
+	}
+
+	/** The request is parsed again when the URL changes. */
+	@Test public void change(){
+		GDataURL url=new GDataURL("http://domain/atom/-/offer");
+		GDataRequest request=url.getRequest();
+		url.toStringBuilder().append("/user");
+		Assert.assertEquals(2, url.getRequest().getTerms().size());
+		url.setParameter("q", "bla");
+		Assert.assertEquals("bla", url.getRequest().getParameter("q"));
+		Assert.assertNull(request.getParameter("q"));
+		Assert.assertEquals(1, request.getTerms().size());
+	}
+}
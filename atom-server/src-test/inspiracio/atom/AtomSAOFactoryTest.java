@@ -0,0 +1,118 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.atom;
+
+import inspiracio.servlet.http.DummyHttpServletRequest;
+import inspiracio.servlet.http.InternalServerErrorException;
+
+import java.security.Principal;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.http.HttpServletRequest;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import atom.gdata.GDataURL;
+
+public class AtomSAOFactoryTest{
+
+	private static final GDataURL URL=new GDataURL("http://domain/atom/-/user");
+
+	/** In one request, the same SAO. */
+	@Test public void request()throws Exception{
+		AtomSAOFactory factory=factory(AtomSAOFactory.Scope.REQUEST);
+		HttpServletRequest request=new Request();
+		AtomSAO<AtomBean> sao=factory.get(URL, request, null);
+		Assert.assertSame(sao, factory.get(URL, request, null));
+		factory.release(request);
+		Assert.assertNotSame(sao, factory.get(URL, new Request(), null));
+	}
+
+	/** A later request gets the SAO back, without principal. */
+	@Test public void pooled()throws Exception{
+		AtomSAOFactory factory=factory(AtomSAOFactory.Scope.POOLED);
+		HttpServletRequest request=new Request();
+		AtomSAO<AtomBean> sao=factory.get(URL, request, principal("a"));
+		Assert.assertNotSame(sao, factory.get(URL, new Request(), null));
+		factory.release(request);
+		Assert.assertNull(sao.getCallerPrincipal());
+		Assert.assertSame(sao, factory.get(URL, new Request(), null));
+	}
+
+	/** The singleton has the principal per thread. */
+	@Test public void singleton()throws Exception{
+		final AtomSAOFactory factory=factory(AtomSAOFactory.Scope.SINGLETON);
+		final AtomSAO<AtomBean> sao=factory.get(URL, new Request(), principal("a"));
+		final Principal[] other=new Principal[1];
+		Thread thread=new Thread(){
+			@Override public void run(){
+				try{
+					Assert.assertSame(sao, factory.get(URL, new Request(), principal("b")));
+					other[0]=sao.getCallerPrincipal();
+				}catch(Exception e){
+					throw new RuntimeException(e);
+				}
+			}
+		};
+		thread.start();
+		thread.join();
+		Assert.assertEquals("b", other[0].getName());
+		Assert.assertEquals("a", sao.getCallerPrincipal().getName());
+	}
+
+	/** A SAO that does not keep the principal per thread cannot be a singleton. */
+	@Test(expected=IllegalArgumentException.class) public void plainSingleton()throws Exception{
+		Map<String, AtomSAOFactory.Scope> scopes=Collections.singletonMap("plain", AtomSAOFactory.Scope.SINGLETON);
+		new AtomSAOFactory("inspiracio", AtomSAOFactory.Scope.REQUEST, scopes, 4, null);
+	}
+
+	/** A SAO that cannot be reset cannot be pooled. */
+	@Test(expected=IllegalArgumentException.class) public void plainPooled()throws Exception{
+		Map<String, AtomSAOFactory.Scope> scopes=Collections.singletonMap("plain", AtomSAOFactory.Scope.POOLED);
+		new AtomSAOFactory("inspiracio", AtomSAOFactory.Scope.REQUEST, scopes, 4, null);
+	}
+
+	/** With default scope singleton, a request for such a SAO fails. */
+	@Test(expected=InternalServerErrorException.class) public void plainDefaultSingleton()throws Exception{
+		Map<String, AtomSAOFactory.Scope> scopes=Collections.emptyMap();
+		AtomSAOFactory factory=new AtomSAOFactory("inspiracio", AtomSAOFactory.Scope.SINGLETON, scopes, 4, null);
+		factory.get(new GDataURL("http://domain/atom/-/plain"), new Request(), null);
+	}
+
+	//Helpers ------------------------------------------------------
+
+	private static AtomSAOFactory factory(AtomSAOFactory.Scope scope)throws Exception{
+		Map<String, AtomSAOFactory.Scope> scopes=Collections.singletonMap("user", scope);
+		return new AtomSAOFactory("inspiracio", AtomSAOFactory.Scope.REQUEST, scopes, 4, null);
+	}
+
+	private static Principal principal(final String name){
+		return new Principal(){@Override public String getName(){return name;}};
+	}
+
+	/** A request with attributes */
+	private static class Request extends DummyHttpServletRequest{
+		private Map<String, Object> attributes=new HashMap<String, Object>();
+		@Override public Object getAttribute(String name){return this.attributes.get(name);}
+		@Override public void setAttribute(String name, Object value){this.attributes.put(name, value);}
+		@Override public void removeAttribute(String name){this.attributes.remove(name);}
+	}
+}
@@ -0,0 +1,107 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.atom;
+
+import inspiracio.servlet.http.BadRequestException;
+import inspiracio.user.User;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+import atom.Entry;
+
+public class BeanConverterTest{
+
+	/** In parallel, the beans are in the order of the entries. */
+	@Test public void order()throws Exception{
+		BeanConverter converter=new BeanConverter(4, 10);
+		try{
+			List<AtomBean> beans=converter.toAtomBeans(new SAO(), entries(1000), 0);
+			Assert.assertEquals(1000, beans.size());
+			for(int i=0; i<1000; i++)
+				Assert.assertEquals("" + i, beans.get(i).getId());
+		}finally{
+			converter.shutdown();
+		}
+	}
+
+	/** The failure has the index in the batch of the first invalid entry. */
+	@Test public void invalid()throws Exception{
+		BeanConverter converter=new BeanConverter(4, 10);
+		List<Entry> entries=entries(1000);
+		entries.set(900, new Entry());
+		entries.set(345, new Entry());
+		try{
+			converter.toAtomBeans(new SAO(), entries, 5000);
+			Assert.fail();
+		}catch(BadRequestException e){
+			Assert.assertTrue(e.getMessage(), e.getMessage().startsWith("Entry 5345 "));
+		}finally{
+			converter.shutdown();
+		}
+	}
+
+	/** The threads have the principal of a singleton SAO, which keeps it per thread. */
+	@Test public void principal()throws Exception{
+		BeanConverter converter=new BeanConverter(4, 10);
+		final Set<String> names=Collections.synchronizedSet(new HashSet<String>());
+		SAO sao=new SAO(){
+			@Override public AtomBean toAtomBean(Entry entry){
+				Principal principal=this.getCallerPrincipal();
+				names.add(principal==null ? null : principal.getName());
+				return super.toAtomBean(entry);
+			}
+		};
+		sao.share();
+		sao.setCallerPrincipal(new Principal(){@Override public String getName(){return "a";}});
+		try{
+			converter.toAtomBeans(sao, entries(1000), 0);
+			Assert.assertEquals(Collections.singleton("a"), names);
+		}finally{
+			converter.shutdown();
+		}
+	}
+
+	private static List<Entry> entries(int n){
+		List<Entry> entries=new ArrayList<Entry>(n);
+		for(int i=0; i<n; i++){
+			Entry entry=new Entry();
+			entry.setId("" + i);
+			entries.add(entry);
+		}
+		return entries;
+	}
+
+	/** Converts entries with id to users. */
+	private static class SAO extends AbstractAtomSAO<AtomBean>{
+		@Override public AtomBean toAtomBean(Entry entry){
+			if(entry.getId()==null)
+				throw new IllegalArgumentException("no id");
+			User user=new User();
+			user.setId(entry.getId());
+			return user;
+		}
+	}
+}
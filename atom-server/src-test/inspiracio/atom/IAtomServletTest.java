@@ -0,0 +1,241 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.atom;
+
+import inspiracio.item.ItemAtomSAO;
+import inspiracio.servlet.http.DummyHttpServletRequest;
+import inspiracio.servlet.http.DummyHttpServletResponse;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.security.Principal;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+
+import javax.servlet.ServletConfig;
+import javax.servlet.ServletContext;
+import javax.servlet.ServletException;
+import javax.servlet.ServletInputStream;
+import javax.servlet.ServletOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+/** Requests through IAtomServlet to inspiracio.item.ItemAtomSAO */
+public class IAtomServletTest{
+
+	/** The feed of a standard SAO has an ETag, and a client that has it gets 304. */
+	@Test public void notModified()throws Exception{
+		IAtomServlet servlet=servlet();
+		Response response=service(servlet, new Request("GET", null));
+		Assert.assertEquals(200, response.status);
+		Assert.assertTrue(0<response.body.size());
+		String etag=response.headers.get("ETag");
+		Assert.assertNotNull(etag);
+		Assert.assertEquals(etag, service(servlet, new Request("GET", null)).headers.get("ETag"));
+
+		Request request=new Request("GET", null);
+		request.headers.put("If-None-Match", etag);
+		response=service(servlet, request);
+		Assert.assertEquals(304, response.status);
+		Assert.assertEquals(0, response.body.size());
+		servlet.destroy();
+	}
+
+	/** HEAD has the headers of GET, without body. */
+	@Test public void head()throws Exception{
+		IAtomServlet servlet=servlet();
+		Response get=service(servlet, new Request("GET", null));
+		Response head=service(servlet, new Request("HEAD", null));
+		Assert.assertEquals(200, head.status);
+		Assert.assertEquals(0, head.body.size());
+		Assert.assertNotNull(head.headers.get("ETag"));
+		Assert.assertEquals(get.headers.get("ETag"), head.headers.get("ETag"));
+		Assert.assertEquals(get.headers.get("Content-Type"), head.headers.get("Content-Type"));
+		Assert.assertEquals(Integer.toString(get.body.size()), head.headers.get("Content-Length"));
+		servlet.destroy();
+	}
+
+	/** HEAD closes the cursor of the SAO without reading it. */
+	@Test public void headClosesCursor()throws Exception{
+		IAtomServlet servlet=servlet();
+		int closed=ItemAtomSAO.closed;
+		Response head=service(servlet, new Request("HEAD", "cursor=true"));
+		Assert.assertEquals(200, head.status);
+		Assert.assertNull(head.headers.get("ETag"));
+		Assert.assertEquals(closed+1, ItemAtomSAO.closed);
+		servlet.destroy();
+	}
+
+	/** A bean that cannot be converted while the feed is written gives 500,
+	 * if nothing has been sent yet. */
+	@Test public void invalidBean()throws Exception{
+		IAtomServlet servlet=servlet();
+		Response response=service(servlet, new Request("GET", "second=invalid"));
+		Assert.assertEquals(500, response.status);
+		Assert.assertEquals(0, response.body.size());
+		servlet.destroy();
+	}
+
+	/** After the status has gone, the response is broken off. */
+	@Test public void invalidBeanCommitted()throws Exception{
+		IAtomServlet servlet=servlet();
+		Response response=new Response();
+		response.committed=true;
+		try{
+			servlet.service(new Request("GET", "second=invalid"), response);
+			Assert.fail();
+		}catch(ServletException e){
+			Assert.assertTrue(e.getMessage(), e.getMessage().contains("only in part"));
+		}
+		servlet.destroy();
+	}
+
+	/** A bean of another class declares its namespace in its entry. */
+	@Test public void namespaces()throws Exception{
+		IAtomServlet servlet=servlet();
+		Response response=service(servlet, new Request("GET", "second=other"));
+		Assert.assertEquals(200, response.status);
+		String xml=response.body.toString("UTF-8");
+		String entry=xml.substring(xml.lastIndexOf("<entry "));
+		Assert.assertTrue(xml, entry.startsWith("<entry ") && entry.indexOf("xmlns:other=")<entry.indexOf(">"));
+		Assert.assertTrue(xml, entry.contains("<other:thing>other</other:thing>"));
+		servlet.destroy();
+	}
+
+	/** Each servlet has its own EntryCache, with its own size. */
+	@Test public void entryCachePerServlet()throws Exception{
+		IAtomServlet cached=servlet("100000");
+		IAtomServlet uncached=servlet();
+		Assert.assertEquals(200, service(cached, new Request("GET", null)).status);
+		Assert.assertEquals(200, service(uncached, new Request("GET", null)).status);
+		Assert.assertEquals(200, service(cached, new Request("GET", null)).status);
+		Assert.assertEquals(100000, cached.getEntryCache().getMaxSize());
+		//The first entry of the feed is converted before, the second one comes from the cache.
+		Assert.assertEquals(1, cached.getEntryCache().getCount());
+		Assert.assertEquals(1, cached.getEntryCache().getHits());
+		Assert.assertFalse(uncached.getEntryCache().isEnabled());
+		Assert.assertEquals(0, uncached.getEntryCache().getCount());
+		cached.destroy();
+		uncached.destroy();
+	}
+
+	/** A batch that fails after some chunks is aborted. */
+	@Test public void abortBatch()throws Exception{
+		IAtomServlet servlet=servlet();
+		ItemAtomSAO.batches.clear();
+		Request request=new Request("POST", null);
+		request.body="<feed xmlns='http://www.w3.org/2005/Atom'><entry><id>1</id></entry><entry><id>2</id></entry><entry><id>3</id>";
+		try{
+			service(servlet, request);
+			Assert.fail();
+		}catch(ServletException e){
+			//The body is invalid.
+		}
+		Assert.assertEquals(Arrays.asList("insert 0 1", "insert 1 1", "abort"), ItemAtomSAO.batches);
+		servlet.destroy();
+	}
+
+	//Helpers ------------------------------------------------------
+
+	private static IAtomServlet servlet()throws Exception{return servlet(null);}
+
+	/** @param entryCacheSize may be null */
+	private static IAtomServlet servlet(String entryCacheSize)throws Exception{
+		final Map<String, String> parameters=new HashMap<String, String>();
+		parameters.put("beanPackage", "inspiracio");
+		parameters.put("batchChunkSize", "1");
+		if(entryCacheSize!=null)
+			parameters.put("entryCacheSize", entryCacheSize);
+		IAtomServlet servlet=new IAtomServlet();
+		servlet.init(new ServletConfig(){
+			@Override public String getServletName(){return "atom";}
+			@Override public ServletContext getServletContext(){return null;}
+			@Override public String getInitParameter(String name){return parameters.get(name);}
+			@Override public Enumeration<?> getInitParameterNames(){return Collections.enumeration(parameters.keySet());}
+		});
+		return servlet;
+	}
+
+	private static Response service(IAtomServlet servlet, Request request)throws Exception{
+		Response response=new Response();
+		servlet.service(request, response);
+		return response;
+	}
+
+	/** A request for the feed of items */
+	private static class Request extends DummyHttpServletRequest{
+		private String method;
+		private String query;
+		private String body;
+		private Map<String, String> headers=new HashMap<String, String>();
+		private Map<String, Object> attributes=new HashMap<String, Object>();
+		Request(String method, String query){
+			this.method=method;
+			this.query=query;
+		}
+		@Override public String getMethod(){return this.method;}
+		@Override public String getHeader(String name){return this.headers.get(name);}
+		@Override public long getDateHeader(String name){return -1;}
+		@Override public StringBuffer getRequestURL(){return new StringBuffer("http://domain/atom/-/item");}
+		@Override public String getRequestURI(){return "/atom/-/item";}
+		@Override public String getQueryString(){return this.query;}
+		@Override public Principal getUserPrincipal(){return null;}
+		@Override public String getContentType(){return null;}
+		@Override public ServletInputStream getInputStream(){
+			final ByteArrayInputStream in=new ByteArrayInputStream(this.body.getBytes());
+			return new ServletInputStream(){
+				@Override public int read(){return in.read();}
+			};
+		}
+		@Override public Object getAttribute(String name){return this.attributes.get(name);}
+		@Override public void setAttribute(String name, Object value){this.attributes.put(name, value);}
+		@Override public void removeAttribute(String name){this.attributes.remove(name);}
+	}
+
+	/** Records status, headers and body */
+	private static class Response extends DummyHttpServletResponse{
+		private int status=200;
+		private Map<String, String> headers=new HashMap<String, String>();
+		private ByteArrayOutputStream body=new ByteArrayOutputStream();
+		private boolean committed=false;
+		@Override public void setStatus(int status){this.status=status;}
+		@Override public void sendError(int status, String msg){this.status=status;}
+		@Override public void sendError(int status){this.status=status;}
+		@Override public void setHeader(String name, String value){this.headers.put(name, value);}
+		@Override public void addHeader(String name, String value){this.headers.put(name, value);}
+		@Override public void setDateHeader(String name, long value){this.headers.put(name, Long.toString(value));}
+		@Override public void setContentType(String type){this.headers.put("Content-Type", type);}
+		@Override public void setContentLength(int length){this.headers.put("Content-Length", Integer.toString(length));}
+		@Override public boolean isCommitted(){return this.committed;}
+		@Override public void reset(){
+			this.status=200;
+			this.headers.clear();
+			this.body.reset();
+		}
+		@Override public ServletOutputStream getOutputStream()throws IOException{
+			return new ServletOutputStream(){
+				@Override public void write(int b){body.write(b);}
+			};
+		}
+	}
+}
@@ -0,0 +1,109 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.item;
+
+import inspiracio.atom.AbstractAtomSAO;
+import inspiracio.atom.ChunkedAtomSAO;
+import inspiracio.servlet.http.HttpException;
+import inspiracio.user.User;
+import inspiracio.xml.Namespaces;
+
+import java.io.Closeable;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Vector;
+
+import atom.Entry;
+import atom.gdata.GDataURL;
+import atom.gdata.Style;
+
+/** Atom SAO for testing the servlet: gets two items with IDs and ETags,
+ * without authentication. With parameter cursor=true, iterates them
+ * like from a DB cursor. With parameter second=invalid, the second item
+ * cannot be converted, and with second=other, it is of another class
+ * with another namespace. */
+public class ItemAtomSAO extends AbstractAtomSAO<User> implements ChunkedAtomSAO<User>{
+
+	/** How many cursors have been closed */
+	public static volatile int closed=0;
+
+	/** The calls of batch inserts, like "insert 0 2" and "abort" */
+	public static List<String> batches=new Vector<String>();
+
+	@Override public List<User> get(GDataURL url){
+		String second=url.getParameter("second");
+		List<User> items=new ArrayList<User>();
+		for(int i=1; i<=2; i++){
+			User item=new User();
+			if(i==2 && "invalid".equals(second))
+				item=new InvalidItem();
+			else if(i==2 && "other".equals(second))
+				item=new OtherItem();
+			item.setId(Integer.toString(i));
+			item.setETag(i);
+			item.setBla("item " + i);
+			items.add(item);
+		}
+		return items;
+	}
+
+	@Override public Iterator<User> iterate(GDataURL url)throws HttpException{
+		if(!"true".equals(url.getParameter("cursor")))
+			return super.iterate(url);
+		final Iterator<User> items=this.get(url).iterator();
+		return new Cursor(){
+			@Override public boolean hasNext(){return items.hasNext();}
+			@Override public User next(){return items.next();}
+			@Override public void remove(){throw new UnsupportedOperationException();}
+			@Override public void close(){closed++;}
+		};
+	}
+
+	@Override public void insert(GDataURL url, List<User> beans, int index, boolean last){
+		batches.add("insert " + index + " " + beans.size());
+	}
+
+	@Override public void abortInsert(GDataURL url){
+		batches.add("abort");
+	}
+
+	@Override public User toAtomBean(Entry entry){
+		return new User().fromEntry(entry);
+	}
+
+	private static interface Cursor extends Iterator<User>, Closeable{}
+
+	private static class InvalidItem extends User{
+		@Override public Entry toEntry(boolean root, Style style){
+			throw new IllegalStateException("invalid item");
+		}
+	}
+
+	private static class OtherItem extends User{
+		@Override protected void declareNamespaces(Namespaces namespaces){
+			super.declareNamespaces(namespaces);
+			namespaces.add("other", "http://www.inspiracio.com/xsd/other.xsd", null);
+		}
+		@Override public Entry toEntry(boolean root, Style style){
+			Entry entry=super.toEntry(root, style);
+			entry.addSimpleExtElement("other:thing", "other");
+			return entry;
+		}
+	}
+}
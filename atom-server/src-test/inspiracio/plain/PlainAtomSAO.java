@@ -0,0 +1,46 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.plain;
+
+import inspiracio.atom.AtomSAO;
+import inspiracio.servlet.http.HttpException;
+import inspiracio.servlet.http.MethodNotAllowedException;
+import inspiracio.user.User;
+
+import java.security.Principal;
+import java.util.List;
+
+import atom.Entry;
+import atom.Feed;
+import atom.gdata.GDataURL;
+
+/** Atom SAO for testing that does not extend AbstractAtomSAO:
+ * it keeps the principal in a field. */
+public class PlainAtomSAO implements AtomSAO<User>{
+
+	private Principal principal;
+
+	@Override public User insert(GDataURL url, User bean, String slug)throws HttpException{throw new MethodNotAllowedException();}
+	@Override public void insert(GDataURL url, List<User> beans)throws HttpException{throw new MethodNotAllowedException();}
+	@Override public User update(User bean)throws HttpException{throw new MethodNotAllowedException();}
+	@Override public Feed getFeed(GDataURL url)throws HttpException{return new Feed();}
+	@Override public void delete(String id, String etag)throws HttpException{throw new MethodNotAllowedException();}
+	@Override public User toAtomBean(Entry entry){return new User();}
+	@Override public void setCallerPrincipal(Principal p){this.principal=p;}
+	@Override public Principal getCallerPrincipal(){return this.principal;}
+}
@@ -0,0 +1,130 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.servlet.http;
+
+import inspiracio.net.GZipOutputStream;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+import java.util.zip.GZIPInputStream;
+
+import javax.servlet.ServletOutputStream;
+
+import org.junit.Assert;
+import org.junit.Test;
+
+public class CompressionTest{
+
+	@Test public void quality(){
+		Assert.assertEquals(1, Compression.quality("gzip, deflate", "gzip"), 0);
+		Assert.assertEquals(0.5, Compression.quality("deflate, gzip;q=0.5", "gzip"), 0);
+		Assert.assertEquals(0, Compression.quality("gzip;q=0", "gzip"), 0);
+		Assert.assertEquals(0, Compression.quality("gzip;q=0, *", "gzip"), 0);
+		Assert.assertEquals(1, Compression.quality("x-gzip", "gzip"), 0);
+		Assert.assertEquals(0.2, Compression.quality("identity, *;q=0.2", "gzip"), 0);
+		Assert.assertEquals(0, Compression.quality("identity", "gzip"), 0);
+		Assert.assertEquals(0, Compression.quality(null, "gzip"), 0);
+		Assert.assertFalse(Compression.ALWAYS.accepts("GZIP;q=0.0"));
+	}
+
+	@Test public void level(){
+		Map<String, Integer> levels=new HashMap<String, Integer>();
+		levels.put("image/*", Deflater.NO_COMPRESSION);
+		levels.put("application/json", 1);
+		Compression compression=new Compression(256, 6, levels);
+		Assert.assertEquals(1, compression.getLevel("application/json; charset=UTF-8"));
+		Assert.assertEquals(Deflater.NO_COMPRESSION, compression.getLevel("image/png"));
+		Assert.assertEquals(6, compression.getLevel("application/atom+xml"));
+		Assert.assertEquals(6, compression.getLevel(null));
+	}
+
+	@Test(expected=IllegalArgumentException.class) public void negativeMinSize(){
+		new Compression(-1, 6, new HashMap<String, Integer>());
+	}
+
+	/** Small bodies go plain with Content-Length, big ones gzipped,
+	 * whether they come byte by byte or in arrays. */
+	@Test public void minSize()throws IOException{
+		Response response=new Response();
+		CompressingOutputStream out=new CompressingOutputStream(response, 6, 10);
+		out.write('a');
+		out.write("bcd".getBytes("UTF-8"));
+		out.close();
+		Assert.assertEquals("abcd", response.body.toString("UTF-8"));
+		Assert.assertEquals(4, response.length);
+		Assert.assertNull(response.encoding);
+
+		response=new Response();
+		out=new CompressingOutputStream(response, 6, 10);
+		for(int i=0; i<10; i++)
+			out.write('a' + i);
+		out.write("klmnopqrst".getBytes("UTF-8"));
+		out.close();
+		Assert.assertEquals("gzip", response.encoding);
+		Assert.assertEquals(-1, response.length);
+		Assert.assertEquals("abcdefghijklmnopqrst", unzip(response.body.toByteArray()));
+	}
+
+	/** The Deflaters come back to the pool, and work again. */
+	@Test public void gzip()throws IOException{
+		byte[] bytes="<feed><entry/><entry/><entry/></feed>".getBytes("UTF-8");
+		for(int level : new int[]{Deflater.DEFAULT_COMPRESSION, 1, 9, 1}){
+			ByteArrayOutputStream zipped=new ByteArrayOutputStream();
+			GZipOutputStream out=new GZipOutputStream(zipped, level);
+			out.write(bytes);
+			out.write('\n');
+			out.close();
+			Assert.assertEquals(new String(bytes, "UTF-8") + "\n", unzip(zipped.toByteArray()));
+		}
+	}
+
+	//Helpers ------------------------------------------------------
+
+	private static String unzip(byte[] zipped)throws IOException{
+		InputStream in=new GZIPInputStream(new ByteArrayInputStream(zipped));
+		ByteArrayOutputStream unzipped=new ByteArrayOutputStream();
+		int b;
+		while(0<=(b=in.read()))
+			unzipped.write(b);
+		return unzipped.toString("UTF-8");
+	}
+
+	/** Keeps the body, Content-Length and Content-Encoding. */
+	private static class Response extends DummyHttpServletResponse{
+		private ByteArrayOutputStream body=new ByteArrayOutputStream();
+		private int length=-1;
+		private String encoding;
+		@Override public ServletOutputStream getOutputStream(){
+			return new ServletOutputStream(){
+				@Override public void write(int b){body.write(b);}
+			};
+		}
+		@Override public boolean isCommitted(){return false;}
+		@Override public void setContentLength(int length){this.length=length;}
+		@Override public void setHeader(String name, String value){
+			if("Content-Encoding".equals(name))
+				this.encoding=value;
+		}
+		@Override public void addHeader(String name, String value){}
+	}
+}
@@ -8,18 +8,30 @@ import inspiracio.servlet.http.HttpException;
 import inspiracio.servlet.http.InternalServerErrorException;
 import inspiracio.servlet.http.NotAuthorizedException;
 
+import java.io.BufferedReader;
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.StringReader;
 import java.security.Principal;
 import java.util.ArrayList;
 import java.util.Date;
+import java.util.Iterator;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.UUID;
 
 import atom.Entry;
 import atom.gdata.GDataURL;
 
-/** Atom SAO for testing */
+/** Atom SAO for testing. Reads the users from its store with a cursor. */
 public class UserAtomSAO extends AbstractAtomSAO<User>{
 
+	/** The store: one user per line, with email and bla */
+	private static final String USERS="alex@inspiracio.com bla\njerry@inspiracio.com mouse\ntom@inspiracio.com cat\n";
+
+	/** How many cursors have been closed */
+	static volatile int closed=0;
+
 	@Override public void delete(String id, String etag) throws NotAuthorizedException, ForbiddenException, HttpException {
 		//Someone logged in?
 		Principal principal=this.getCallerPrincipal();
@@ -29,16 +41,22 @@ public class UserAtomSAO extends AbstractAtomSAO<User>{
 		//Simulation of deletion.
 	}
 
-	/** Only returns the user for the authenticated user. */
-	@Override public List<User> get(GDataURL url) throws NotAuthorizedException,ForbiddenException, InternalServerErrorException, HttpException {
+	/** Only returns the user for the authenticated user.
+	 * Reads the store line by line, like a DB cursor, and makes each
+	 * user only when the feed writes it. */
+	@Override public Iterator<User> iterate(GDataURL url) throws NotAuthorizedException,ForbiddenException, InternalServerErrorException, HttpException {
 		Principal principal=this.getCallerPrincipal();
 		if(principal==null)
 			throw new NotAuthorizedException();
-		User user=new User();
-		user.setBla("bla");
-		user.setEmail(principal.getName());
+		return new Cursor(new BufferedReader(new StringReader(USERS)), principal.getName());
+	}
+
+	/** All of iterate(), for LocalAtomProxy. */
+	@Override public List<User> get(GDataURL url) throws NotAuthorizedException,ForbiddenException, InternalServerErrorException, HttpException {
 		List<User>users=new ArrayList<User>();
-		users.add(user);
+		Iterator<User>cursor=this.iterate(url);
+		while(cursor.hasNext())
+			users.add(cursor.next());
 		return users;
 	}
 
@@ -70,5 +88,48 @@ public class UserAtomSAO extends AbstractAtomSAO<User>{
 		user.setUpdated(new Date());
 		return user;
 	}
+	//Cursor -------------------------------------------------------
 
+	/** The users of the store with one email, read as they are needed.
+	 * Closes the store at the end, or when the feed closes it. */
+	private static class Cursor implements Iterator<User>, Closeable{
+		private BufferedReader store;
+		private String email;
+		private String line;
+		Cursor(BufferedReader store, String email){
+			this.store=store;
+			this.email=email;
+		}
+		@Override public boolean hasNext(){
+			try{
+				while(this.line==null && this.store!=null){
+					String line=this.store.readLine();//IOException
+					if(line==null)
+						this.close();//IOException
+					else if(line.startsWith(this.email + " "))
+						this.line=line;
+				}
+			}catch(IOException e){
+				throw new IllegalStateException(e);
+			}
+			return this.line!=null;
+		}
+		@Override public User next(){
+			if(!this.hasNext())
+				throw new NoSuchElementException();
+			User user=new User();
+			user.setEmail(this.email);
+			user.setBla(this.line.substring(this.email.length() + 1));
+			this.line=null;
+			return user;
+		}
+		@Override public void remove(){throw new UnsupportedOperationException();}
+		@Override public void close()throws IOException{
+			if(this.store==null)
+				return;
+			this.store.close();//IOException
+			this.store=null;
+			closed++;
+		}
+	}
 }
\ No newline at end of file
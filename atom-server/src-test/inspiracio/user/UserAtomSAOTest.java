@@ -6,6 +6,7 @@ import inspiracio.servlet.http.InternalServerErrorException;
 import inspiracio.servlet.http.NotAuthorizedException;
 import inspiracio.xml.Namespace;
 
+import java.io.ByteArrayOutputStream;
 import java.security.Principal;
 import java.util.List;
 
@@ -33,4 +34,20 @@ public class UserAtomSAOTest{
 		List<Namespace>ns=feed.getNamespaces();
 		Assert.assertTrue(3<ns.size());//Three are inevitable: atom, gd, xsi. The fourth comes from the entry.
 	}
+	/** The SAO reads its users with a cursor: the feed has no validator,
+	 * gets the user when it is written, and closes the cursor. */
+	@Test public void cursor()throws Exception{
+		GDataURL url=new GDataURL("http://www.google.com/atom/-/user?style=full");
+		UserAtomSAO sao=new UserAtomSAO();
+		sao.setCallerPrincipal(new Principal(){@Override public String getName(){return "tom@inspiracio.com";}});
+		int closed=UserAtomSAO.closed;
+		Feed feed=sao.getFeed(url);
+		Assert.assertNull(feed.getValidator());
+		ByteArrayOutputStream out=new ByteArrayOutputStream();
+		feed.write(out);
+		String xml=out.toString("UTF-8");
+		Assert.assertTrue(xml, xml.contains(">cat<"));
+		Assert.assertFalse(xml, xml.contains(">mouse<"));
+		Assert.assertEquals(closed+1, UserAtomSAO.closed);
+	}
 }
\ No newline at end of file
@@ -0,0 +1,573 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom;
+
+import inspiracio.servlet.jsp.PageContextFactory;
+
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.io.PrintWriter;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Locale;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+
+import javax.servlet.ServletException;
+import javax.servlet.ServletOutputStream;
+import javax.servlet.ServletRequest;
+import javax.servlet.ServletResponse;
+import javax.servlet.http.HttpServletRequest;
+import javax.servlet.http.HttpServletResponse;
+import javax.servlet.http.HttpServletResponseWrapper;
+
+import org.apache.log4j.Logger;
+
+/** Processes requests on the threads of an executor, with a timeout,
+ * for the async mode of AtomServlet.
+ * <p>
+ * If the container supports async processing (Servlet 3 and the servlet
+ * is async-supported), the container thread returns at once and the
+ * executor thread completes the AsyncContext. We compile against Servlet 2.5,
+ * so we call AsyncContext by reflection. With older containers, the container
+ * thread waits for the executor thread, and we still have the timeout and a
+ * bounded number of threads for slow SAOs.
+ * <p>
+ * The whole request runs on the executor thread, so the page context of
+ * PageContextFactory is set there, and removed at the end.
+ * <p>
+ * A request that times out gets 503 Service Unavailable if nothing has been
+ * sent yet, and its thread is interrupted. The task goes on writing to a
+ * wrapper of the response that drops everything after the timeout, so that
+ * only one thread writes to the response. If the task is writing when the
+ * timeout comes, the timeout tries again a little later, until the task
+ * is between writes or has finished.
+ * <p>
+ * The threads have a bounded queue of waiting requests. If it is full, a
+ * request gets 503 at once.
+ * <p>
+ * Threadsafe.
+ * */
+class AsyncService{
+	private static final Logger logger=Logger.getLogger(AsyncService.class);
+
+	/** Milliseconds after which a timeout tries again, if the task was writing */
+	private static final long RETRY=50;
+
+	/** Servlet 3 methods, or null for older containers */
+	private static final Method IS_ASYNC_SUPPORTED;
+	private static final Method START_ASYNC;
+	private static final Method SET_TIMEOUT;
+	private static final Method COMPLETE;
+	static{
+		Method supported=null;
+		Method start=null;
+		Method timeout=null;
+		Method complete=null;
+		try{
+			supported=ServletRequest.class.getMethod("isAsyncSupported");
+			start=ServletRequest.class.getMethod("startAsync", ServletRequest.class, ServletResponse.class);
+			Class<?> context=Class.forName("javax.servlet.AsyncContext");
+			timeout=context.getMethod("setTimeout", long.class);
+			complete=context.getMethod("complete");
+		}catch(Exception e){
+			//Servlet 2.5: the container thread waits.
+			supported=null;
+		}
+		IS_ASYNC_SUPPORTED=supported;
+		START_ASYNC=start;
+		SET_TIMEOUT=timeout;
+		COMPLETE=complete;
+	}
+
+	//State -------------------------------------------------------------
+
+	private final ExecutorService executor;
+
+	/** Times out requests in async processing, or null without timeout */
+	private final ScheduledExecutorService timer;
+
+	/** Milliseconds, 0 for no timeout */
+	private final long timeout;
+
+	//Constructors ------------------------------------------------------
+
+	/** Makes the threads.
+	 * @param threads Number of threads, or "virtual" for a virtual thread
+	 * 	for each request (Java 21).
+	 * @param queueSize Number of requests that may wait for a thread.
+	 * 	Not for virtual threads.
+	 * @param timeout Milliseconds that a request may take. 0 for no timeout.
+	 * @exception IllegalArgumentException invalid threads or queueSize
+	 * */
+	AsyncService(String threads, int queueSize, long timeout){
+		this.executor=newExecutor(threads, queueSize);
+		this.timeout=timeout;
+		this.timer=0<timeout ? Executors.newSingleThreadScheduledExecutor(factory("AtomServlet-timer-")) : null;
+	}
+
+	/** Stops the threads. */
+	void shutdown(){
+		this.executor.shutdownNow();
+		if(this.timer!=null)
+			this.timer.shutdownNow();
+	}
+
+	//Methods -----------------------------------------------------------
+
+	/** Processes a request on a thread of the executor.
+	 * @param request from the container
+	 * @param response from the container
+	 * @param task processes the request
+	 * */
+	void service(HttpServletRequest request, HttpServletResponse response, Task task)throws ServletException, IOException{
+		Object async=startAsync(request, response);
+		if(async!=null)
+			new AsyncRequest(async, request, response, task).start();
+		else
+			this.serviceAndWait(request, response, task);
+	}
+
+	/** Processes a request. */
+	static interface Task{
+		void service(HttpServletRequest request, HttpServletResponse response)throws ServletException, IOException;
+	}
+
+	//Helpers -----------------------------------------------------------
+
+	/** Without async processing, the container thread waits for the executor thread. */
+	private void serviceAndWait(final HttpServletRequest request, HttpServletResponse response, final Task task)throws ServletException, IOException{
+		final TimeoutResponse wrapper=new TimeoutResponse(response);
+		Future<Void> future;
+		try{
+			future=this.executor.submit(new Callable<Void>(){
+				@Override public Void call()throws ServletException, IOException{
+					run(request, wrapper, task);
+					return null;
+				}
+			});
+		}catch(RejectedExecutionException e){
+			busy(request, response);
+			return;
+		}
+		try{
+			if(0<this.timeout){
+				long wait=this.timeout;
+				while(true){
+					try{
+						future.get(wait, TimeUnit.MILLISECONDS);//InterruptedException, ExecutionException, TimeoutException
+						return;
+					}catch(TimeoutException e){
+						if(wrapper.timeOut()){
+							future.cancel(true);
+							timedOut(request, response);
+							return;
+						}
+						//The task is writing the response: try again soon.
+						wait=RETRY;
+					}
+				}
+			}
+			future.get();//InterruptedException, ExecutionException
+		}catch(InterruptedException e){
+			future.cancel(true);
+			Thread.currentThread().interrupt();
+			throw new ServletException(e);
+		}catch(ExecutionException e){
+			Throwable cause=e.getCause();
+			if(cause instanceof ServletException)
+				throw (ServletException)cause;
+			if(cause instanceof IOException)
+				throw (IOException)cause;
+			if(cause instanceof RuntimeException)
+				throw (RuntimeException)cause;
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new ServletException(cause);
+		}
+	}
+
+	/** A request in async processing: whoever finishes first, the executor
+	 * thread or the timeout, completes it. */
+	private class AsyncRequest implements Runnable{
+		private final Object async;
+		private final HttpServletRequest request;
+		private final TimeoutResponse response;
+		private final Task task;
+
+		/** Has the request been completed? */
+		private final AtomicBoolean done=new AtomicBoolean(false);
+
+		private volatile Future<?> worker;
+		private volatile Future<?> timeout;
+
+		AsyncRequest(Object async, HttpServletRequest request, HttpServletResponse response, Task task){
+			this.async=async;
+			this.request=request;
+			this.response=new TimeoutResponse(response);
+			this.task=task;
+		}
+
+		void start(){
+			try{
+				this.worker=executor.submit(this);
+			}catch(RejectedExecutionException e){
+				busy(this.request, this.response);
+				complete(this.async);
+				return;
+			}
+			if(timer!=null)
+				this.schedule(AsyncService.this.timeout);
+		}
+
+		/** Schedules the timeout.
+		 * @param delay milliseconds */
+		private void schedule(long delay){
+			try{
+				this.timeout=timer.schedule(new Runnable(){
+					@Override public void run(){timeout();}
+				}, delay, TimeUnit.MILLISECONDS);
+			}catch(RejectedExecutionException e){
+				return;//shut down
+			}
+			//The worker may have finished meanwhile, and not seen this timeout.
+			if(this.done.get())
+				this.timeout.cancel(false);
+		}
+
+		/** On the executor thread */
+		@Override public void run(){
+			try{
+				AsyncService.run(this.request, this.response, this.task);//ServletException, IOException
+			}catch(Exception e){
+				if(!this.done.get())
+					failed(this.response, e);
+			}finally{
+				if(this.done.compareAndSet(false, true)){
+					Future<?> timeout=this.timeout;
+					if(timeout!=null)
+						timeout.cancel(false);
+					complete(this.async);
+				}
+			}
+		}
+
+		/** On the timer thread. If the task is writing, tries again soon. */
+		void timeout(){
+			if(this.done.get())
+				return;
+			if(!this.response.timeOut()){
+				this.schedule(RETRY);
+				return;
+			}
+			if(this.done.compareAndSet(false, true)){
+				this.worker.cancel(true);
+				try{
+					timedOut(this.request, (HttpServletResponse)this.response.getResponse());//IOException
+				}catch(IOException e){
+					logger.debug("Cannot send timeout", e);
+				}
+				complete(this.async);
+			}
+		}
+	}
+
+	/** Runs the task, and then forgets the page context of the request. */
+	private static void run(HttpServletRequest request, HttpServletResponse response, Task task)throws ServletException, IOException{
+		try{
+			task.service(request, response);//ServletException, IOException
+		}finally{
+			PageContextFactory.removePageContext();
+		}
+	}
+
+	/** Replies 503 if nothing has been sent yet. */
+	private static void timedOut(HttpServletRequest request, HttpServletResponse response)throws IOException{
+		logger.warn("Timeout in " + request.getMethod() + " " + request.getRequestURI());
+		if(!response.isCommitted())
+			response.sendError(503, "Timeout");//IOException
+	}
+
+	/** Replies 503 because all threads are busy and the queue is full. */
+	private static void busy(HttpServletRequest request, HttpServletResponse response){
+		logger.warn("Too many requests: rejecting " + request.getMethod() + " " + request.getRequestURI());
+		try{
+			response.sendError(503, "Busy");//IOException
+		}catch(IOException e){
+			logger.debug("Cannot send busy", e);
+		}
+	}
+
+	/** In async processing, nobody catches exceptions: reply 500
+	 * if nothing has been sent yet. AtomServlet.abort() also throws
+	 * RuntimeException, after sending the response. */
+	private static void failed(HttpServletResponse response, Exception e){
+		if(response.isCommitted()){
+			logger.debug("Request has ended with " + e);
+			return;
+		}
+		logger.error("Request has failed", e);
+		try{
+			response.sendError(500, e.getMessage());//IOException
+		}catch(IOException ioe){
+			logger.debug("Cannot send error", ioe);
+		}
+	}
+
+	/** Starts async processing, if the container supports it.
+	 * @return the AsyncContext, or null */
+	private static Object startAsync(HttpServletRequest request, HttpServletResponse response){
+		if(IS_ASYNC_SUPPORTED==null)
+			return null;
+		try{
+			if(!(Boolean)IS_ASYNC_SUPPORTED.invoke(request))
+				return null;
+			Object async=START_ASYNC.invoke(request, request, response);
+			SET_TIMEOUT.invoke(async, 0L);//No timeout from the container: we have our own.
+			return async;
+		}catch(IllegalAccessException e){
+			throw new RuntimeException(e);
+		}catch(InvocationTargetException e){
+			logger.warn("Cannot start async processing", e.getCause());
+			return null;
+		}
+	}
+
+	/** Completes async processing. */
+	private static void complete(Object async){
+		try{
+			COMPLETE.invoke(async);
+		}catch(IllegalAccessException e){
+			throw new RuntimeException(e);
+		}catch(InvocationTargetException e){
+			logger.debug("Cannot complete async processing", e.getCause());
+		}
+	}
+
+	/** Makes the executor.
+	 * @param threads a number, or "virtual"
+	 * @param queueSize for a number of threads
+	 * @exception IllegalArgumentException invalid threads or queueSize
+	 * */
+	private static ExecutorService newExecutor(String threads, int queueSize){
+		if("virtual".equals(threads)){
+			try{
+				return (ExecutorService)Executors.class.getMethod("newVirtualThreadPerTaskExecutor").invoke(null);
+			}catch(Exception e){
+				throw new IllegalArgumentException("Virtual threads need Java 21", e);
+			}
+		}
+		int n=Integer.parseInt(threads);//NumberFormatException is an IllegalArgumentException
+		if(n<1)
+			throw new IllegalArgumentException("Invalid number of threads " + n);
+		if(queueSize<1)
+			throw new IllegalArgumentException("Invalid queue size " + queueSize);
+		//Like Executors.newFixedThreadPool, but the queue is bounded: when it is full, submit() rejects.
+		return new ThreadPoolExecutor(n, n, 0L, TimeUnit.MILLISECONDS, new ArrayBlockingQueue<Runnable>(queueSize), factory("AtomServlet-"));
+	}
+
+	/** Makes daemon threads with names. */
+	private static ThreadFactory factory(final String prefix){
+		final AtomicInteger count=new AtomicInteger();
+		return new ThreadFactory(){
+			@Override public Thread newThread(Runnable r){
+				Thread thread=new Thread(r, prefix + count.incrementAndGet());
+				thread.setDaemon(true);
+				return thread;
+			}
+		};
+	}
+
+	/** The response for the task. After timeOut(), drops everything that the
+	 * task still sends or changes, also reset(). The task sends while holding the lock, so the timeout
+	 * never comes in the middle of a write. */
+	private static class TimeoutResponse extends HttpServletResponseWrapper{
+		private final ReentrantLock lock=new ReentrantLock();
+
+		/** Guarded by lock */
+		private boolean timedOut=false;
+
+		private ServletOutputStream out;
+		private PrintWriter writer;
+
+		TimeoutResponse(HttpServletResponse response){super(response);}
+
+		/** Times out, unless the task is sending right now.
+		 * @return Has it timed out? Then the task cannot send any more,
+		 * 	and the caller may send to the wrapped response. */
+		boolean timeOut(){
+			if(!this.lock.tryLock())
+				return false;
+			this.timedOut=true;
+			this.lock.unlock();
+			return true;
+		}
+
+		/** Takes the lock, unless timed out.
+		 * @return May the task send? Then it must unlock. */
+		private boolean enter(){
+			this.lock.lock();
+			if(!this.timedOut)
+				return true;
+			this.lock.unlock();
+			return false;
+		}
+
+		@Override public void setStatus(int sc){
+			if(this.enter()){
+				try{super.setStatus(sc);}finally{this.lock.unlock();}
+			}
+		}
+		@Deprecated @Override public void setStatus(int sc, String sm){
+			if(this.enter()){
+				try{super.setStatus(sc, sm);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void reset(){
+			if(this.enter()){
+				try{super.reset();}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void resetBuffer(){
+			if(this.enter()){
+				try{super.resetBuffer();}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void setBufferSize(int size){
+			if(this.enter()){
+				try{super.setBufferSize(size);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void setCharacterEncoding(String charset){
+			if(this.enter()){
+				try{super.setCharacterEncoding(charset);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void setLocale(Locale locale){
+			if(this.enter()){
+				try{super.setLocale(locale);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void sendError(int sc)throws IOException{
+			if(this.enter()){
+				try{super.sendError(sc);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void sendError(int sc, String msg)throws IOException{
+			if(this.enter()){
+				try{super.sendError(sc, msg);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void sendRedirect(String location)throws IOException{
+			if(this.enter()){
+				try{super.sendRedirect(location);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void setHeader(String name, String value){
+			if(this.enter()){
+				try{super.setHeader(name, value);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void addHeader(String name, String value){
+			if(this.enter()){
+				try{super.addHeader(name, value);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void setDateHeader(String name, long date){
+			if(this.enter()){
+				try{super.setDateHeader(name, date);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void addDateHeader(String name, long date){
+			if(this.enter()){
+				try{super.addDateHeader(name, date);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void setIntHeader(String name, int value){
+			if(this.enter()){
+				try{super.setIntHeader(name, value);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void addIntHeader(String name, int value){
+			if(this.enter()){
+				try{super.addIntHeader(name, value);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void setContentType(String type){
+			if(this.enter()){
+				try{super.setContentType(type);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void setContentLength(int length){
+			if(this.enter()){
+				try{super.setContentLength(length);}finally{this.lock.unlock();}
+			}
+		}
+		@Override public void flushBuffer()throws IOException{
+			if(this.enter()){
+				try{super.flushBuffer();}finally{this.lock.unlock();}
+			}
+		}
+		@Override public ServletOutputStream getOutputStream()throws IOException{
+			if(this.out==null){
+				final ServletOutputStream out=super.getOutputStream();//IOException
+				this.out=new ServletOutputStream(){
+					@Override public void write(int b)throws IOException{
+						if(enter()){
+							try{out.write(b);}finally{lock.unlock();}
+						}
+					}
+					@Override public void write(byte[] b, int off, int len)throws IOException{
+						if(enter()){
+							try{out.write(b, off, len);}finally{lock.unlock();}
+						}
+					}
+					@Override public void flush()throws IOException{
+						if(enter()){
+							try{out.flush();}finally{lock.unlock();}
+						}
+					}
+					@Override public void close()throws IOException{
+						if(enter()){
+							try{out.close();}finally{lock.unlock();}
+						}
+					}
+				};
+			}
+			return this.out;
+		}
+		@Override public PrintWriter getWriter()throws IOException{
+			if(this.writer==null)
+				this.writer=new PrintWriter(new OutputStreamWriter(this.getOutputStream(), this.getCharacterEncoding()));//IOException
+			return this.writer;
+		}
+	}
+}
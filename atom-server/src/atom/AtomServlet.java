@@ -17,21 +17,31 @@
  */
 package atom;
 
+import inspiracio.binary.BinaryParser;
+import inspiracio.binary.BinaryWriter;
+import inspiracio.json.JSONParser;
 import inspiracio.servlet.http.BadRequestException;
 import inspiracio.servlet.http.ETag;
 import inspiracio.servlet.http.ForbiddenException;
 import inspiracio.servlet.http.HttpException;
 import inspiracio.servlet.http.IHttpServlet;
+import inspiracio.servlet.http.IHttpServletResponse;
 import inspiracio.servlet.http.NotAuthorizedException;
 import inspiracio.servlet.http.NotFoundException;
 import inspiracio.servlet.http.PreconditionFailedException;
+import inspiracio.servlet.http.Validator;
 import inspiracio.util.Base64Coder;
-import inspiracio.xml.DOM;
 
+import java.io.FilterOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Date;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.resource.spi.security.PasswordCredential;
 import javax.servlet.ServletException;
@@ -41,7 +51,9 @@ import javax.xml.transform.TransformerException;
 
 import org.apache.log4j.Logger;
 import org.w3c.dom.Element;
+import org.xml.sax.SAXException;
 
+import atom.gdata.Fields;
 import atom.gdata.GDataURL;
 
 /** Base servlet for Atom syndication and publishing.
@@ -71,13 +83,105 @@ import atom.gdata.GDataURL;
 public abstract class AtomServlet extends IHttpServlet{
 	private static final Logger logger=Logger.getLogger(AtomServlet.class);
 
-	/** Wraps super.service(), just for measuring the time of an Atom request. */
+	/** Content type of Atom responses */
+	private static final String ATOM="application/atom+xml; charset=UTF-8";
+
+	/** Content type of JSON responses, for alt=json */
+	private static final String JSON="application/json; charset=UTF-8";
+
+	/** Content type of binary responses, for alt=binary. See BinaryWriter. */
+	private static final String BINARY=BinaryWriter.CONTENT_TYPE;
+
+	/** How many Content-Lengths we remember for HEAD */
+	private static final int CONTENT_LENGTHS=1000;
+
+	/** The Content-Lengths of the feeds that GET has written without compression,
+	 * by URL and ETag, so that HEAD can send them. See lengthKey(). The least recently used are forgotten. */
+	private final Map<String, Long> contentLengths=Collections.synchronizedMap(new LinkedHashMap<String, Long>(16, 0.75f, true){
+		private static final long serialVersionUID=1L;
+		@Override protected boolean removeEldestEntry(Map.Entry<String, Long> eldest){
+			return CONTENT_LENGTHS<this.size();
+		}
+	});
+
+	/** Default milliseconds that a request may take in async mode */
+	private static final long ASYNC_TIMEOUT=30000;
+
+	/** Default number of requests that may wait for a thread in async mode */
+	private static final int ASYNC_QUEUE_SIZE=100;
+
+	/** Processes the requests in async mode, or null */
+	private AsyncService async;
+
+	/** Reads init-parameters:
+	 * <ul>
+	 * 	<li>asyncThreads, for async mode: the number of threads that
+	 * 		process the requests, including SAO calls and writing the response,
+	 * 		or "virtual" for virtual threads (Java 21). Without it, the
+	 * 		requests are processed on the container threads. See AsyncService.
+	 * 	<li>asyncTimeout, in async mode, the milliseconds that a request may
+	 * 		take. Then it gets 503. Default is 30000. 0 for no timeout.
+	 * 	<li>asyncQueueSize, in async mode with a number of threads, how many
+	 * 		requests may wait for a thread. More get 503 at once. Default is 100.
+	 * </ul>
+	 * The AtomSAOs need not change for async mode.
+	 * */
+	@Override public void init()throws ServletException{
+		super.init();
+		String threads=this.getInitParameter("asyncThreads");
+		if(threads!=null){
+			long timeout=ASYNC_TIMEOUT;
+			String s=this.getInitParameter("asyncTimeout");
+			int queueSize=this.getIntInitParameter("asyncQueueSize", ASYNC_QUEUE_SIZE);//ServletException
+			try{
+				if(s!=null)
+					timeout=Long.parseLong(s.trim());
+				this.async=new AsyncService(threads.trim(), queueSize, timeout);
+			}catch(IllegalArgumentException e){
+				throw new ServletException("Invalid asyncThreads " + threads + " or asyncTimeout " + s, e);
+			}
+		}
+	}
+
+	/** Stops the threads of async mode. */
+	@Override public void destroy(){
+		if(this.async!=null)
+			this.async.shutdown();
+		super.destroy();
+	}
+
+	/** Wraps super.service(): in async mode, on a thread of the executor.
+	 * Also for measuring the time of an Atom request. */
 	@Override protected void service(HttpServletRequest request,HttpServletResponse response) throws ServletException, IOException {
 //		long initial=System.currentTimeMillis();
-		super.service(request, response);
+		if(this.async==null){
+			this.serve(request, response);
+		}else{
+			this.async.service(request, response, new AsyncService.Task(){
+				@Override public void service(HttpServletRequest request, HttpServletResponse response)throws ServletException, IOException{
+					serve(request, response);
+				}
+			});
+		}
 //		logger.debug("Atom needed " + Time.getLapseTimeMessage(initial) + " to process the request " + request.getMethod() + " at " + initial);
 	}
 
+	/** Processes the request with super.service(), and then calls serviced(). */
+	private void serve(HttpServletRequest request,HttpServletResponse response) throws ServletException, IOException {
+		try{
+			super.service(request, response);
+		}finally{
+			this.serviced(request);
+		}
+	}
+
+	/** Called at the end of every request, also if it has failed, on the thread
+	 * that has processed it. Subclasses can free resources of the request here.
+	 * This implementation does nothing.
+	 * @param request
+	 * */
+	protected void serviced(HttpServletRequest request){}
+
 	/** To delete a Member Resource, a client sends a DELETE request to its
 	 * Member URI, as specified in [RFC2616].  The deletion of a Media Link
 	 * Entry SHOULD result in the deletion of the corresponding Media
@@ -135,6 +239,16 @@ public abstract class AtomServlet extends IHttpServlet{
 	}
 
 	/** Handle GET: parse the request, get the feed, write feed to response.
+	 * <p>
+	 * The entries of the feed may be converted while the feed is written. If that
+	 * fails before anything has been sent, the response is 500. If the status 200
+	 * has gone already, the response is broken off: see writeFailed().
+	 * <p>
+	 * GET is conditional: the response has the headers ETag and Last-Modified
+	 * if there is a validator, and if the client has the current feed already
+	 * (If-None-Match, If-Modified-Since), the response is 304 Not Modified
+	 * without body. The validator comes from getValidator(url) before getting
+	 * the feed, or else from the feed before writing it.
 	 * <p>
 	 * Do all of this within a transaction. Thereby, the delegate classes can
 	 * open a DB connection, wrap it in an iterator that delivers entries, and
@@ -149,6 +263,7 @@ public abstract class AtomServlet extends IHttpServlet{
 			//UserTransaction tx=null;
 			@SuppressWarnings("unused")
 			boolean committed=false;
+			Feed feed=null;
 			try{
 				//Serve an Atom feed.
 				GDataURL url=new GDataURL(request);
@@ -158,25 +273,56 @@ public abstract class AtomServlet extends IHttpServlet{
 				//tx=TransactionFactory.getUserTransaction();//NamingException
 				//tx.begin();//NotSupportedException, SystemException
 
-				Feed feed=this.get(url);//HttpException
+				Fields fields=getFields(url);//BadRequestException
+				String type=this.getContentType(request, url);
+
+				//With a cheap validator, we need not get the feed.
+				Validator validator=this.getValidator(url);//HttpException
+				if(validator!=null && notModified(request, response, validator, type))
+					return;
+
+				feed=this.get(url);//HttpException
 				if(feed==null){
 					response.sendError(404, "Not found");
 					String msg = "Requested object was not found.";
 					abort(msg);
 					return;
 				}
+				feed.setFields(fields);
+
+				if(validator==null){
+					validator=feed.getValidator();
+					if(validator!=null && notModified(request, response, validator, type))
+						return;
+				}
 
 				response.setStatus(200);
-				response.setContentType("application/atom+xml; charset=UTF-8");
+				response.setContentType(type);
 
 				//Firefox 3.0.1/ubuntu does not want to display the Atom feed in the same window.
 				//Here, I try to suggest a file name in the hope that firefox may deduce the type.
 				//response.setHeader("Content-disposition", "inline; filename=atom.xml");
 
+				//Remember the length for HEAD, if the feed has an ETag and is not compressed.
+				String key=null;
+				if(validator!=null && !isZipResponse(response))
+					key=lengthKey(request, validator, type);
+
 				OutputStream os=response.getOutputStream();
-				feed.write(os);//TransformerException
+				CountingOutputStream counter=null;
+				if(key!=null)
+					os=counter=new CountingOutputStream(os);
+				try{
+					write(feed, type, os);//IOException, TransformerException
+				}catch(Exception e){
+					//For example, a bean from the entry iterator cannot be converted.
+					this.writeFailed(response, e);//ServletException, IOException
+					return;
+				}
 				os.flush();
 				os.close();
+				if(counter!=null)
+					this.contentLengths.put(key, counter.getCount());
 
 				//Commit
 				//tx.commit();//javax.transaction.RollbackException, javax.transaction.HeuristicMixedException, javax.transaction.HeuristicRollbackException, java.lang.SecurityException, java.lang.IllegalStateException, javax.transaction.SystemException;
@@ -198,9 +344,6 @@ public abstract class AtomServlet extends IHttpServlet{
 				throw new ServletException(se);
 			}
 			*/
-			catch (TransformerException te){
-				throw new ServletException(te);
-			}
 		
 			/*
 			//Bug or problem in the tx manager: should never happen.
@@ -249,6 +392,9 @@ public abstract class AtomServlet extends IHttpServlet{
 				if(!committed && tx!=null)
 					tx.rollback();
 				*/
+				//The entry iterator may be a DB cursor that has not been read to the end.
+				if(feed!=null)
+					feed.close();//IOException
 			}
 		}
 
@@ -262,6 +408,57 @@ public abstract class AtomServlet extends IHttpServlet{
 		finally{}
 	}
 
+	/** Handle HEAD: the status and headers of GET, without body.
+	 * <p>
+	 * Does not write the feed, and closes its entry iterator. If there is a cheap
+	 * validator, does not even get the feed: see getValidator(url). Sends ETag and
+	 * Last-Modified, and the Content-Length if a GET has written the same feed
+	 * without compression recently. HEAD is conditional like GET.
+	 * @param request
+	 * @param response
+	 * @exception IOException */
+	@Override protected void doHead(HttpServletRequest request, HttpServletResponse response) throws IOException, ServletException {
+		try{
+			GDataURL url=new GDataURL(request);
+			getFields(url);//BadRequestException
+			String type=this.getContentType(request, url);
+
+			Validator validator=this.getValidator(url);//HttpException
+			if(validator==null){
+				Feed feed=this.get(url);//HttpException
+				if(feed==null){
+					response.sendError(404, "Not found");
+					return;
+				}
+				try{
+					validator=feed.getValidator();
+				}finally{
+					feed.close();//IOException
+				}
+			}
+			if(validator!=null && notModified(request, response, validator, type))
+				return;
+
+			response.setStatus(200);
+			response.setContentType(type);
+			if(validator!=null && !isZipResponse(response)){
+				Long length=this.contentLengths.get(lengthKey(request, validator, type));
+				if(length!=null && length<=Integer.MAX_VALUE)
+					response.setContentLength(length.intValue());
+			}
+		}
+		catch(NotAuthorizedException nae){
+			//Client has not sent credentials: challenge the client.
+			String realm = nae.getRealm();
+			response.addHeader("WWW-Authenticate", "Basic realm=\"" + realm + "\"");
+			response.sendError(401, "Not authorized");
+		}
+		catch (HttpException nae){
+			int status=nae.getStatus();
+			response.sendError(status, nae.getMessage());
+		}
+	}
+
 	/** Process an insert or a batch.
 	 * <h4>insert</h4>
 	 * To add members to a Collection, clients send POST requests to the URI
@@ -313,6 +510,8 @@ public abstract class AtomServlet extends IHttpServlet{
 	 * 	<li>no batch id
 	 * 	<li>results without batch status
 	 * </ul>
+	 * The entries of the batch are passed to a Batch from newBatch(url)
+	 * one by one while the request body is parsed.
 	 *
 	 * @param request
 	 * 	For insert, may have http header "Slug".
@@ -327,6 +526,7 @@ public abstract class AtomServlet extends IHttpServlet{
 	 * */
 	@Override protected void doPost(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		try{
+			GDataURL url=new GDataURL(request);
 			InputStream in=request.getInputStream();
 
 			//These two lines are for testing from html-pages that simulate an arbitrary body of
@@ -337,14 +537,28 @@ public abstract class AtomServlet extends IHttpServlet{
 			//in = new PrefixIgnorerInputStream(prefix, in);
 
 			//Is is an INSERT or a BATCH?
-			//Parse XML and see what the root element is.
-			Element root=DOM.getDocumentRoot(in);//TransformerException
+			//Parse and see what the root element is.
+			//The entries of a batch go to the batch while parsing.
+			BatchHandler batch=new BatchHandler(url);
+			RootElement root=null;
+			boolean parsed=false;
+			try{
+				root=parse(request, in, null, batch);//TransformerException
+				parsed=true;
+			}catch(TransformerException te){
+				if(!batch.hasFailed())
+					throw te;
+				//doBatch() reports why the batch has failed.
+			}finally{
+				if(!parsed)
+					batch.abort();
+			}
 			in.close();
-			boolean isInsert="entry".equals(root.getTagName());
+			boolean isInsert=root instanceof Entry;
 			if(isInsert)
-				this.doInsert(request, response, root);
+				this.doInsert(request, response, url, (Entry)root);
 			else
-				this.doBatch(request, response, root);
+				this.doBatch(request, response, url, batch);
 		}
 		catch(TransformerException te){
 			throw new ServletException(te);
@@ -382,27 +596,30 @@ public abstract class AtomServlet extends IHttpServlet{
 			InputStream in=request.getInputStream();
 			//byte[] prefix="body=".getBytes("UTF-8");
 			//in=new PrefixIgnorerInputStream(prefix, in);//enables testing. Ok for PROD, but you may also eliminate for PROD.
-			Entry entry=Entry.parse(in);
+			Entry entry=(Entry)parse(request, in, "entry", null);//TransformerException
 
 			if(etag!=null)
 				entry.setETag(etag);//Http header If-Match has priority over gd:etag.
 			
 			in.close();
+			Fields fields=getFields(url);//BadRequestException
 
 			//delegate to subclass
 			entry=this.update(url, entry);
+			entry.setFields(fields);
 
 			//write response header and body
 			response.setStatus(200);//Ok
-			response.setContentType("application/atom+xml; charset=UTF-8");
+			String type=this.getContentType(request, url);
+			response.setContentType(type);
 			OutputStream out=response.getOutputStream();
-			if(url.getParameters().getPrettyprint())
+			if(url.getRequest().getPrettyprint())
 				entry.setPrettyprint(true);
 
 			initial=System.currentTimeMillis();
 			logger.debug("Beginning to write PUT response at " + initial);
 
-			entry.write(out);//TransformerException
+			write(entry, type, out);//TransformerException
 			out.flush();
 			out.close();
 		}
@@ -444,29 +661,31 @@ public abstract class AtomServlet extends IHttpServlet{
 	/** POST of a single INSERT
 	 * @param request
 	 * @param response
-	 * @param root Root element of the XML received in the request
+	 * @param url of the request
+	 * @param entry The entry received in the request
 	 * */
-	private void doInsert(HttpServletRequest request, HttpServletResponse response, Element root)throws ServletException,IOException{
+	private void doInsert(HttpServletRequest request, HttpServletResponse response, GDataURL url, Entry entry)throws ServletException,IOException{
 		try{
 			//PasswordCredential user=this.getUser(request);
-			GDataURL url=new GDataURL(request);
-			Entry entry=Entry.parse(root);
 
 			//parse Slug header. Value is URL-encoded with UTF-8.
 			String slug=request.getHeader("Slug");//null if there is none
+			Fields fields=getFields(url);//BadRequestException
 
 			//delegate to subclass
 			entry=this.insert(url, slug, entry);
+			entry.setFields(fields);
 
 			//write response header and body
 			response.setStatus(201);//Created
-			response.setContentType("application/atom+xml; charset=UTF-8");
+			String type=this.getContentType(request, url);
+			response.setContentType(type);
 			String entryURI=entry.getURI();
 			response.setHeader("Location", entryURI);
 			OutputStream out=response.getOutputStream();//IOException
-			if(url.getParameters().getPrettyprint())
+			if(url.getRequest().getPrettyprint())
 				entry.setPrettyprint(true);
-			entry.write(out);//TransformerException
+			write(entry, type, out);//IOException, TransformerException
 			out.flush();//IOException
 			out.close();//IOException
 		}
@@ -498,30 +717,25 @@ public abstract class AtomServlet extends IHttpServlet{
 	 *
 	 * @param request
 	 * @param response
-	 * @param root The root element of the XM received in the request. It's a feed.
+	 * @param url of the request
+	 * @param batch Has received the entries of the feed in the request.
 	 * */
-	private void doBatch(HttpServletRequest request, HttpServletResponse response,Element root)throws ServletException,IOException{
+	private void doBatch(HttpServletRequest request, HttpServletResponse response, GDataURL url, BatchHandler batch)throws ServletException,IOException{
 		try{
 			//PasswordCredential user=this.getUser(request);
-			GDataURL url=new GDataURL(request);
-
-			Feed feed=Feed.parse(root);
-			root=null;//help gc
-			List<Entry> entries=feed.getEntries();
-			feed=null;//help gc
 
 			//delegate to subclass
-			this.insert(url, entries);
-			entries=null;//help gc
+			batch.close();//HttpException
 
 			//write response header and body
 			response.setStatus(200);//Created
-			response.setContentType("application/atom+xml; charset=UTF-8");
+			String type=this.getContentType(request, url);
+			response.setContentType(type);
 
 			// return empty feed (Is this correct for Atom batches?)
 			OutputStream out=response.getOutputStream();//IOException
 			Feed f=new Feed();
-			f.write(out);
+			write(f, type, out);
 			out.flush();//IOException
 			out.close();//IOException
 		}
@@ -572,6 +786,31 @@ public abstract class AtomServlet extends IHttpServlet{
 	 * */
 	protected abstract void insert(GDataURL url, List<Entry> entries) throws HttpException;
 
+	/** Starts a batch of inserts. While parsing the request, the servlet
+	 * passes the entries of the batch to the Batch one by one,
+	 * and then closes it.
+	 * <p>
+	 * This implementation collects the entries and passes them to
+	 * insert(url, entries) when the batch is closed. Override it to
+	 * process the entries while the request is still being parsed.
+	 * The Batch keeps what it needs, so that it can be aborted.
+	 * @param url
+	 * @return a new Batch
+	 * @throws HttpException
+	 * */
+	protected Batch newBatch(final GDataURL url)throws HttpException{
+		return new Batch(){
+			private List<Entry> entries=new ArrayList<Entry>();
+			@Override public void add(Entry entry){this.entries.add(entry);}
+			@Override public void close()throws HttpException{
+				List<Entry> entries=this.entries;
+				this.entries=null;//help gc
+				insert(url, entries);
+			}
+			@Override public void abort(){this.entries=null;}
+		};
+	}
+
 	/** Updates an entry.
 	 * @param entry The entry that the client wants to update. The implementation must check that etag is current.
 	 * @return The entry as stored. The server may have altered some of the fields.
@@ -596,6 +835,42 @@ public abstract class AtomServlet extends IHttpServlet{
 	 * */
 	protected abstract Feed get(GDataURL url) throws HttpException;
 
+	/** Gets a cheap validator of the feed for a URL, for conditional GET,
+	 * so that a request for a feed that has not changed need not get it.
+	 * <p>
+	 * This implementation returns null: the validator comes from the feed,
+	 * see Feed.getValidator().
+	 * @param url The URL of the request.
+	 * @return validator, or null
+	 * @throws HttpException
+	 * */
+	protected Validator getValidator(GDataURL url) throws HttpException {
+		return null;
+	}
+
+	/** Receives the entries of a batch one by one. See newBatch(url). */
+	protected static interface Batch{
+
+		/** An entry of the batch has been parsed.
+		 * @param entry
+		 * @throws HttpException The batch fails, and parsing stops.
+		 * */
+		void add(Entry entry)throws HttpException;
+
+		/** All entries of the batch have been parsed. Not called
+		 * if the batch has failed.
+		 * @throws HttpException
+		 * */
+		void close()throws HttpException;
+
+		/** The batch has failed: the rest of the request body is invalid,
+		 * or add() or close() has thrown. Undo what the batch has done so
+		 * far and forget the entries. Called once, and then no more add()
+		 * or close(). Does not throw.
+		 * */
+		void abort();
+	}
+
 	/** Call this to signal that there should be no further request processing.
 	 * This implementation throws RuntimeException. A subclass may override with
 	 * some exception that prevents further request processing but doesn't show
@@ -608,6 +883,315 @@ public abstract class AtomServlet extends IHttpServlet{
 
 	//Private helpers -----------------------------------------------------------
 
+	/** In what format does the client want the response?
+	 * @param request
+	 * @param url
+	 * @return the content type: Atom, JSON or binary
+	 * */
+	private String getContentType(HttpServletRequest request, GDataURL url){
+		if(this.isBinary(request, url))
+			return BINARY;
+		if(this.isJSON(request, url))
+			return JSON;
+		return ATOM;
+	}
+
+	/** Sets the headers ETag and Last-Modified, and replies 304 Not Modified
+	 * if the client has the current representation already.
+	 * @param request
+	 * @param response
+	 * @param validator of the feed
+	 * @param type the content type, from getContentType(): each format has its own ETag.
+	 * @return Has the response been sent?
+	 * */
+	private static boolean notModified(HttpServletRequest request, HttpServletResponse response, Validator validator, String type){
+		validator=validator.variant(variant(type));
+		String etag=validator.getETagHeader();
+		if(etag!=null)
+			response.setHeader("ETag", etag);
+		Date lastModified=validator.getLastModified();
+		if(lastModified!=null)
+			response.setDateHeader("Last-Modified", lastModified.getTime());
+
+		long since=-1;
+		try{
+			since=request.getDateHeader("If-Modified-Since");
+		}catch(IllegalArgumentException e){
+			//Invalid date: ignore the header.
+		}
+		if(validator.isNotModified(request.getHeader("If-None-Match"), since)){
+			response.setStatus(304);
+			return true;
+		}
+		return false;
+	}
+
+	/** Distinguishes the ETags of the formats.
+	 * @param type the content type, from getContentType()
+	 * @return variant for Validator.variant(String) */
+	private static String variant(String type){
+		if(BINARY.equals(type))
+			return "binary";
+		if(JSON.equals(type))
+			return "json";
+		return "atom";
+	}
+
+	/** The key of a Content-Length: the URL and the ETag.
+	 * The same ETag may be for feeds with different fields.
+	 * @return key, or null if there is no ETag */
+	private static String lengthKey(HttpServletRequest request, Validator validator, String type){
+		String etag=validator.variant(variant(type)).getETagHeader();
+		if(etag==null)
+			return null;
+		return etag + " " + request.getRequestURI() + "?" + request.getQueryString();
+	}
+
+	/** May IHttpServlet gzip the response? Then we do not know its length. */
+	private static boolean isZipResponse(HttpServletResponse response){
+		return response instanceof IHttpServletResponse && ((IHttpServletResponse)response).isZipResponse();
+	}
+
+	/** Writes a feed or entry in the format of a content type.
+	 * @param e feed or entry
+	 * @param type the content type, from getContentType()
+	 * @param out Is flushed, but not closed.
+	 * */
+	private static void write(RootElement e, String type, OutputStream out)throws IOException, TransformerException{
+		if(BINARY.equals(type))
+			e.writeBinary(out);
+		else if(JSON.equals(type))
+			e.writeJSON(out);
+		else
+			e.write(out);//TransformerException
+	}
+
+	/** Writing a feed has failed, maybe halfway. If nothing has been sent yet,
+	 * replies 500 instead. Else status 200 has gone already: throws, so that the
+	 * container breaks off the response instead of finishing the body, and the
+	 * client sees an incomplete body rather than a short feed.
+	 * @param response
+	 * @param e why writing has failed
+	 * @throws ServletException The response has been committed.
+	 * @throws IOException
+	 * */
+	private void writeFailed(HttpServletResponse response, Exception e)throws ServletException, IOException{
+		if(response.isCommitted())
+			throw new ServletException("The feed has been sent only in part", e);
+		logger.error("Cannot write the feed", e);
+		response.reset();
+		response.sendError(500, "Cannot write the feed");//IOException
+	}
+
+	/** Does the client want the response in the binary format?
+	 * The binary format is only for clients that ask for it explicitly:
+	 * with parameter alt=binary, or, without alt-parameter, with
+	 * the binary content type in the Accept header.
+	 * @param request
+	 * @param url
+	 * @return binary?
+	 * */
+	protected boolean isBinary(HttpServletRequest request, GDataURL url){
+		String alt=url.getRequest().getParameter("alt");
+		if(alt!=null)
+			return "binary".equals(alt);
+		String accept=request.getHeader("Accept");
+		if(accept==null)
+			return false;
+		for(String range : accept.split(",")){
+			String type=range.split(";")[0].trim().toLowerCase();
+			if(type.equals(BINARY))
+				return 0<quality(range);
+		}
+		return false;
+	}
+
+	/** Does the client want the response as JSON?
+	 * Yes if the request has parameter alt=json. If it has no
+	 * alt-parameter, yes if the Accept header prefers application/json
+	 * to Atom and XML.
+	 * @param request
+	 * @param url
+	 * @return JSON?
+	 * */
+	protected boolean isJSON(HttpServletRequest request, GDataURL url){
+		String alt=url.getRequest().getParameter("alt");
+		if(alt!=null)
+			return "json".equals(alt);
+		String accept=request.getHeader("Accept");
+		if(accept==null)
+			return false;
+		float json=0;
+		float xml=0;
+		for(String range : accept.split(",")){
+			String type=range.split(";")[0].trim().toLowerCase();
+			float q=quality(range);
+			if(type.equals("application/json"))
+				json=Math.max(json, q);
+			else if(type.equals("application/atom+xml") || type.endsWith("/xml") || type.equals("*/*") || type.equals("application/*"))
+				xml=Math.max(xml, q);
+		}
+		return 0<json && xml<json;
+	}
+
+	/** The q-value of a media range from an Accept header.
+	 * @param range like "application/json;q=0.5"
+	 * @return q-value, 1 if there is none, 0 if it is invalid
+	 * */
+	private static float quality(String range){
+		String[] parts=range.split(";");
+		float q=1;
+		for(int i=1; i<parts.length; i++){
+			String p=parts[i].trim();
+			if(p.startsWith("q=")){
+				try{
+					q=Float.parseFloat(p.substring(2));
+				}catch(NumberFormatException nfe){
+					q=0;
+				}
+			}
+		}
+		return q;
+	}
+
+	/** The partial response that the client wants: parameter fields.
+	 * @param url
+	 * @return the selection, or null for the whole response
+	 * @throws BadRequestException invalid fields
+	 * */
+	private static Fields getFields(GDataURL url)throws BadRequestException{
+		try{
+			return url.getRequest().getFields();
+		}catch(IllegalArgumentException e){
+			throw new BadRequestException(e.getMessage());
+		}
+	}
+
+	/** Parses the body of the request, in the format of its Content-Type:
+	 * JSON, binary, or else XML. XML is streamed, without DOM.
+	 * @param request
+	 * @param in the body
+	 * @param root "entry" to parse an entry whatever the root element,
+	 * 	null to decide by the root element
+	 * @param handler receives the entries of a feed instead of the feed. May be null.
+	 * @return an entry or a feed
+	 * @exception TransformerException invalid XML, or the handler has failed
+	 * */
+	private static RootElement parse(HttpServletRequest request, InputStream in, String root, AtomParser.EntryHandler handler)throws TransformerException{
+		String type=request.getContentType();
+		type=type==null ? "" : type.toLowerCase();
+		Element element;
+		if(type.startsWith("application/json"))
+			element=JSONParser.getDocumentRoot(in);
+		else if(type.startsWith(BINARY))
+			element=BinaryParser.getDocumentRoot(in);
+		else{
+			try{
+				if("entry".equals(root))
+					return AtomParser.parseEntry(in);//SAXException, IOException
+				AtomParser parser=new AtomParser();
+				parser.setEntryHandler(handler);
+				parser.parse(in);//SAXException, IOException
+				return parser.getEntry()!=null ? parser.getEntry() : parser.getFeed();
+			}catch(SAXException e){
+				throw new TransformerException(e);
+			}catch(IOException e){
+				throw new TransformerException(e);
+			}
+		}
+		if("entry".equals(root) || "entry".equals(element.getTagName()))
+			return Entry.parse(element);
+		Feed feed=Feed.parse(element);
+		if(handler!=null){
+			try{
+				for(Entry entry : feed.getEntries())
+					handler.entry(entry);//SAXException
+			}catch(SAXException e){
+				throw new TransformerException(e);
+			}
+			feed.getEntries().clear();
+		}
+		return feed;
+	}
+
+	/** Passes the entries of a POSTed feed to a Batch while parsing.
+	 * Starts the batch with the first entry, so that a POSTed entry
+	 * does not start a batch. Remembers why the batch has failed. */
+	private class BatchHandler implements AtomParser.EntryHandler{
+		private GDataURL url;
+		private Batch batch;
+
+		/** Why the batch has failed, or null */
+		private Exception failure;
+
+		/** Has the batch been aborted? */
+		private boolean aborted=false;
+
+		BatchHandler(GDataURL url){this.url=url;}
+
+		@Override public void entry(Entry entry)throws SAXException{
+			try{
+				this.getBatch().add(entry);//HttpException
+			}catch(HttpException e){
+				this.failure=e;
+				throw new SAXException(e);
+			}catch(RuntimeException e){
+				this.failure=e;
+				throw e;
+			}
+		}
+
+		boolean hasFailed(){return this.failure!=null;}
+
+		/** Closes the batch, or throws why it has failed.
+		 * A feed without entries is an empty batch.
+		 * If closing fails, aborts the batch. */
+		void close()throws HttpException{
+			if(this.failure instanceof HttpException)
+				throw (HttpException)this.failure;
+			if(this.failure!=null)
+				throw (RuntimeException)this.failure;
+			boolean closed=false;
+			try{
+				this.getBatch().close();//HttpException
+				closed=true;
+			}finally{
+				if(!closed)
+					this.abort();
+			}
+		}
+
+		/** Aborts the batch, if it has been started and not aborted yet. */
+		void abort(){
+			if(this.batch!=null && !this.aborted){
+				this.aborted=true;
+				this.batch.abort();
+			}
+		}
+
+		/** The batch, started if necessary */
+		private Batch getBatch()throws HttpException{
+			if(this.batch==null)
+				this.batch=newBatch(this.url);
+			return this.batch;
+		}
+	}
+
+	/** Counts the bytes that go through. */
+	private static class CountingOutputStream extends FilterOutputStream{
+		private long count=0;
+		CountingOutputStream(OutputStream out){super(out);}
+		@Override public void write(int b)throws IOException{
+			this.out.write(b);
+			this.count++;
+		}
+		@Override public void write(byte[] b, int off, int len)throws IOException{
+			this.out.write(b, off, len);
+			this.count+=len;
+		}
+		long getCount(){return this.count;}
+	}
+
 	/** If the client sent http basic authentication with the request, the username
 	 * and password, else null.
 	 * @param request
@@ -0,0 +1,163 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package atom.gdata;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+
+import atom.Category;
+
+/** What a GDataURL asks for: the categories, the entry-id and the
+ * parameters, parsed once. 
+ * <p>
+ * Get it from GDataURL.getRequest(). The URL keeps it while the URL
+ * does not change, so in a request all methods and the AtomSAO share 
+ * the same one, and the URL is parsed only once.
+ * <p>
+ * Immutable. 
+ * */
+public final class GDataRequest{
+
+	//State -------------------------------------------------
+
+	/** The complete URL that has been parsed */
+	private final String url;
+
+	/** The terms of the categories, without the entry-id. Unmodifiable. */
+	private final List<String> terms;
+
+	/** Never given away: only copies. */
+	private final GDataParameters parameters;
+
+	private final Style style;
+	private final boolean prettyprint;
+
+	//Constructors ------------------------------------------
+
+	/** Parses a URL.
+	 * @param url
+	 * @exception RuntimeException Dates must be in RTC 3339 format.
+	 * */
+	GDataRequest(GDataURL url)throws RuntimeException{
+		this.url=url.toString();
+		this.terms=terms(this.url);
+		Map<String, String> ps=url.getURLParameters();
+		this.parameters=new GDataParameters(ps);
+		this.parameters.setId(id(this.url));
+		this.style=this.parameters.getStyle();
+		this.prettyprint=this.parameters.getPrettyprint();
+	}
+
+	//Accessors ---------------------------------------------
+
+	/** Gets the categories in the URL. 
+	 * @return fresh list of categories, may be empty */
+	public List<Category> getCategories(){
+		List<Category> categories=new ArrayList<Category>(this.terms.size());
+		for(String term : this.terms){
+			Category category=new Category();
+			category.setTerm(term);
+			categories.add(category);
+		}
+		return categories;
+	}
+
+	/** Gets the terms of the categories in the URL.
+	 * @return unmodifiable list, may be empty */
+	public List<String> getTerms(){return this.terms;}
+
+	/** The entry-id, or null. */
+	public String getId(){return this.parameters.getId();}
+
+	/** Gets a parameter. Empty parameters are missing.
+	 * @param key
+	 * @return parameter value, or null */
+	public String getParameter(String key){return this.parameters.get(key);}
+
+	/** Gets the gdata parameters, with the entry-id.
+	 * @return fresh instance of Parameters */
+	public GDataParameters getParameters(){return new GDataParameters(this.parameters);}
+
+	/** See GDataParameters.getAlt(). */
+	public String getAlt(){return this.parameters.getAlt();}
+
+	/** See GDataParameters.getFields().
+	 * @exception IllegalArgumentException The fields parameter is invalid.
+	 * */
+	public Fields getFields(){return this.parameters.getFields();}
+
+	/** See GDataParameters.getPrettyprint(). */
+	public boolean getPrettyprint(){return this.prettyprint;}
+
+	/** See GDataParameters.getStyle(). */
+	public Style getStyle(){return this.style;}
+
+	/** Has this been parsed from this URL? 
+	 * @param url complete URL */
+	boolean isParsedFrom(String url){return this.url.equals(url);}
+
+	@Override public String toString(){return this.terms + " " + this.parameters;}
+
+	//Helpers -----------------------------------------------
+
+	/** Gets the terms of the categories in the URL. */
+	private static List<String> terms(String url){
+		//find "/-/"
+		int separatorStart=url.indexOf("/-/");
+		if(separatorStart<0)
+			return Collections.emptyList();
+		int categoriesStart=separatorStart + 3;
+		int question=url.indexOf('?', categoriesStart);
+		int end=question<0 ? url.length() : question;
+		
+		//match all the "/something" excluding "entryN" which is a special parameter
+		List<String> terms=new ArrayList<String>(2);
+		while(categoriesStart<=end){
+			int categoryEnd=url.indexOf('/', categoriesStart);
+			if(categoryEnd<0 || end<categoryEnd)
+				categoryEnd=end;
+			String term=url.substring(categoriesStart, categoryEnd);
+			if(!term.startsWith("entry"))	// exclude "entryID" from categories
+				terms.add(term);
+			categoriesStart=categoryEnd+1;
+		}
+		return Collections.unmodifiableList(terms);
+	}
+
+	/** Parses entry-id, which is not a URL parameter.
+	 * Example:
+	 * http://domain/atom/-/offer/entry613201229313895273802234030495?style=short&author=empresaSILKEN
+	 * According to GData spec, if entry-id is present, no other parameters
+	 * are allowed, but we weaken that. URL parameters are allowed: it makes
+	 * sense for us, because some of our parameters are not search parameters,
+	 * but rather affect presentation, like "style".
+	 * @return entry-id, or null */
+	private static String id(String url){
+		//search in the URL for "/entryNNN" or "/entryNNN?"
+		int i=url.indexOf("/entry");
+		if(i<0)
+			return null;
+		int start=i + "/entry".length();
+		int end=url.indexOf("?", i);
+		if(end<0)
+			end=url.length();
+		return url.substring(start, end);
+	}
+}
@@ -19,7 +19,6 @@ package atom.gdata;
 
 import inspiracio.servlet.http.HttpURL;
 
-import java.util.ArrayList;
 import java.util.List;
 import java.util.Map;
 
@@ -61,44 +60,33 @@ public class GDataURL extends HttpURL{
 		super(url);
 	}
 	
+	//State --------------------------------------------------
+
+	/** Parsed from the URL, or null. Checked against the URL, 
+	 * because the URL may change in many ways. While the URL does not
+	 * change, toString() returns the same String, so the check is fast. */
+	private GDataRequest request;
+
 	//Accessors ----------------------------------------------
 	
+	/** Gets what this URL asks for, parsed once while the URL does not change.
+	 * @return categories, entry-id and parameters
+	 * @exception RuntimeException containing ParseException 
+	 * 	Dates must be in RTC 3339 format. 
+	 * */
+	public GDataRequest getRequest()throws RuntimeException{
+		GDataRequest request=this.request;
+		if(request==null || !request.isParsedFrom(this.toString())){
+			request=new GDataRequest(this);
+			this.request=request;
+		}
+		return request;
+	}
+
 	/** Gets the categories in the URL. 
 	 * @return list of categories, may be empty */
 	public List<Category> getCategories(){
-		
-		List<Category> categories = new ArrayList<Category>();
-		boolean finished = false;
-		String url = this.toString();
-		
-		//find "/-/"
-		int separatorStart = url.indexOf("/-/");
-		int categoriesStart = separatorStart + 3;
-		
-		//match all the "/something" excluding "entryN" which is a special parameter
-		while(!finished){
-			if (3 < categoriesStart){
-				int categoryEnd = url.indexOf("/", categoriesStart);
-				if(categoryEnd < 0){ // Might be the last category
-					categoryEnd = url.indexOf("?", categoriesStart);
-					if(categoryEnd < 0) // No more categories
-						categoryEnd = url.length();
-					finished = true;
-				}
-				String term = url.substring(categoriesStart,categoryEnd);
-				if(!term.startsWith("entry")){	// exclude "entryID" from categories
-					//Build the Category
-					Category category = new Category();
-					category.setTerm(term);
-					categories.add(category);
-				}
-				
-				// Update offset
-				categoriesStart = categoryEnd+1;
-			} else
-				finished = true;
-		}
-		return categories;
+		return this.getRequest().getCategories();
 	}
 	
 	/** Gets the gdata parameters parsed from the URL.
@@ -109,31 +97,21 @@ public class GDataURL extends HttpURL{
 	 * 	Dates must be in RTC 3339 format. 
 	 * */
 	//public Map getParameters() throws RuntimeException {
-	public GDataParameters getParameters()throws RuntimeException {
-		Map<String, String> ps=super.getParameters();
-		GDataParameters gdp=new GDataParameters(ps);
-		
-		//Parse entry-id, which is not a URL parameter
-		//Example:
-		//http://domain/atom/-/offer/entry613201229313895273802234030495?style=short&author=empresaSILKEN
-		//According to GData spec, if entry-id is present, no other parameters
-		//are allowed, but we weaken that. URL parameters are allowed: it makes
-		//sense for us, because some of our parameters are not search parameters,
-		//but rather affect presentation, like "style".
-		StringBuilder url=this.toStringBuilder();
-		//search in the URL for "/entryNNN" or "/entryNNN?"
-		int i=url.indexOf("/entry");
-		if(0 <= i){
-			int start = i + "/entry".length();
-			int end = url.indexOf("?", i);
-			if (end < 0){
-				end = url.length();
-			}
-			String id = url.substring(start, end);
-			gdp.setId(id);
-		}
-		
-		return gdp;
+	@Override public GDataParameters getParameters()throws RuntimeException {
+		return this.getRequest().getParameters();
+	}
+
+	/** Gets a parameter. If there is no parameter with the
+	 * given key, or it is empty, returns null.
+	 * @param key
+	 * @return parameter value, or null */
+	@Override public String getParameter(String key){
+		return this.getRequest().getParameter(key);
+	}
+
+	/** The URL parameters, without parsing them for GData. */
+	Map<String, String> getURLParameters(){
+		return super.getParameters();
 	}
 	
 	//testing ------------------------------------------------
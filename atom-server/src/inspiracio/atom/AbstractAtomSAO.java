@@ -24,8 +24,13 @@ import inspiracio.servlet.http.HttpException;
 import inspiracio.servlet.http.InternalServerErrorException;
 import inspiracio.servlet.http.MethodNotAllowedException;
 import inspiracio.servlet.http.NotAuthorizedException;
+import inspiracio.servlet.http.Validator;
 
+
+import java.io.Closeable;
+import java.io.IOException;
 import java.security.Principal;
+import java.util.Iterator;
 import java.util.List;
 
 import atom.Entry;
@@ -40,13 +45,20 @@ import atom.gdata.Style;
  * @author BARCELONA\alexanderb
  *
  */
-public abstract class AbstractAtomSAO<T extends AtomBean> implements AtomSAO<T>{
+public abstract class AbstractAtomSAO<T extends AtomBean> implements AtomSAO<T>, ValidatingAtomSAO<T>{
 	
 	//State ------------------------------------------------------------------
 	
 	/** The authenticated principal for the operations */
 	private Principal principal;
 
+	/** The principal per thread, if this SAO is shared by concurrent requests.
+	 * Else null. */
+	private ThreadLocal<Principal> principals;
+
+	/** The EntryCache of the servlet, or null */
+	private EntryCache entryCache;
+
 	//Constructors -----------------------------------------------------------
 	
 	protected AbstractAtomSAO(){}
@@ -113,12 +125,62 @@ public abstract class AbstractAtomSAO<T extends AtomBean> implements AtomSAO<T>{
 		throw new MethodNotAllowedException();
 	}
 
+	/** Gets some beans, one by one.
+	 * <p>
+	 * Override this method instead of get() if you can read the beans from the store
+	 * one by one, for example from a DB cursor. Then getFeed() converts each bean to
+	 * an entry only when the entry is written to the client, and memory does not
+	 * grow with the number of beans. The iterator may close the cursor when
+	 * hasNext() returns false. If it is Closeable, it is closed also if the feed is
+	 * not written to the end, for example for HEAD.
+	 * <p>
+	 * Then the feed has no validator for conditional GET, because the beans cannot be
+	 * read twice. Override getValidator(url) if you can tell cheaply whether they have
+	 * changed.
+	 * <p>
+	 * LocalAtomProxy calls get(), not this method: override get() too if you need it.
+	 * <p>
+	 * This implementation returns an iterator over the list from get(), so it does
+	 * not stream.
+	 *
+	 * @param url
+	 * @return Some beans from the store that match the parameters
+	 * @exception MethodNotAllowedException. Must override get() or iterate() if you want retrieval.
+	 * @throws NotAuthorizedException The SAO requires the client to be authenticated,
+	 * 	but the client has not provided username and password.
+	 * @throws ForbiddenException The SAO requires the client to be authenticated, but
+	 * 	the username and password provided by the client could not be validated by the
+	 * 	SAO.
+	 * @throws InternalServerErrorException The SAO signals that something has gone
+	 * 	wrong in processing the request and that the servlet should reply 500 Internal
+	 * 	Server Error to the client.
+	 * */
+	public Iterator<T> iterate(GDataURL url)throws NotAuthorizedException, ForbiddenException, InternalServerErrorException,HttpException{
+		List<T>beans=this.get(url);//MethodNotAllowedException
+		return new BeanIterator<T>(beans);
+	}
+
 	/** Gets a feed.
 	 * <p>
 	 * See get() for which method to override.
 	 * <p>
-	 * This implementation calls get() to get the beans, then constructs a boring feed
-	 * and returns it. So if you needn't set fields in the feed, you only override get().
+	 * This implementation calls iterate() to get the beans, then constructs a boring feed
+	 * and returns it. So if you needn't set fields in the feed, you only override get()
+	 * or iterate().
+	 * <p>
+	 * The entries are not added to the feed, but come from its entry iterator: each bean
+	 * is converted to an entry when the feed is written. Only the first bean is converted
+	 * at once, so that the feed can declare the namespaces of the entries. Each entry
+	 * declares its own namespaces too, so beans of other classes may follow.
+	 * <p>
+	 * So a bean that cannot be converted makes the writing of the feed fail, maybe
+	 * after the status 200 has been sent: then the servlet breaks off the response.
+	 * If that is not good enough, convert the beans in getFeed and add the entries.
+	 * <p>
+	 * If the beans come from get(), the feed has a validator made of their IDs and
+	 * ETags, if they all have them.
+	 * If you override this method and call super.getFeed, entries that you add with
+	 * addEntry will be written before the entries of the beans.
 	 * 
 	 * @param url
 	 * @return Some beans from the store that match the parameters
@@ -134,23 +196,39 @@ public abstract class AbstractAtomSAO<T extends AtomBean> implements AtomSAO<T>{
 	 * 	Server Error to the client.
 	 * */
 	public Feed getFeed(GDataURL url) throws NotAuthorizedException, ForbiddenException, InternalServerErrorException,HttpException{
-		Style style=Style.parseStyle(url.getParameter("style"));
+		Style style=url.getRequest().getStyle();
 		Feed feed=new Feed();
 		//Set standard fields in the feed.
 		
-		List<T>beans=this.get(url);//MethodNotAllowedException
-		for(T bean : beans){
+		Iterator<T>beans=this.iterate(url);//MethodNotAllowedException
+		Validator validator=null;
+		if(beans instanceof BeanIterator<?>)
+			validator=validator(((BeanIterator<T>)beans).beans);
+		Entry first=null;
+		if(beans.hasNext()){
 			try{
-				Entry entry=bean.toEntry(true, style);//We want the bean with XML namespaces.
-				feed.addEntry(entry);
+				first=beans.next().toEntry(true, style);//We want the bean with XML namespaces.
 			}catch(Exception e){
 				throw new InternalServerErrorException(e);
 			}
+			//All beans of this SAO have the same namespaces.
+			feed.addNamespaces(first);
 		}
+		feed.setEntryIterator(new EntryIterator<T>(first, beans, style, this.entryCache), validator);
 		
 		return feed;
 	}
 
+	/** Gets a cheap validator of the feed for a URL.
+	 * This implementation has none. Override it if you can tell cheaply
+	 * whether the feed has changed.
+	 * @param url
+	 * @return null
+	 * */
+	public Validator getValidator(GDataURL url)throws HttpException{
+		return null;
+	}
+
 	/** Remove a bean from the store.
 	 * @param id The id of the bean to be removed.
 	 * @param etag Must be current, else throw PreconditionFailedException
@@ -184,10 +262,117 @@ public abstract class AbstractAtomSAO<T extends AtomBean> implements AtomSAO<T>{
 	/** The authenticated user, as Principal, or null if the user is not authenticated. */
 	@Override public Principal getCallerPrincipal(){
 		//Principal principal=PrincipalFactory.getCallerPrincipal();//Gets it from the request?
+		if(this.principals!=null)
+			return this.principals.get();
 		return this.principal;
 	}
 	
 	@Override public void setCallerPrincipal(Principal principal){
-		this.principal=principal;
+		if(this.principals==null)
+			this.principal=principal;
+		else if(principal==null)
+			this.principals.remove();
+		else
+			this.principals.set(principal);
+	}
+
+	/** A pooled SAO goes back to the pool at the end of a request, also of
+	 * a failed one: forget the state of the request. Throw RuntimeException
+	 * if the SAO must not be reused. Not for request or singleton scope.
+	 * <p>
+	 * This implementation does nothing: AbstractAtomSAO keeps no state of a
+	 * request except the principal, which AtomSAOFactory clears.
+	 * */
+	protected void reset(){}
+
+	/** This SAO will be shared by concurrent requests, as singleton of
+	 * AtomSAOFactory: from now on, keep the principal per thread. */
+	void share(){
+		this.principals=new ThreadLocal<Principal>();
+	}
+
+	/** Sets the EntryCache of the servlet, before the SAO is used.
+	 * @param cache may be null */
+	void setEntryCache(EntryCache cache){
+		this.entryCache=cache;
+	}
+
+	//Helpers ----------------------------------------------------------------
+
+	/** A validator made of the IDs and ETags of beans.
+	 * @param beans
+	 * @return validator, or null if a bean has no ID or ETag */
+	private static Validator validator(List<? extends AtomBean> beans){
+		Validator.Builder builder=new Validator.Builder();
+		for(AtomBean bean : beans){
+			Object id=bean.getId();
+			String etag=bean.getETag();
+			if(id==null || etag==null)
+				return null;
+			builder.add(id.toString());
+			builder.add(etag);
+		}
+		return builder.build(null);
+	}
+
+	/** Iterates over the list from get(), and knows it. */
+	private static class BeanIterator<T> implements Iterator<T>{
+		private List<T> beans;
+		private Iterator<T> iterator;
+		BeanIterator(List<T> beans){
+			this.beans=beans;
+			this.iterator=beans.iterator();
+		}
+		@Override public boolean hasNext(){return this.iterator.hasNext();}
+		@Override public T next(){return this.iterator.next();}
+		@Override public void remove(){throw new UnsupportedOperationException();}
+	}
+
+	/** Converts beans to entries while the feed is being written.
+	 * If the EntryCache of the servlet is enabled, the beans are written from there.
+	 * Keeps no reference to the entries it has returned.
+	 * Closes the beans, if they are Closeable. */
+	private static class EntryIterator<T extends AtomBean> implements Iterator<Entry>, Closeable{
+		/** Already converted, to be returned first. May be null. */
+		private Entry first;
+		private Iterator<T> beans;
+		private Style style;
+		/** May be null */
+		private EntryCache cache;
+		EntryIterator(Entry first, Iterator<T> beans, Style style, EntryCache cache){
+			this.first=first;
+			this.beans=beans;
+			this.style=style;
+			this.cache=cache;
+		}
+		@Override public boolean hasNext(){
+			return this.first!=null || this.beans.hasNext();
+		}
+		/** @exception RuntimeException if the bean cannot be converted */
+		@Override public Entry next(){
+			if(this.first!=null){
+				Entry entry=this.first;
+				this.first=null;
+				return entry;
+			}
+			T bean=this.beans.next();
+			if(this.cache!=null && this.cache.isEnabled()){
+				Object key=EntryCache.key(bean, this.style);
+				if(key!=null)
+					return new CachedEntry(bean, this.style, key, this.cache);
+			}
+			try{
+				return bean.toEntry(true, this.style);
+			}catch(RuntimeException e){
+				throw e;
+			}catch(Exception e){
+				throw new RuntimeException(e);
+			}
+		}
+		@Override public void remove(){throw new UnsupportedOperationException();}
+		@Override public void close()throws IOException{
+			if(this.beans instanceof Closeable)
+				((Closeable)this.beans).close();
+		}
 	}
 }
\ No newline at end of file
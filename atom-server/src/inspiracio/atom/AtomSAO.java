@@ -81,6 +81,12 @@ public interface AtomSAO<T extends AtomBean>{
 	 * extension elements to the feed. SAOs that are not interested in setting fields in the
 	 * feed can extend AbstractAtomSAO, and overwrite just get, and not getFeed.
 	 * </p>
+	 * <p>
+	 * The feed can hold all its entries. Only AbstractAtomSAO streams them, converting
+	 * each bean when it is written, and only if the subclass overrides iterate(url) to
+	 * read the beans one by one. Its default iterate(url) still makes the whole list
+	 * with get(url).
+	 * </p>
 	 * @param url The URL of the request, in a form that parses the Atom parameters easily.
 	 * @return The feed that should be sent to the client.
 	 * @throws BadRequestException Some invalid parameter has been passed
@@ -19,58 +19,265 @@ package inspiracio.atom;
 
 import inspiracio.servlet.http.BadRequestException;
 import inspiracio.servlet.http.InternalServerErrorException;
-import inspiracio.servlet.jsp.PageContextFactory;
 
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
 import java.security.Principal;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
 
 import javax.servlet.http.HttpServletRequest;
 
-import atom.Category;
 import atom.gdata.GDataURL;
 
 /** Access to AtomSAOs. 
- * The URL must have exactly one category, and that category identifies the SAO. */
+ * The URL must have exactly one category, and that category identifies the SAO.
+ * <p>
+ * Each servlet has its own factory, made at init. The factory finds the class
+ * of the SAO for a category only once, and then keeps a supplier for it.
+ * A supplier has a scope: a new SAO for each request, SAOs from a pool,
+ * or a singleton.
+ * <p>
+ * In one request, all calls for the same category get the same SAO. At the
+ * end of the request, call release(request).
+ * <p>
+ * Threadsafe.
+ * */
 class AtomSAOFactory{
-	
+
+	/** How many SAOs a supplier makes. */
+	static enum Scope{
+		/** A new SAO for each request. For any SAO. */
+		REQUEST,
+		/** SAOs are reused by later requests, but one at a time.
+		 * For SAOs that are expensive to make and that forget the
+		 * state of a request, also of a failed one: see AbstractAtomSAO.reset().
+		 * A SAO that cannot be reset is not reused. Only for AbstractAtomSAOs. */
+		POOLED,
+		/** One SAO for all requests, at the same time. For threadsafe SAOs
+		 * that keep no state of a request in fields. The principal is per
+		 * thread: AbstractAtomSAO does that. Only for AbstractAtomSAOs: other
+		 * SAOs keep the principal in a field, and concurrent requests would
+		 * overwrite each other's principal. */
+		SINGLETON
+	}
+
+	/** Name of the request attribute with the SAOs of the request */
+	private static final String ATTRIBUTE=AtomSAOFactory.class.getName();
+
+	//State --------------------------------------------------------------
+
 	/** The prefix for packages of Atom beans.
 	 * For example, if it's "com.siine", and the category is "user", 
 	 * then the bean class is "com.siine.user.User". */
-	static String BEAN_PACKAGE_PREFIX;
-	static void setBeanPackage(String beanPackage){
-		AtomSAOFactory.BEAN_PACKAGE_PREFIX=beanPackage;
+	private final String beanPackage;
+
+	private final Scope scope;
+
+	/** Maximum number of idle SAOs for each pooled category */
+	private final int poolSize;
+
+	/** The EntryCache of the servlet, for AbstractAtomSAOs. May be null. */
+	private final EntryCache cache;
+
+	/** category term -> supplier of its SAOs. Only classes that exist. */
+	private final ConcurrentMap<String, Supplier> suppliers=new ConcurrentHashMap<String, Supplier>();
+
+	//Constructors -------------------------------------------------------
+
+	/** Makes a factory.
+	 * @param beanPackage The prefix for packages of Atom beans
+	 * @param scope for categories without scope
+	 * @param scopes The scopes of some categories. Their SAOs are found at once.
+	 * @param poolSize Maximum number of idle SAOs for each pooled category
+	 * @param cache The EntryCache of the servlet, for AbstractAtomSAOs. May be null.
+	 * @throws ClassNotFoundException no SAO for a category in scopes
+	 * @throws NoSuchMethodException the SAO has no public constructor without parameters
+	 * @exception IllegalArgumentException a SAO in scopes is pooled or singleton,
+	 * 	but not an AbstractAtomSAO
+	 * */
+	AtomSAOFactory(String beanPackage, Scope scope, Map<String, Scope> scopes, int poolSize, EntryCache cache)throws ClassNotFoundException, NoSuchMethodException{
+		this.beanPackage=beanPackage;
+		this.scope=scope;
+		this.poolSize=poolSize;
+		this.cache=cache;
+		for(Map.Entry<String, Scope> e : scopes.entrySet()){
+			String term=e.getKey();
+			this.suppliers.put(term, this.supplier(term, e.getValue()));//ClassNotFoundException, NoSuchMethodException, IllegalArgumentException
+		}
 	}
 
-	/** For given URL return the SAO. 
-	 * This implementation tries to guess the class name and instantiates.
-	 * A different implementation could keep a cache of singletons. */
-	static AtomSAO<AtomBean> get(GDataURL url)throws BadRequestException,InternalServerErrorException{
+	//Methods ------------------------------------------------------------
+
+	/** For given URL return the SAO, for the rest of the request.
+	 * @param url identifies the SAO by its category
+	 * @param request the current request
+	 * @param principal the authenticated caller, or null. The SAO gets it.
+	 * @throws BadRequestException The URL has not exactly one category.
+	 * @throws InternalServerErrorException There is no SAO for the category.
+	 * */
+	AtomSAO<AtomBean> get(GDataURL url, HttpServletRequest request, Principal principal)throws BadRequestException,InternalServerErrorException{
 		//Identify the SAO
-		List<Category> categories=url.getCategories();
-		if(categories.size()!=1)
+		List<String> terms=url.getRequest().getTerms();
+		if(terms.size()!=1)
 			throw new BadRequestException();//URL incorrect for Atom protocol
-		Category category=categories.get(0);
-		String term=category.getTerm();
-		String Term=Character.toUpperCase(term.charAt(0)) + term.substring(1);
-		String className=BEAN_PACKAGE_PREFIX + "." + term + "." + Term + "AtomSAO";
+		String term=terms.get(0);
+
+		//Already in this request?
+		@SuppressWarnings("unchecked")
+		Map<String, Lease> leases=(Map<String, Lease>)request.getAttribute(ATTRIBUTE);
+		if(leases==null){
+			leases=new HashMap<String, Lease>(4);
+			request.setAttribute(ATTRIBUTE, leases);
+		}
+		Lease lease=leases.get(term);
+		if(lease==null){
+			Supplier supplier=this.getSupplier(term);//BadRequestException, InternalServerErrorException
+			lease=new Lease(supplier, supplier.get());//BadRequestException
+			leases.put(term, lease);
+		}
+
+		//Tell the SAO who is authenticated.
+		lease.sao.setCallerPrincipal(principal);
+		return lease.sao;
+	}
+
+	/** At the end of a request, gives back the SAOs of the request, 
+	 * on the thread that has used them.
+	 * @param request the current request
+	 * */
+	void release(HttpServletRequest request){
+		@SuppressWarnings("unchecked")
+		Map<String, Lease> leases=(Map<String, Lease>)request.getAttribute(ATTRIBUTE);
+		if(leases==null)
+			return;
+		request.removeAttribute(ATTRIBUTE);
+		for(Lease lease : leases.values()){
+			lease.sao.setCallerPrincipal(null);
+			lease.supplier.release(lease.sao);
+		}
+	}
+
+	//Helpers ------------------------------------------------------------
+
+	/** Gets the supplier for a category, and finds it the first time. */
+	private Supplier getSupplier(String term)throws BadRequestException, InternalServerErrorException{
+		Supplier supplier=this.suppliers.get(term);
+		if(supplier!=null)
+			return supplier;
 		try{
-			Class<?> clazz=Class.forName(className);//ClassNotFoundException If you can't find the class, think about class loaders!
-			Object o=clazz.newInstance();//IllegalAccessException, InstantiationException
-			@SuppressWarnings("unchecked")
-			AtomSAO<AtomBean> sao=(AtomSAO<AtomBean>)o;
-			
-			//Tell the SAO who is authenticated.
-			HttpServletRequest request=(HttpServletRequest)PageContextFactory.getPageContext().getRequest();
-			Principal principal=request.getUserPrincipal();
-			sao.setCallerPrincipal(principal);
-
-			return sao;
+			supplier=this.supplier(term, this.scope);//ClassNotFoundException, NoSuchMethodException, IllegalArgumentException
 		}catch(ClassNotFoundException cnfe){
 			throw new InternalServerErrorException(cnfe);
-		}catch(IllegalAccessException iae){
-			throw new BadRequestException();
-		}catch(InstantiationException iae){
+		}catch(IllegalArgumentException iae){
+			throw new InternalServerErrorException(iae);
+		}catch(NoSuchMethodException nsme){
 			throw new BadRequestException();
 		}
+		Supplier old=this.suppliers.putIfAbsent(term, supplier);
+		return old==null ? supplier : old;
+	}
+
+	/** Makes the supplier for a category.
+	 * @throws ClassNotFoundException If you can't find the class, think about class loaders!
+	 * @throws NoSuchMethodException no public constructor without parameters
+	 * @exception IllegalArgumentException pooled or singleton, but not an AbstractAtomSAO */
+	private Supplier supplier(String term, Scope scope)throws ClassNotFoundException, NoSuchMethodException{
+		String Term=Character.toUpperCase(term.charAt(0)) + term.substring(1);
+		String className=this.beanPackage + "." + term + "." + Term + "AtomSAO";
+		Class<?> clazz=Class.forName(className);//ClassNotFoundException
+		Constructor<?> constructor=clazz.getConstructor();//NoSuchMethodException
+		if(scope!=Scope.REQUEST && !AbstractAtomSAO.class.isAssignableFrom(clazz))
+			throw new IllegalArgumentException(className + " is not an AbstractAtomSAO, so it cannot be " + scope.name().toLowerCase());
+		switch(scope){
+		case POOLED: return new Pool(constructor, this.cache, this.poolSize);
+		case SINGLETON:
+			try{
+				return new Singleton(constructor, this.cache);
+			}catch(BadRequestException e){
+				throw new NoSuchMethodException(className + " cannot be instantiated");
+			}
+		default: return new Supplier(constructor, this.cache);
+		}
+	}
+
+	/** Supplies SAOs of one class. This one makes a new SAO every time. */
+	private static class Supplier{
+		private final Constructor<?> constructor;
+		private final EntryCache cache;
+		Supplier(Constructor<?> constructor, EntryCache cache){
+			this.constructor=constructor;
+			this.cache=cache;
+		}
+
+		/** Gets a SAO for a request. */
+		AtomSAO<AtomBean> get()throws BadRequestException{
+			try{
+				@SuppressWarnings("unchecked")
+				AtomSAO<AtomBean> sao=(AtomSAO<AtomBean>)this.constructor.newInstance();//IllegalAccessException, InstantiationException, InvocationTargetException
+				if(sao instanceof AbstractAtomSAO<?>)
+					((AbstractAtomSAO<?>)sao).setEntryCache(this.cache);
+				return sao;
+			}catch(IllegalAccessException iae){
+				throw new BadRequestException();
+			}catch(InstantiationException ie){
+				throw new BadRequestException();
+			}catch(InvocationTargetException ite){
+				throw new BadRequestException();
+			}
+		}
+
+		/** Takes back a SAO at the end of a request. */
+		void release(AtomSAO<AtomBean> sao){}
+	}
+
+	/** Keeps some idle SAOs for later requests. */
+	private static class Pool extends Supplier{
+		private final BlockingQueue<AtomSAO<AtomBean>> idle;
+		Pool(Constructor<?> constructor, EntryCache cache, int size){
+			super(constructor, cache);
+			this.idle=new ArrayBlockingQueue<AtomSAO<AtomBean>>(Math.max(1, size));
+		}
+		@Override AtomSAO<AtomBean> get()throws BadRequestException{
+			AtomSAO<AtomBean> sao=this.idle.poll();
+			return sao!=null ? sao : super.get();//BadRequestException
+		}
+		/** Only AbstractAtomSAOs are pooled. Others are not reused. */
+		@Override void release(AtomSAO<AtomBean> sao){
+			if(!(sao instanceof AbstractAtomSAO<?>))
+				return;//Cannot be reset: gc takes it.
+			try{
+				((AbstractAtomSAO<?>)sao).reset();
+			}catch(RuntimeException e){
+				return;//Not reusable: gc takes it.
+			}
+			this.idle.offer(sao);//If the pool is full, gc takes it.
+		}
+	}
+
+	/** Always the same SAO. */
+	private static class Singleton extends Supplier{
+		private final AtomSAO<AtomBean> sao;
+		Singleton(Constructor<?> constructor, EntryCache cache)throws BadRequestException{
+			super(constructor, cache);
+			this.sao=super.get();//BadRequestException
+			((AbstractAtomSAO<?>)this.sao).share();
+		}
+		@Override AtomSAO<AtomBean> get(){return this.sao;}
+	}
+
+	/** A SAO that a request has got, and where it goes back to. */
+	private static class Lease{
+		final Supplier supplier;
+		final AtomSAO<AtomBean> sao;
+		Lease(Supplier supplier, AtomSAO<AtomBean> sao){
+			this.supplier=supplier;
+			this.sao=sao;
+		}
 	}
-}
\ No newline at end of file
+}
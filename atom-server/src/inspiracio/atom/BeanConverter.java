@@ -0,0 +1,219 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.atom;
+
+import inspiracio.servlet.http.BadRequestException;
+import inspiracio.servlet.http.HttpException;
+import inspiracio.servlet.http.InternalServerErrorException;
+
+import java.security.Principal;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.apache.log4j.Logger;
+
+import atom.Entry;
+
+/** Converts entries to beans with AtomSAO.toAtomBean().
+ * <p>
+ * Lists with at least threshold entries are converted in parallel:
+ * the list is cut into slices, and a fixed number of threads convert
+ * the slices. The beans are in the order of the entries.
+ * <p>
+ * If an entry cannot be converted, the conversion fails with the index
+ * of the first such entry. Entries after it are not converted any more.
+ * <p>
+ * In parallel, toAtomBean() is called from several threads at once.
+ * Then it must be threadsafe and must not use the request, for example
+ * through PageContextFactory. It can use getCallerPrincipal(): the threads
+ * set the principal in a shared SAO, which keeps it per thread.
+ * <p>
+ * Threadsafe.
+ * */
+class BeanConverter{
+	private static final Logger logger=Logger.getLogger(BeanConverter.class);
+
+	/** Number of slices for each thread. More slices balance better. */
+	private static final int SLICES_PER_THREAD=4;
+
+	//State -------------------------------------------------------------
+
+	/** Number of threads */
+	private final int threads;
+
+	/** Lists with at least this many entries are converted in parallel. */
+	private final int threshold;
+
+	/** The threads, or null if there is only one thread: the caller's */
+	private final ExecutorService executor;
+
+	//Constructors ------------------------------------------------------
+
+	/** Makes a converter.
+	 * @param threads Number of threads. 1 or less to convert in the caller's thread only.
+	 * @param threshold Lists with at least this many entries are converted in parallel.
+	 * */
+	BeanConverter(int threads, int threshold){
+		this.threads=threads;
+		this.threshold=threshold;
+		if(1<threads){
+			final AtomicInteger count=new AtomicInteger();
+			this.executor=Executors.newFixedThreadPool(threads, new ThreadFactory(){
+				@Override public Thread newThread(Runnable r){
+					Thread thread=new Thread(r, "BeanConverter-" + count.incrementAndGet());
+					thread.setDaemon(true);
+					return thread;
+				}
+			});
+		}else{
+			this.executor=null;
+		}
+	}
+
+	/** Stops the threads. */
+	void shutdown(){
+		if(this.executor!=null)
+			this.executor.shutdownNow();
+	}
+
+	@Override public String toString(){
+		return "BeanConverter threads=" + this.threads + " threshold=" + this.threshold;
+	}
+
+	//Methods -----------------------------------------------------------
+
+	/** Converts entries to beans.
+	 * @param sao
+	 * @param entries
+	 * @param offset The index in the batch of the first entry, for the error message.
+	 * @return the beans, in the order of the entries
+	 * @throws BadRequestException An entry cannot be converted.
+	 * 	The message has its index in the batch.
+	 * @throws HttpException interrupted
+	 * */
+	List<AtomBean> toAtomBeans(AtomSAO<AtomBean> sao, List<Entry> entries, int offset)throws HttpException{
+		if(this.executor==null || entries.size()<this.threshold)
+			return sequential(sao, entries, offset);
+		return this.parallel(sao, entries, offset);
+	}
+
+	//Helpers -----------------------------------------------------------
+
+	private static List<AtomBean> sequential(AtomSAO<AtomBean> sao, List<Entry> entries, int offset)throws BadRequestException{
+		List<AtomBean> beans=new ArrayList<AtomBean>(entries.size());
+		for(int i=0; i<entries.size(); i++){
+			try{
+				AtomBean bean=sao.toAtomBean(entries.get(i));
+				beans.add(bean);
+			}catch(RuntimeException e){
+				throw invalid(offset + i, e);
+			}
+			if(i % 1000 == 0)
+				logger.info(offset + i + " entries preprocessed so far");
+		}
+		return beans;
+	}
+
+	private List<AtomBean> parallel(final AtomSAO<AtomBean> sao, final List<Entry> entries, int offset)throws HttpException{
+		int size=entries.size();
+		int n=Math.min(size, this.threads * SLICES_PER_THREAD);
+		final AtomBean[] beans=new AtomBean[size];
+
+		//The smallest index of an entry that has failed.
+		//A slice stops at its first failure, and before entries after
+		//the smallest failure.
+		final AtomicInteger failed=new AtomicInteger(Integer.MAX_VALUE);
+		final RuntimeException[] failures=new RuntimeException[n];
+
+		//A singleton SAO has the principal per thread.
+		final Principal principal=sao.getCallerPrincipal();
+
+		List<Future<Integer>> futures=new ArrayList<Future<Integer>>(n);
+		for(int s=0; s<n; s++){
+			final int slice=s;
+			final int from=(int)((long)size * s / n);
+			final int to=(int)((long)size * (s+1) / n);
+			futures.add(this.executor.submit(new Callable<Integer>(){
+				/** @return the index of the entry that has failed, or -1 */
+				@Override public Integer call(){
+					boolean set=principal!=null && sao.getCallerPrincipal()!=principal;
+					if(set)
+						sao.setCallerPrincipal(principal);
+					try{
+						for(int i=from; i<to; i++){
+							if(failed.get()<i)
+								return -1;
+							try{
+								beans[i]=sao.toAtomBean(entries.get(i));
+							}catch(RuntimeException e){
+								failures[slice]=e;
+								lower(failed, i);
+								return i;
+							}
+						}
+						return -1;
+					}finally{
+						if(set)
+							sao.setCallerPrincipal(null);
+					}
+				}
+			}));
+		}
+
+		//The slices are in order, so the first failure is the first entry that has failed.
+		try{
+			for(int s=0; s<n; s++){
+				int index=futures.get(s).get();//InterruptedException, ExecutionException
+				if(0<=index)
+					throw invalid(offset + index, failures[s]);
+			}
+		}catch(InterruptedException e){
+			Thread.currentThread().interrupt();
+			throw new InternalServerErrorException(e);
+		}catch(ExecutionException e){
+			Throwable cause=e.getCause();
+			if(cause instanceof Error)
+				throw (Error)cause;
+			throw new InternalServerErrorException(cause);
+		}finally{
+			for(Future<Integer> future : futures)
+				future.cancel(true);
+		}
+		logger.info(size + " entries preprocessed in " + n + " slices");
+		return new ArrayList<AtomBean>(Arrays.asList(beans));
+	}
+
+	/** Lowers the value to i, if i is lower. */
+	private static void lower(AtomicInteger value, int i){
+		int old=value.get();
+		while(i<old && !value.compareAndSet(old, i))
+			old=value.get();
+	}
+
+	private static BadRequestException invalid(int index, RuntimeException e){
+		return new BadRequestException("Entry " + index + " of the batch is invalid: " + e.getMessage(), e);
+	}
+}
@@ -0,0 +1,93 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.atom;
+
+import inspiracio.xml.sax.EasyContentHandler;
+
+import org.xml.sax.SAXException;
+
+import atom.Entry;
+import atom.gdata.Style;
+
+/** An entry in a feed that will be written from the EntryCache
+ * if possible, and otherwise converted from its bean.
+ * <p>
+ * Only good for writing: all the fields of the entry are empty.
+ * */
+class CachedEntry extends Entry{
+
+	//State -------------------------------------------------------------
+
+	private AtomBean bean;
+	private Style style;
+	private Object key;
+	private EntryCache cache;
+
+	//Constructors ------------------------------------------------------
+
+	/** Construct.
+	 * @param bean
+	 * @param style
+	 * @param key The key of the bean in the cache, not null
+	 * @param cache
+	 * */
+	CachedEntry(AtomBean bean, Style style, Object key, EntryCache cache){
+		this.bean=bean;
+		this.style=style;
+		this.key=key;
+		this.cache=cache;
+	}
+
+	//Methods -----------------------------------------------------------
+
+	/** Writes the cached bytes of the bean, or converts the bean to an entry,
+	 * writes it and caches the bytes.
+	 * If the handler cannot take bytes, for example because it indents
+	 * or writes only some fields, just converts and writes the entry.
+	 * @param handler
+	 * @exception SAXException also wrapping the exception from AtomBean.toEntry
+	 * */
+	@Override public void parse(EasyContentHandler handler)throws SAXException{
+		if(!handler.isRaw()){
+			this.toEntry().parse(handler);
+			return;
+		}
+		byte[] bytes=this.cache.get(this.key);
+		if(bytes!=null){
+			handler.raw(bytes);
+			return;
+		}
+		Entry entry=this.toEntry();
+		handler.startCapture();
+		entry.parse(handler);
+		bytes=handler.endCapture();
+		this.cache.put(this.key, bytes);
+	}
+
+	//Helpers -----------------------------------------------------------
+
+	private Entry toEntry()throws SAXException{
+		try{
+			return this.bean.toEntry(true, this.style);//We want the bean with XML namespaces.
+		}catch(RuntimeException e){
+			throw e;
+		}catch(Exception e){
+			throw new SAXException(e);
+		}
+	}
+}
@@ -0,0 +1,60 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.atom;
+
+import inspiracio.servlet.http.BadRequestException;
+import inspiracio.servlet.http.ForbiddenException;
+import inspiracio.servlet.http.HttpException;
+import inspiracio.servlet.http.NotAuthorizedException;
+
+import java.util.List;
+
+import atom.gdata.GDataURL;
+
+/** An AtomSAO that inserts batches chunk by chunk, for batches that are
+ * too large to have in memory at once. With init-parameter batchChunkSize,
+ * IAtomServlet passes the chunks to SAOs that implement this interface.
+ * Other SAOs get the whole batch with insert(url, beans).
+ *
+ * @param T The business object managed by this AtomSAO. A subclass of AtomBean.
+ */
+public interface ChunkedAtomSAO<T extends AtomBean> extends AtomSAO<T>{
+
+	/** Create many new beans, chunk by chunk.
+	 * <p>
+	 * For one batch, the servlet calls this method on the same SAO
+	 * with the consecutive chunks of the batch. The last call has last=true,
+	 * and its chunk may be empty. The SAO decides how to use transactions,
+	 * for example one for the whole batch, committed in the last call.
+	 * If the batch fails before, the servlet calls abortInsert(url).
+	 * @param url The URL that has received the insertion request.
+	 * @param beans A chunk of the batch. The SAO may keep the list.
+	 * @param index The index in the batch of the first bean of the chunk
+	 * @param last Is this the last chunk of the batch?
+	 * */
+	void insert(GDataURL url, List<T> beans, int index, boolean last)throws HttpException, BadRequestException, NotAuthorizedException, ForbiddenException;
+
+	/** A batch that has passed chunks to insert(url, beans, index, last) has
+	 * failed: the rest of the request body is invalid, an entry cannot be
+	 * converted, or an insert has thrown, maybe the one with last=true.
+	 * The SAO rolls back what it has done for the batch, for example its
+	 * transaction, and forgets the batch.
+	 * @param url The URL that has received the insertion request.
+	 * */
+	void abortInsert(GDataURL url);
+}
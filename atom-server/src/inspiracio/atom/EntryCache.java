@@ -0,0 +1,190 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.atom;
+
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+
+import atom.gdata.Style;
+
+/** A bounded cache of entries that have already been written as XML,
+ * so that the bytes can be written again without converting the bean
+ * and serializing the entry.
+ * <p>
+ * The key is bean class, id, ETag and style. Since the ETag of a bean
+ * changes whenever the bean changes, a changed bean has a new key, and
+ * its old bytes are never used again. They leave the cache when it is
+ * full, least recently used first.
+ * <p>
+ * Each IAtomServlet has its own cache, with the maximum size from its
+ * init-parameter "entryCacheSize", and gives it to its AbstractAtomSAOs.
+ * Servlets do not share entries. Without a maximum size, the cache is
+ * disabled. Only enable it if the
+ * entries of the beans do not depend on anything but the bean and the
+ * style, for example not on the authenticated user.
+ * <p>
+ * Threadsafe.
+ * */
+public class EntryCache{
+
+	//State -------------------------------------------------------------
+
+	/** Maximum number of bytes in the cache. 0 means disabled. */
+	private long maxSize=0;
+
+	/** Number of bytes in the cache */
+	private long size=0;
+
+	private long hits=0;
+
+	private long misses=0;
+
+	/** In access order: least recently used first. */
+	private final LinkedHashMap<Key, byte[]> map=new LinkedHashMap<Key, byte[]>(256, 0.75f, true);
+
+	//Constructors ------------------------------------------------------
+
+	/** Each IAtomServlet makes its own. */
+	EntryCache(){}
+
+	//Accessors ---------------------------------------------------------
+
+	/** Sets the maximum number of bytes in the cache.
+	 * @param maxSize 0 disables the cache and empties it.
+	 * */
+	public synchronized void setMaxSize(long maxSize){
+		this.maxSize=maxSize;
+		this.evict();
+	}
+
+	/** Maximum number of bytes in the cache. 0 means disabled. */
+	public synchronized long getMaxSize(){return this.maxSize;}
+
+	/** Is the cache enabled? */
+	public synchronized boolean isEnabled(){return 0<this.maxSize;}
+
+	/** Number of bytes in the cached entries */
+	public synchronized long getSize(){return this.size;}
+
+	/** Number of cached entries */
+	public synchronized int getCount(){return this.map.size();}
+
+	public synchronized long getHits(){return this.hits;}
+
+	public synchronized long getMisses(){return this.misses;}
+
+	/** Hits divided by lookups, or 0 if there have been no lookups. */
+	public synchronized double getHitRatio(){
+		long lookups=this.hits + this.misses;
+		return lookups==0 ? 0 : (double)this.hits / lookups;
+	}
+
+	/** For logging. */
+	@Override public synchronized String toString(){
+		return "EntryCache count=" + this.map.size() + " size=" + this.size + " maxSize=" + this.maxSize +
+			" hits=" + this.hits + " misses=" + this.misses;
+	}
+
+	//Methods -----------------------------------------------------------
+
+	/** Makes the key for a bean.
+	 * @param bean
+	 * @param style
+	 * @return the key, or null if the bean cannot be cached because
+	 * 	it has no id or no ETag
+	 * */
+	public static Object key(AtomBean bean, Style style){
+		Object id=bean.getId();
+		String etag=bean.getETag();
+		if(id==null || etag==null)
+			return null;
+		return new Key(bean.getClass(), id.toString(), etag, style);
+	}
+
+	/** Gets the bytes of an entry.
+	 * @param key from key(AtomBean, Style)
+	 * @return the bytes, or null if they are not cached
+	 * */
+	public synchronized byte[] get(Object key){
+		byte[] bytes=this.map.get(key);
+		if(bytes==null)
+			this.misses++;
+		else
+			this.hits++;
+		return bytes;
+	}
+
+	/** Puts the bytes of an entry.
+	 * If the cache is full, removes the least recently used entries.
+	 * @param key from key(AtomBean, Style)
+	 * @param bytes
+	 * */
+	public synchronized void put(Object key, byte[] bytes){
+		if(this.maxSize < bytes.length)
+			return;
+		byte[] old=this.map.put((Key)key, bytes);
+		if(old!=null)
+			this.size-=old.length;
+		this.size+=bytes.length;
+		this.evict();
+	}
+
+	/** Empties the cache. */
+	public synchronized void clear(){
+		this.map.clear();
+		this.size=0;
+	}
+
+	//Helpers -----------------------------------------------------------
+
+	/** Removes least recently used entries until the size is within the maximum. */
+	private void evict(){
+		Iterator<byte[]> it=this.map.values().iterator();
+		while(this.maxSize < this.size && it.hasNext()){
+			byte[] bytes=it.next();
+			it.remove();
+			this.size-=bytes.length;
+		}
+	}
+
+	/** Bean class, id, ETag and style */
+	private static final class Key{
+		private final Class<?> type;
+		private final String id;
+		private final String etag;
+		private final Style style;
+		private final int hash;
+		Key(Class<?> type, String id, String etag, Style style){
+			this.type=type;
+			this.id=id;
+			this.etag=etag;
+			this.style=style;
+			int h=type.hashCode();
+			h=31*h + id.hashCode();
+			h=31*h + etag.hashCode();
+			h=31*h + (style==null ? 0 : style.hashCode());
+			this.hash=h;
+		}
+		@Override public int hashCode(){return this.hash;}
+		@Override public boolean equals(Object o){
+			if(!(o instanceof Key))return false;
+			Key k=(Key)o;
+			return this.type==k.type && this.style==k.style && this.id.equals(k.id) && this.etag.equals(k.etag);
+		}
+	}
+}
@@ -20,17 +20,21 @@ package inspiracio.atom;
 import inspiracio.servlet.http.HttpException;
 import inspiracio.servlet.http.InternalServerErrorException;
 import inspiracio.servlet.http.PreconditionFailedException;
+import inspiracio.servlet.http.Validator;
 import inspiracio.servlet.jsp.PageContextFactory;
+import inspiracio.xml.XMLRuntime;
 
 import java.io.IOException;
 import java.security.Principal;
 import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
-import javax.servlet.jsp.PageContext;
 
 import org.apache.log4j.Logger;
 
@@ -46,15 +50,99 @@ import atom.gdata.Style;
  * */
 public class IAtomServlet extends AtomServlet{
 	private static final Logger logger=Logger.getLogger(IAtomServlet.class);
+
+	/** Number of beans in a chunk of a batch insert.
+	 * 0 for no chunks: the SAO receives the whole batch at once. */
+	private int batchChunkSize=0;
+
+	/** Converts the entries of batches to beans */
+	private BeanConverter converter;
+
+	/** The SAOs of this servlet */
+	private AtomSAOFactory saos;
+
+	/** The entries that this servlet has written, for its AbstractAtomSAOs */
+	private final EntryCache cache=new EntryCache();
 	
-	/** Wraps super.service(), just for getting init-parameter beanPackage and
-	 * passing it to AtomSAOFactory. 
-	 * (Maybe can do this is a better way?)*/
-	@Override protected void service(HttpServletRequest request,HttpServletResponse response) throws ServletException, IOException{
+	/** Reads init-parameters:
+	 * <ul>
+	 * 	<li>entryCacheSize, the maximum number of bytes in the
+	 * 		EntryCache of this servlet. Each servlet has its own cache.
+	 * 		Without it, the cache is disabled.
+	 * 	<li>batchChunkSize, the number of beans that the SAO receives
+	 * 		at a time in a batch insert. Without it, the SAO
+	 * 		receives the whole batch at once.
+	 * 	<li>conversionThreads, the number of threads that convert the
+	 * 		entries of a batch to beans. Default is 1: no parallel conversion.
+	 * 		With more threads, AtomSAO.toAtomBean() must be threadsafe.
+	 * 	<li>conversionThreshold, batches (or chunks) with at least this
+	 * 		many entries are converted in parallel. Default is 1000.
+	 * 	<li>beanPackage, the prefix for packages of Atom beans. For example,
+	 * 		if it's "com.siine", and the category is "user", then the SAO
+	 * 		class is "com.siine.user.UserAtomSAO".
+	 * 	<li>saoScope, how many SAOs are made: "request" for a new SAO for
+	 * 		each request (default), "pooled" for SAOs that are reused by
+	 * 		later requests, "singleton" for one threadsafe SAO.
+	 * 		Pooled and singleton SAOs must be AbstractAtomSAOs: other SAOs
+	 * 		cannot keep the principal per request.
+	 * 	<li>saoScope.<i>term</i>, the scope for the SAO of one category.
+	 * 		These SAOs are found at init. Use "request" for SAOs that are
+	 * 		not AbstractAtomSAOs, if saoScope is pooled or singleton.
+	 * 	<li>saoPoolSize, the maximum number of idle SAOs for each pooled
+	 * 		category. Default is 16.
+	 * </ul> */
+	@Override public void init()throws ServletException{
+		super.init();
+		String size=this.getInitParameter("entryCacheSize");
+		if(size!=null){
+			try{
+				this.cache.setMaxSize(Long.parseLong(size.trim()));
+			}catch(NumberFormatException nfe){
+				throw new ServletException("Invalid entryCacheSize " + size, nfe);
+			}
+		}
+		this.batchChunkSize=this.getIntInitParameter("batchChunkSize", 0);
+		int threads=this.getIntInitParameter("conversionThreads", 1);
+		int threshold=this.getIntInitParameter("conversionThreshold", 1000);
+		this.converter=new BeanConverter(threads, threshold);
+
 		String beanPackage=this.getInitParameter("beanPackage");
-		AtomSAOFactory.setBeanPackage(beanPackage);
-		
-		super.service(request, response);
+		AtomSAOFactory.Scope scope=this.getScopeInitParameter("saoScope", AtomSAOFactory.Scope.REQUEST);
+		Map<String, AtomSAOFactory.Scope> scopes=new HashMap<String, AtomSAOFactory.Scope>();
+		Enumeration<?> names=this.getInitParameterNames();
+		while(names.hasMoreElements()){
+			String name=(String)names.nextElement();
+			if(name.startsWith("saoScope."))
+				scopes.put(name.substring("saoScope.".length()), this.getScopeInitParameter(name, scope));
+		}
+		int poolSize=this.getIntInitParameter("saoPoolSize", 16);
+		try{
+			this.saos=new AtomSAOFactory(beanPackage, scope, scopes, poolSize, this.cache);//ClassNotFoundException, NoSuchMethodException, IllegalArgumentException
+		}catch(ClassNotFoundException cnfe){
+			throw new ServletException("No AtomSAO in beanPackage " + beanPackage, cnfe);
+		}catch(NoSuchMethodException nsme){
+			throw new ServletException("AtomSAO without public constructor", nsme);
+		}catch(IllegalArgumentException iae){
+			throw new ServletException("Invalid saoScope", iae);
+		}
+	}
+
+	/** Logs the statistics of the EntryCache and of XMLRuntime. */
+	@Override public void destroy(){
+		if(this.cache.isEnabled())
+			logger.info(this.cache + " hitRatio=" + this.cache.getHitRatio());
+		logger.info(XMLRuntime.getStatistics());
+		this.cache.clear();
+		this.converter.shutdown();
+		super.destroy();
+	}
+
+	/** The EntryCache of this servlet */
+	EntryCache getEntryCache(){return this.cache;}
+
+	/** Gives back the SAOs of the request. */
+	@Override protected void serviced(HttpServletRequest request){
+		this.saos.release(request);
 	}
 
 	/** Create an entry.
@@ -67,18 +155,11 @@ public class IAtomServlet extends AtomServlet{
 	 * @throws HttpException For example, NotAuthorizedException.
 	 * */
 	@Override protected Entry insert(GDataURL url, String slug, Entry entry) throws HttpException{
-		
-		//Just testing whether we can get the user
-		PageContext pc=PageContextFactory.getPageContext();
-		HttpServletRequest request=(HttpServletRequest)pc.getRequest();
-		@SuppressWarnings("unused")
-		Principal user=request.getUserPrincipal();
-		
-		AtomSAO<AtomBean> sao=AtomSAOFactory.get(url);
+		AtomSAO<AtomBean> sao=this.getSAO(url);
 		AtomBean bean=sao.toAtomBean(entry);
 		bean=sao.insert(url, bean, slug);
 		try{
-			Style style=url.getParameters().getStyle();
+			Style style=url.getRequest().getStyle();
 			entry=bean.toEntry(true, style);//Exception
 			return entry;
 		}catch(HttpException he){
@@ -97,23 +178,31 @@ public class IAtomServlet extends AtomServlet{
 	@Override protected void insert(GDataURL url, List<Entry> entries) throws HttpException {
 		logger.info("Preprocessing a multiple insert of " + entries.size() + " entries");
 
-		AtomSAO<AtomBean> sao=AtomSAOFactory.get(url);
-		List<AtomBean> beans=new ArrayList<AtomBean>(entries.size());
-		int iterationCounter=0;
-		for(Entry entry : entries){
-			AtomBean bean=sao.toAtomBean(entry);
-			beans.add(bean);
-
-			if(iterationCounter % 1000 == 0)
-				logger.info(iterationCounter + " entries preprocessed so far");
-			iterationCounter++;
-		}
+		AtomSAO<AtomBean> sao=this.getSAO(url);
+		List<AtomBean> beans=this.converter.toAtomBeans(sao, entries, 0);
+		logger.info(entries.size() + " entries preprocessed");
 		entries=null;//help gc
-		logger.info(iterationCounter - 1 + " entries preprocessed");
 		
 		sao.insert(url, beans);
 	}
 
+	/** Starts a batch of inserts. With init-parameter batchChunkSize,
+	 * converts the entries to beans while the request is parsed and
+	 * passes them to the SAO in chunks. Then memory depends on the
+	 * chunk size, not on the size of the batch. If the SAO is not a
+	 * ChunkedAtomSAO, the batch collects the beans and passes them all
+	 * at the end.
+	 * @param url
+	 * @return a new batch
+	 * @throws HttpException
+	 * */
+	@Override protected Batch newBatch(GDataURL url)throws HttpException{
+		if(this.batchChunkSize<=0)
+			return super.newBatch(url);
+		AtomSAO<AtomBean> sao=this.getSAO(url);
+		return new ChunkedBatch(url, sao, this.converter, this.batchChunkSize);
+	}
+
 	/** Deletes an entry.
 	 * @param url
 	 * @param etag SAO must throw PreconditionFailedException if etag is not current.
@@ -121,8 +210,8 @@ public class IAtomServlet extends AtomServlet{
 	 * @throws HttpException
 	 * */
 	@Override protected void delete(GDataURL url, String etag) throws HttpException {
-		AtomSAO<AtomBean> sao=AtomSAOFactory.get(url);
-		String id=url.getParameters().getId();
+		AtomSAO<AtomBean> sao=this.getSAO(url);
+		String id=url.getRequest().getId();
 		sao.delete(id, etag);
 	}
 
@@ -133,13 +222,27 @@ public class IAtomServlet extends AtomServlet{
 	 * @throws HttpException
 	 * */
 	@Override protected Feed get(GDataURL url) throws HttpException {
-		AtomSAO<AtomBean> sao=AtomSAOFactory.get(url);
+		AtomSAO<AtomBean> sao=this.getSAO(url);
 		Feed feed=sao.getFeed(url);
-		if(url.getParameters().getPrettyprint())
+		if(url.getRequest().getPrettyprint())
 			feed.setPrettyprint(true);
 		return feed;
 	}
 
+	/** Gets the cheap validator of the SAO, if it is a ValidatingAtomSAO and has one.
+	 * @param url The URL of the request.
+	 * @return validator, or null
+	 * @throws HttpException
+	 * */
+	@Override protected Validator getValidator(GDataURL url) throws HttpException {
+		AtomSAO<AtomBean> sao=this.getSAO(url);
+		if(!(sao instanceof ValidatingAtomSAO<?>))
+			return null;
+		@SuppressWarnings("unchecked")
+		ValidatingAtomSAO<AtomBean> validating=(ValidatingAtomSAO<AtomBean>)sao;
+		return validating.getValidator(url);
+	}
+
 	/** Updates an entry.
 	 * @param entry The entry that the client wants to update.
 	 * @return The entry as stored. The server may have altered some of the fields.
@@ -147,8 +250,8 @@ public class IAtomServlet extends AtomServlet{
 	 * @throws HttpException
 	 * */
 	@Override protected Entry update(GDataURL url, Entry entry) throws HttpException {
-		AtomSAO<AtomBean> sao=AtomSAOFactory.get(url);
-		Style style=url.getParameters().getStyle();
+		AtomSAO<AtomBean> sao=this.getSAO(url);
+		Style style=url.getRequest().getStyle();
 		AtomBean bean=sao.toAtomBean(entry);
 		bean=sao.update(bean);
 		try{
@@ -160,5 +263,121 @@ public class IAtomServlet extends AtomServlet{
 	}
 
 	//Helpers ----------------------------------------------------------
+
+	/** The SAO for the URL, for the rest of the current request.
+	 * It gets the authenticated user of the request.
+	 * @param url
+	 * @return the SAO
+	 * @throws HttpException
+	 * */
+	private AtomSAO<AtomBean> getSAO(GDataURL url)throws HttpException{
+		HttpServletRequest request=(HttpServletRequest)PageContextFactory.getPageContext().getRequest();
+		Principal principal=request.getUserPrincipal();
+		return this.saos.get(url, request, principal);
+	}
+
+	/** A scope init-parameter.
+	 * @param name
+	 * @param value default value
+	 * @return the value of the init-parameter, or the default value
+	 * @throws ServletException The init-parameter is not a scope.
+	 * */
+	private AtomSAOFactory.Scope getScopeInitParameter(String name, AtomSAOFactory.Scope value)throws ServletException{
+		String s=this.getInitParameter(name);
+		if(s==null)
+			return value;
+		try{
+			return AtomSAOFactory.Scope.valueOf(s.trim().toUpperCase());
+		}catch(IllegalArgumentException iae){
+			throw new ServletException("Invalid " + name + " " + s, iae);
+		}
+	}
+
+	/** Converts the entries of a batch to beans and inserts them
+	 * in chunks, with ChunkedAtomSAO.insert(url, beans, index, last).
+	 * For SAOs that do not insert chunk by chunk, collects the beans
+	 * and inserts them with AtomSAO.insert(url, beans). */
+	private static class ChunkedBatch implements Batch{
+		private GDataURL url;
+		private AtomSAO<AtomBean> sao;
+
+		/** The SAO, if it inserts chunk by chunk. Else null. */
+		private ChunkedAtomSAO<AtomBean> chunked;
+		private BeanConverter converter;
+		private int size;
+
+		/** The entries that have not been inserted yet */
+		private List<Entry> chunk;
+
+		/** The index in the batch of the first entry of the chunk */
+		private int index=0;
+
+		/** The beans so far, if the SAO does not insert chunk by chunk. Else null. */
+		private List<AtomBean> beans;
+
+		/** Has the SAO received a chunk? Then it must hear of abort. */
+		private boolean started=false;
+
+		ChunkedBatch(GDataURL url, AtomSAO<AtomBean> sao, BeanConverter converter, int size){
+			this.url=url;
+			this.sao=sao;
+			this.converter=converter;
+			this.size=size;
+			this.chunk=new ArrayList<Entry>(size);
+			if(sao instanceof ChunkedAtomSAO<?>){
+				@SuppressWarnings("unchecked")
+				ChunkedAtomSAO<AtomBean> chunked=(ChunkedAtomSAO<AtomBean>)sao;
+				this.chunked=chunked;
+			}else{
+				this.beans=new ArrayList<AtomBean>();
+			}
+		}
+
+		@Override public void add(Entry entry)throws HttpException{
+			this.chunk.add(entry);
+			if(this.chunk.size()==this.size)
+				this.insert(false);
+		}
+
+		@Override public void close()throws HttpException{
+			this.insert(true);
+			logger.info(this.index + " entries inserted");
+		}
+
+		@Override public void abort(){
+			this.chunk=null;
+			this.beans=null;
+			if(this.started){
+				try{
+					this.chunked.abortInsert(this.url);
+				}catch(RuntimeException e){
+					logger.warn("Batch not aborted", e);
+				}
+			}
+			logger.info("Batch aborted after " + this.index + " entries");
+		}
+
+		/** Converts the chunk, passes it to the SAO, and starts a new one.
+		 * Or collects it, if the SAO does not insert chunk by chunk. */
+		private void insert(boolean last)throws HttpException{
+			List<AtomBean> beans=this.converter.toAtomBeans(this.sao, this.chunk, this.index);
+			this.chunk=last ? null : new ArrayList<Entry>(this.size);
+			if(this.beans!=null){
+				this.beans.addAll(beans);
+				this.index+=beans.size();
+				if(last){
+					beans=this.beans;
+					this.beans=null;//help gc
+					this.sao.insert(this.url, beans);
+				}
+				return;
+			}
+			this.started=true;
+			this.chunked.insert(this.url, beans, this.index, last);
+			this.index+=beans.size();
+			if(!last)
+				logger.info(this.index + " entries inserted so far");
+		}
+	}
 	
 }
\ No newline at end of file
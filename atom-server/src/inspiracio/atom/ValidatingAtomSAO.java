@@ -0,0 +1,43 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.atom;
+
+import inspiracio.servlet.http.HttpException;
+import inspiracio.servlet.http.Validator;
+
+import atom.gdata.GDataURL;
+
+/** An AtomSAO that may tell cheaply whether a feed has changed.
+ * AbstractAtomSAO implements it.
+ *
+ * @param T The business object managed by this AtomSAO. A subclass of AtomBean.
+ */
+public interface ValidatingAtomSAO<T extends AtomBean> extends AtomSAO<T>{
+
+	/** Gets a cheap validator of the feed for a URL, for conditional GET,
+	 * without getting the beans: for example, from a version number or a
+	 * last-modification timestamp of the collection. If the client has the
+	 * current feed already, the servlet replies 304 Not Modified and does
+	 * not call getFeed.
+	 * @param url The URL of the request
+	 * @return validator, or null if there is no cheap one. Then the servlet
+	 * 	may take the validator of the feed: see Feed.getValidator().
+	 * @throws HttpException
+	 * */
+	Validator getValidator(GDataURL url)throws HttpException;
+}
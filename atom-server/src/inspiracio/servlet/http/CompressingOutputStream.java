@@ -0,0 +1,145 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.servlet.http;
+
+import inspiracio.net.GZipOutputStream;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.Arrays;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.HttpServletResponse;
+
+/** The body of a response that may be gzipped.
+ * <p>
+ * Keeps the first bytes until there are more than the minimum size.
+ * Then it sets http header Content-Encoding and compresses. If the body
+ * ends before, it is sent uncompressed, with Content-Length.
+ * Before that decision, flush() does nothing, because it would commit
+ * the response without Content-Encoding.
+ * */
+class CompressingOutputStream extends ServletOutputStream{
+
+	private static final String CONTENT_ENCODING="Content-Encoding";
+	private static final String GZIP="gzip";
+
+	/** The buffer starts like this, and grows up to the minimum size. */
+	private static final byte[] EMPTY=new byte[0];
+
+	//State ------------------------------------------------
+
+	/** The response without compression */
+	private final HttpServletResponse response;
+
+	private final int level;
+
+	/** Smaller bodies are not compressed. */
+	private final int minSize;
+
+	/** The first bytes, until the decision. Then null.
+	 * Grows as they come, so that small bodies do not need a big buffer. */
+	private byte[] buffer=EMPTY;
+	private int count=0;
+
+	/** Null until the decision */
+	private OutputStream out=null;
+
+	//Constructor ------------------------------------------
+
+	/** @param response the response without compression
+	 * @param level gzip level
+	 * @param minSize Smaller bodies are not compressed. */
+	CompressingOutputStream(HttpServletResponse response, int level, int minSize){
+		this.response=response;
+		this.level=level;
+		this.minSize=minSize;
+	}
+
+	//Methods ----------------------------------------------
+
+	@Override public void write(int b)throws IOException{
+		if(this.out==null && this.count==this.minSize)
+			this.compress();//IOException
+		if(this.out!=null){
+			this.out.write(b);//IOException
+		}else{
+			this.grow(this.count+1);
+			this.buffer[this.count++]=(byte)b;
+		}
+	}
+
+	@Override public void write(byte[] b, int off, int len)throws IOException{
+		if(this.out==null && this.minSize<this.count+len)
+			this.compress();//IOException
+		if(this.out!=null){
+			this.out.write(b, off, len);//IOException
+		}else{
+			this.grow(this.count+len);
+			System.arraycopy(b, off, this.buffer, this.count, len);
+			this.count+=len;
+		}
+	}
+
+	@Override public void write(byte[] b)throws IOException{
+		this.write(b, 0, b.length);
+	}
+
+	@Override public void flush()throws IOException{
+		if(this.out!=null)
+			this.out.flush();//IOException
+	}
+
+	@Override public void close()throws IOException{
+		if(this.out==null)
+			this.plain();//IOException
+		this.out.close();//IOException
+	}
+
+	//Helpers ----------------------------------------------
+
+	/** The body is big enough: compress it. If someone has committed
+	 * the response already, it is too late for Content-Encoding. */
+	private void compress()throws IOException{
+		OutputStream out=this.response.getOutputStream();//IOException
+		if(!this.response.isCommitted()){
+			this.response.setHeader(CONTENT_ENCODING, GZIP);
+			this.response.addHeader("Vary", "Accept-Encoding");
+			out=new GZipOutputStream(out, this.level);//IOException
+		}
+		this.out=out;
+		this.out.write(this.buffer, 0, this.count);//IOException
+		this.buffer=null;
+	}
+
+	/** Makes room in the buffer, doubling it, but not beyond the minimum size.
+	 * @param size at most minSize */
+	private void grow(int size){
+		if(this.buffer.length<size)
+			this.buffer=Arrays.copyOf(this.buffer, Math.min(this.minSize, Math.max(size, 2*this.buffer.length)));
+	}
+
+	/** The body is small: send it as it is. */
+	private void plain()throws IOException{
+		if(!this.response.isCommitted())
+			this.response.setContentLength(this.count);
+		this.out=this.response.getOutputStream();//IOException
+		this.out.write(this.buffer, 0, this.count);//IOException
+		this.buffer=null;
+	}
+}
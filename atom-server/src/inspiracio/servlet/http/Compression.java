@@ -0,0 +1,152 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.servlet.http;
+
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
+
+/** How IHttpServlet compresses responses: from which size, and
+ * with which gzip level for each content type. Immutable.
+ * */
+public final class Compression{
+
+	/** Compresses everything with the default level. */
+	public static final Compression ALWAYS=new Compression(0, Deflater.DEFAULT_COMPRESSION, Collections.<String, Integer>emptyMap());
+
+	private static final String GZIP="gzip";
+	private static final String X_GZIP="x-gzip";
+
+	//State -------------------------------------------------
+
+	/** Smaller bodies are not compressed. */
+	private final int minSize;
+
+	/** Level for content types that are not in levels */
+	private final int level;
+
+	/** Content type like "application/json" or "image/*" -> level */
+	private final Map<String, Integer> levels;
+
+	//Constructors ------------------------------------------
+
+	/** Makes a configuration.
+	 * @param minSize Bodies with fewer bytes are not compressed.
+	 * @param level gzip level from Deflater.DEFAULT_COMPRESSION to Deflater.BEST_COMPRESSION.
+	 * 	Deflater.NO_COMPRESSION means not compressing.
+	 * @param levels content type -> level, for content types that have another level.
+	 * 	The content type is without parameters, like "application/atom+xml", or
+	 * 	like "image/*" for all images.
+	 * @exception IllegalArgumentException invalid level, or negative minSize
+	 * */
+	public Compression(int minSize, int level, Map<String, Integer> levels){
+		if(minSize<0)
+			throw new IllegalArgumentException("Invalid compressionMinSize " + minSize);
+		this.minSize=minSize;
+		this.level=check(level);
+		Map<String, Integer> map=new HashMap<String, Integer>();
+		for(Map.Entry<String, Integer> e : levels.entrySet())
+			map.put(e.getKey().trim().toLowerCase(), check(e.getValue()));
+		this.levels=Collections.unmodifiableMap(map);
+	}
+
+	//Accessors ---------------------------------------------
+
+	/** Bodies with fewer bytes are not compressed. */
+	public int getMinSize(){return this.minSize;}
+
+	/** The gzip level for a content type.
+	 * @param contentType may have parameters like "; charset=UTF-8". May be null.
+	 * @return Deflater.NO_COMPRESSION for no compression */
+	public int getLevel(String contentType){
+		if(contentType==null || this.levels.isEmpty())
+			return this.level;
+		int semicolon=contentType.indexOf(';');
+		String type=(semicolon<0 ? contentType : contentType.substring(0, semicolon)).trim().toLowerCase();
+		Integer level=this.levels.get(type);
+		if(level==null){
+			int slash=type.indexOf('/');
+			if(0<slash)
+				level=this.levels.get(type.substring(0, slash) + "/*");
+		}
+		return level==null ? this.level : level;
+	}
+
+	//Business methods --------------------------------------
+
+	/** Does the client accept gzip?
+	 * @param acceptEncoding http header Accept-Encoding, or null */
+	public boolean accepts(String acceptEncoding){
+		return 0<quality(acceptEncoding, GZIP);
+	}
+
+	/** The quality that http header Accept-Encoding gives to a content coding,
+	 * like "gzip;q=0.5" gives 0.5 to gzip. "x-gzip" counts as gzip, and "*" counts
+	 * for codings that are not in the header. See HTTP 1.1 spec, section 14.3.
+	 * @param acceptEncoding like "gzip, deflate" or "gzip;q=0, *". May be null.
+	 * @param coding like "gzip"
+	 * @return 0 for not acceptable, 1 for best. 0 if acceptEncoding is null.
+	 * */
+	public static double quality(String acceptEncoding, String coding){
+		if(acceptEncoding==null)
+			return 0;
+		double star=-1;
+		for(String element : acceptEncoding.split(",")){
+			int semicolon=element.indexOf(';');
+			String name=(semicolon<0 ? element : element.substring(0, semicolon)).trim().toLowerCase();
+			if(name.length()==0)
+				continue;
+			double q=semicolon<0 ? 1 : q(element.substring(semicolon+1));
+			if(name.equals(coding) || (GZIP.equals(coding) && name.equals(X_GZIP)))
+				return q;
+			if(name.equals("*"))
+				star=q;
+		}
+		return star<0 ? 0 : star;
+	}
+
+	@Override public String toString(){
+		return "minSize=" + this.minSize + " level=" + this.level + " " + this.levels;
+	}
+
+	//Helpers -----------------------------------------------
+
+	/** The q-value in parameters like "q=0.5". Invalid values count as 0. */
+	private static double q(String parameters){
+		for(String parameter : parameters.split(";")){
+			int equals=parameter.indexOf('=');
+			if(0<equals && parameter.substring(0, equals).trim().equalsIgnoreCase("q")){
+				try{
+					double q=Double.parseDouble(parameter.substring(equals+1).trim());//NumberFormatException
+					return q<0 || 1<q ? 0 : q;
+				}catch(NumberFormatException nfe){
+					return 0;
+				}
+			}
+		}
+		return 1;
+	}
+
+	/** @exception IllegalArgumentException invalid level */
+	private static int check(int level){
+		if(level<Deflater.DEFAULT_COMPRESSION || Deflater.BEST_COMPRESSION<level)
+			throw new IllegalArgumentException("Invalid gzip level " + level);
+		return level;
+	}
+}
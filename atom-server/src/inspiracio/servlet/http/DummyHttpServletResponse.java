@@ -0,0 +1,65 @@
+/*  Copyright 2011 Alexander Bunkenburg alex@inspiracio.com
+
+    This file is part of atom.jar.
+
+    atom.jar is free software: you can redistribute it and/or modify
+    it under the terms of the GNU General Public License as published by
+    the Free Software Foundation, either version 3 of the License, or
+    (at your option) any later version.
+
+    atom.jar is distributed in the hope that it will be useful,
+    but WITHOUT ANY WARRANTY; without even the implied warranty of
+    MERCHANTABILITY or FITNESS FOR A PARTICULAR PURPOSE.  See the
+    GNU General Public License for more details.
+
+    You should have received a copy of the GNU General Public License
+    along with atom.jar.  If not, see <http://www.gnu.org/licenses/>.
+ */
+package inspiracio.servlet.http;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.util.Locale;
+
+import javax.servlet.ServletOutputStream;
+import javax.servlet.http.Cookie;
+import javax.servlet.http.HttpServletResponse;
+
+/** dummy implementation of HttpServletResponse.
+ * All methods are bad. Override the ones you need. */
+public class DummyHttpServletResponse implements HttpServletResponse {
+
+	public void addCookie(Cookie arg0) {throw new RuntimeException("not implemented");}
+	public void addDateHeader(String arg0, long arg1) {throw new RuntimeException("not implemented");}
+	public void addHeader(String arg0, String arg1) {throw new RuntimeException("not implemented");}
+	public void addIntHeader(String arg0, int arg1) {throw new RuntimeException("not implemented");}
+	public boolean containsHeader(String arg0) {throw new RuntimeException("not implemented");}
+	public String encodeRedirectURL(String arg0) {throw new RuntimeException("not implemented");}
+	@Deprecated public String encodeRedirectUrl(String arg0) {throw new RuntimeException("not implemented");}
+	public String encodeURL(String arg0) {throw new RuntimeException("not implemented");}
+	@Deprecated public String encodeUrl(String arg0) {throw new RuntimeException("not implemented");}
+	public void sendError(int arg0) throws IOException {throw new RuntimeException("not implemented");}
+	public void sendError(int arg0, String arg1) throws IOException {throw new RuntimeException("not implemented");}
+	public void sendRedirect(String arg0) throws IOException {throw new RuntimeException("not implemented");}
+	public void setDateHeader(String arg0, long arg1) {throw new RuntimeException("not implemented");}
+	public void setHeader(String arg0, String arg1) {throw new RuntimeException("not implemented");}
+	public void setIntHeader(String arg0, int arg1) {throw new RuntimeException("not implemented");}
+	public void setStatus(int arg0) {throw new RuntimeException("not implemented");}
+	@Deprecated public void setStatus(int arg0, String arg1) {throw new RuntimeException("not implemented");}
+	public void flushBuffer() throws IOException {throw new RuntimeException("not implemented");}
+	public int getBufferSize() {throw new RuntimeException("not implemented");}
+	public String getCharacterEncoding() {throw new RuntimeException("not implemented");}
+	public String getContentType() {throw new RuntimeException("not implemented");}
+	public Locale getLocale() {throw new RuntimeException("not implemented");}
+	public ServletOutputStream getOutputStream() throws IOException {throw new RuntimeException("not implemented");}
+	public PrintWriter getWriter() throws IOException {throw new RuntimeException("not implemented");}
+	public boolean isCommitted() {throw new RuntimeException("not implemented");}
+	public void reset() {throw new RuntimeException("not implemented");}
+	public void resetBuffer() {throw new RuntimeException("not implemented");}
+	public void setBufferSize(int arg0) {throw new RuntimeException("not implemented");}
+	public void setCharacterEncoding(String arg0) {throw new RuntimeException("not implemented");}
+	public void setContentLength(int arg0) {throw new RuntimeException("not implemented");}
+	public void setContentType(String arg0) {throw new RuntimeException("not implemented");}
+	public void setLocale(Locale arg0) {throw new RuntimeException("not implemented");}
+
+}
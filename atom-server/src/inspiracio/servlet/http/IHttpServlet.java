@@ -20,6 +20,10 @@ package inspiracio.servlet.http;
 import inspiracio.servlet.jsp.PageContextFactory;
 
 import java.io.IOException;
+import java.util.Enumeration;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.zip.Deflater;
 
 import javax.servlet.ServletException;
 import javax.servlet.http.HttpServlet;
@@ -33,6 +37,15 @@ import org.apache.log4j.Logger;
  * some for specific servers.
  * <ul>
  * 	<li>gzip. (Fails for GAE servers, because they do gzip magic without telling the servlet.)
+ * 		The compression of responses is configured by init-parameters:
+ * 		<ul>
+ * 			<li>compression: false for never compressing. Default is true.
+ * 			<li>compressionMinSize: Bodies with fewer bytes are not compressed. Not negative. Default is 256.
+ * 			<li>compressionLevel: gzip level from 1 to 9, or -1 for the default of zlib.
+ * 				0 for not compressing. Default is -1.
+ * 			<li>compressionLevel.<i>type</i>: gzip level for a content type like
+ * 				application/json or image/*.
+ * 		</ul>
  * 	<li>Arbitrary status messages: a problem for Tomcat.
  * 	<li>PUT/POST on JBoss.
  * </ul>
@@ -47,12 +60,41 @@ public abstract class IHttpServlet extends HttpServlet {
 
 	private static final Logger logger = Logger.getLogger(IHttpServlet.class);
 
+	//State --------------------------------------------------------------------
+
+	/** How to compress responses, or null for never */
+	private Compression compression=new Compression(256, Deflater.DEFAULT_COMPRESSION, new HashMap<String, Integer>());
+
 	//Constructors -------------------------------------------------------------
 
 	public IHttpServlet(){}
 
 	//Implement Servlet interface -----------------------------------------------
 
+	/** Reads the configuration of compression from init-parameters. */
+	@Override public void init()throws ServletException{
+		super.init();
+		if("false".equals(this.getInitParameter("compression"))){
+			this.compression=null;
+			return;
+		}
+		int minSize=this.getIntInitParameter("compressionMinSize", this.compression.getMinSize());
+		int level=this.getIntInitParameter("compressionLevel", Deflater.DEFAULT_COMPRESSION);
+		Map<String, Integer> levels=new HashMap<String, Integer>();
+		Enumeration<?> names=this.getInitParameterNames();
+		while(names.hasMoreElements()){
+			String name=(String)names.nextElement();
+			if(name.startsWith("compressionLevel."))
+				levels.put(name.substring("compressionLevel.".length()), this.getIntInitParameter(name, level));
+		}
+		try{
+			this.compression=new Compression(minSize, level, levels);
+		}catch(IllegalArgumentException iae){
+			throw new ServletException(iae.getMessage(), iae);
+		}
+		logger.debug("Compression " + this.compression);
+	}
+
 	/** Some general things.
 	 * <ol>
 	 * 	<li>Wrap response into IHttpServletResponse
@@ -63,10 +105,11 @@ public abstract class IHttpServlet extends HttpServlet {
 	 * */
 	@Override protected void service(HttpServletRequest request, HttpServletResponse response) throws ServletException, IOException {
 		//Manage gzip
-		boolean zipResponse=false;
+		Compression compression=null;
 		String accept=request.getHeader(ACCEPT_ENCODING);
 		if(accept!=null){
-			zipResponse=accept.contains(GZIP);//Client wants a gzipped request.
+			if(this.compression!=null && this.compression.accepts(accept))
+				compression=this.compression;//Client wants a gzipped response.
 		} else {
 			logger.debug("Current client didn't send accept encoding header, so no compression is applied");
 		}
@@ -83,7 +126,7 @@ public abstract class IHttpServlet extends HttpServlet {
 
 		//Problem: Tomcat does not permit arbitrary text as http response message (=the text after the status code).
 		//Workaround: wrap the response.
-		response=new IHttpServletResponse(response, zipResponse);
+		response=new IHttpServletResponse(response, compression);
 
 		//Initialise page context factory.
 		PageContextFactory.setServletPageContext(this, request, response);
@@ -112,4 +155,23 @@ public abstract class IHttpServlet extends HttpServlet {
 		else if("TRACE".equals(method))
 			this.doTrace(request, response);
 	}
-}
\ No newline at end of file
+
+	//Helpers ------------------------------------------------------------------
+
+	/** An int init-parameter.
+	 * @param name
+	 * @param value default value
+	 * @return the value of the init-parameter, or the default value
+	 * @throws ServletException The init-parameter is not an int.
+	 * */
+	protected int getIntInitParameter(String name, int value)throws ServletException{
+		String s=this.getInitParameter(name);
+		if(s==null)
+			return value;
+		try{
+			return Integer.parseInt(s.trim());
+		}catch(NumberFormatException nfe){
+			throw new ServletException("Invalid " + name + " " + s, nfe);
+		}
+	}
+}
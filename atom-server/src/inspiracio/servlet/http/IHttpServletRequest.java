@@ -17,10 +17,10 @@
  */
 package inspiracio.servlet.http;
 
+import inspiracio.net.GZipInputStream;
+
 import java.io.IOException;
-import java.io.InputStream;
 import java.security.Principal;
-import java.util.zip.GZIPInputStream;
 
 import javax.servlet.ServletInputStream;
 import javax.servlet.http.HttpServletRequest;
@@ -63,6 +63,9 @@ public class IHttpServletRequest extends HttpServletRequestWrapper{
 	
 	/** Is the body of the request gzipped? */
 	private boolean zippedRequest=false;
+
+	/** From getInputStream() if the body is gzipped, or null */
+	private ServletInputStream in=null;
 	
 	/** The user principal that has been set or null. */
 	private Principal userPrincipal = null;
@@ -104,23 +107,16 @@ public class IHttpServletRequest extends HttpServletRequestWrapper{
 		return this.authType!=null ? this.authType : super.getAuthType();
 	}
 
-	/** Gets a stream to read the request. */
+	/** Gets a stream to read the request.
+	 * <p>
+	 * If the header says the body is gzipped, we look at the first bytes.
+	 * Google AppEngine already unzips the body, without changing the headers. */
 	@Override public ServletInputStream getInputStream()throws IOException{
-		ServletInputStream in=super.getInputStream();
-		if(this.zippedRequest){
-			try{
-				InputStream i=new GZIPInputStream(in);
-				in=new ServletInputStreamWrapper(i);
-			}catch(IOException ioe){
-				//Maybe Google AppEngine server already has unzipped (without changing the headers)?
-				String message=ioe.getMessage();
-				if("Not in GZIP format".equals(message))
-					in=super.getInputStream();//I hope the GZipInputStream constructor has not yet consumed bytes.
-				else
-					throw ioe;
-			}
-		}
-		return in;
+		if(!this.zippedRequest)
+			return super.getInputStream();//IOException
+		if(this.in==null)
+			this.in=new ServletInputStreamWrapper(GZipInputStream.unzip(super.getInputStream()));//IOException
+		return this.in;
 	}
 	
 	/**
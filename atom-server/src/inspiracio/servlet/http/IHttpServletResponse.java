@@ -18,9 +18,8 @@
 package inspiracio.servlet.http;
 
 import java.io.IOException;
-import java.io.OutputStream;
 import java.util.Random;
-import java.util.zip.GZIPOutputStream;
+import java.util.zip.Deflater;
 
 import javax.servlet.ServletOutputStream;
 import javax.servlet.http.HttpServletResponse;
@@ -33,13 +32,14 @@ import org.apache.log4j.Logger;
  * of its behaviour.
  * <p>
  * We modify the method encodeURL and encodeRedirectURL.
+ * <p>
+ * If the client accepts gzip, the body from getOutputStream() is gzipped
+ * according to a Compression: not if it is small, not for error
+ * responses, and with the level for its content type.
  * */
 public class IHttpServletResponse extends HttpServletResponseWrapper {
 	private static final Logger logger=Logger.getLogger(IHttpServletRequest.class);
 	
-	private static final String CONTENT_ENCODING="Content-Encoding";
-	private static final String GZIP="gzip";
-
 	static{
 		//On class loading, set system property for a workaround in Tomcat that allows
 		//arbitrary http messages.
@@ -52,8 +52,11 @@ public class IHttpServletResponse extends HttpServletResponseWrapper {
 	/** The status of the HTTP response set by {@link #setStatus(int)} or {@link #setStatus(int, String)} */
 	private int status=HttpServletResponse.SC_OK;
 	
-	/** The client wants a gzipped response. */
-	private boolean zipResponse=false;
+	/** How to compress, or null if the client does not want compression. */
+	private Compression compression=null;
+
+	/** From getOutputStream(), or null */
+	private ServletOutputStream out=null;
 
 	//Constructors ----------------------------------------------------
 
@@ -69,28 +72,62 @@ public class IHttpServletResponse extends HttpServletResponseWrapper {
 	 * inspiracio.servlet.jsp.HTTPPageContext calls this.
 	 * @param response the response that will go in the wrapper.
 	 * @param zipResponse The client wants a gzipped response.
+	 * 	Then it is gzipped always, with the default level.
 	 * */
 	public IHttpServletResponse(javax.servlet.http.HttpServletResponse response, boolean zipResponse){
+		this(response, zipResponse ? Compression.ALWAYS : null);
+	}
+
+	/** Wrap a given response.
+	 * @param response the response that will go in the wrapper.
+	 * @param compression How to compress. Null if the client does not want compression.
+	 * */
+	public IHttpServletResponse(javax.servlet.http.HttpServletResponse response, Compression compression){
 		this(response);
-		this.zipResponse=zipResponse;
-		if(zipResponse)
-			this.setHeader(CONTENT_ENCODING, GZIP);
+		this.compression=compression;
 	}
 
 	//Accessors --------------------------------------------------------
 
-	/** Gets a stream to send the response to. */
+	/** Gets a stream to send the response to. Set status and content type before. */
 	@Override public ServletOutputStream getOutputStream()throws IOException{
-		ServletOutputStream out=super.getOutputStream();
-		if(zipResponse){
-			OutputStream o=new GZIPOutputStream(out);
-			out=new ServletOutputStreamWrapper(o);
+		if(this.out==null){
+			if(this.isZipResponse()){
+				HttpServletResponse response=(HttpServletResponse)this.getResponse();
+				int level=this.compression.getLevel(this.getContentType());
+				this.out=new CompressingOutputStream(response, level, this.compression.getMinSize());
+			}else{
+				this.out=super.getOutputStream();//IOException
+			}
 		}
-		return out;
+		return this.out;
 	}
 	
 	public int getStatus(){return status;}
 
+	/** May the response be gzipped? Only if the client accepts gzip, the status is
+	 * not an error, and the content type has a level. Small bodies are not gzipped,
+	 * and so the length of the body is not known before. */
+	public boolean isZipResponse(){
+		return this.compression!=null
+			&& this.status<400
+			&& this.compression.getLevel(this.getContentType())!=Deflater.NO_COMPRESSION;
+	}
+
+	/** Also forgets the output stream, with the bytes that it keeps for compression. */
+	@Override public void reset(){
+		super.reset();
+		this.out=null;
+		this.status=HttpServletResponse.SC_OK;
+	}
+
+	/** Ignores the length if the body may be gzipped. Small bodies get
+	 * their length anyway. */
+	@Override public void setContentLength(int length){
+		if(!this.isZipResponse())
+			super.setContentLength(length);
+	}
+
 	/** Saves the given status, filters non-Latin-1 chars from the
 	 * message, and calls super.
 	 * @param status
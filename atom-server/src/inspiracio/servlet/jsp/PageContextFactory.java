@@ -75,6 +75,13 @@ public class PageContextFactory{
 		PageContextFactory.setPageContext(pc);
 	}
 	
+	/** At the end of a request on a thread that serves other requests later,
+	 * for example a thread of an executor, call this to forget the page context.
+	 * */
+	public static void removePageContext(){
+		threadLocal.remove();
+	}
+
 	/** Get the page context for this request.
 	 * <p> 
 	 * If this request is a DWR request, this method will return a page context